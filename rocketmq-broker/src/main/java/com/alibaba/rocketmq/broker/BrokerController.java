@@ -92,6 +92,7 @@ public class BrokerController {
     private TopicConfigManager topicConfigManager;
     private ExecutorService sendMessageExecutor;
     private ExecutorService pullMessageExecutor;
+    private ExecutorService coldPullMessageExecutor;
     private ExecutorService adminBrokerExecutor;
     private ExecutorService clientManageExecutor;
     private boolean updateMasterHAServerAddrPeriodically = false;
@@ -101,6 +102,8 @@ public class BrokerController {
 
     private final BlockingQueue<Runnable> pullThreadPoolQueue;
 
+    private final BlockingQueue<Runnable> coldPullThreadPoolQueue;
+
     private final FilterServerManager filterServerManager;
 
     private final BrokerStatsManager brokerStatsManager;
@@ -142,6 +145,9 @@ public class BrokerController {
 
         this.pullThreadPoolQueue = new LinkedBlockingQueue<Runnable>(this.brokerConfig.getPullThreadPoolQueueCapacity());
 
+        this.coldPullThreadPoolQueue =
+                new LinkedBlockingQueue<Runnable>(this.brokerConfig.getColdPullThreadPoolQueueCapacity());
+
         this.brokerStatsManager = new BrokerStatsManager(this.brokerConfig.getBrokerClusterName());
         this.setStoreHost(new InetSocketAddress(this.getBrokerConfig().getBrokerIP1(), this.getNettyServerConfig().getListenPort()));
     }
@@ -190,6 +196,14 @@ public class BrokerController {
                 this.pullThreadPoolQueue,//
                 new ThreadFactoryImpl("PullMessageThread_"));
 
+            this.coldPullMessageExecutor = new ThreadPoolExecutor(//
+                this.brokerConfig.getColdPullMessageThreadPoolNums(),//
+                this.brokerConfig.getColdPullMessageThreadPoolNums(),//
+                1000 * 60,//
+                TimeUnit.MILLISECONDS,//
+                this.coldPullThreadPoolQueue,//
+                new ThreadFactoryImpl("ColdPullMessageThread_"));
+
             this.adminBrokerExecutor =
                     Executors.newFixedThreadPool(this.brokerConfig.getAdminBrokerThreadPoolNums(), new ThreadFactoryImpl(
                         "AdminBrokerThread_"));
@@ -308,10 +322,12 @@ public class BrokerController {
         
         this.remotingServer.registerProcessor(RequestCode.SEND_MESSAGE, sendProcessor, this.sendMessageExecutor);
         this.remotingServer.registerProcessor(RequestCode.SEND_MESSAGE_V2, sendProcessor,this.sendMessageExecutor);
+        this.remotingServer.registerProcessor(RequestCode.SEND_BATCH_MESSAGE, sendProcessor, this.sendMessageExecutor);
         this.remotingServer.registerProcessor(RequestCode.CONSUMER_SEND_MSG_BACK, sendProcessor,this.sendMessageExecutor);
 
         this.fastRemotingServer.registerProcessor(RequestCode.SEND_MESSAGE, sendProcessor,this.sendMessageExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.SEND_MESSAGE_V2, sendProcessor,this.sendMessageExecutor);
+        this.fastRemotingServer.registerProcessor(RequestCode.SEND_BATCH_MESSAGE, sendProcessor, this.sendMessageExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.CONSUMER_SEND_MSG_BACK, sendProcessor,this.sendMessageExecutor);
 
         this.remotingServer.registerProcessor(RequestCode.PULL_MESSAGE, this.pullMessageProcessor, this.pullMessageExecutor);
@@ -468,6 +484,10 @@ public class BrokerController {
             this.pullMessageExecutor.shutdown();
         }
 
+        if (this.coldPullMessageExecutor != null) {
+            this.coldPullMessageExecutor.shutdown();
+        }
+
         if (this.adminBrokerExecutor != null) {
             this.adminBrokerExecutor.shutdown();
         }
@@ -476,7 +496,7 @@ public class BrokerController {
             this.brokerOuterAPI.shutdown();
         }
 
-        this.consumerOffsetManager.persist();
+        this.consumerOffsetManager.persistAll();
 
         if (this.filterServerManager != null) {
             this.filterServerManager.shutdown();
@@ -572,7 +592,8 @@ public class BrokerController {
             this.getHAServerAddr(), //
             topicConfigWrapper,//
             this.filterServerManager.buildNewFilterServerList(),//
-            oneway);
+            oneway,//
+            this.brokerConfig.isRegisterBrokerDeltaEnable());
 
         if (registerBrokerResult != null) {
             if (this.updateMasterHAServerAddrPeriodically && registerBrokerResult.getHaServerAddr() != null) {
@@ -696,6 +717,11 @@ public class BrokerController {
     }
 
 
+    public ExecutorService getColdPullMessageExecutor() {
+        return coldPullMessageExecutor;
+    }
+
+
     public BrokerStats getBrokerStats() {
         return brokerStats;
     }
@@ -711,6 +737,16 @@ public class BrokerController {
     }
 
 
+    public BlockingQueue<Runnable> getPullThreadPoolQueue() {
+        return pullThreadPoolQueue;
+    }
+
+
+    public BlockingQueue<Runnable> getColdPullThreadPoolQueue() {
+        return coldPullThreadPoolQueue;
+    }
+
+
     public FilterServerManager getFilterServerManager() {
         return filterServerManager;
     }
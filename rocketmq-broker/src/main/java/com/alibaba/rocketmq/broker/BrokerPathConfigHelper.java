@@ -45,6 +45,11 @@ public class BrokerPathConfigHelper {
     }
 
 
+    public static String getConsumerOffsetJournalPath(final String rootDir) {
+        return rootDir + File.separator + "config" + File.separator + "consumerOffset.journal";
+    }
+
+
     public static String getSubscriptionGroupPath(final String rootDir) {
         return rootDir + File.separator + "config" + File.separator + "subscriptionGroup.json";
     }
@@ -0,0 +1,307 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.broker.offset;
+
+import com.alibaba.rocketmq.common.UtilAll;
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Append-only binary journal of consumer offsets, only the changed offsets
+ * are appended on each persist and the journal is rewritten from the offset
+ * table once it grew well beyond it
+ *
+ * @author shijia.wxr
+ */
+public class ConsumerOffsetJournal {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.BrokerLoggerName);
+    private static final Charset Utf8 = Charset.forName("UTF-8");
+    // In the queue id of a record it removes every queue of the key
+    public static final int RemoveKeyQueueId = -1;
+    // total size, crc, queue id, offset, key length, then the key
+    private static final int HeaderSize = 4 + 4 + 4 + 8 + 2;
+    private final String fileName;
+    private final long compactMinSize;
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(1024 * 64);
+    private FileChannel fileChannel;
+    private long fileSize = 0;
+    private long compactedSize = 0;
+    private boolean writeFailed = false;
+
+
+    public ConsumerOffsetJournal(final String fileName, final long compactMinSize) {
+        this.fileName = fileName;
+        this.compactMinSize = compactMinSize;
+    }
+
+
+    public boolean exists() {
+        return new File(this.fileName).exists();
+    }
+
+
+    public long lastModified() {
+        return new File(this.fileName).lastModified();
+    }
+
+
+    /**
+     * Loads the journal into the table, a torn record at the tail left by a
+     * crash is cut off
+     */
+    public boolean replay(final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table) {
+        long beginTime = System.currentTimeMillis();
+        try {
+            this.openChannel();
+            ByteBuffer byteBuffer = ByteBuffer.allocate((int) this.fileChannel.size());
+            while (byteBuffer.hasRemaining() && this.fileChannel.read(byteBuffer, byteBuffer.position()) > 0) {
+            }
+            byteBuffer.flip();
+
+            int records = 0;
+            int validPosition = 0;
+            while (byteBuffer.remaining() >= HeaderSize) {
+                int totalSize = byteBuffer.getInt();
+                int crc = byteBuffer.getInt();
+                if (totalSize < HeaderSize || totalSize > byteBuffer.remaining() + 8
+                        || crc != UtilAll.crc32(byteBuffer.array(), validPosition + 8, totalSize - 8)) {
+                    break;
+                }
+
+                int queueId = byteBuffer.getInt();
+                long offset = byteBuffer.getLong();
+                byte[] key = new byte[byteBuffer.getShort()];
+                byteBuffer.get(key);
+                this.apply(table, new String(key, Utf8), queueId, offset);
+
+                validPosition += totalSize;
+                records++;
+            }
+
+            if (validPosition < byteBuffer.limit()) {
+                log.warn("consumer offset journal {} truncated from {} to {}", this.fileName, byteBuffer.limit(),
+                    validPosition);
+                this.fileChannel.truncate(validPosition);
+            }
+
+            this.fileChannel.position(validPosition);
+            this.fileSize = validPosition;
+            this.compactedSize = snapshotSize(table);
+            log.info("replay consumer offset journal {} OK, {} records, {} keys, elapsed time {}ms",
+                this.fileName, records, table.size(), System.currentTimeMillis() - beginTime);
+            return true;
+        }
+        catch (IOException e) {
+            log.error("replay consumer offset journal " + this.fileName + " failed", e);
+            return false;
+        }
+    }
+
+
+    private void apply(final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table, final String key,
+            final int queueId, final long offset) {
+        if (RemoveKeyQueueId == queueId) {
+            table.remove(key);
+            return;
+        }
+
+        ConcurrentHashMap<Integer, Long> map = table.get(key);
+        if (null == map) {
+            map = new ConcurrentHashMap<Integer, Long>(32);
+            table.put(key, map);
+        }
+        map.put(queueId, offset);
+    }
+
+
+    public void putOffset(final String key, final int queueId, final long offset) throws IOException {
+        this.writeRecord(this.channel(), key, queueId, offset);
+    }
+
+
+    public void removeKey(final String key) throws IOException {
+        this.writeRecord(this.channel(), key, RemoveKeyQueueId, 0);
+    }
+
+
+    /**
+     * Writes out the records put since the last flush and forces them to disk
+     */
+    public void flush() throws IOException {
+        try {
+            this.writeBuffer(this.channel());
+            this.fileChannel.force(false);
+        }
+        catch (IOException e) {
+            // Records may be lost, the next compaction writes them all again
+            this.writeFailed = true;
+            throw e;
+        }
+    }
+
+
+    public boolean isCompactNeeded() {
+        return this.writeFailed || this.fileSize > Math.max(this.compactMinSize, this.compactedSize * 2);
+    }
+
+
+    /**
+     * Rewrites the journal with one record per offset of the table
+     */
+    public void compact(final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table)
+            throws IOException {
+        long beginTime = System.currentTimeMillis();
+        File tmpFile = new File(this.fileName + ".tmp");
+        File file = new File(this.fileName);
+        file.getParentFile().mkdirs();
+
+        // Whatever was put but not flushed is in the table too, the journal
+        // misses it until the compaction succeeds
+        this.writeBuffer.clear();
+        this.writeFailed = true;
+        RandomAccessFile tmpRandomAccessFile = new RandomAccessFile(tmpFile, "rw");
+        try {
+            FileChannel tmpChannel = tmpRandomAccessFile.getChannel();
+            tmpChannel.truncate(0);
+            for (Entry<String, ConcurrentHashMap<Integer, Long>> entry : table.entrySet()) {
+                for (Entry<Integer, Long> offset : entry.getValue().entrySet()) {
+                    this.writeRecord(tmpChannel, entry.getKey(), offset.getKey(), offset.getValue());
+                }
+            }
+            this.writeBuffer(tmpChannel);
+            tmpChannel.force(true);
+        }
+        finally {
+            tmpRandomAccessFile.close();
+        }
+
+        this.close();
+        try {
+            if (!tmpFile.renameTo(file)) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("rename " + tmpFile + " to " + file + " failed");
+                }
+            }
+        }
+        finally {
+            this.channel();
+        }
+
+        this.compactedSize = this.fileSize;
+        this.writeFailed = false;
+        log.info("compact consumer offset journal {} OK, {} bytes, elapsed time {}ms", this.fileName,
+            this.fileSize, System.currentTimeMillis() - beginTime);
+    }
+
+
+    private void writeRecord(final FileChannel channel, final String key, final int queueId, final long offset)
+            throws IOException {
+        byte[] keyBytes = key.getBytes(Utf8);
+        int totalSize = HeaderSize + keyBytes.length;
+        if (this.writeBuffer.remaining() < totalSize) {
+            this.writeBuffer(channel);
+            if (this.writeBuffer.capacity() < totalSize) {
+                this.writeBuffer = ByteBuffer.allocate(totalSize);
+            }
+        }
+
+        int position = this.writeBuffer.position();
+        this.writeBuffer.putInt(totalSize);
+        this.writeBuffer.putInt(0);
+        this.writeBuffer.putInt(queueId);
+        this.writeBuffer.putLong(offset);
+        this.writeBuffer.putShort((short) keyBytes.length);
+        this.writeBuffer.put(keyBytes);
+        this.writeBuffer.putInt(position + 4, UtilAll.crc32(this.writeBuffer.array(), position + 8, totalSize - 8));
+    }
+
+
+    private void writeBuffer(final FileChannel channel) throws IOException {
+        this.writeBuffer.flip();
+        try {
+            while (this.writeBuffer.hasRemaining()) {
+                int written = channel.write(this.writeBuffer);
+                if (channel == this.fileChannel) {
+                    this.fileSize += written;
+                }
+            }
+        }
+        finally {
+            this.writeBuffer.clear();
+        }
+    }
+
+
+    private void openChannel() throws IOException {
+        new File(this.fileName).getParentFile().mkdirs();
+        this.fileChannel = new RandomAccessFile(this.fileName, "rw").getChannel();
+    }
+
+
+    /**
+     * Opens the journal again if a failed compaction left it closed, what is
+     * appended to whichever file is there is rewritten by the next compaction
+     */
+    private FileChannel channel() throws IOException {
+        if (null == this.fileChannel) {
+            this.writeFailed = true;
+            this.openChannel();
+            this.fileSize = this.fileChannel.size();
+            this.fileChannel.position(this.fileSize);
+        }
+        return this.fileChannel;
+    }
+
+
+    private static long snapshotSize(final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table) {
+        long size = 0;
+        for (Entry<String, ConcurrentHashMap<Integer, Long>> entry : table.entrySet()) {
+            size += (long) (HeaderSize + entry.getKey().length()) * entry.getValue().size();
+        }
+        return size;
+    }
+
+
+    public void close() {
+        if (this.fileChannel != null) {
+            try {
+                this.fileChannel.close();
+            }
+            catch (IOException e) {
+                log.warn("close consumer offset journal " + this.fileName + " failed", e);
+            }
+            this.fileChannel = null;
+        }
+    }
+
+
+    public long getFileSize() {
+        return fileSize;
+    }
+}
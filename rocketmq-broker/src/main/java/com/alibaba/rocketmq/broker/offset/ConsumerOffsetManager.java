@@ -25,6 +25,8 @@ import com.alibaba.rocketmq.remoting.protocol.RemotingSerializable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -43,6 +45,12 @@ public class ConsumerOffsetManager extends ConfigManager {
 
     private transient BrokerController brokerController;
 
+    // Offsets changed since the last persist, written to the journal
+    private transient final ConcurrentHashMap<String/* topic@group */, ConcurrentHashMap<Integer, Boolean>> dirtyTable =
+            new ConcurrentHashMap<String, ConcurrentHashMap<Integer, Boolean>>(512);
+
+    private transient ConsumerOffsetJournal offsetJournal;
+
 
     public ConsumerOffsetManager() {
     }
@@ -64,6 +72,7 @@ public class ConsumerOffsetManager extends ConfigManager {
                 if (null == brokerController.getConsumerManager().findSubscriptionData(group, topic)
                         && this.offsetBehindMuchThanData(topic, next.getValue())) {
                     it.remove();
+                    this.markDirty(topicAtGroup, ConsumerOffsetJournal.RemoveKeyQueueId);
                     log.warn("remove topic offset, {}", topicAtGroup);
                 }
             }
@@ -152,17 +161,161 @@ public class ConsumerOffsetManager extends ConfigManager {
 
     private void commitOffset(final String key, final int queueId, final long offset) {
         ConcurrentHashMap<Integer, Long> map = this.offsetTable.get(key);
+        Long prevOffset = null;
         if (null == map) {
             map = new ConcurrentHashMap<Integer, Long>(32);
             map.put(queueId, offset);
             this.offsetTable.put(key, map);
         }
         else {
-            map.put(queueId, offset);
+            prevOffset = map.put(queueId, offset);
+        }
+
+        if (null == prevOffset || prevOffset != offset) {
+            this.markDirty(key, queueId);
+        }
+    }
+
+
+    private void markDirty(final String key, final int queueId) {
+        if (null == this.offsetJournal) {
+            return;
+        }
+
+        while (true) {
+            ConcurrentHashMap<Integer, Boolean> queues = this.dirtyTable.get(key);
+            if (null == queues) {
+                queues = new ConcurrentHashMap<Integer, Boolean>(32);
+                ConcurrentHashMap<Integer, Boolean> prev = this.dirtyTable.putIfAbsent(key, queues);
+                if (prev != null) {
+                    queues = prev;
+                }
+            }
+
+            queues.put(queueId, Boolean.TRUE);
+            // persist drops the empty sets, mark again if it just dropped this one
+            if (this.dirtyTable.get(key) == queues) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Merges offsets, from the master for example, only the changed ones are
+     * journaled
+     */
+    public void mergeOffsetTable(final Map<String, ConcurrentHashMap<Integer, Long>> table) {
+        for (Entry<String, ConcurrentHashMap<Integer, Long>> entry : table.entrySet()) {
+            for (Entry<Integer, Long> offset : entry.getValue().entrySet()) {
+                this.commitOffset(entry.getKey(), offset.getKey(), offset.getValue());
+            }
         }
     }
 
 
+    @Override
+    public boolean load() {
+        if (!this.brokerController.getBrokerConfig().isConsumerOffsetJournalEnable()) {
+            return super.load();
+        }
+
+        ConsumerOffsetJournal journal =
+                new ConsumerOffsetJournal(this.journalFilePath(), this.brokerController.getBrokerConfig()
+                    .getConsumerOffsetJournalCompactSize());
+        // The JSON file is newer when a broker without the journal ran last
+        if (journal.exists() && journal.lastModified() >= new File(this.configFilePath()).lastModified()) {
+            if (!journal.replay(this.offsetTable)) {
+                return false;
+            }
+        }
+        else {
+            if (!super.load()) {
+                return false;
+            }
+
+            try {
+                journal.compact(this.offsetTable);
+                log.info("migrate consumer offsets of {} keys to the journal", this.offsetTable.size());
+            }
+            catch (IOException e) {
+                log.error("migrate consumer offsets to the journal failed", e);
+                return false;
+            }
+        }
+
+        this.offsetJournal = journal;
+        return true;
+    }
+
+
+    @Override
+    public synchronized void persist() {
+        if (null == this.offsetJournal) {
+            super.persist();
+            return;
+        }
+
+        try {
+            for (Entry<String, ConcurrentHashMap<Integer, Boolean>> entry : this.dirtyTable.entrySet()) {
+                String key = entry.getKey();
+                ConcurrentHashMap<Integer, Boolean> queues = entry.getValue();
+                if (queues.remove(ConsumerOffsetJournal.RemoveKeyQueueId) != null) {
+                    this.offsetJournal.removeKey(key);
+                }
+
+                ConcurrentHashMap<Integer, Long> map = this.offsetTable.get(key);
+                for (Integer queueId : queues.keySet()) {
+                    queues.remove(queueId);
+                    Long offset = map != null ? map.get(queueId) : null;
+                    if (offset != null) {
+                        this.offsetJournal.putOffset(key, queueId, offset);
+                    }
+                }
+
+                if (queues.isEmpty()) {
+                    this.dirtyTable.remove(key, queues);
+                }
+            }
+
+            this.offsetJournal.flush();
+            if (this.offsetJournal.isCompactNeeded()) {
+                this.offsetJournal.compact(this.offsetTable);
+            }
+        }
+        catch (IOException e) {
+            log.error("persist consumer offset journal exception", e);
+        }
+    }
+
+
+    /**
+     * Writes the JSON file too so a broker without the journal can start from
+     * it, then leaves the journal compacted for a fast replay
+     */
+    public synchronized void persistAll() {
+        if (null == this.offsetJournal) {
+            super.persist();
+            return;
+        }
+
+        super.persist();
+        this.persist();
+        try {
+            this.offsetJournal.compact(this.offsetTable);
+        }
+        catch (IOException e) {
+            log.error("compact consumer offset journal exception", e);
+        }
+    }
+
+
+    public String journalFilePath() {
+        return BrokerPathConfigHelper.getConsumerOffsetJournalPath(this.brokerController.getMessageStoreConfig()
+            .getStorePathRootDir());
+    }
+
+
     public String encode() {
         return this.encode(false);
     }
@@ -245,7 +398,12 @@ public class ConsumerOffsetManager extends ConfigManager {
     public void cloneOffset(final String srcGroup, final String destGroup, final String topic) {
         ConcurrentHashMap<Integer, Long> offsets = this.offsetTable.get(topic + TOPIC_GROUP_SEPARATOR + srcGroup);
         if (offsets != null) {
-            this.offsetTable.put(topic + TOPIC_GROUP_SEPARATOR + destGroup, offsets);
+            // A copy, later commits of either group must not show in the other
+            String key = topic + TOPIC_GROUP_SEPARATOR + destGroup;
+            this.offsetTable.put(key, new ConcurrentHashMap<Integer, Long>(offsets));
+            for (Integer queueId : offsets.keySet()) {
+                this.markDirty(key, queueId);
+            }
         }
     }
 }
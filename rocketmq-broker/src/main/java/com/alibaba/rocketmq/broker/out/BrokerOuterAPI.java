@@ -17,13 +17,16 @@
 package com.alibaba.rocketmq.broker.out;
 
 import com.alibaba.rocketmq.client.exception.MQBrokerException;
+import com.alibaba.rocketmq.common.DataVersion;
 import com.alibaba.rocketmq.common.MixAll;
+import com.alibaba.rocketmq.common.UtilAll;
 import com.alibaba.rocketmq.common.constant.LoggerName;
 import com.alibaba.rocketmq.common.namesrv.RegisterBrokerResult;
 import com.alibaba.rocketmq.common.namesrv.TopAddressing;
 import com.alibaba.rocketmq.common.protocol.RequestCode;
 import com.alibaba.rocketmq.common.protocol.ResponseCode;
 import com.alibaba.rocketmq.common.protocol.body.*;
+import com.alibaba.rocketmq.common.protocol.header.namesrv.BrokerHeartbeatRequestHeader;
 import com.alibaba.rocketmq.common.protocol.header.namesrv.RegisterBrokerRequestHeader;
 import com.alibaba.rocketmq.common.protocol.header.namesrv.RegisterBrokerResponseHeader;
 import com.alibaba.rocketmq.common.protocol.header.namesrv.UnRegisterBrokerRequestHeader;
@@ -36,8 +39,10 @@ import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -49,6 +54,9 @@ public class BrokerOuterAPI {
     private final RemotingClient remotingClient;
     private final TopAddressing topAddressing = new TopAddressing(MixAll.WS_ADDR);
     private String nameSrvAddr = null;
+    // What each name server has registered of this broker, deltas are built on it
+    private final ConcurrentHashMap<String/* namesrvAddr */, RegisteredBrokerData> registeredTable =
+            new ConcurrentHashMap<String, RegisteredBrokerData>();
 
 
     public BrokerOuterAPI(final NettyClientConfig nettyClientConfig, RPCHook rpcHook) {
@@ -113,7 +121,9 @@ public class BrokerOuterAPI {
             final String haServerAddr,// 5
             final TopicConfigSerializeWrapper topicConfigWrapper, // 6
             final List<String> filterServerList,// 7
-            final boolean oneway// 8
+            final boolean oneway,// 8
+            final boolean compressed,// 9
+            final DataVersion baseDataVersion// 10
     ) throws RemotingCommandException, MQBrokerException, RemotingConnectException,
             RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
         RegisterBrokerRequestHeader requestHeader = new RegisterBrokerRequestHeader();
@@ -122,13 +132,26 @@ public class BrokerOuterAPI {
         requestHeader.setBrokerName(brokerName);
         requestHeader.setClusterName(clusterName);
         requestHeader.setHaServerAddr(haServerAddr);
+        if (baseDataVersion != null) {
+            requestHeader.setBaseDataVersion(baseDataVersion.toJson());
+        }
         RemotingCommand request =
                 RemotingCommand.createRequestCommand(RequestCode.REGISTER_BROKER, requestHeader);
 
         RegisterBrokerBody requestBody = new RegisterBrokerBody();
         requestBody.setTopicConfigSerializeWrapper(topicConfigWrapper);
         requestBody.setFilterServerList(filterServerList);
-        request.setBody(requestBody.encode());
+        byte[] body = requestBody.encode();
+        if (compressed) {
+            try {
+                body = UtilAll.compress(body, 5);
+                requestHeader.setCompressed(true);
+            }
+            catch (IOException e) {
+                log.warn("compress register body failed, send it as is", e);
+            }
+        }
+        request.setBody(body);
 
         if (oneway) {
             try {
@@ -141,6 +164,36 @@ public class BrokerOuterAPI {
 
         RemotingCommand response = this.remotingClient.invokeSync(namesrvAddr, request, 3000);
         assert response != null;
+        return this.processRegisterBrokerResponse(response);
+    }
+
+
+    private RegisterBrokerResult brokerHeartbeat(//
+            final String namesrvAddr,//
+            final String clusterName,// 1
+            final String brokerAddr,// 2
+            final String brokerName,// 3
+            final long brokerId,// 4
+            final DataVersion dataVersion// 5
+    ) throws RemotingCommandException, MQBrokerException, RemotingConnectException,
+            RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
+        BrokerHeartbeatRequestHeader requestHeader = new BrokerHeartbeatRequestHeader();
+        requestHeader.setBrokerAddr(brokerAddr);
+        requestHeader.setBrokerId(brokerId);
+        requestHeader.setBrokerName(brokerName);
+        requestHeader.setClusterName(clusterName);
+        requestHeader.setDataVersion(dataVersion.toJson());
+        RemotingCommand request =
+                RemotingCommand.createRequestCommand(RequestCode.BROKER_HEARTBEAT, requestHeader);
+
+        RemotingCommand response = this.remotingClient.invokeSync(namesrvAddr, request, 3000);
+        assert response != null;
+        return this.processRegisterBrokerResponse(response);
+    }
+
+
+    private RegisterBrokerResult processRegisterBrokerResponse(final RemotingCommand response)
+            throws RemotingCommandException, MQBrokerException {
         switch (response.getCode()) {
         case ResponseCode.SUCCESS: {
             RegisterBrokerResponseHeader responseHeader =
@@ -163,6 +216,109 @@ public class BrokerOuterAPI {
     }
 
 
+    /**
+     * Registers with one name server, a name server that registered the
+     * current data version gets a heartbeat without topics, one that
+     * registered an older version gets the changed topics only, and the rest
+     * the full topic configs
+     */
+    private RegisterBrokerResult registerBrokerToNamesrv(//
+            final String namesrvAddr,//
+            final String clusterName,// 1
+            final String brokerAddr,// 2
+            final String brokerName,// 3
+            final long brokerId,// 4
+            final String haServerAddr,// 5
+            final TopicConfigSerializeWrapper topicConfigWrapper,// 6
+            final List<String> filterServerList,// 7
+            final boolean oneway,// 8
+            final boolean deltaEnable// 9
+    ) throws RemotingCommandException, MQBrokerException, RemotingConnectException,
+            RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
+        RegisteredBrokerData registered = deltaEnable ? this.registeredTable.get(namesrvAddr) : null;
+        if (oneway || null == registered) {
+            return this.registerBrokerFully(namesrvAddr, clusterName, brokerAddr, brokerName, brokerId,
+                haServerAddr, topicConfigWrapper, filterServerList, oneway, deltaEnable, registered);
+        }
+
+        TopicConfigSerializeWrapper deltaWrapper = registered.buildDelta(topicConfigWrapper);
+        switch (registered.pickRegisterMode(deltaWrapper, filterServerList, System.currentTimeMillis())) {
+        case HEARTBEAT:
+            try {
+                RegisterBrokerResult result =
+                        this.brokerHeartbeat(namesrvAddr, clusterName, brokerAddr, brokerName, brokerId,
+                            topicConfigWrapper.getDataVersion());
+                registered.onHeartbeatAnswered();
+                return result;
+            }
+            catch (RemotingTimeoutException e) {
+                // An older name server sends no response to an unknown request code
+                if (!registered.onHeartbeatFailed(System.currentTimeMillis())) {
+                    throw e;
+                }
+                log.info("heartbeat to name server {} timeout, register again", namesrvAddr);
+            }
+            catch (MQBrokerException e) {
+                registered.onHeartbeatRefused(ResponseCode.BROKER_NOT_REGISTERED == e.getResponseCode(),
+                    System.currentTimeMillis());
+                log.info("heartbeat to name server {} refused, {}, register again", namesrvAddr,
+                    e.getResponseCode());
+            }
+            break;
+        case DELTA:
+            try {
+                RegisterBrokerResult result =
+                        this.registerBroker(namesrvAddr, clusterName, brokerAddr, brokerName, brokerId,
+                            haServerAddr, deltaWrapper, filterServerList, false, true, registered.getDataVersion());
+                this.registeredTable.put(namesrvAddr, new RegisteredBrokerData(topicConfigWrapper,
+                    filterServerList, registered));
+                log.info("register {} changed topics to name server {} OK", deltaWrapper.getTopicConfigTable()
+                    .size(), namesrvAddr);
+                return result;
+            }
+            catch (MQBrokerException e) {
+                if (ResponseCode.BROKER_NOT_REGISTERED != e.getResponseCode()) {
+                    throw e;
+                }
+                log.info("name server {} lost this broker, register again", namesrvAddr);
+            }
+            break;
+        default:
+            break;
+        }
+
+        return this.registerBrokerFully(namesrvAddr, clusterName, brokerAddr, brokerName, brokerId, haServerAddr,
+            topicConfigWrapper, filterServerList, oneway, deltaEnable, registered);
+    }
+
+
+    private RegisterBrokerResult registerBrokerFully(//
+            final String namesrvAddr,//
+            final String clusterName,// 1
+            final String brokerAddr,// 2
+            final String brokerName,// 3
+            final long brokerId,// 4
+            final String haServerAddr,// 5
+            final TopicConfigSerializeWrapper topicConfigWrapper,// 6
+            final List<String> filterServerList,// 7
+            final boolean oneway,// 8
+            final boolean deltaEnable,// 9
+            final RegisteredBrokerData registered// 10
+    ) throws RemotingCommandException, MQBrokerException, RemotingConnectException,
+            RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
+        // Only name servers that took a heartbeat are known to take a compressed body
+        boolean compressed = registered != null && registered.isCompressSupported();
+        RegisterBrokerResult result =
+                this.registerBroker(namesrvAddr, clusterName, brokerAddr, brokerName, brokerId, haServerAddr,
+                    topicConfigWrapper, filterServerList, oneway, compressed, null);
+        if (deltaEnable && !oneway) {
+            this.registeredTable.put(namesrvAddr, new RegisteredBrokerData(topicConfigWrapper, filterServerList,
+                registered));
+        }
+        return result;
+    }
+
+
     public RegisterBrokerResult registerBrokerAll(//
             final String clusterName,// 1
             final String brokerAddr,// 2
@@ -171,7 +327,8 @@ public class BrokerOuterAPI {
             final String haServerAddr,// 5
             final TopicConfigSerializeWrapper topicConfigWrapper,// 6
             final List<String> filterServerList,// 7
-            final boolean oneway// 8
+            final boolean oneway,// 8
+            final boolean deltaEnable// 9
     ) {
         RegisterBrokerResult registerBrokerResult = null;
 
@@ -180,8 +337,8 @@ public class BrokerOuterAPI {
             for (String namesrvAddr : nameServerAddressList) {
                 try {
                     RegisterBrokerResult result =
-                            this.registerBroker(namesrvAddr, clusterName, brokerAddr, brokerName, brokerId,
-                                haServerAddr, topicConfigWrapper, filterServerList, oneway);
+                            this.registerBrokerToNamesrv(namesrvAddr, clusterName, brokerAddr, brokerName, brokerId,
+                                haServerAddr, topicConfigWrapper, filterServerList, oneway, deltaEnable);
                     if (result != null) {
                         registerBrokerResult = result;
                     }
@@ -189,6 +346,11 @@ public class BrokerOuterAPI {
                     log.info("register broker to name server {} OK", namesrvAddr);
                 }
                 catch (Exception e) {
+                    // Keep what is known of the name server, the next registration is full
+                    RegisteredBrokerData registered = this.registeredTable.get(namesrvAddr);
+                    if (registered != null) {
+                        registered.invalidate();
+                    }
                     log.warn("registerBroker Exception, " + namesrvAddr, e);
                 }
             }
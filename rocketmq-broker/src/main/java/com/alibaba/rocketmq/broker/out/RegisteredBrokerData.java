@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.broker.out;
+
+import com.alibaba.rocketmq.common.DataVersion;
+import com.alibaba.rocketmq.common.TopicConfig;
+import com.alibaba.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+
+/**
+ * Copy of the topic configs a name server registered at a data version,
+ * decides whether the next registration is a heartbeat, the changed topics
+ * or the full topic configs
+ *
+ * @author shijia.wxr
+ */
+public class RegisteredBrokerData {
+    // How long an older name server is not sent heartbeats
+    public static final long ProbeInterval = 1000 * 60 * 5;
+    private final DataVersion dataVersion = new DataVersion();
+    private final Map<String, TopicConfig> topicConfigTable;
+    private final List<String> filterServerList;
+    // Null until the name server answered a heartbeat or ignored one
+    private volatile Boolean heartbeatSupported;
+    private volatile long probeTimestamp = 0;
+    // Cleared when a registration failed, the next one is full
+    private volatile boolean registered = true;
+
+    public enum RegisterMode {
+        HEARTBEAT,
+        DELTA,
+        FULL
+    }
+
+
+    public RegisteredBrokerData(final TopicConfigSerializeWrapper topicConfigWrapper,
+            final List<String> filterServerList, final RegisteredBrokerData previous) {
+        this.dataVersion.assignNewOne(topicConfigWrapper.getDataVersion());
+        this.topicConfigTable = new HashMap<String, TopicConfig>(topicConfigWrapper.getTopicConfigTable().size());
+        for (TopicConfig topicConfig : topicConfigWrapper.getTopicConfigTable().values()) {
+            TopicConfig copy =
+                    new TopicConfig(topicConfig.getTopicName(), topicConfig.getReadQueueNums(),
+                        topicConfig.getWriteQueueNums(), topicConfig.getPerm());
+            copy.setTopicFilterType(topicConfig.getTopicFilterType());
+            copy.setTopicSysFlag(topicConfig.getTopicSysFlag());
+            copy.setOrder(topicConfig.isOrder());
+            this.topicConfigTable.put(copy.getTopicName(), copy);
+        }
+        this.filterServerList = filterServerList;
+        // What is known of the name server outlives the registration
+        if (previous != null) {
+            this.heartbeatSupported = previous.heartbeatSupported;
+            this.probeTimestamp = previous.probeTimestamp;
+        }
+    }
+
+
+    /**
+     * Topic permissions follow the broker permission without a new data
+     * version, so the changed topics are found by comparing the configs
+     */
+    public TopicConfigSerializeWrapper buildDelta(final TopicConfigSerializeWrapper topicConfigWrapper) {
+        TopicConfigSerializeWrapper deltaWrapper = new TopicConfigSerializeWrapper();
+        deltaWrapper.setDataVersion(topicConfigWrapper.getDataVersion());
+        for (Entry<String, TopicConfig> entry : topicConfigWrapper.getTopicConfigTable().entrySet()) {
+            if (!entry.getValue().equals(this.topicConfigTable.get(entry.getKey()))) {
+                deltaWrapper.getTopicConfigTable().put(entry.getKey(), entry.getValue());
+            }
+        }
+        return deltaWrapper;
+    }
+
+
+    public RegisterMode pickRegisterMode(final TopicConfigSerializeWrapper deltaWrapper,
+            final List<String> filterServerList, final long now) {
+        if (!this.registered) {
+            return RegisterMode.FULL;
+        }
+
+        boolean filterServerChanged = filterServerList != null && !filterServerList.equals(this.filterServerList);
+        if (deltaWrapper.getTopicConfigTable().isEmpty() && !filterServerChanged
+                && this.dataVersion.equals(deltaWrapper.getDataVersion())) {
+            return this.isHeartbeatProbable(now) ? RegisterMode.HEARTBEAT : RegisterMode.FULL;
+        }
+
+        // Only name servers that took a heartbeat are known to take a delta
+        return Boolean.TRUE.equals(this.heartbeatSupported) ? RegisterMode.DELTA : RegisterMode.FULL;
+    }
+
+
+    private boolean isHeartbeatProbable(final long now) {
+        return !Boolean.FALSE.equals(this.heartbeatSupported) || now - this.probeTimestamp > ProbeInterval;
+    }
+
+
+    public void onHeartbeatAnswered() {
+        this.heartbeatSupported = Boolean.TRUE;
+    }
+
+
+    /**
+     * An older name server refuses or never answers a heartbeat, only a
+     * timeout of one that answered before is taken as a network problem
+     *
+     * @return true if the heartbeat is not supported by the name server
+     */
+    public boolean onHeartbeatFailed(final long now) {
+        if (Boolean.TRUE.equals(this.heartbeatSupported)) {
+            return false;
+        }
+
+        this.heartbeatSupported = Boolean.FALSE;
+        this.probeTimestamp = now;
+        return true;
+    }
+
+
+    /**
+     * A refused heartbeat of a name server that does not know the broker
+     * still proves it supports them
+     */
+    public void onHeartbeatRefused(final boolean notRegistered, final long now) {
+        if (notRegistered) {
+            this.heartbeatSupported = Boolean.TRUE;
+        }
+        else {
+            this.onHeartbeatFailed(now);
+        }
+    }
+
+
+    public void invalidate() {
+        this.registered = false;
+    }
+
+
+    public boolean isCompressSupported() {
+        return Boolean.TRUE.equals(this.heartbeatSupported);
+    }
+
+
+    public DataVersion getDataVersion() {
+        return dataVersion;
+    }
+
+
+    public Boolean getHeartbeatSupported() {
+        return heartbeatSupported;
+    }
+}
@@ -93,6 +93,7 @@ public abstract class AbstractSendMessageProcessor implements NettyRequestProces
         SendMessageRequestHeaderV2 requestHeaderV2 = null;
         SendMessageRequestHeader requestHeader = null;
         switch (request.getCode()) {
+        case RequestCode.SEND_BATCH_MESSAGE:
         case RequestCode.SEND_MESSAGE_V2:
             requestHeaderV2 =
                     (SendMessageRequestHeaderV2) request
@@ -266,6 +267,7 @@ public abstract class AbstractSendMessageProcessor implements NettyRequestProces
             final RemotingCommand response) {
         if (!request.isOnewayRPC()) {
             try {
+                response.setSerializeTypeCurrentRPC(request.getSerializeTypeCurrentRPC());
                 ctx.writeAndFlush(response);
             }
             catch (Throwable e) {
@@ -835,6 +835,14 @@ public class AdminBrokerProcessor implements NettyRequestProcessor {
         runtimeInfo.put("sendThreadPoolQueueCapacity",
             String.valueOf(this.brokerController.getBrokerConfig().getSendThreadPoolQueueCapacity()));
 
+        runtimeInfo.put("pullThreadPoolQueueSize", String.valueOf(this.brokerController.getPullThreadPoolQueue().size()));
+        runtimeInfo.put("coldPullThreadPoolQueueSize",
+            String.valueOf(this.brokerController.getColdPullThreadPoolQueue().size()));
+        runtimeInfo.put("pullHotAvgRTInMinute",
+            String.valueOf(this.brokerController.getBrokerStatsManager().avgBrokerPullRTInMinute(false)));
+        runtimeInfo.put("pullColdAvgRTInMinute",
+            String.valueOf(this.brokerController.getBrokerStatsManager().avgBrokerPullRTInMinute(true)));
+
         runtimeInfo.put("dispatchBehindBytes", String.valueOf(this.brokerController.getMessageStore().dispatchBehindBytes()));
         return runtimeInfo;
     }
@@ -58,6 +58,7 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -78,18 +79,70 @@ public class PullMessageProcessor implements NettyRequestProcessor {
     @Override
     public RemotingCommand processRequest(final ChannelHandlerContext ctx, RemotingCommand request)
             throws RemotingCommandException {
-        return this.processRequest(ctx.channel(), request, true);
+        final long beginTime = System.currentTimeMillis();
+        if (this.isColdPull(request)) {
+            try {
+                this.brokerController.getColdPullMessageExecutor().submit(
+                    this.buildResponseTask(ctx.channel(), request, true, true, beginTime));
+                return null;
+            }
+            catch (RejectedExecutionException e) {
+                final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+                response.setCode(ResponseCode.SYSTEM_BUSY);
+                response.setRemark("[OVERLOAD]too many pulls reading from disk, try again later");
+                return response;
+            }
+        }
+
+        RemotingCommand response = this.processRequest(ctx.channel(), request, true);
+        this.brokerController.getBrokerStatsManager().incBrokerPullRT(false, System.currentTimeMillis() - beginTime);
+        return response;
     }
 
 
     public void excuteRequestWhenWakeup(final Channel channel, final RemotingCommand request)
             throws RemotingCommandException {
-        Runnable run = new Runnable() {
+        final long beginTime = System.currentTimeMillis();
+        if (this.isColdPull(request)) {
+            try {
+                this.brokerController.getColdPullMessageExecutor().submit(
+                    this.buildResponseTask(channel, request, false, true, beginTime));
+                return;
+            }
+            catch (RejectedExecutionException e) {
+                // The consumer was already kept waiting, do not drop it
+            }
+        }
+
+        this.brokerController.getPullMessageExecutor().submit(
+            this.buildResponseTask(channel, request, false, false, beginTime));
+    }
+
+
+    /**
+     * A pull going to read from disk runs on the cold pull threads, so that a
+     * lagging consumer never holds up the ones reading from memory
+     */
+    private boolean isColdPull(final RemotingCommand request) throws RemotingCommandException {
+        if (!this.brokerController.getBrokerConfig().isColdPullIsolationEnable()) {
+            return false;
+        }
+
+        final PullMessageRequestHeader requestHeader =
+                (PullMessageRequestHeader) request.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+        return this.brokerController.getMessageStore().checkInDiskByConsumeOffset(requestHeader.getTopic(),
+            requestHeader.getQueueId(), requestHeader.getQueueOffset());
+    }
+
+
+    private Runnable buildResponseTask(final Channel channel, final RemotingCommand request,
+            final boolean brokerAllowSuspend, final boolean cold, final long beginTime) {
+        return new Runnable() {
             @Override
             public void run() {
                 try {
                     final RemotingCommand response =
-                            PullMessageProcessor.this.processRequest(channel, request, false);
+                            PullMessageProcessor.this.processRequest(channel, request, brokerAllowSuspend);
 
                     if (response != null) {
                         response.setOpaque(request.getOpaque());
@@ -118,10 +171,11 @@ public class PullMessageProcessor implements NettyRequestProcessor {
                 catch (RemotingCommandException e1) {
                     log.error("excuteRequestWhenWakeup run", e1);
                 }
+
+                PullMessageProcessor.this.brokerController.getBrokerStatsManager().incBrokerPullRT(cold,
+                    System.currentTimeMillis() - beginTime);
             }
         };
-
-        this.brokerController.getPullMessageExecutor().submit(run);
     }
 
 
@@ -178,6 +232,7 @@ public class PullMessageProcessor implements NettyRequestProcessor {
                 (PullMessageRequestHeader) request.decodeCommandCustomHeader(PullMessageRequestHeader.class);
 
         response.setOpaque(request.getOpaque());
+        response.setSerializeTypeCurrentRPC(request.getSerializeTypeCurrentRPC());
 
         if (log.isDebugEnabled()) {
             log.debug("receive PullMessage request command, " + request);
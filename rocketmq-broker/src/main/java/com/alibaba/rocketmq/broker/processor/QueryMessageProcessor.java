@@ -81,6 +81,7 @@ public class QueryMessageProcessor implements NettyRequestProcessor {
                     .decodeCommandCustomHeader(QueryMessageRequestHeader.class);
 
         response.setOpaque(request.getOpaque());
+        response.setSerializeTypeCurrentRPC(request.getSerializeTypeCurrentRPC());
 
         final QueryMessageResult queryMessageResult =
                 this.brokerController.getMessageStore().queryMessage(requestHeader.getTopic(),
@@ -130,6 +131,7 @@ public class QueryMessageProcessor implements NettyRequestProcessor {
                 (ViewMessageRequestHeader) request.decodeCommandCustomHeader(ViewMessageRequestHeader.class);
 
         response.setOpaque(request.getOpaque());
+        response.setSerializeTypeCurrentRPC(request.getSerializeTypeCurrentRPC());
 
         final SelectMapedBufferResult selectMapedBufferResult =
                 this.brokerController.getMessageStore().selectOneMessageByOffset(requestHeader.getOffset());
@@ -44,8 +44,13 @@ import com.alibaba.rocketmq.remoting.common.RemotingHelper;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
 import com.alibaba.rocketmq.remoting.netty.NettyRequestProcessor;
 import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.store.MessageExtBatch;
 import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.MessageStore;
+import com.alibaba.rocketmq.store.PutMessageCallback;
 import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.config.BrokerRole;
+import com.alibaba.rocketmq.store.config.FlushDiskType;
 import com.alibaba.rocketmq.store.config.StorePathConfigHelper;
 import com.alibaba.rocketmq.store.stats.BrokerStatsManager;
 import io.netty.channel.ChannelHandlerContext;
@@ -79,13 +84,73 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
             }
             mqtraceContext = buildMsgContext(ctx, requestHeader);
             this.executeSendMessageHookBefore(ctx, request, mqtraceContext);
-            final RemotingCommand response = this.sendMessage(ctx, request, mqtraceContext, requestHeader);
-            this.executeSendMessageHookAfter(response, mqtraceContext);
+            final boolean asyncPut = this.isAsyncPutMessage();
+            final RemotingCommand response;
+            if (RequestCode.SEND_BATCH_MESSAGE == request.getCode()) {
+                response = this.sendBatchMessage(ctx, request, mqtraceContext, requestHeader, asyncPut);
+            }
+            else {
+                response = this.sendMessage(ctx, request, mqtraceContext, requestHeader, asyncPut);
+            }
+            // An async put answers and runs the hook itself once the store completes
+            if (response != null || !asyncPut) {
+                this.executeSendMessageHookAfter(response, mqtraceContext);
+            }
             return response;
         }
     }
 
 
+    private boolean isAsyncPutMessage() {
+        if (!this.brokerController.getBrokerConfig().isAsyncPutMessageEnable()) {
+            return false;
+        }
+
+        // Only a synchronous flush or double write ever holds the send thread
+        return FlushDiskType.SYNC_FLUSH == this.brokerController.getMessageStoreConfig().getFlushDiskType()
+                || BrokerRole.SYNC_MASTER == this.brokerController.getMessageStoreConfig().getBrokerRole();
+    }
+
+
+    private RemotingCommand putMessage(final ChannelHandlerContext ctx, //
+            final RemotingCommand request,//
+            final MessageExtBrokerInner msg,//
+            final RemotingCommand response,//
+            final SendMessageResponseHeader responseHeader,//
+            final SendMessageContext mqtraceContext,//
+            final int queueIdInt,//
+            final SendMessageRequestHeader requestHeader,//
+            final boolean asyncPut) {
+        final MessageStore messageStore = this.brokerController.getMessageStore();
+        if (!asyncPut) {
+            PutMessageResult putMessageResult = msg instanceof MessageExtBatch //
+                    ? messageStore.putMessages((MessageExtBatch) msg) : messageStore.putMessage(msg);
+            return this.handlePutMessageResult(putMessageResult, response, request, msg, responseHeader,
+                mqtraceContext, ctx, queueIdInt, requestHeader);
+        }
+
+        PutMessageCallback callback = new PutMessageCallback() {
+            @Override
+            public void operationComplete(PutMessageResult putMessageResult) {
+                RemotingCommand failed = SendMessageProcessor.this.handlePutMessageResult(putMessageResult, response,
+                    request, msg, responseHeader, mqtraceContext, ctx, queueIdInt, requestHeader);
+                if (failed != null) {
+                    SendMessageProcessor.this.doResponse(ctx, request, failed);
+                }
+                SendMessageProcessor.this.executeSendMessageHookAfter(failed, mqtraceContext);
+            }
+        };
+
+        if (msg instanceof MessageExtBatch) {
+            messageStore.putMessagesAsync((MessageExtBatch) msg, callback);
+        }
+        else {
+            messageStore.putMessageAsync(msg, callback);
+        }
+        return null;
+    }
+
+
     private RemotingCommand consumerSendMsgBack(final ChannelHandlerContext ctx, final RemotingCommand request)
             throws RemotingCommandException {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
@@ -255,7 +320,7 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
 
     private String diskUtil() {
         String storePathPhysic = this.brokerController.getMessageStoreConfig().getStorePathCommitLog();
-        double physicRatio = UtilAll.getDiskPartitionSpaceUsedPercent(storePathPhysic);
+        double physicRatio = StorePathConfigHelper.getDiskPartitionSpaceUsedPercent(storePathPhysic);
 
         String storePathLogis =
                 StorePathConfigHelper.getStorePathConsumeQueue(this.brokerController.getMessageStoreConfig().getStorePathRootDir());
@@ -272,12 +337,14 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
     private RemotingCommand sendMessage(final ChannelHandlerContext ctx, //
             final RemotingCommand request,//
             final SendMessageContext mqtraceContext,//
-            final SendMessageRequestHeader requestHeader) throws RemotingCommandException {
+            final SendMessageRequestHeader requestHeader,//
+            final boolean asyncPut) throws RemotingCommandException {
 
         final RemotingCommand response = RemotingCommand.createResponseCommand(SendMessageResponseHeader.class);
         final SendMessageResponseHeader responseHeader = (SendMessageResponseHeader) response.readCustomHeader();
 
         response.setOpaque(request.getOpaque());
+        response.setSerializeTypeCurrentRPC(request.getSerializeTypeCurrentRPC());
 
         if (log.isDebugEnabled()) {
             log.debug("receive SendMessage request command, " + request);
@@ -326,7 +393,75 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
             }
         }
 
-        PutMessageResult putMessageResult = this.brokerController.getMessageStore().putMessage(msgInner);
+        return this.putMessage(ctx, request, msgInner, response, responseHeader, mqtraceContext, queueIdInt,
+            requestHeader, asyncPut);
+    }
+
+
+    private RemotingCommand sendBatchMessage(final ChannelHandlerContext ctx, //
+            final RemotingCommand request,//
+            final SendMessageContext mqtraceContext,//
+            final SendMessageRequestHeader requestHeader,//
+            final boolean asyncPut) throws RemotingCommandException {
+
+        final RemotingCommand response = RemotingCommand.createResponseCommand(SendMessageResponseHeader.class);
+        final SendMessageResponseHeader responseHeader = (SendMessageResponseHeader) response.readCustomHeader();
+
+        response.setOpaque(request.getOpaque());
+        response.setSerializeTypeCurrentRPC(request.getSerializeTypeCurrentRPC());
+
+        if (log.isDebugEnabled()) {
+            log.debug("receive SendBatchMessage request command, " + request);
+        }
+        response.setCode(-1);
+        super.msgCheck(ctx, requestHeader, response);
+        if (response.getCode() != -1) {
+            return response;
+        }
+
+        if (requestHeader.getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)) {
+            response.setCode(ResponseCode.MESSAGE_ILLEGAL);
+            response.setRemark("batch request does not support retry group " + requestHeader.getTopic());
+            return response;
+        }
+
+        int queueIdInt = requestHeader.getQueueId();
+        TopicConfig topicConfig = this.brokerController.getTopicConfigManager().selectTopicConfig(requestHeader.getTopic());
+        if (queueIdInt < 0) {
+            queueIdInt = Math.abs(this.random.nextInt() % 99999999) % topicConfig.getWriteQueueNums();
+        }
+
+        int sysFlag = requestHeader.getSysFlag();
+        if (TopicFilterType.MULTI_TAG == topicConfig.getTopicFilterType()) {
+            sysFlag |= MessageSysFlag.MultiTagsFlag;
+        }
+
+        // The body is kept encoded, the store splits it while serializing
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(requestHeader.getTopic());
+        messageExtBatch.setQueueId(queueIdInt);
+        messageExtBatch.setSysFlag(sysFlag);
+        messageExtBatch.setBornTimestamp(requestHeader.getBornTimestamp());
+        messageExtBatch.setBornHost(ctx.channel().remoteAddress());
+        messageExtBatch.setStoreHost(this.getStoreHost());
+        messageExtBatch.setReconsumeTimes(0);
+        messageExtBatch.setBody(request.getBody());
+        MessageAccessor.setProperties(messageExtBatch, MessageDecoder.string2messageProperties(requestHeader.getProperties()));
+
+        return this.putMessage(ctx, request, messageExtBatch, response, responseHeader, mqtraceContext, queueIdInt,
+            requestHeader, asyncPut);
+    }
+
+
+    private RemotingCommand handlePutMessageResult(final PutMessageResult putMessageResult, //
+            final RemotingCommand response,//
+            final RemotingCommand request,//
+            final MessageExt msg,//
+            final SendMessageResponseHeader responseHeader,//
+            final SendMessageContext mqtraceContext,//
+            final ChannelHandlerContext ctx,//
+            final int queueIdInt,//
+            final SendMessageRequestHeader requestHeader) {
         if (putMessageResult != null) {
             boolean sendOK = false;
 
@@ -376,20 +511,21 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
             }
 
             if (sendOK) {
-                this.brokerController.getBrokerStatsManager().incTopicPutNums(msgInner.getTopic());
-                this.brokerController.getBrokerStatsManager().incTopicPutSize(msgInner.getTopic(),
+                final int msgNum = putMessageResult.getAppendMessageResult().getMsgNum();
+                this.brokerController.getBrokerStatsManager().incTopicPutNums(msg.getTopic(), msgNum, 1);
+                this.brokerController.getBrokerStatsManager().incTopicPutSize(msg.getTopic(),
                     putMessageResult.getAppendMessageResult().getWroteBytes());
-                this.brokerController.getBrokerStatsManager().incBrokerPutNums();
+                this.brokerController.getBrokerStatsManager().incBrokerPutNums(msgNum);
 
                 if (!this.brokerController.getBrokerConfig().isHighSpeedMode()) {
                     // For commercial
                     int incValue =
                             (int) Math.ceil(putMessageResult.getAppendMessageResult().getWroteBytes() / BrokerStatsManager.SIZE_PER_COUNT);
                     this.brokerController.getBrokerStatsManager().incCommercialTopicSendTimes(requestHeader.getProducerGroup(),
-                        msgInner.getTopic(), BrokerStatsManager.StatsType.SEND_SUCCESS.toString(), incValue);
+                        msg.getTopic(), BrokerStatsManager.StatsType.SEND_SUCCESS.toString(), incValue);
 
                     this.brokerController.getBrokerStatsManager().incCommercialTopicSendSize(requestHeader.getProducerGroup(),
-                        msgInner.getTopic(), BrokerStatsManager.StatsType.SEND_SUCCESS.toString(),
+                        msg.getTopic(), BrokerStatsManager.StatsType.SEND_SUCCESS.toString(),
                         putMessageResult.getAppendMessageResult().getWroteBytes());
                 }
                 response.setRemark(null);
@@ -410,7 +546,7 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
             else {
                 // For commercial
                 this.brokerController.getBrokerStatsManager().incCommercialTopicSendTimes(requestHeader.getProducerGroup(),
-                    msgInner.getTopic(), BrokerStatsManager.StatsType.SEND_FAILURE.toString(), 1);
+                    msg.getTopic(), BrokerStatsManager.StatsType.SEND_FAILURE.toString(), 1);
             }
         }
         else {
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.broker.offset;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ConsumerOffsetJournalTest {
+    private static final String FileName = System.getProperty("user.home") + File.separator
+            + "unit_test_offset_journal" + File.separator + "consumerOffset.journal";
+
+
+    @After
+    public void tearDown() {
+        new File(FileName).delete();
+        new File(FileName).getParentFile().delete();
+    }
+
+
+    private ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> replay(final long compactMinSize) {
+        ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table =
+                new ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>>();
+        ConsumerOffsetJournal journal = new ConsumerOffsetJournal(FileName, compactMinSize);
+        assertTrue(journal.replay(table));
+        journal.close();
+        return table;
+    }
+
+
+    @Test
+    public void test_replay() throws Exception {
+        ConsumerOffsetJournal journal = new ConsumerOffsetJournal(FileName, 1024 * 1024);
+        assertFalse(journal.exists());
+        journal.compact(new ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>>());
+        for (int i = 0; i < 3; i++) {
+            for (int queueId = 0; queueId < 4; queueId++) {
+                journal.putOffset("TopicTest@Group" + i, queueId, 100 * i + queueId);
+            }
+        }
+        journal.putOffset("TopicTest@Group0", 0, 1000);
+        journal.removeKey("TopicTest@Group2");
+        journal.flush();
+        long fileSize = journal.getFileSize();
+
+        // A record torn by a crash
+        RandomAccessFile file = new RandomAccessFile(FileName, "rw");
+        file.seek(fileSize);
+        file.write(new byte[] { 0, 0, 0, 40, 1, 2 });
+        file.close();
+        journal.close();
+
+        ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table = this.replay(1024 * 1024);
+        assertEquals(2, table.size());
+        assertEquals(1000L, (long) table.get("TopicTest@Group0").get(0));
+        assertEquals(103L, (long) table.get("TopicTest@Group1").get(3));
+        assertNull(table.get("TopicTest@Group2"));
+        assertEquals(fileSize, new File(FileName).length());
+    }
+
+
+    @Test
+    public void test_compact() throws Exception {
+        ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table =
+                new ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>>();
+        table.put("TopicTest@Group0", new ConcurrentHashMap<Integer, Long>());
+        ConsumerOffsetJournal journal = new ConsumerOffsetJournal(FileName, 1024);
+        journal.compact(table);
+
+        for (long offset = 0; offset < 100; offset++) {
+            table.get("TopicTest@Group0").put(0, offset);
+            journal.putOffset("TopicTest@Group0", 0, offset);
+        }
+        journal.flush();
+        assertTrue(journal.isCompactNeeded());
+
+        journal.compact(table);
+        assertFalse(journal.isCompactNeeded());
+        assertEquals(journal.getFileSize(), new File(FileName).length());
+        journal.close();
+
+        assertEquals(99L, (long) this.replay(1024).get("TopicTest@Group0").get(0));
+    }
+
+
+    @Test
+    public void test_compact_rename_failed() throws Exception {
+        ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> table =
+                new ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>>();
+        table.put("TopicTest@Group0", new ConcurrentHashMap<Integer, Long>());
+        table.get("TopicTest@Group0").put(0, 10L);
+        ConsumerOffsetJournal journal = new ConsumerOffsetJournal(FileName, 1024);
+        journal.compact(table);
+
+        // A directory in place of the journal, it can be neither replaced nor opened
+        File file = new File(FileName);
+        File blocker = new File(file, "blocker");
+        assertTrue(file.delete());
+        assertTrue(blocker.mkdirs());
+        try {
+            journal.compact(table);
+            fail("compact over a directory");
+        }
+        catch (IOException e) {
+        }
+        assertTrue(journal.isCompactNeeded());
+        blocker.delete();
+        file.delete();
+        new File(FileName + ".tmp").delete();
+
+        // Opened again on the next put, compacted on the next persist
+        table.get("TopicTest@Group0").put(0, 20L);
+        journal.putOffset("TopicTest@Group0", 0, 20L);
+        journal.flush();
+        assertTrue(journal.isCompactNeeded());
+        journal.compact(table);
+        assertFalse(journal.isCompactNeeded());
+        journal.close();
+
+        assertEquals(20L, (long) this.replay(1024).get("TopicTest@Group0").get(0));
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.broker.out;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.alibaba.rocketmq.broker.out.RegisteredBrokerData.RegisterMode;
+import com.alibaba.rocketmq.common.TopicConfig;
+import com.alibaba.rocketmq.common.constant.PermName;
+import com.alibaba.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
+
+
+/**
+ * @author shijia.wxr<vintage.wang@gmail.com>
+ */
+public class RegisteredBrokerDataTest {
+    private static TopicConfigSerializeWrapper createWrapper(final int topicNums) {
+        TopicConfigSerializeWrapper wrapper = new TopicConfigSerializeWrapper();
+        for (int i = 0; i < topicNums; i++) {
+            TopicConfig topicConfig = new TopicConfig("TestTopic_" + i, 4, 4, PermName.PERM_READ | PermName.PERM_WRITE);
+            wrapper.getTopicConfigTable().put(topicConfig.getTopicName(), topicConfig);
+        }
+        return wrapper;
+    }
+
+
+    @Test
+    public void test_unchanged_heartbeat() {
+        TopicConfigSerializeWrapper wrapper = createWrapper(8);
+        RegisteredBrokerData registered = new RegisteredBrokerData(wrapper, new ArrayList<String>(), null);
+
+        TopicConfigSerializeWrapper delta = registered.buildDelta(wrapper);
+        assertTrue(delta.getTopicConfigTable().isEmpty());
+        assertEquals(RegisterMode.HEARTBEAT,
+            registered.pickRegisterMode(delta, new ArrayList<String>(), System.currentTimeMillis()));
+    }
+
+
+    @Test
+    public void test_changed_topic_delta() {
+        TopicConfigSerializeWrapper wrapper = createWrapper(8);
+        RegisteredBrokerData registered = new RegisteredBrokerData(wrapper, null, null);
+
+        // The copy must not follow later changes of the topic configs
+        wrapper.getTopicConfigTable().get("TestTopic_3").setPerm(PermName.PERM_READ);
+        wrapper.getDataVersion().nextVersion();
+        TopicConfigSerializeWrapper delta = registered.buildDelta(wrapper);
+        assertEquals(1, delta.getTopicConfigTable().size());
+        assertTrue(delta.getTopicConfigTable().containsKey("TestTopic_3"));
+
+        // Not known to take a delta until a heartbeat was answered
+        long now = System.currentTimeMillis();
+        assertEquals(RegisterMode.FULL, registered.pickRegisterMode(delta, null, now));
+        registered.onHeartbeatAnswered();
+        assertEquals(RegisterMode.DELTA, registered.pickRegisterMode(delta, null, now));
+    }
+
+
+    @Test
+    public void test_filter_server_changed() {
+        TopicConfigSerializeWrapper wrapper = createWrapper(2);
+        List<String> filterServerList = Arrays.asList("127.0.0.1:10000");
+        RegisteredBrokerData registered = new RegisteredBrokerData(wrapper, filterServerList, null);
+        registered.onHeartbeatAnswered();
+
+        TopicConfigSerializeWrapper delta = registered.buildDelta(wrapper);
+        long now = System.currentTimeMillis();
+        assertEquals(RegisterMode.HEARTBEAT, registered.pickRegisterMode(delta, filterServerList, now));
+        assertEquals(RegisterMode.DELTA,
+            registered.pickRegisterMode(delta, Arrays.asList("127.0.0.1:10001"), now));
+    }
+
+
+    @Test
+    public void test_heartbeat_unsupported() {
+        TopicConfigSerializeWrapper wrapper = createWrapper(2);
+        RegisteredBrokerData registered = new RegisteredBrokerData(wrapper, null, null);
+        TopicConfigSerializeWrapper delta = registered.buildDelta(wrapper);
+
+        // An older name server times out, registered fully until the next probe
+        long now = System.currentTimeMillis();
+        assertTrue(registered.onHeartbeatFailed(now));
+        assertFalse(registered.isCompressSupported());
+        assertEquals(RegisterMode.FULL, registered.pickRegisterMode(delta, null, now + 30 * 1000));
+        assertEquals(RegisterMode.HEARTBEAT,
+            registered.pickRegisterMode(delta, null, now + RegisteredBrokerData.ProbeInterval + 1));
+
+        // Known by the next registration
+        RegisteredBrokerData next = new RegisteredBrokerData(wrapper, null, registered);
+        assertEquals(Boolean.FALSE, next.getHeartbeatSupported());
+        assertEquals(RegisterMode.FULL, next.pickRegisterMode(delta, null, now + 30 * 1000));
+    }
+
+
+    @Test
+    public void test_heartbeat_timeout_supported() {
+        TopicConfigSerializeWrapper wrapper = createWrapper(2);
+        RegisteredBrokerData registered = new RegisteredBrokerData(wrapper, null, null);
+        registered.onHeartbeatAnswered();
+
+        // A name server that answered before is not taken for an older one
+        assertFalse(registered.onHeartbeatFailed(System.currentTimeMillis()));
+        assertEquals(Boolean.TRUE, registered.getHeartbeatSupported());
+
+        registered.onHeartbeatRefused(true, System.currentTimeMillis());
+        assertEquals(Boolean.TRUE, registered.getHeartbeatSupported());
+    }
+
+
+    @Test
+    public void test_invalidated_full() {
+        TopicConfigSerializeWrapper wrapper = createWrapper(2);
+        RegisteredBrokerData registered = new RegisteredBrokerData(wrapper, null, null);
+        registered.onHeartbeatAnswered();
+        registered.invalidate();
+
+        TopicConfigSerializeWrapper delta = registered.buildDelta(wrapper);
+        assertEquals(RegisterMode.FULL, registered.pickRegisterMode(delta, null, System.currentTimeMillis()));
+        assertTrue(registered.isCompressSupported());
+    }
+}
@@ -47,6 +47,11 @@ public class ClientConfig {
     private int persistConsumerOffsetInterval = 1000 * 5;
     private boolean unitMode = false;
     private String unitName;
+    /**
+     * Have the name server push route changes of the topics, polling stays
+     * as the fallback
+     */
+    private boolean routeChangeNotifyEnable = true;
 
 
     public String buildMQClientId() {
@@ -81,6 +86,7 @@ public class ClientConfig {
         this.persistConsumerOffsetInterval = cc.persistConsumerOffsetInterval;
         this.unitMode = cc.unitMode;
         this.unitName = cc.unitName;
+        this.routeChangeNotifyEnable = cc.routeChangeNotifyEnable;
     }
 
 
@@ -95,6 +101,7 @@ public class ClientConfig {
         cc.persistConsumerOffsetInterval = persistConsumerOffsetInterval;
         cc.unitMode = unitMode;
         cc.unitName = unitName;
+        cc.routeChangeNotifyEnable = routeChangeNotifyEnable;
         return cc;
     }
 
@@ -189,11 +196,22 @@ public class ClientConfig {
     }
 
 
+    public boolean isRouteChangeNotifyEnable() {
+        return routeChangeNotifyEnable;
+    }
+
+
+    public void setRouteChangeNotifyEnable(boolean routeChangeNotifyEnable) {
+        this.routeChangeNotifyEnable = routeChangeNotifyEnable;
+    }
+
+
     @Override
     public String toString() {
         return "ClientConfig [namesrvAddr=" + namesrvAddr + ", clientIP=" + clientIP + ", instanceName=" + instanceName
                 + ", clientCallbackExecutorThreads=" + clientCallbackExecutorThreads + ", pollNameServerInteval=" + pollNameServerInteval
                 + ", heartbeatBrokerInterval=" + heartbeatBrokerInterval + ", persistConsumerOffsetInterval="
-                + persistConsumerOffsetInterval + ", unitMode=" + unitMode + ", unitName=" + unitName + "]";
+                + persistConsumerOffsetInterval + ", unitMode=" + unitMode + ", unitName=" + unitName
+                + ", routeChangeNotifyEnable=" + routeChangeNotifyEnable + "]";
     }
 }
@@ -30,7 +30,9 @@ import com.alibaba.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import com.alibaba.rocketmq.common.protocol.body.ConsumerRunningInfo;
 import com.alibaba.rocketmq.common.protocol.body.GetConsumerStatusBody;
 import com.alibaba.rocketmq.common.protocol.body.ResetOffsetBody;
+import com.alibaba.rocketmq.common.protocol.body.TopicList;
 import com.alibaba.rocketmq.common.protocol.header.*;
+import com.alibaba.rocketmq.common.protocol.header.namesrv.NotifyTopicRouteChangedRequestHeader;
 import com.alibaba.rocketmq.remoting.common.RemotingHelper;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
 import com.alibaba.rocketmq.remoting.netty.NettyRequestProcessor;
@@ -73,6 +75,8 @@ public class ClientRemotingProcessor implements NettyRequestProcessor {
 
         case RequestCode.CONSUME_MESSAGE_DIRECTLY:
             return this.consumeMessageDirectly(ctx, request);
+        case RequestCode.NOTIFY_TOPIC_ROUTE_CHANGED:
+            return this.notifyTopicRouteChanged(ctx, request);
         default:
             break;
         }
@@ -159,6 +163,26 @@ public class ClientRemotingProcessor implements NettyRequestProcessor {
     }
 
 
+    public RemotingCommand notifyTopicRouteChanged(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
+        try {
+            final NotifyTopicRouteChangedRequestHeader requestHeader =
+                    (NotifyTopicRouteChangedRequestHeader) request.decodeCommandCustomHeader(NotifyTopicRouteChangedRequestHeader.class);
+            if (request.getBody() != null) {
+                TopicList topicList = TopicList.decode(request.getBody(), TopicList.class);
+                log.info("receive name server's notification[{}], route version {}, the routes of {} changed",//
+                    RemotingHelper.parseChannelRemoteAddr(ctx.channel()),//
+                    requestHeader.getRouteVersion(),//
+                    topicList.getTopicList());
+                this.mqClientFactory.onTopicRouteChanged(topicList.getTopicList());
+            }
+        }
+        catch (Exception e) {
+            log.error("notifyTopicRouteChanged exception", RemotingHelper.exceptionSimpleDesc(e));
+        }
+        return null;
+    }
+
+
     public RemotingCommand notifyConsumerIdsChanged(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
         try {
             final NotifyConsumerIdsChangedRequestHeader requestHeader =
@@ -33,6 +33,7 @@ import com.alibaba.rocketmq.common.UtilAll;
 import com.alibaba.rocketmq.common.admin.ConsumeStats;
 import com.alibaba.rocketmq.common.admin.TopicStatsTable;
 import com.alibaba.rocketmq.common.message.Message;
+import com.alibaba.rocketmq.common.message.MessageBatch;
 import com.alibaba.rocketmq.common.message.MessageDecoder;
 import com.alibaba.rocketmq.common.message.MessageExt;
 import com.alibaba.rocketmq.common.message.MessageQueue;
@@ -97,6 +98,8 @@ public class MQClientAPIImpl {
         this.remotingClient.registerProcessor(RequestCode.GET_CONSUMER_RUNNING_INFO, this.clientRemotingProcessor, null);
 
         this.remotingClient.registerProcessor(RequestCode.CONSUME_MESSAGE_DIRECTLY, this.clientRemotingProcessor, null);
+
+        this.remotingClient.registerProcessor(RequestCode.NOTIFY_TOPIC_ROUTE_CHANGED, this.clientRemotingProcessor, null);
     }
 
 
@@ -215,7 +218,11 @@ public class MQClientAPIImpl {
             final SendCallback sendCallback// 7
     ) throws RemotingException, MQBrokerException, InterruptedException {
         RemotingCommand request = null;
-        if (sendSmartMsg) {
+        if (msg instanceof MessageBatch) {
+            SendMessageRequestHeaderV2 requestHeaderV2 = SendMessageRequestHeaderV2.createSendMessageRequestHeaderV2(requestHeader);
+            request = RemotingCommand.createRequestCommand(RequestCode.SEND_BATCH_MESSAGE, requestHeaderV2);
+        }
+        else if (sendSmartMsg) {
             SendMessageRequestHeaderV2 requestHeaderV2 = SendMessageRequestHeaderV2.createSendMessageRequestHeaderV2(requestHeader);
             request = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE_V2, requestHeaderV2);
         }
@@ -336,6 +343,19 @@ public class MQClientAPIImpl {
 
             SendResult sendResult = new SendResult(sendStatus, responseHeader.getMsgId(), messageQueue, responseHeader.getQueueOffset());
             sendResult.setTransactionId(responseHeader.getTransactionId());
+            if (msg instanceof MessageBatch) {
+                // The batch is stored contiguously, the broker returns the
+                // first queue offset and all the msgIds joined by comma
+                String[] msgIds = responseHeader.getMsgId().split(",");
+                List<String> msgIdList = new ArrayList<String>(msgIds.length);
+                List<Long> queueOffsetList = new ArrayList<Long>(msgIds.length);
+                for (int i = 0; i < msgIds.length; i++) {
+                    msgIdList.add(msgIds[i]);
+                    queueOffsetList.add(responseHeader.getQueueOffset() + i);
+                }
+                sendResult.setMsgIdList(msgIdList);
+                sendResult.setQueueOffsetList(queueOffsetList);
+            }
             return sendResult;
         }
         default:
@@ -1000,8 +1020,22 @@ public class MQClientAPIImpl {
 
     public TopicRouteData getTopicRouteInfoFromNameServer(final String topic, final long timeoutMillis) throws RemotingException,
             MQClientException, InterruptedException {
+        return this.getTopicRouteInfoFromNameServer(topic, timeoutMillis, false);
+    }
+
+
+    /**
+     * @param subscribe
+     *            have the name server notify this client when the route of
+     *            the topic changes
+     */
+    public TopicRouteData getTopicRouteInfoFromNameServer(final String topic, final long timeoutMillis,
+            final boolean subscribe) throws RemotingException, MQClientException, InterruptedException {
         GetRouteInfoRequestHeader requestHeader = new GetRouteInfoRequestHeader();
         requestHeader.setTopic(topic);
+        if (subscribe) {
+            requestHeader.setSubscribe(true);
+        }
 
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINTO_BY_TOPIC, requestHeader);
 
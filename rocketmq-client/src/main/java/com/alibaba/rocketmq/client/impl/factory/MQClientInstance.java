@@ -548,7 +548,9 @@ public class MQClientInstance {
                         }
                     }
                     else {
-                        topicRouteData = this.mQClientAPIImpl.getTopicRouteInfoFromNameServer(topic, 1000 * 3);
+                        topicRouteData =
+                                this.mQClientAPIImpl.getTopicRouteInfoFromNameServer(topic, 1000 * 3,
+                                    this.clientConfig.isRouteChangeNotifyEnable());
                     }
                     if (topicRouteData != null) {
                         TopicRouteData old = this.topicRouteTable.get(topic);
@@ -623,6 +625,29 @@ public class MQClientInstance {
     }
 
 
+    /**
+     * Called when a name server pushed route changes, the routes are queried
+     * in the scheduled thread that also polls them
+     */
+    public void onTopicRouteChanged(final Set<String> topics) {
+        try {
+            this.scheduledExecutorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (String topic : topics) {
+                        if (MQClientInstance.this.topicRouteTable.containsKey(topic)) {
+                            MQClientInstance.this.updateTopicRouteInfoFromNameServer(topic);
+                        }
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            log.warn("update changed topic routes rejected, {}", e.getMessage());
+        }
+    }
+
+
     private boolean topicRouteDataIsChange(TopicRouteData olddata, TopicRouteData nowdata) {
         if (olddata == null || nowdata == null)
             return true;
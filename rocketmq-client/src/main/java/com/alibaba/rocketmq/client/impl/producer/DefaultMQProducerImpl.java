@@ -27,6 +27,7 @@ import com.alibaba.rocketmq.client.hook.SendMessageHook;
 import com.alibaba.rocketmq.client.impl.CommunicationMode;
 import com.alibaba.rocketmq.client.impl.MQClientManager;
 import com.alibaba.rocketmq.client.impl.factory.MQClientInstance;
+import com.alibaba.rocketmq.client.latency.MQFaultStrategy;
 import com.alibaba.rocketmq.client.log.ClientLogger;
 import com.alibaba.rocketmq.client.producer.*;
 import com.alibaba.rocketmq.common.MixAll;
@@ -66,6 +67,7 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     private final ArrayList<SendMessageHook> sendMessageHookList = new ArrayList<SendMessageHook>();
     private ArrayList<CheckForbiddenHook> checkForbiddenHookList = new ArrayList<CheckForbiddenHook>();
     private final RPCHook rpcHook;
+    private final MQFaultStrategy mqFaultStrategy = new MQFaultStrategy();
 
 
     public DefaultMQProducerImpl(final DefaultMQProducer defaultMQProducer, RPCHook rpcHook) {
@@ -491,13 +493,19 @@ public class DefaultMQProducerImpl implements MQProducerInner {
             String[] brokersSent = new String[timesTotal];
             for (; times < timesTotal && (endTimestamp - beginTimestamp) < maxTimeout; times++) {
                 String lastBrokerName = null == mq ? null : mq.getBrokerName();
-                MessageQueue tmpmq = topicPublishInfo.selectOneMessageQueue(lastBrokerName);
+                MessageQueue tmpmq = this.mqFaultStrategy.selectOneMessageQueue(topicPublishInfo, lastBrokerName);
                 if (tmpmq != null) {
                     mq = tmpmq;
                     brokersSent[times] = mq.getBrokerName();
+                    long beginTimestampPrev = System.currentTimeMillis();
                     try {
                         sendResult = this.sendKernelImpl(msg, mq, communicationMode, sendCallback, timeout);
                         endTimestamp = System.currentTimeMillis();
+                        // Async and oneway sends return before the broker answers
+                        if (CommunicationMode.SYNC == communicationMode) {
+                            this.mqFaultStrategy.updateFaultItem(mq.getBrokerName(), endTimestamp
+                                    - beginTimestampPrev, false);
+                        }
                         switch (communicationMode) {
                         case ASYNC:
                             return null;
@@ -520,6 +528,8 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                         log.warn(msg.toString());
                         exception = e;
                         endTimestamp = System.currentTimeMillis();
+                        this.mqFaultStrategy.updateFaultItem(mq.getBrokerName(), endTimestamp - beginTimestampPrev,
+                            true);
                         continue;
                     }
                     catch (MQClientException e) {
@@ -527,6 +537,8 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                         log.warn(msg.toString());
                         exception = e;
                         endTimestamp = System.currentTimeMillis();
+                        this.mqFaultStrategy.updateFaultItem(mq.getBrokerName(), endTimestamp - beginTimestampPrev,
+                            true);
                         continue;
                     }
                     catch (MQBrokerException e) {
@@ -541,6 +553,8 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                         case ResponseCode.NO_PERMISSION:
                         case ResponseCode.NO_BUYER_ID:
                         case ResponseCode.NOT_IN_CURRENT_UNIT:
+                            this.mqFaultStrategy.updateFaultItem(mq.getBrokerName(), endTimestamp
+                                    - beginTimestampPrev, true);
                             continue;
                         default:
                             if (sendResult != null) {
@@ -627,7 +641,8 @@ public class DefaultMQProducerImpl implements MQProducerInner {
             byte[] prevBody = msg.getBody();
             try {
                 int sysFlag = 0;
-                if (this.tryToCompressMessage(msg)) {
+                // Bodies inside a batch are encoded already, never compress them
+                if (!(msg instanceof MessageBatch) && this.tryToCompressMessage(msg)) {
                     sysFlag |= MessageSysFlag.CompressedFlag;
                 }
 
@@ -1035,6 +1050,42 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     }
 
 
+    /**
+     * BATCH -------------------------------------------------------
+     */
+    public SendResult send(Collection<Message> msgs) throws MQClientException, RemotingException,
+            MQBrokerException, InterruptedException {
+        return this.send(msgs, this.defaultMQProducer.getSendMsgTimeout());
+    }
+
+
+    public SendResult send(Collection<Message> msgs, long timeout) throws MQClientException,
+            RemotingException, MQBrokerException, InterruptedException {
+        return this.sendDefaultImpl(this.batch(msgs), CommunicationMode.SYNC, null, timeout);
+    }
+
+
+    private MessageBatch batch(Collection<Message> msgs) throws MQClientException {
+        if (null == msgs || msgs.isEmpty()) {
+            throw new MQClientException("the messages to batch is null or empty", null);
+        }
+
+        MessageBatch msgBatch;
+        try {
+            msgBatch = MessageBatch.generateFromList(msgs);
+        }
+        catch (UnsupportedOperationException e) {
+            throw new MQClientException(e.getMessage(), e);
+        }
+
+        for (Message message : msgBatch) {
+            Validators.checkMessage(message, this.defaultMQProducer);
+        }
+        msgBatch.setBody(msgBatch.encode());
+        return msgBatch;
+    }
+
+
     public ConcurrentHashMap<String, TopicPublishInfo> getTopicPublishInfoTable() {
         return topicPublishInfoTable;
     }
@@ -1063,4 +1114,9 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     public void setServiceState(ServiceState serviceState) {
         this.serviceState = serviceState;
     }
+
+
+    public MQFaultStrategy getMqFaultStrategy() {
+        return mqFaultStrategy;
+    }
 }
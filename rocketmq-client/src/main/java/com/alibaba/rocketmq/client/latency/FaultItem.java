@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.client.latency;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Send latency and failures of one broker
+ *
+ * @author shijia.wxr
+ */
+public class FaultItem {
+    private final String brokerName;
+    private volatile long currentLatency = 0;
+    // Smoothed over about the last 8 sends
+    private volatile long avgLatency = -1;
+    // Isolated until this time
+    private volatile long startTimestamp = 0;
+    private volatile long updateTimestamp = 0;
+    private final AtomicLong sendTimes = new AtomicLong(0);
+    private final AtomicLong failedTimes = new AtomicLong(0);
+    private final AtomicLong isolatedTimes = new AtomicLong(0);
+
+
+    public FaultItem(final String brokerName) {
+        this.brokerName = brokerName;
+    }
+
+
+    public void update(final long currentLatency, final long notAvailableDuration, final boolean failed) {
+        this.currentLatency = currentLatency;
+        long avgLatency = this.avgLatency;
+        this.avgLatency = avgLatency < 0 ? currentLatency : avgLatency + (currentLatency - avgLatency) / 8;
+        this.updateTimestamp = System.currentTimeMillis();
+        this.startTimestamp = this.updateTimestamp + notAvailableDuration;
+        this.sendTimes.incrementAndGet();
+        if (failed) {
+            this.failedTimes.incrementAndGet();
+        }
+        if (notAvailableDuration > 0) {
+            this.isolatedTimes.incrementAndGet();
+        }
+    }
+
+
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= this.startTimestamp;
+    }
+
+
+    public String getBrokerName() {
+        return brokerName;
+    }
+
+
+    public long getCurrentLatency() {
+        return currentLatency;
+    }
+
+
+    public long getAvgLatency() {
+        return avgLatency;
+    }
+
+
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+
+    public long getUpdateTimestamp() {
+        return updateTimestamp;
+    }
+
+
+    public long getSendTimes() {
+        return sendTimes.get();
+    }
+
+
+    public long getFailedTimes() {
+        return failedTimes.get();
+    }
+
+
+    public long getIsolatedTimes() {
+        return isolatedTimes.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return "FaultItem [brokerName=" + brokerName + ", currentLatency=" + currentLatency + ", avgLatency="
+                + avgLatency + ", startTimestamp=" + startTimestamp + ", sendTimes=" + sendTimes + ", failedTimes="
+                + failedTimes + ", isolatedTimes=" + isolatedTimes + "]";
+    }
+}
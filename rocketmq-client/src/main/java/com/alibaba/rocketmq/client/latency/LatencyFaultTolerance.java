@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.client.latency;
+
+import java.util.Collection;
+
+
+/**
+ * Keeps the send latency and failures of each broker, and isolates the slow
+ * or failing ones for a while
+ *
+ * @author shijia.wxr
+ */
+public interface LatencyFaultTolerance {
+    /**
+     * @param notAvailableDuration
+     *            how long the broker is isolated from now, 0 for not at all
+     */
+    void updateFaultItem(final String brokerName, final long currentLatency, final long notAvailableDuration,
+            final boolean failed);
+
+
+    boolean isAvailable(final String brokerName);
+
+
+    /**
+     * @return the smoothed send latency of the broker, -1 if not known or
+     *         not measured for a while
+     */
+    long getAvgLatency(final String brokerName);
+
+
+    void remove(final String brokerName);
+
+
+    /**
+     * @return the broker to send to when all are isolated, null if none known
+     */
+    String pickOneAtLeast(final String excludeBrokerName);
+
+
+    Collection<FaultItem> getFaultItems();
+}
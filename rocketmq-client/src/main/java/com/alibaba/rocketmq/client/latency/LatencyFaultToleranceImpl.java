@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.client.latency;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * @author shijia.wxr
+ */
+public class LatencyFaultToleranceImpl implements LatencyFaultTolerance {
+    private final ConcurrentHashMap<String/* brokerName */, FaultItem> faultItemTable =
+            new ConcurrentHashMap<String, FaultItem>(16);
+    // A latency not measured for this long is not known any more
+    private volatile long latencyExpiredTime = 1000 * 60;
+
+
+    @Override
+    public void updateFaultItem(final String brokerName, final long currentLatency, final long notAvailableDuration,
+            final boolean failed) {
+        FaultItem faultItem = this.faultItemTable.get(brokerName);
+        if (null == faultItem) {
+            faultItem = new FaultItem(brokerName);
+            FaultItem prev = this.faultItemTable.putIfAbsent(brokerName, faultItem);
+            if (prev != null) {
+                faultItem = prev;
+            }
+        }
+        faultItem.update(currentLatency, notAvailableDuration, failed);
+    }
+
+
+    @Override
+    public boolean isAvailable(final String brokerName) {
+        final FaultItem faultItem = this.faultItemTable.get(brokerName);
+        return null == faultItem || faultItem.isAvailable();
+    }
+
+
+    @Override
+    public long getAvgLatency(final String brokerName) {
+        final FaultItem faultItem = this.faultItemTable.get(brokerName);
+        if (null == faultItem
+                || System.currentTimeMillis() - faultItem.getUpdateTimestamp() > this.latencyExpiredTime) {
+            return -1;
+        }
+        return faultItem.getAvgLatency();
+    }
+
+
+    @Override
+    public void remove(final String brokerName) {
+        this.faultItemTable.remove(brokerName);
+    }
+
+
+    @Override
+    public String pickOneAtLeast(final String excludeBrokerName) {
+        // The one isolated for the shortest time left
+        FaultItem best = null;
+        for (FaultItem faultItem : this.faultItemTable.values()) {
+            if (faultItem.getBrokerName().equals(excludeBrokerName)) {
+                continue;
+            }
+            if (null == best || faultItem.getStartTimestamp() < best.getStartTimestamp()) {
+                best = faultItem;
+            }
+        }
+
+        return null == best ? null : best.getBrokerName();
+    }
+
+
+    @Override
+    public Collection<FaultItem> getFaultItems() {
+        return this.faultItemTable.values();
+    }
+
+
+    public long getLatencyExpiredTime() {
+        return latencyExpiredTime;
+    }
+
+
+    public void setLatencyExpiredTime(long latencyExpiredTime) {
+        this.latencyExpiredTime = latencyExpiredTime;
+    }
+
+
+    @Override
+    public String toString() {
+        return "LatencyFaultToleranceImpl [faultItemTable=" + faultItemTable + "]";
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.client.latency;
+
+import com.alibaba.rocketmq.client.impl.producer.TopicPublishInfo;
+import com.alibaba.rocketmq.common.message.MessageQueue;
+
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Chooses the queue to send to from the send latency of the brokers, a broker
+ * is isolated for longer the slower it answered, and of two queues on
+ * different brokers the much faster broker is chosen more often
+ *
+ * @author shijia.wxr
+ */
+public class MQFaultStrategy {
+    // A broker is only preferred if it is twice as fast and this much faster
+    private static final long LatencyTolerance = 50;
+    private final Random random = new Random();
+    // A failed send counts as at least this slow
+    private static final long FailedLatency = 1000;
+    private volatile LatencyFaultTolerance latencyFaultTolerance = new LatencyFaultToleranceImpl();
+    private volatile boolean sendLatencyFaultEnable = false;
+    private long[] latencyMax = { 50L, 100L, 550L, 1000L, 2000L, 3000L, 15000L };
+    private long[] notAvailableDuration = { 0L, 0L, 30000L, 60000L, 120000L, 180000L, 600000L };
+
+
+    public MessageQueue selectOneMessageQueue(final TopicPublishInfo tpInfo, final String lastBrokerName) {
+        if (!this.sendLatencyFaultEnable) {
+            return tpInfo.selectOneMessageQueue(lastBrokerName);
+        }
+
+        final List<MessageQueue> messageQueueList = tpInfo.getMessageQueueList();
+        final int size = messageQueueList.size();
+        int index = tpInfo.getSendWhichQueue().getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            int pos = Math.abs(index++) % size;
+            MessageQueue mq = messageQueueList.get(pos);
+            if (!this.isSelectable(mq, lastBrokerName)) {
+                continue;
+            }
+
+            // Half the list away is usually another broker
+            MessageQueue other = messageQueueList.get((pos + size / 2) % size);
+            if (!other.getBrokerName().equals(mq.getBrokerName()) && this.isSelectable(other, lastBrokerName)
+                    && this.isPreferred(other.getBrokerName(), mq.getBrokerName())) {
+                return other;
+            }
+            return mq;
+        }
+
+        // All the brokers are isolated, try the one that recovers first
+        String brokerName = this.latencyFaultTolerance.pickOneAtLeast(lastBrokerName);
+        if (brokerName != null) {
+            for (int i = 0; i < size; i++) {
+                MessageQueue mq = messageQueueList.get(Math.abs(index++) % size);
+                if (mq.getBrokerName().equals(brokerName)) {
+                    return mq;
+                }
+            }
+            this.latencyFaultTolerance.remove(brokerName);
+        }
+
+        return tpInfo.selectOneMessageQueue(lastBrokerName);
+    }
+
+
+    private boolean isSelectable(final MessageQueue mq, final String lastBrokerName) {
+        return !mq.getBrokerName().equals(lastBrokerName)
+                && this.latencyFaultTolerance.isAvailable(mq.getBrokerName());
+    }
+
+
+    /**
+     * Of two brokers the much faster one gets the sends in inverse proportion
+     * to the latencies, so the slower one keeps being measured
+     */
+    private boolean isPreferred(final String brokerName, final String thanBrokerName) {
+        long latency = this.latencyFaultTolerance.getAvgLatency(brokerName);
+        long thanLatency = this.latencyFaultTolerance.getAvgLatency(thanBrokerName);
+        if (latency < 0 || thanLatency - latency <= Math.max(latency, LatencyTolerance)) {
+            return false;
+        }
+
+        // Half the sends land on the slower broker, keep 2 * fast / (fast + slow) of them
+        long fast = Math.max(latency, LatencyTolerance);
+        return this.random.nextInt((int) Math.min(fast + thanLatency, Integer.MAX_VALUE)) >= 2 * fast;
+    }
+
+
+    public void updateFaultItem(final String brokerName, final long currentLatency, final boolean failed) {
+        if (this.sendLatencyFaultEnable) {
+            long latency = failed ? Math.max(currentLatency, FailedLatency) : currentLatency;
+            this.latencyFaultTolerance.updateFaultItem(brokerName, latency,
+                this.computeNotAvailableDuration(latency), failed);
+        }
+    }
+
+
+    private long computeNotAvailableDuration(final long currentLatency) {
+        for (int i = this.latencyMax.length - 1; i >= 0; i--) {
+            if (currentLatency >= this.latencyMax[i]) {
+                return this.notAvailableDuration[i];
+            }
+        }
+
+        return 0;
+    }
+
+
+    public LatencyFaultTolerance getLatencyFaultTolerance() {
+        return latencyFaultTolerance;
+    }
+
+
+    public void setLatencyFaultTolerance(LatencyFaultTolerance latencyFaultTolerance) {
+        this.latencyFaultTolerance = latencyFaultTolerance;
+    }
+
+
+    public boolean isSendLatencyFaultEnable() {
+        return sendLatencyFaultEnable;
+    }
+
+
+    public void setSendLatencyFaultEnable(boolean sendLatencyFaultEnable) {
+        this.sendLatencyFaultEnable = sendLatencyFaultEnable;
+    }
+
+
+    public long[] getLatencyMax() {
+        return latencyMax;
+    }
+
+
+    public void setLatencyMax(long[] latencyMax) {
+        this.latencyMax = latencyMax;
+    }
+
+
+    public long[] getNotAvailableDuration() {
+        return notAvailableDuration;
+    }
+
+
+    public void setNotAvailableDuration(long[] notAvailableDuration) {
+        this.notAvailableDuration = notAvailableDuration;
+    }
+}
@@ -21,6 +21,8 @@ import com.alibaba.rocketmq.client.QueryResult;
 import com.alibaba.rocketmq.client.exception.MQBrokerException;
 import com.alibaba.rocketmq.client.exception.MQClientException;
 import com.alibaba.rocketmq.client.impl.producer.DefaultMQProducerImpl;
+import com.alibaba.rocketmq.client.latency.FaultItem;
+import com.alibaba.rocketmq.client.latency.LatencyFaultTolerance;
 import com.alibaba.rocketmq.common.MixAll;
 import com.alibaba.rocketmq.common.message.Message;
 import com.alibaba.rocketmq.common.message.MessageExt;
@@ -28,6 +30,7 @@ import com.alibaba.rocketmq.common.message.MessageQueue;
 import com.alibaba.rocketmq.remoting.RPCHook;
 import com.alibaba.rocketmq.remoting.exception.RemotingException;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -196,6 +199,20 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
     }
 
 
+    @Override
+    public SendResult send(Collection<Message> msgs) throws MQClientException, RemotingException, MQBrokerException,
+            InterruptedException {
+        return this.defaultMQProducerImpl.send(msgs);
+    }
+
+
+    @Override
+    public SendResult send(Collection<Message> msgs, long timeout) throws MQClientException, RemotingException,
+            MQBrokerException, InterruptedException {
+        return this.defaultMQProducerImpl.send(msgs, timeout);
+    }
+
+
     @Override
     public TransactionSendResult sendMessageInTransaction(Message msg, LocalTransactionExecuter tranExecuter, final Object arg)
             throws MQClientException {
@@ -307,6 +324,57 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
     }
 
 
+    public boolean isSendLatencyFaultEnable() {
+        return this.defaultMQProducerImpl.getMqFaultStrategy().isSendLatencyFaultEnable();
+    }
+
+
+    /**
+     * Isolate brokers that answer slowly or fail, and prefer the faster ones
+     */
+    public void setSendLatencyFaultEnable(boolean sendLatencyFaultEnable) {
+        this.defaultMQProducerImpl.getMqFaultStrategy().setSendLatencyFaultEnable(sendLatencyFaultEnable);
+    }
+
+
+    public long[] getLatencyMax() {
+        return this.defaultMQProducerImpl.getMqFaultStrategy().getLatencyMax();
+    }
+
+
+    /**
+     * @param latencyMax
+     *            ascending send latencies, a broker as slow as one of them is
+     *            isolated for the notAvailableDuration at the same index
+     */
+    public void setLatencyMax(long[] latencyMax) {
+        this.defaultMQProducerImpl.getMqFaultStrategy().setLatencyMax(latencyMax);
+    }
+
+
+    public long[] getNotAvailableDuration() {
+        return this.defaultMQProducerImpl.getMqFaultStrategy().getNotAvailableDuration();
+    }
+
+
+    public void setNotAvailableDuration(long[] notAvailableDuration) {
+        this.defaultMQProducerImpl.getMqFaultStrategy().setNotAvailableDuration(notAvailableDuration);
+    }
+
+
+    public void setLatencyFaultTolerance(LatencyFaultTolerance latencyFaultTolerance) {
+        this.defaultMQProducerImpl.getMqFaultStrategy().setLatencyFaultTolerance(latencyFaultTolerance);
+    }
+
+
+    /**
+     * @return send latency, failures and isolations of each broker sent to
+     */
+    public Collection<FaultItem> getBrokerFaultItems() {
+        return this.defaultMQProducerImpl.getMqFaultStrategy().getLatencyFaultTolerance().getFaultItems();
+    }
+
+
     public int getMaxMessageSize() {
         return maxMessageSize;
     }
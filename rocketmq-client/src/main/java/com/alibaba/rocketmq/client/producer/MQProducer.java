@@ -23,6 +23,7 @@ import com.alibaba.rocketmq.common.message.Message;
 import com.alibaba.rocketmq.common.message.MessageQueue;
 import com.alibaba.rocketmq.remoting.exception.RemotingException;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -103,4 +104,16 @@ public interface MQProducer extends MQAdmin {
 
      TransactionSendResult sendMessageInTransaction(final Message msg,
             final LocalTransactionExecuter tranExecuter, final Object arg) throws MQClientException;
+
+
+     /**
+      * Send messages of the same topic in one request, they are stored into
+      * the same queue in order and flushed together
+      */
+     SendResult send(final Collection<Message> msgs) throws MQClientException, RemotingException,
+            MQBrokerException, InterruptedException;
+
+
+     SendResult send(final Collection<Message> msgs, final long timeout) throws MQClientException,
+            RemotingException, MQBrokerException, InterruptedException;
 }
@@ -18,6 +18,8 @@ package com.alibaba.rocketmq.client.producer;
 
 import com.alibaba.rocketmq.common.message.MessageQueue;
 
+import java.util.List;
+
 
 /**
  * @author shijia.wxr
@@ -28,6 +30,9 @@ public class SendResult {
     private MessageQueue messageQueue;
     private long queueOffset;
     private String transactionId;
+    // Batch send, one entry per message in the order they were sent
+    private List<String> msgIdList;
+    private List<Long> queueOffsetList;
 
 
     public SendResult() {
@@ -92,6 +97,26 @@ public class SendResult {
     }
 
 
+    public List<String> getMsgIdList() {
+        return msgIdList;
+    }
+
+
+    public void setMsgIdList(List<String> msgIdList) {
+        this.msgIdList = msgIdList;
+    }
+
+
+    public List<Long> getQueueOffsetList() {
+        return queueOffsetList;
+    }
+
+
+    public void setQueueOffsetList(List<Long> queueOffsetList) {
+        this.queueOffsetList = queueOffsetList;
+    }
+
+
     @Override
     public String toString() {
         return "SendResult [sendStatus=" + sendStatus + ", msgId=" + msgId + ", messageQueue=" + messageQueue
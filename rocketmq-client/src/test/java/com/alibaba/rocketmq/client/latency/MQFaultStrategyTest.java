@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.client.latency;
+
+import com.alibaba.rocketmq.client.impl.producer.TopicPublishInfo;
+import com.alibaba.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * @author shijia.wxr
+ */
+public class MQFaultStrategyTest {
+    private TopicPublishInfo topicPublishInfo;
+    private MQFaultStrategy mqFaultStrategy;
+
+
+    @Before
+    public void init() {
+        List<MessageQueue> messageQueueList = new ArrayList<MessageQueue>();
+        for (String brokerName : new String[] { "broker-a", "broker-b" }) {
+            for (int i = 0; i < 4; i++) {
+                messageQueueList.add(new MessageQueue("TopicTest", brokerName, i));
+            }
+        }
+        this.topicPublishInfo = new TopicPublishInfo();
+        this.topicPublishInfo.setMessageQueueList(messageQueueList);
+        this.mqFaultStrategy = new MQFaultStrategy();
+        this.mqFaultStrategy.setSendLatencyFaultEnable(true);
+    }
+
+
+    private int countSelected(final String brokerName, final int times) {
+        int count = 0;
+        for (int i = 0; i < times; i++) {
+            if (this.mqFaultStrategy.selectOneMessageQueue(this.topicPublishInfo, null).getBrokerName()
+                .equals(brokerName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    @Test
+    public void test_round_robin_when_equal() {
+        this.mqFaultStrategy.updateFaultItem("broker-a", 10, false);
+        this.mqFaultStrategy.updateFaultItem("broker-b", 12, false);
+        Assert.assertEquals(40, this.countSelected("broker-a", 80));
+    }
+
+
+    @Test
+    public void test_isolate_slow_broker() {
+        this.mqFaultStrategy.updateFaultItem("broker-a", 10, false);
+        this.mqFaultStrategy.updateFaultItem("broker-b", 2500, false);
+        Assert.assertFalse(this.mqFaultStrategy.getLatencyFaultTolerance().isAvailable("broker-b"));
+        Assert.assertEquals(100, this.countSelected("broker-a", 100));
+
+        // Never the broker that just failed, even if it is the only one left
+        this.mqFaultStrategy.updateFaultItem("broker-a", 10, true);
+        MessageQueue mq = this.mqFaultStrategy.selectOneMessageQueue(this.topicPublishInfo, "broker-a");
+        Assert.assertEquals("broker-b", mq.getBrokerName());
+
+        FaultItem faultItem = null;
+        for (FaultItem item : this.mqFaultStrategy.getLatencyFaultTolerance().getFaultItems()) {
+            if (item.getBrokerName().equals("broker-a")) {
+                faultItem = item;
+            }
+        }
+        Assert.assertNotNull(faultItem);
+        Assert.assertEquals(2, faultItem.getSendTimes());
+        Assert.assertEquals(1, faultItem.getFailedTimes());
+        Assert.assertEquals(1, faultItem.getIsolatedTimes());
+        // A failed send counts as at least 1s slow
+        Assert.assertEquals(1000, faultItem.getCurrentLatency());
+        Assert.assertEquals(10 + (1000 - 10) / 8, faultItem.getAvgLatency());
+    }
+
+
+    @Test
+    public void test_prefer_faster_broker() {
+        this.mqFaultStrategy.updateFaultItem("broker-a", 20, false);
+        this.mqFaultStrategy.updateFaultItem("broker-b", 90, false);
+        Assert.assertTrue(this.mqFaultStrategy.getLatencyFaultTolerance().isAvailable("broker-b"));
+
+        // Weighted 90 to 50 by the latencies, the slower broker still gets sends
+        int count = this.countSelected("broker-b", 1000);
+        Assert.assertTrue(String.valueOf(count), count > 250 && count < 450);
+    }
+
+
+    @Test
+    public void test_latency_expired() throws InterruptedException {
+        this.mqFaultStrategy.updateFaultItem("broker-a", 20, false);
+        this.mqFaultStrategy.updateFaultItem("broker-b", 200, false);
+        Assert.assertEquals(200, this.mqFaultStrategy.getLatencyFaultTolerance().getAvgLatency("broker-b"));
+
+        ((LatencyFaultToleranceImpl) this.mqFaultStrategy.getLatencyFaultTolerance()).setLatencyExpiredTime(0);
+        Thread.sleep(10);
+        Assert.assertEquals(-1, this.mqFaultStrategy.getLatencyFaultTolerance().getAvgLatency("broker-b"));
+        Assert.assertEquals(40, this.countSelected("broker-a", 80));
+    }
+
+
+    @Test
+    public void test_disabled() {
+        this.mqFaultStrategy.setSendLatencyFaultEnable(false);
+        this.mqFaultStrategy.updateFaultItem("broker-b", 2500, false);
+        Assert.assertTrue(this.mqFaultStrategy.getLatencyFaultTolerance().isAvailable("broker-b"));
+        Assert.assertEquals(40, this.countSelected("broker-a", 80));
+    }
+}
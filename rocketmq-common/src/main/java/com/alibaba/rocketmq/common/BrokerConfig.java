@@ -81,6 +81,21 @@ public class BrokerConfig {
 
     private boolean transferMsgByHeap = false;
 
+    // Reply to sends from the store flush/transfer completion, no send thread waits
+    private boolean asyncPutMessageEnable = true;
+
+    // Pulls that read from disk run on their own bounded pool
+    private boolean coldPullIsolationEnable = true;
+    private int coldPullMessageThreadPoolNums = 8;
+    private int coldPullThreadPoolQueueCapacity = 10000;
+
+    // Consumer offsets are persisted by appending the changed ones to a journal
+    private boolean consumerOffsetJournalEnable = true;
+    // The journal is compacted above this and twice the size of the offsets
+    private long consumerOffsetJournalCompactSize = 1024 * 1024 * 16;
+    // Register only changed topics, and heartbeat when nothing changed
+    private boolean registerBrokerDeltaEnable = true;
+
 
     public boolean isTransferMsgByHeap() {
         return transferMsgByHeap;
@@ -375,4 +390,74 @@ public class BrokerConfig {
     public void setClientManageThreadPoolNums(int clientManageThreadPoolNums) {
         this.clientManageThreadPoolNums = clientManageThreadPoolNums;
     }
+
+
+    public boolean isAsyncPutMessageEnable() {
+        return asyncPutMessageEnable;
+    }
+
+
+    public void setAsyncPutMessageEnable(boolean asyncPutMessageEnable) {
+        this.asyncPutMessageEnable = asyncPutMessageEnable;
+    }
+
+
+    public boolean isColdPullIsolationEnable() {
+        return coldPullIsolationEnable;
+    }
+
+
+    public void setColdPullIsolationEnable(boolean coldPullIsolationEnable) {
+        this.coldPullIsolationEnable = coldPullIsolationEnable;
+    }
+
+
+    public int getColdPullMessageThreadPoolNums() {
+        return coldPullMessageThreadPoolNums;
+    }
+
+
+    public void setColdPullMessageThreadPoolNums(int coldPullMessageThreadPoolNums) {
+        this.coldPullMessageThreadPoolNums = coldPullMessageThreadPoolNums;
+    }
+
+
+    public int getColdPullThreadPoolQueueCapacity() {
+        return coldPullThreadPoolQueueCapacity;
+    }
+
+
+    public void setColdPullThreadPoolQueueCapacity(int coldPullThreadPoolQueueCapacity) {
+        this.coldPullThreadPoolQueueCapacity = coldPullThreadPoolQueueCapacity;
+    }
+
+
+    public boolean isConsumerOffsetJournalEnable() {
+        return consumerOffsetJournalEnable;
+    }
+
+
+    public void setConsumerOffsetJournalEnable(boolean consumerOffsetJournalEnable) {
+        this.consumerOffsetJournalEnable = consumerOffsetJournalEnable;
+    }
+
+
+    public long getConsumerOffsetJournalCompactSize() {
+        return consumerOffsetJournalCompactSize;
+    }
+
+
+    public void setConsumerOffsetJournalCompactSize(long consumerOffsetJournalCompactSize) {
+        this.consumerOffsetJournalCompactSize = consumerOffsetJournalCompactSize;
+    }
+
+
+    public boolean isRegisterBrokerDeltaEnable() {
+        return registerBrokerDeltaEnable;
+    }
+
+
+    public void setRegisterBrokerDeltaEnable(boolean registerBrokerDeltaEnable) {
+        this.registerBrokerDeltaEnable = registerBrokerDeltaEnable;
+    }
 }
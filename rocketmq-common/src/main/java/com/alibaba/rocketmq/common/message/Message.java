@@ -163,6 +163,27 @@ public class Message implements Serializable {
     }
 
 
+    /**
+     * @return the absolute delivery timestamp, 0 if not set
+     */
+    public long getDeliverTimeMs() {
+        String t = this.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        if (t != null) {
+            return Long.parseLong(t);
+        }
+
+        return 0;
+    }
+
+
+    /**
+     * Deliver the message at an arbitrary time instead of a delay level
+     */
+    public void setDeliverTimeMs(long timeMs) {
+        this.putProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS, String.valueOf(timeMs));
+    }
+
+
     public boolean isWaitStoreMsgOK() {
         String result = this.getProperty(MessageConst.PROPERTY_WAIT_STORE_MSG_OK);
         if (null == result)
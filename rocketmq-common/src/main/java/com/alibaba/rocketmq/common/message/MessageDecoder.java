@@ -340,6 +340,101 @@ public class MessageDecoder {
         return msgExts;
     }
 
+
+    /**
+     * Encode one message of a batch, the layout is<br>
+     * TOTALSIZE | MAGICCODE | BODYCRC | FLAG | BODY | PROPERTIES<br>
+     * queue id, born host and the like are shared by the whole batch and are
+     * carried by the request header
+     */
+    public static byte[] encodeMessage(Message message) {
+        byte[] body = message.getBody();
+        int bodyLen = body == null ? 0 : body.length;
+        String properties = messageProperties2String(message.getProperties());
+        byte[] propertiesBytes = properties.getBytes(CHARSET_UTF8);
+        // note properties length must not more than Short.MAX
+        short propertiesLength = (short) propertiesBytes.length;
+        int storeSize = 4 // 1 TOTALSIZE
+                + 4 // 2 MAGICCOD
+                + 4 // 3 BODYCRC
+                + 4 // 4 FLAG
+                + 4 + bodyLen // 5 BODY
+                + 2 + propertiesLength; // 6 PROPERTIES
+        ByteBuffer byteBuffer = ByteBuffer.allocate(storeSize);
+        // 1 TOTALSIZE
+        byteBuffer.putInt(storeSize);
+        // 2 MAGICCODE
+        byteBuffer.putInt(0);
+        // 3 BODYCRC, computed by the broker
+        byteBuffer.putInt(0);
+        // 4 FLAG
+        byteBuffer.putInt(message.getFlag());
+        // 5 BODY
+        byteBuffer.putInt(bodyLen);
+        if (bodyLen > 0) {
+            byteBuffer.put(body);
+        }
+        // 6 PROPERTIES
+        byteBuffer.putShort(propertiesLength);
+        byteBuffer.put(propertiesBytes);
+
+        return byteBuffer.array();
+    }
+
+
+    public static byte[] encodeMessages(List<Message> messages) {
+        List<byte[]> encodedMessages = new ArrayList<byte[]>(messages.size());
+        int allSize = 0;
+        for (Message message : messages) {
+            byte[] tmp = encodeMessage(message);
+            encodedMessages.add(tmp);
+            allSize += tmp.length;
+        }
+
+        byte[] allBytes = new byte[allSize];
+        int pos = 0;
+        for (byte[] bytes : encodedMessages) {
+            System.arraycopy(bytes, 0, allBytes, pos, bytes.length);
+            pos += bytes.length;
+        }
+        return allBytes;
+    }
+
+
+    public static Message decodeMessage(ByteBuffer byteBuffer) {
+        Message message = new Message();
+
+        // 1 TOTALSIZE
+        byteBuffer.getInt();
+        // 2 MAGICCODE
+        byteBuffer.getInt();
+        // 3 BODYCRC
+        byteBuffer.getInt();
+        // 4 FLAG
+        message.setFlag(byteBuffer.getInt());
+        // 5 BODY
+        int bodyLen = byteBuffer.getInt();
+        byte[] body = new byte[bodyLen];
+        byteBuffer.get(body);
+        message.setBody(body);
+        // 6 PROPERTIES
+        short propertiesLen = byteBuffer.getShort();
+        byte[] propertiesBytes = new byte[propertiesLen];
+        byteBuffer.get(propertiesBytes);
+        message.setProperties(string2messageProperties(new String(propertiesBytes, CHARSET_UTF8)));
+
+        return message;
+    }
+
+
+    public static List<Message> decodeMessages(ByteBuffer byteBuffer) {
+        List<Message> msgs = new ArrayList<Message>();
+        while (byteBuffer.hasRemaining()) {
+            msgs.add(decodeMessage(byteBuffer));
+        }
+        return msgs;
+    }
+
     public static final char NAME_VALUE_SEPARATOR = 1;
     public static final char PROPERTY_SEPARATOR = 2;
 
@@ -38,6 +38,9 @@ public class NamesrvConfig {
     private String kvConfigPath = System.getProperty("user.home") + File.separator + "namesrv" + File.separator + "kvConfig.json";
     private String productEnvName = "center";
     private boolean clusterTest = false;
+    // Route queries that hit the encoded route cache are answered in the
+    // Netty thread that decoded them, misses go to the remoting executor
+    private boolean routeQueryInNettyThread = true;
 
 
     public String getRocketmqHome() {
@@ -78,4 +81,14 @@ public class NamesrvConfig {
     public void setClusterTest(boolean clusterTest) {
         this.clusterTest = clusterTest;
     }
+
+
+    public boolean isRouteQueryInNettyThread() {
+        return routeQueryInNettyThread;
+    }
+
+
+    public void setRouteQueryInNettyThread(boolean routeQueryInNettyThread) {
+        this.routeQueryInNettyThread = routeQueryInNettyThread;
+    }
 }
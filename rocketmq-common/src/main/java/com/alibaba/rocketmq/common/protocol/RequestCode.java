@@ -55,6 +55,8 @@ public class RequestCode {
     public static final int UNREGISTER_BROKER = 104;
     public static final int GET_ROUTEINTO_BY_TOPIC = 105;
     public static final int GET_BROKER_CLUSTER_INFO = 106;
+    public static final int BROKER_HEARTBEAT = 107;
+    public static final int NOTIFY_TOPIC_ROUTE_CHANGED = 108;
     public static final int UPDATE_AND_CREATE_SUBSCRIPTIONGROUP = 200;
     public static final int GET_ALL_SUBSCRIPTIONGROUP_CONFIG = 201;
     public static final int GET_TOPIC_STATS_INFO = 202;
@@ -112,4 +114,6 @@ public class RequestCode {
 
     public static final int GET_BROKER_CONSUME_STATS = 317;
 
+    public static final int SEND_BATCH_MESSAGE = 320;
+
 }
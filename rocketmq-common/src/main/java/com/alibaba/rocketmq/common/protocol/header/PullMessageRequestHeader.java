@@ -24,12 +24,18 @@ import com.alibaba.rocketmq.remoting.CommandCustomHeader;
 import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
 import com.alibaba.rocketmq.remoting.annotation.CFNullable;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.FastCodesHeader;
+import com.alibaba.rocketmq.remoting.protocol.RocketMQSerializable;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+
+import java.util.HashMap;
 
 
 /**
  * @author shijia.wxr
  */
-public class PullMessageRequestHeader implements CommandCustomHeader {
+public class PullMessageRequestHeader implements CommandCustomHeader, FastCodesHeader {
     @CFNotNull
     private String consumerGroup;
     @CFNotNull
@@ -57,6 +63,36 @@ public class PullMessageRequestHeader implements CommandCustomHeader {
     }
 
 
+    @Override
+    public void encode(ByteBuf out, SerializeType type) {
+        RocketMQSerializable.writeKeyValue(out, type, "consumerGroup", this.consumerGroup);
+        RocketMQSerializable.writeKeyValue(out, type, "topic", this.topic);
+        RocketMQSerializable.writeKeyValue(out, type, "queueId", this.queueId);
+        RocketMQSerializable.writeKeyValue(out, type, "queueOffset", this.queueOffset);
+        RocketMQSerializable.writeKeyValue(out, type, "maxMsgNums", this.maxMsgNums);
+        RocketMQSerializable.writeKeyValue(out, type, "sysFlag", this.sysFlag);
+        RocketMQSerializable.writeKeyValue(out, type, "commitOffset", this.commitOffset);
+        RocketMQSerializable.writeKeyValue(out, type, "suspendTimeoutMillis", this.suspendTimeoutMillis);
+        RocketMQSerializable.writeKeyValue(out, type, "subscription", this.subscription);
+        RocketMQSerializable.writeKeyValue(out, type, "subVersion", this.subVersion);
+    }
+
+
+    @Override
+    public void decode(HashMap<String, String> fields) throws RemotingCommandException {
+        this.consumerGroup = fields.get("consumerGroup");
+        this.topic = fields.get("topic");
+        this.queueId = RocketMQSerializable.parseInteger(fields.get("queueId"));
+        this.queueOffset = RocketMQSerializable.parseLong(fields.get("queueOffset"));
+        this.maxMsgNums = RocketMQSerializable.parseInteger(fields.get("maxMsgNums"));
+        this.sysFlag = RocketMQSerializable.parseInteger(fields.get("sysFlag"));
+        this.commitOffset = RocketMQSerializable.parseLong(fields.get("commitOffset"));
+        this.suspendTimeoutMillis = RocketMQSerializable.parseLong(fields.get("suspendTimeoutMillis"));
+        this.subscription = fields.get("subscription");
+        this.subVersion = RocketMQSerializable.parseLong(fields.get("subVersion"));
+    }
+
+
     public String getConsumerGroup() {
         return consumerGroup;
     }
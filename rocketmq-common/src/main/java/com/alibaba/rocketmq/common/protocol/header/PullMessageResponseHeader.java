@@ -23,12 +23,18 @@ package com.alibaba.rocketmq.common.protocol.header;
 import com.alibaba.rocketmq.remoting.CommandCustomHeader;
 import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.FastCodesHeader;
+import com.alibaba.rocketmq.remoting.protocol.RocketMQSerializable;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+
+import java.util.HashMap;
 
 
 /**
  * @author shijia.wxr
  */
-public class PullMessageResponseHeader implements CommandCustomHeader {
+public class PullMessageResponseHeader implements CommandCustomHeader, FastCodesHeader {
     @CFNotNull
     private Long suggestWhichBrokerId;
     @CFNotNull
@@ -44,6 +50,24 @@ public class PullMessageResponseHeader implements CommandCustomHeader {
     }
 
 
+    @Override
+    public void encode(ByteBuf out, SerializeType type) {
+        RocketMQSerializable.writeKeyValue(out, type, "suggestWhichBrokerId", this.suggestWhichBrokerId);
+        RocketMQSerializable.writeKeyValue(out, type, "nextBeginOffset", this.nextBeginOffset);
+        RocketMQSerializable.writeKeyValue(out, type, "minOffset", this.minOffset);
+        RocketMQSerializable.writeKeyValue(out, type, "maxOffset", this.maxOffset);
+    }
+
+
+    @Override
+    public void decode(HashMap<String, String> fields) throws RemotingCommandException {
+        this.suggestWhichBrokerId = RocketMQSerializable.parseLong(fields.get("suggestWhichBrokerId"));
+        this.nextBeginOffset = RocketMQSerializable.parseLong(fields.get("nextBeginOffset"));
+        this.minOffset = RocketMQSerializable.parseLong(fields.get("minOffset"));
+        this.maxOffset = RocketMQSerializable.parseLong(fields.get("maxOffset"));
+    }
+
+
     public Long getNextBeginOffset() {
         return nextBeginOffset;
     }
@@ -21,12 +21,18 @@ import com.alibaba.rocketmq.remoting.CommandCustomHeader;
 import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
 import com.alibaba.rocketmq.remoting.annotation.CFNullable;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.FastCodesHeader;
+import com.alibaba.rocketmq.remoting.protocol.RocketMQSerializable;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+
+import java.util.HashMap;
 
 
 /**
  * @author shijia.wxr
  */
-public class SendMessageRequestHeaderV2 implements CommandCustomHeader {
+public class SendMessageRequestHeaderV2 implements CommandCustomHeader, FastCodesHeader {
     @CFNotNull
     private String a;// producerGroup;
     @CFNotNull
@@ -56,6 +62,42 @@ public class SendMessageRequestHeaderV2 implements CommandCustomHeader {
     }
 
 
+    @Override
+    public void encode(ByteBuf out, SerializeType type) {
+        RocketMQSerializable.writeKeyValue(out, type, "a", this.a);
+        RocketMQSerializable.writeKeyValue(out, type, "b", this.b);
+        RocketMQSerializable.writeKeyValue(out, type, "c", this.c);
+        RocketMQSerializable.writeKeyValue(out, type, "d", this.d);
+        RocketMQSerializable.writeKeyValue(out, type, "e", this.e);
+        RocketMQSerializable.writeKeyValue(out, type, "f", this.f);
+        RocketMQSerializable.writeKeyValue(out, type, "g", this.g);
+        RocketMQSerializable.writeKeyValue(out, type, "h", this.h);
+        RocketMQSerializable.writeKeyValue(out, type, "i", this.i);
+        RocketMQSerializable.writeKeyValue(out, type, "j", this.j);
+        RocketMQSerializable.writeKeyValue(out, type, "k", this.k);
+    }
+
+
+    @Override
+    public void decode(HashMap<String, String> fields) throws RemotingCommandException {
+        this.a = fields.get("a");
+        this.b = fields.get("b");
+        this.c = fields.get("c");
+        this.d = RocketMQSerializable.parseInteger(fields.get("d"));
+        this.e = RocketMQSerializable.parseInteger(fields.get("e"));
+        this.f = RocketMQSerializable.parseInteger(fields.get("f"));
+        this.g = RocketMQSerializable.parseLong(fields.get("g"));
+        this.h = RocketMQSerializable.parseInteger(fields.get("h"));
+        this.i = fields.get("i");
+        this.j = RocketMQSerializable.parseInteger(fields.get("j"));
+
+        String str = fields.get("k");
+        if (str != null) {
+            this.k = Boolean.parseBoolean(str);
+        }
+    }
+
+
     public static SendMessageRequestHeader createSendMessageRequestHeaderV1(
             final SendMessageRequestHeaderV2 v2) {
         SendMessageRequestHeader v1 = new SendMessageRequestHeader();
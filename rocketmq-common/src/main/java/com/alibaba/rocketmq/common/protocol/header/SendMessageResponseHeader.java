@@ -23,12 +23,18 @@ package com.alibaba.rocketmq.common.protocol.header;
 import com.alibaba.rocketmq.remoting.CommandCustomHeader;
 import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.FastCodesHeader;
+import com.alibaba.rocketmq.remoting.protocol.RocketMQSerializable;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+
+import java.util.HashMap;
 
 
 /**
  * @author shijia.wxr
  */
-public class SendMessageResponseHeader implements CommandCustomHeader {
+public class SendMessageResponseHeader implements CommandCustomHeader, FastCodesHeader {
     @CFNotNull
     private String msgId;
     @CFNotNull
@@ -43,6 +49,24 @@ public class SendMessageResponseHeader implements CommandCustomHeader {
     }
 
 
+    @Override
+    public void encode(ByteBuf out, SerializeType type) {
+        RocketMQSerializable.writeKeyValue(out, type, "msgId", this.msgId);
+        RocketMQSerializable.writeKeyValue(out, type, "queueId", this.queueId);
+        RocketMQSerializable.writeKeyValue(out, type, "queueOffset", this.queueOffset);
+        RocketMQSerializable.writeKeyValue(out, type, "transactionId", this.transactionId);
+    }
+
+
+    @Override
+    public void decode(HashMap<String, String> fields) throws RemotingCommandException {
+        this.msgId = fields.get("msgId");
+        this.queueId = RocketMQSerializable.parseInteger(fields.get("queueId"));
+        this.queueOffset = RocketMQSerializable.parseLong(fields.get("queueOffset"));
+        this.transactionId = fields.get("transactionId");
+    }
+
+
     public String getMsgId() {
         return msgId;
     }
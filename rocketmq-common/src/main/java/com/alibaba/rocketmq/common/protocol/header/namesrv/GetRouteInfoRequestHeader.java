@@ -22,6 +22,7 @@ package com.alibaba.rocketmq.common.protocol.header.namesrv;
 
 import com.alibaba.rocketmq.remoting.CommandCustomHeader;
 import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
+import com.alibaba.rocketmq.remoting.annotation.CFNullable;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
 
 
@@ -31,6 +32,9 @@ import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
 public class GetRouteInfoRequestHeader implements CommandCustomHeader {
     @CFNotNull
     private String topic;
+    // Ask for NOTIFY_TOPIC_ROUTE_CHANGED when the route of the topic changes
+    @CFNullable
+    private Boolean subscribe;
 
 
     @Override
@@ -47,4 +51,14 @@ public class GetRouteInfoRequestHeader implements CommandCustomHeader {
     public void setTopic(String topic) {
         this.topic = topic;
     }
+
+
+    public Boolean getSubscribe() {
+        return subscribe;
+    }
+
+
+    public void setSubscribe(Boolean subscribe) {
+        this.subscribe = subscribe;
+    }
 }
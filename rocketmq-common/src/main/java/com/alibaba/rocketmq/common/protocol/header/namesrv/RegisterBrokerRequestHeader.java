@@ -22,6 +22,7 @@ package com.alibaba.rocketmq.common.protocol.header.namesrv;
 
 import com.alibaba.rocketmq.remoting.CommandCustomHeader;
 import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
+import com.alibaba.rocketmq.remoting.annotation.CFNullable;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
 
 
@@ -39,6 +40,12 @@ public class RegisterBrokerRequestHeader implements CommandCustomHeader {
     private String haServerAddr;
     @CFNotNull
     private Long brokerId;
+    // The body is deflated
+    @CFNullable
+    private Boolean compressed;
+    // The body only has the topics changed since this data version
+    @CFNullable
+    private String baseDataVersion;
 
 
     @Override
@@ -94,4 +101,24 @@ public class RegisterBrokerRequestHeader implements CommandCustomHeader {
     public void setBrokerId(Long brokerId) {
         this.brokerId = brokerId;
     }
+
+
+    public Boolean getCompressed() {
+        return compressed;
+    }
+
+
+    public void setCompressed(Boolean compressed) {
+        this.compressed = compressed;
+    }
+
+
+    public String getBaseDataVersion() {
+        return baseDataVersion;
+    }
+
+
+    public void setBaseDataVersion(String baseDataVersion) {
+        this.baseDataVersion = baseDataVersion;
+    }
 }
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.common.protocol.header;
+
+import com.alibaba.rocketmq.common.protocol.RequestCode;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author shijia.wxr
+ */
+public class FastCodesHeaderTest {
+    private static RemotingCommand encodeAndDecode(RemotingCommand request, SerializeType type) {
+        request.setSerializeTypeCurrentRPC(type);
+        ByteBuf out = Unpooled.buffer();
+        request.fastEncodeHeader(out);
+        // skip the total length, as the decoder does
+        out.skipBytes(4);
+        return RemotingCommand.decode(out.nioBuffer());
+    }
+
+
+    private static SendMessageRequestHeaderV2 createSendMessageRequestHeaderV2() {
+        SendMessageRequestHeaderV2 header = new SendMessageRequestHeaderV2();
+        header.setA("ProducerGroupTest");
+        header.setB("TopicTest");
+        header.setC("TBW102");
+        header.setD(4);
+        header.setE(1);
+        header.setF(0);
+        header.setG(System.currentTimeMillis());
+        header.setH(0);
+        header.setI("KEYS\u0001key1\u0002TAGS\u0001TagA\u0002");
+        header.setJ(null);
+        header.setK(true);
+        return header;
+    }
+
+
+    @Test
+    public void test_SendMessageRequestHeaderV2() throws Exception {
+        for (SerializeType type : SerializeType.values()) {
+            SendMessageRequestHeaderV2 header = createSendMessageRequestHeaderV2();
+            RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE_V2, header);
+            RemotingCommand decoded = encodeAndDecode(request, type);
+
+            SendMessageRequestHeaderV2 result =
+                    (SendMessageRequestHeaderV2) decoded.decodeCommandCustomHeader(SendMessageRequestHeaderV2.class);
+            assertEquals(header.getA(), result.getA());
+            assertEquals(header.getB(), result.getB());
+            assertEquals(header.getC(), result.getC());
+            assertEquals(header.getD(), result.getD());
+            assertEquals(header.getE(), result.getE());
+            assertEquals(header.getF(), result.getF());
+            assertEquals(header.getG(), result.getG());
+            assertEquals(header.getH(), result.getH());
+            assertEquals(header.getI(), result.getI());
+            assertEquals(header.getJ(), result.getJ());
+            assertTrue(result.isK());
+        }
+    }
+
+
+    @Test
+    public void test_same_extFields_as_reflection() throws Exception {
+        SendMessageRequestHeaderV2 header = createSendMessageRequestHeaderV2();
+        RemotingCommand reflection = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE_V2, header);
+        reflection.makeCustomHeaderToNet();
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE_V2, header);
+        RemotingCommand decoded = encodeAndDecode(request, SerializeType.ROCKETMQ);
+        assertEquals(reflection.getExtFields(), decoded.getExtFields());
+    }
+
+
+    @Test
+    public void test_PullMessageRequestHeader() throws Exception {
+        PullMessageRequestHeader header = new PullMessageRequestHeader();
+        header.setConsumerGroup("ConsumerGroupTest");
+        header.setTopic("TopicTest");
+        header.setQueueId(2);
+        header.setQueueOffset(123456L);
+        header.setMaxMsgNums(32);
+        header.setSysFlag(3);
+        header.setCommitOffset(123400L);
+        header.setSuspendTimeoutMillis(15000L);
+        header.setSubscription(null);
+        header.setSubVersion(System.currentTimeMillis());
+
+        for (SerializeType type : SerializeType.values()) {
+            RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.PULL_MESSAGE, header);
+            RemotingCommand decoded = encodeAndDecode(request, type);
+
+            PullMessageRequestHeader result =
+                    (PullMessageRequestHeader) decoded.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+            assertEquals(header.getConsumerGroup(), result.getConsumerGroup());
+            assertEquals(header.getTopic(), result.getTopic());
+            assertEquals(header.getQueueId(), result.getQueueId());
+            assertEquals(header.getQueueOffset(), result.getQueueOffset());
+            assertEquals(header.getMaxMsgNums(), result.getMaxMsgNums());
+            assertEquals(header.getSysFlag(), result.getSysFlag());
+            assertEquals(header.getCommitOffset(), result.getCommitOffset());
+            assertEquals(header.getSuspendTimeoutMillis(), result.getSuspendTimeoutMillis());
+            assertEquals(header.getSubscription(), result.getSubscription());
+            assertEquals(header.getSubVersion(), result.getSubVersion());
+        }
+    }
+
+
+    @Test
+    public void test_response_headers() throws Exception {
+        RemotingCommand sendResponse = RemotingCommand.createResponseCommand(SendMessageResponseHeader.class);
+        SendMessageResponseHeader sendHeader = (SendMessageResponseHeader) sendResponse.readCustomHeader();
+        sendHeader.setMsgId("0A0B0C0D00002A9F00000000001E8480");
+        sendHeader.setQueueId(3);
+        sendHeader.setQueueOffset(1234567L);
+
+        SendMessageResponseHeader sendResult =
+                (SendMessageResponseHeader) encodeAndDecode(sendResponse, SerializeType.ROCKETMQ)
+                    .decodeCommandCustomHeader(SendMessageResponseHeader.class);
+        assertEquals(sendHeader.getMsgId(), sendResult.getMsgId());
+        assertEquals(sendHeader.getQueueId(), sendResult.getQueueId());
+        assertEquals(sendHeader.getQueueOffset(), sendResult.getQueueOffset());
+        assertEquals(null, sendResult.getTransactionId());
+
+        RemotingCommand pullResponse = RemotingCommand.createResponseCommand(PullMessageResponseHeader.class);
+        PullMessageResponseHeader pullHeader = (PullMessageResponseHeader) pullResponse.readCustomHeader();
+        pullHeader.setSuggestWhichBrokerId(0L);
+        pullHeader.setNextBeginOffset(1234599L);
+        pullHeader.setMinOffset(0L);
+        pullHeader.setMaxOffset(1300000L);
+
+        PullMessageResponseHeader pullResult =
+                (PullMessageResponseHeader) encodeAndDecode(pullResponse, SerializeType.ROCKETMQ)
+                    .decodeCommandCustomHeader(PullMessageResponseHeader.class);
+        assertEquals(pullHeader.getSuggestWhichBrokerId(), pullResult.getSuggestWhichBrokerId());
+        assertEquals(pullHeader.getNextBeginOffset(), pullResult.getNextBeginOffset());
+        assertEquals(pullHeader.getMinOffset(), pullResult.getMinOffset());
+        assertEquals(pullHeader.getMaxOffset(), pullResult.getMaxOffset());
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.common.protocol.header;
+
+import com.alibaba.rocketmq.common.protocol.RequestCode;
+import com.alibaba.rocketmq.remoting.CommandCustomHeader;
+import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Typed codecs of SendMessageRequestHeaderV2 and PullMessageRequestHeader
+ * against the reflection path, which the Plain* copies still take, run with
+ * main()
+ *
+ * @author shijia.wxr
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HeaderCodecBenchmark {
+    public static class PlainSendMessageRequestHeaderV2 implements CommandCustomHeader {
+        private String a = "ProducerGroupTest";
+        private String b = "TopicTest";
+        private String c = "TBW102";
+        private Integer d = 4;
+        private Integer e = 1;
+        private Integer f = 0;
+        private Long g = 1476576000000L;
+        private Integer h = 0;
+        private String i = "KEYS\u0001key1\u0002TAGS\u0001TagA\u0002WAIT\u0001true\u0002";
+        private Integer j = 0;
+        private boolean k = false;
+
+
+        @Override
+        public void checkFields() throws RemotingCommandException {
+        }
+    }
+
+    public static class PlainPullMessageRequestHeader implements CommandCustomHeader {
+        private String consumerGroup = "ConsumerGroupTest";
+        private String topic = "TopicTest";
+        private Integer queueId = 2;
+        private Long queueOffset = 123456L;
+        private Integer maxMsgNums = 32;
+        private Integer sysFlag = 3;
+        private Long commitOffset = 123400L;
+        private Long suspendTimeoutMillis = 15000L;
+        private String subscription = "TagA || TagB";
+        private Long subVersion = 1476576000000L;
+
+
+        @Override
+        public void checkFields() throws RemotingCommandException {
+        }
+    }
+
+    private RemotingCommand sendRequest;
+    private RemotingCommand pullRequest;
+    private PlainSendMessageRequestHeaderV2 plainSendHeader;
+    private PlainPullMessageRequestHeader plainPullHeader;
+    private SendMessageRequestHeaderV2 sendHeader;
+    private PullMessageRequestHeader pullHeader;
+
+
+    private static RemotingCommand toWire(final CommandCustomHeader header, final int code) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, header);
+        request.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        ByteBuf out = Unpooled.buffer();
+        request.fastEncodeHeader(out);
+        out.skipBytes(4);
+        return RemotingCommand.decode(out.nioBuffer());
+    }
+
+
+    private static int encode(final CommandCustomHeader header, final int code) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, header);
+        request.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        ByteBuf out = Unpooled.buffer(256);
+        request.fastEncodeHeader(out);
+        return out.readableBytes();
+    }
+
+
+    @Setup
+    public void setup() throws RemotingCommandException {
+        this.plainSendHeader = new PlainSendMessageRequestHeaderV2();
+        this.plainPullHeader = new PlainPullMessageRequestHeader();
+        this.sendRequest = toWire(this.plainSendHeader, RequestCode.SEND_MESSAGE_V2);
+        this.pullRequest = toWire(this.plainPullHeader, RequestCode.PULL_MESSAGE);
+        this.sendHeader =
+                (SendMessageRequestHeaderV2) this.sendRequest.decodeCommandCustomHeader(SendMessageRequestHeaderV2.class);
+        this.pullHeader =
+                (PullMessageRequestHeader) this.pullRequest.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+    }
+
+
+    @Benchmark
+    public Object reflectionDecodeSend() throws RemotingCommandException {
+        return this.sendRequest.decodeCommandCustomHeader(PlainSendMessageRequestHeaderV2.class);
+    }
+
+
+    @Benchmark
+    public Object fastDecodeSend() throws RemotingCommandException {
+        return this.sendRequest.decodeCommandCustomHeader(SendMessageRequestHeaderV2.class);
+    }
+
+
+    @Benchmark
+    public Object reflectionDecodePull() throws RemotingCommandException {
+        return this.pullRequest.decodeCommandCustomHeader(PlainPullMessageRequestHeader.class);
+    }
+
+
+    @Benchmark
+    public Object fastDecodePull() throws RemotingCommandException {
+        return this.pullRequest.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+    }
+
+
+    @Benchmark
+    public int reflectionEncodeSend() {
+        return encode(this.plainSendHeader, RequestCode.SEND_MESSAGE_V2);
+    }
+
+
+    @Benchmark
+    public int fastEncodeSend() {
+        return encode(this.sendHeader, RequestCode.SEND_MESSAGE_V2);
+    }
+
+
+    @Benchmark
+    public int reflectionEncodePull() {
+        return encode(this.plainPullHeader, RequestCode.PULL_MESSAGE);
+    }
+
+
+    @Benchmark
+    public int fastEncodePull() {
+        return encode(this.pullHeader, RequestCode.PULL_MESSAGE);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HeaderCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -19,12 +19,16 @@ package com.alibaba.rocketmq.namesrv;
 import com.alibaba.rocketmq.common.ThreadFactoryImpl;
 import com.alibaba.rocketmq.common.constant.LoggerName;
 import com.alibaba.rocketmq.common.namesrv.NamesrvConfig;
+import com.alibaba.rocketmq.common.protocol.RequestCode;
 import com.alibaba.rocketmq.namesrv.kvconfig.KVConfigManager;
 import com.alibaba.rocketmq.namesrv.processor.ClusterTestRequestProcessor;
 import com.alibaba.rocketmq.namesrv.processor.DefaultRequestProcessor;
+import com.alibaba.rocketmq.namesrv.processor.RouteQueryProcessor;
 import com.alibaba.rocketmq.namesrv.routeinfo.BrokerHousekeepingService;
+import com.alibaba.rocketmq.namesrv.routeinfo.RouteChangeNotifier;
 import com.alibaba.rocketmq.namesrv.routeinfo.RouteInfoManager;
 import com.alibaba.rocketmq.remoting.RemotingServer;
+import com.alibaba.rocketmq.remoting.common.DirectExecutorService;
 import com.alibaba.rocketmq.remoting.netty.NettyRemotingServer;
 import com.alibaba.rocketmq.remoting.netty.NettyServerConfig;
 import org.slf4j.Logger;
@@ -51,6 +55,7 @@ public class NamesrvController {
         "NSScheduledThread"));
     private final KVConfigManager kvConfigManager;
     private final RouteInfoManager routeInfoManager;
+    private final RouteChangeNotifier routeChangeNotifier;
 
 
     public NamesrvController(NamesrvConfig namesrvConfig, NettyServerConfig nettyServerConfig) {
@@ -58,6 +63,8 @@ public class NamesrvController {
         this.nettyServerConfig = nettyServerConfig;
         this.kvConfigManager = new KVConfigManager(this);
         this.routeInfoManager = new RouteInfoManager();
+        this.routeChangeNotifier = new RouteChangeNotifier(this);
+        this.routeInfoManager.setRouteChangeNotifier(this.routeChangeNotifier);
         this.brokerHousekeepingService = new BrokerHousekeepingService(this);
     }
 
@@ -106,17 +113,25 @@ public class NamesrvController {
                 this.remotingExecutor);
         }
         else {
-            this.remotingServer.registerDefaultProcessor(new DefaultRequestProcessor(this), this.remotingExecutor);
+            DefaultRequestProcessor defaultRequestProcessor = new DefaultRequestProcessor(this);
+            this.remotingServer.registerDefaultProcessor(defaultRequestProcessor, this.remotingExecutor);
+            if (namesrvConfig.isRouteQueryInNettyThread()) {
+                this.remotingServer.registerProcessor(RequestCode.GET_ROUTEINTO_BY_TOPIC,
+                    new RouteQueryProcessor(defaultRequestProcessor, this.remotingExecutor),
+                    new DirectExecutorService());
+            }
         }
     }
 
 
     public void start() throws Exception {
         this.remotingServer.start();
+        this.routeChangeNotifier.start();
     }
 
 
     public void shutdown() {
+        this.routeChangeNotifier.shutdown();
         this.remotingServer.shutdown();
         this.remotingExecutor.shutdown();
         this.scheduledExecutorService.shutdown();
@@ -143,6 +158,11 @@ public class NamesrvController {
     }
 
 
+    public RouteChangeNotifier getRouteChangeNotifier() {
+        return routeChangeNotifier;
+    }
+
+
     public RemotingServer getRemotingServer() {
         return remotingServer;
     }
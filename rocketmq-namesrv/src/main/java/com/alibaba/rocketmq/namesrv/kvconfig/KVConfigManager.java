@@ -42,6 +42,8 @@ public class KVConfigManager {
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final HashMap<String/* Namespace */, HashMap<String/* Key */, String/* Value */>> configTable =
             new HashMap<String, HashMap<String, String>>();
+    // Counts the changes, so readers can tell a value read earlier is stale
+    private volatile long dataVersion = 0;
 
 
     public KVConfigManager(NamesrvController namesrvController) {
@@ -82,6 +84,7 @@ public class KVConfigManager {
                     log.info("putKVConfig create new config item, Namespace: {} Key: {} Value: {}", //
                         namespace, key, value);
                 }
+                this.dataVersion++;
             }
             finally {
                 this.lock.writeLock().unlock();
@@ -105,6 +108,7 @@ public class KVConfigManager {
                     log.info("deleteKVConfig delete a config item, Namespace: {} Key: {} Value: {}", //
                         namespace, key, value);
                 }
+                this.dataVersion++;
             }
             finally {
                 this.lock.writeLock().unlock();
@@ -162,6 +166,11 @@ public class KVConfigManager {
     }
 
 
+    public long getDataVersion() {
+        return dataVersion;
+    }
+
+
     public void persist() {
         try {
             this.lock.readLock().lockInterruptibly();
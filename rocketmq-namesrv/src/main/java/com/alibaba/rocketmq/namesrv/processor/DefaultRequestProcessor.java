@@ -16,8 +16,10 @@
  */
 package com.alibaba.rocketmq.namesrv.processor;
 
+import com.alibaba.rocketmq.common.DataVersion;
 import com.alibaba.rocketmq.common.MQVersion;
 import com.alibaba.rocketmq.common.MQVersion.Version;
+import com.alibaba.rocketmq.common.UtilAll;
 import com.alibaba.rocketmq.common.constant.LoggerName;
 import com.alibaba.rocketmq.common.help.FAQUrl;
 import com.alibaba.rocketmq.common.namesrv.NamesrvUtil;
@@ -28,7 +30,6 @@ import com.alibaba.rocketmq.common.protocol.body.RegisterBrokerBody;
 import com.alibaba.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
 import com.alibaba.rocketmq.common.protocol.header.GetTopicsByClusterRequestHeader;
 import com.alibaba.rocketmq.common.protocol.header.namesrv.*;
-import com.alibaba.rocketmq.common.protocol.route.TopicRouteData;
 import com.alibaba.rocketmq.namesrv.NamesrvController;
 import com.alibaba.rocketmq.remoting.common.RemotingHelper;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
@@ -38,6 +39,7 @@ import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicLong;
 
 
@@ -79,6 +81,8 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
             else {
                 return this.registerBroker(ctx, request);
             }
+        case RequestCode.BROKER_HEARTBEAT:
+            return this.brokerHeartbeat(ctx, request);
         case RequestCode.UNREGISTER_BROKER:
             return this.unregisterBroker(ctx, request);
         case RequestCode.GET_ROUTEINTO_BY_TOPIC:
@@ -120,13 +124,27 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
         RegisterBrokerBody registerBrokerBody = new RegisterBrokerBody();
 
         if (request.getBody() != null) {
-            registerBrokerBody = RegisterBrokerBody.decode(request.getBody(), RegisterBrokerBody.class);
+            byte[] body = request.getBody();
+            if (requestHeader.getCompressed() != null && requestHeader.getCompressed()) {
+                try {
+                    body = UtilAll.uncompress(body);
+                }
+                catch (IOException e) {
+                    throw new RemotingCommandException("uncompress register body failed", e);
+                }
+            }
+            registerBrokerBody = RegisterBrokerBody.decode(body, RegisterBrokerBody.class);
         }
         else {
             registerBrokerBody.getTopicConfigSerializeWrapper().getDataVersion().setCounter(new AtomicLong(0));
             registerBrokerBody.getTopicConfigSerializeWrapper().getDataVersion().setTimestatmp(0);
         }
 
+        DataVersion baseDataVersion = null;
+        if (requestHeader.getBaseDataVersion() != null) {
+            baseDataVersion = DataVersion.fromJson(requestHeader.getBaseDataVersion(), DataVersion.class);
+        }
+
         RegisterBrokerResult result = this.namesrvController.getRouteInfoManager().registerBroker(//
             requestHeader.getClusterName(), // 1
             requestHeader.getBrokerAddr(), // 2
@@ -135,8 +153,14 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
             requestHeader.getHaServerAddr(),// 5
             registerBrokerBody.getTopicConfigSerializeWrapper(), // 6
             registerBrokerBody.getFilterServerList(),//
-            ctx.channel()// 7
+            ctx.channel(),// 7
+            baseDataVersion// 8
             );
+        if (null == result) {
+            response.setCode(ResponseCode.BROKER_NOT_REGISTERED);
+            response.setRemark("the broker is not registered at the base data version");
+            return response;
+        }
 
         responseHeader.setHaServerAddr(result.getHaServerAddr());
         responseHeader.setMasterAddr(result.getMasterAddr());
@@ -225,26 +249,44 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
     }
 
 
-    public RemotingCommand getRouteInfoByTopic(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
-        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+    /**
+     * Answers the route query from the encoded routes only, takes no lock
+     *
+     * @return null if the route of the topic is not cached
+     */
+    public RemotingCommand getCachedRouteInfoByTopic(ChannelHandlerContext ctx, RemotingCommand request)
+            throws RemotingCommandException {
         final GetRouteInfoRequestHeader requestHeader =
                 (GetRouteInfoRequestHeader) request.decodeCommandCustomHeader(GetRouteInfoRequestHeader.class);
 
-        TopicRouteData topicRouteData = this.namesrvController.getRouteInfoManager().pickupTopicRouteData(requestHeader.getTopic());
+        byte[] content =
+                this.namesrvController.getRouteInfoManager().getCachedTopicRoute(requestHeader.getTopic(),
+                    this.namesrvController.getKvConfigManager().getDataVersion());
+        if (content != null) {
+            return this.routeInfoResponse(ctx, requestHeader, content);
+        }
+        return null;
+    }
+
 
-        if (topicRouteData != null) {
-            String orderTopicConf =
-                    this.namesrvController.getKvConfigManager().getKVConfig(NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG,
-                        requestHeader.getTopic());
-            topicRouteData.setOrderTopicConf(orderTopicConf);
+    public RemotingCommand getRouteInfoByTopic(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
+        final GetRouteInfoRequestHeader requestHeader =
+                (GetRouteInfoRequestHeader) request.decodeCommandCustomHeader(GetRouteInfoRequestHeader.class);
 
-            byte[] content = topicRouteData.encode();
-            response.setBody(content);
-            response.setCode(ResponseCode.SUCCESS);
-            response.setRemark(null);
-            return response;
+        // Read before the order config, a change in between drops the route again
+        long kvConfigVersion = this.namesrvController.getKvConfigManager().getDataVersion();
+        String orderTopicConf =
+                this.namesrvController.getKvConfigManager().getKVConfig(NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG,
+                    requestHeader.getTopic());
+        byte[] content =
+                this.namesrvController.getRouteInfoManager().pickupEncodedTopicRoute(requestHeader.getTopic(),
+                    orderTopicConf, kvConfigVersion);
+
+        if (content != null) {
+            return this.routeInfoResponse(ctx, requestHeader, content);
         }
 
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
         response.setCode(ResponseCode.TOPIC_NOT_EXIST);
         response.setRemark("No topic route info in name server for the topic: " + requestHeader.getTopic()
                 + FAQUrl.suggestTodo(FAQUrl.APPLY_TOPIC_URL));
@@ -252,6 +294,19 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
     }
 
 
+    private RemotingCommand routeInfoResponse(ChannelHandlerContext ctx, GetRouteInfoRequestHeader requestHeader,
+            byte[] content) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        if (requestHeader.getSubscribe() != null && requestHeader.getSubscribe()) {
+            this.namesrvController.getRouteChangeNotifier().subscribe(requestHeader.getTopic(), ctx.channel());
+        }
+        response.setBody(content);
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
+
     public RemotingCommand putKVConfig(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
         final PutKVConfigRequestHeader requestHeader =
@@ -309,6 +364,38 @@ public class DefaultRequestProcessor implements NettyRequestProcessor {
     }
 
 
+    public RemotingCommand brokerHeartbeat(ChannelHandlerContext ctx, RemotingCommand request)
+            throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(RegisterBrokerResponseHeader.class);
+        final RegisterBrokerResponseHeader responseHeader = (RegisterBrokerResponseHeader) response.readCustomHeader();
+        final BrokerHeartbeatRequestHeader requestHeader =
+                (BrokerHeartbeatRequestHeader) request.decodeCommandCustomHeader(BrokerHeartbeatRequestHeader.class);
+
+        RegisterBrokerResult result = this.namesrvController.getRouteInfoManager().brokerHeartbeat(//
+            requestHeader.getBrokerAddr(), // 1
+            requestHeader.getBrokerName(), // 2
+            requestHeader.getBrokerId(), // 3
+            DataVersion.fromJson(requestHeader.getDataVersion(), DataVersion.class), // 4
+            ctx.channel()// 5
+            );
+        if (null == result) {
+            response.setCode(ResponseCode.BROKER_NOT_REGISTERED);
+            response.setRemark("the broker is not registered at this data version, register it again");
+            return response;
+        }
+
+        responseHeader.setHaServerAddr(result.getHaServerAddr());
+        responseHeader.setMasterAddr(result.getMasterAddr());
+
+        byte[] jsonValue = this.namesrvController.getKvConfigManager().getKVListByNamespace(NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG);
+        response.setBody(jsonValue);
+
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
+
     public RemotingCommand registerBroker(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
         final RemotingCommand response = RemotingCommand.createResponseCommand(RegisterBrokerResponseHeader.class);
         final RegisterBrokerResponseHeader responseHeader = (RegisterBrokerResponseHeader) response.readCustomHeader();
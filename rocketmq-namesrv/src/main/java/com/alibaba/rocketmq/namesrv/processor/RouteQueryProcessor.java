@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.namesrv.processor;
+
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.remoting.common.RemotingHelper;
+import com.alibaba.rocketmq.remoting.netty.NettyRequestProcessor;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.RemotingSysResponseCode;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * Runs in the Netty thread that decoded the route query, answers it when
+ * the encoded route is cached and hands it to the executor otherwise, so
+ * the Netty thread never takes a lock or encodes a route
+ *
+ * @author shijia.wxr
+ */
+public class RouteQueryProcessor implements NettyRequestProcessor {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.NamesrvLoggerName);
+    private final DefaultRequestProcessor defaultRequestProcessor;
+    private final ExecutorService executor;
+
+
+    public RouteQueryProcessor(final DefaultRequestProcessor defaultRequestProcessor,
+            final ExecutorService executor) {
+        this.defaultRequestProcessor = defaultRequestProcessor;
+        this.executor = executor;
+    }
+
+
+    @Override
+    public RemotingCommand processRequest(final ChannelHandlerContext ctx, final RemotingCommand request)
+            throws Exception {
+        RemotingCommand response = this.defaultRequestProcessor.getCachedRouteInfoByTopic(ctx, request);
+        if (response != null) {
+            return response;
+        }
+
+        try {
+            this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    RemotingCommand response;
+                    try {
+                        response = RouteQueryProcessor.this.defaultRequestProcessor.getRouteInfoByTopic(ctx, request);
+                    }
+                    catch (Throwable e) {
+                        log.error("process route query exception", e);
+                        response =
+                                RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_ERROR,
+                                    RemotingHelper.exceptionSimpleDesc(e));
+                    }
+
+                    if (!request.isOnewayRPC()) {
+                        response.setOpaque(request.getOpaque());
+                        response.setSerializeTypeCurrentRPC(request.getSerializeTypeCurrentRPC());
+                        response.markResponseType();
+                        ctx.writeAndFlush(response);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            return RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_BUSY,
+                "too many requests and system thread pool busy, please try another server");
+        }
+
+        // Answered by the executor
+        return null;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.namesrv.routeinfo;
+
+import com.alibaba.rocketmq.common.ServiceThread;
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.common.protocol.RequestCode;
+import com.alibaba.rocketmq.common.protocol.body.TopicList;
+import com.alibaba.rocketmq.common.protocol.header.namesrv.NotifyTopicRouteChangedRequestHeader;
+import com.alibaba.rocketmq.namesrv.NamesrvController;
+import com.alibaba.rocketmq.remoting.common.RemotingHelper;
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Pushes the changed topics to the clients that subscribed to their routes,
+ * the clients then query the new routes
+ *
+ * @author shijia.wxr
+ */
+public class RouteChangeNotifier extends ServiceThread {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.NamesrvLoggerName);
+    private static final long WaitInterval = 1000 * 10;
+    private final NamesrvController namesrvController;
+    private final ConcurrentHashMap<String/* topic */, ConcurrentHashMap<Channel, Long/* subscribe timestamp */>> subscriptionTable =
+            new ConcurrentHashMap<String, ConcurrentHashMap<Channel, Long>>(1024);
+    private final ConcurrentHashMap<String/* topic */, Boolean> changedTopicTable =
+            new ConcurrentHashMap<String, Boolean>();
+    private volatile long routeVersion = 0;
+
+
+    public RouteChangeNotifier(NamesrvController namesrvController) {
+        this.namesrvController = namesrvController;
+    }
+
+
+    public void subscribe(final String topic, final Channel channel) {
+        ConcurrentHashMap<Channel, Long> channelTable = this.subscriptionTable.get(topic);
+        if (null == channelTable) {
+            channelTable = new ConcurrentHashMap<Channel, Long>();
+            ConcurrentHashMap<Channel, Long> prev = this.subscriptionTable.putIfAbsent(topic, channelTable);
+            if (prev != null) {
+                channelTable = prev;
+            }
+        }
+        channelTable.put(channel, System.currentTimeMillis());
+    }
+
+
+    public void unsubscribe(final Channel channel) {
+        Iterator<Entry<String, ConcurrentHashMap<Channel, Long>>> it = this.subscriptionTable.entrySet().iterator();
+        while (it.hasNext()) {
+            ConcurrentHashMap<Channel, Long> channelTable = it.next().getValue();
+            // A client that subscribes again is re-added by its next poll
+            if (channelTable.remove(channel) != null && channelTable.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Called by RouteInfoManager with the write lock held, so it only queues
+     */
+    public void topicsChanged(final Collection<String> topics, final long routeVersion) {
+        if (topics.isEmpty()) {
+            return;
+        }
+
+        for (String topic : topics) {
+            if (this.subscriptionTable.containsKey(topic)) {
+                this.changedTopicTable.put(topic, Boolean.TRUE);
+            }
+        }
+        this.routeVersion = routeVersion;
+        this.wakeup();
+    }
+
+
+    private void notifyChangedTopics() {
+        if (this.changedTopicTable.isEmpty()) {
+            return;
+        }
+
+        final long routeVersion = this.routeVersion;
+        HashMap<Channel, TopicList> channelTopicTable = new HashMap<Channel, TopicList>();
+        Iterator<String> it = this.changedTopicTable.keySet().iterator();
+        while (it.hasNext()) {
+            String topic = it.next();
+            it.remove();
+
+            ConcurrentHashMap<Channel, Long> channelTable = this.subscriptionTable.get(topic);
+            if (null == channelTable) {
+                continue;
+            }
+
+            for (Channel channel : channelTable.keySet()) {
+                if (!channel.isActive()) {
+                    channelTable.remove(channel);
+                    continue;
+                }
+
+                TopicList topicList = channelTopicTable.get(channel);
+                if (null == topicList) {
+                    topicList = new TopicList();
+                    channelTopicTable.put(channel, topicList);
+                }
+                topicList.getTopicList().add(topic);
+            }
+        }
+
+        for (Entry<Channel, TopicList> entry : channelTopicTable.entrySet()) {
+            NotifyTopicRouteChangedRequestHeader requestHeader = new NotifyTopicRouteChangedRequestHeader();
+            requestHeader.setRouteVersion(routeVersion);
+            RemotingCommand request =
+                    RemotingCommand.createRequestCommand(RequestCode.NOTIFY_TOPIC_ROUTE_CHANGED, requestHeader);
+            request.setBody(entry.getValue().encode());
+            try {
+                this.namesrvController.getRemotingServer().invokeOneway(entry.getKey(), request, 100);
+            }
+            catch (Exception e) {
+                log.warn("notify route change of {} topics to {} failed, {}", entry.getValue().getTopicList().size(),
+                    RemotingHelper.parseChannelRemoteAddr(entry.getKey()), e.getMessage());
+            }
+        }
+
+        log.info("notified route version {} to {} clients", routeVersion, channelTopicTable.size());
+    }
+
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStoped()) {
+            try {
+                this.waitForRunning(WaitInterval);
+                this.notifyChangedTopics();
+            }
+            catch (Exception e) {
+                log.warn(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+
+    @Override
+    public String getServiceName() {
+        return RouteChangeNotifier.class.getSimpleName();
+    }
+}
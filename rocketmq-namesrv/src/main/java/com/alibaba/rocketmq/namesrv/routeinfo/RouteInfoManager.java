@@ -52,6 +52,13 @@ public class RouteInfoManager {
     private final HashMap<String/* clusterName */, Set<String/* brokerName */>> clusterAddrTable;
     private final HashMap<String/* brokerAddr */, BrokerLiveInfo> brokerLiveTable;
     private final HashMap<String/* brokerAddr */, List<String>/* Filter Server */> filterServerTable;
+    // Encoded routes of the current tables, a route change drops the routes
+    // of the changed topics, so route queries that hit it take no lock
+    private final ConcurrentHashMap<String/* topic */, EncodedTopicRoute> encodedRouteTable =
+            new ConcurrentHashMap<String, EncodedTopicRoute>(1024);
+    // Counts the route changes, changed under the write lock
+    private volatile long routeVersion = 0;
+    private volatile RouteChangeNotifier routeChangeNotifier;
 
 
     public RouteInfoManager() {
@@ -75,7 +82,9 @@ public class RouteInfoManager {
         try {
             try {
                 this.lock.writeLock().lockInterruptibly();
-                this.topicQueueTable.remove(topic);
+                if (this.topicQueueTable.remove(topic) != null) {
+                    this.routeChanged(Collections.singleton(topic));
+                }
             }
             finally {
                 this.lock.writeLock().unlock();
@@ -115,12 +124,46 @@ public class RouteInfoManager {
             final TopicConfigSerializeWrapper topicConfigWrapper,// 6
             final List<String> filterServerList, // 7
             final Channel channel// 8
+    ) {
+        return this.registerBroker(clusterName, brokerAddr, brokerName, brokerId, haServerAddr,
+            topicConfigWrapper, filterServerList, channel, null);
+    }
+
+
+    /**
+     * @param baseDataVersion
+     *            not null if the topic configs are only the ones changed since
+     *            this data version
+     * @return null if the delta does not apply to what is registered
+     */
+    public RegisterBrokerResult registerBroker(//
+            final String clusterName,// 1
+            final String brokerAddr,// 2
+            final String brokerName,// 3
+            final long brokerId,// 4
+            final String haServerAddr,// 5
+            final TopicConfigSerializeWrapper topicConfigWrapper,// 6
+            final List<String> filterServerList, // 7
+            final Channel channel,// 8
+            final DataVersion baseDataVersion// 9
     ) {
         RegisterBrokerResult result = new RegisterBrokerResult();
         try {
             try {
                 this.lock.writeLock().lockInterruptibly();
 
+                if (baseDataVersion != null) {
+                    // A retried delta may find the target version registered already
+                    BrokerLiveInfo prev = this.brokerLiveTable.get(brokerAddr);
+                    if (null == prev || !this.brokerAddrTable.containsKey(brokerName)
+                            || !(prev.getDataVersion().equals(baseDataVersion) || prev.getDataVersion().equals(
+                                topicConfigWrapper.getDataVersion()))) {
+                        log.info("delta register of broker {} is based on {}, but it is not registered", brokerAddr,
+                            baseDataVersion);
+                        return null;
+                    }
+                }
+
                 Set<String> brokerNames = this.clusterAddrTable.get(clusterName);
                 if (null == brokerNames) {
                     brokerNames = new HashSet<String>();
@@ -142,17 +185,22 @@ public class RouteInfoManager {
                 }
                 String oldAddr = brokerData.getBrokerAddrs().put(brokerId, brokerAddr);
                 registerFirst = registerFirst || (null == oldAddr);
+                // All the routes with the broker change if its address does
+                boolean brokerChanged = !brokerAddr.equals(oldAddr);
+                Set<String> changedTopics = new HashSet<String>();
 
                 if (null != topicConfigWrapper //
                         && MixAll.MASTER_ID == brokerId) {
                     if (this.isBrokerTopicConfigChanged(brokerAddr, topicConfigWrapper.getDataVersion())//
-                            || registerFirst) {
+                            || registerFirst || baseDataVersion != null) {
                         ConcurrentHashMap<String, TopicConfig> tcTable =
                                 topicConfigWrapper.getTopicConfigTable();
                         if (tcTable != null) {
                             for (String topic : tcTable.keySet()) {
                                 TopicConfig topicConfig = tcTable.get(topic);
-                                this.createAndUpdateQueueData(brokerName, topicConfig);
+                                if (this.createAndUpdateQueueData(brokerName, topicConfig)) {
+                                    changedTopics.add(topic);
+                                }
                             }
                         }
                     }
@@ -169,14 +217,24 @@ public class RouteInfoManager {
                 }
 
                 if (filterServerList != null) {
+                    List<String> prevFilterServerList;
                     if (filterServerList.isEmpty()) {
-                        this.filterServerTable.remove(brokerAddr);
+                        prevFilterServerList = this.filterServerTable.remove(brokerAddr);
+                        brokerChanged |= prevFilterServerList != null;
                     }
                     else {
-                        this.filterServerTable.put(brokerAddr, filterServerList);
+                        prevFilterServerList = this.filterServerTable.put(brokerAddr, filterServerList);
+                        brokerChanged |= !filterServerList.equals(prevFilterServerList);
                     }
                 }
 
+                if (brokerChanged) {
+                    changedTopics.addAll(this.topicsOfBrokerName(brokerName));
+                }
+                if (!changedTopics.isEmpty()) {
+                    this.routeChanged(changedTopics);
+                }
+
                 if (MixAll.MASTER_ID != brokerId) {
                     String masterAddr = brokerData.getBrokerAddrs().get(MixAll.MASTER_ID);
                     if (masterAddr != null) {
@@ -199,6 +257,58 @@ public class RouteInfoManager {
         return result;
     }
 
+    /**
+     * Keeps a registered broker alive without touching the routes
+     *
+     * @return null if the broker is not registered at this data version
+     */
+    public RegisterBrokerResult brokerHeartbeat(//
+            final String brokerAddr,// 1
+            final String brokerName,// 2
+            final long brokerId,// 3
+            final DataVersion dataVersion,// 4
+            final Channel channel// 5
+    ) {
+        try {
+            try {
+                // Only the timestamp changes, the read lock keeps the tables stable
+                this.lock.readLock().lockInterruptibly();
+                BrokerLiveInfo brokerLiveInfo = this.brokerLiveTable.get(brokerAddr);
+                BrokerData brokerData = this.brokerAddrTable.get(brokerName);
+                if (null == brokerLiveInfo || null == brokerData
+                        || !brokerAddr.equals(brokerData.getBrokerAddrs().get(brokerId))
+                        || brokerLiveInfo.getChannel() != channel
+                        || !brokerLiveInfo.getDataVersion().equals(dataVersion)) {
+                    return null;
+                }
+
+                brokerLiveInfo.setLastUpdateTimestamp(System.currentTimeMillis());
+
+                RegisterBrokerResult result = new RegisterBrokerResult();
+                if (MixAll.MASTER_ID != brokerId) {
+                    String masterAddr = brokerData.getBrokerAddrs().get(MixAll.MASTER_ID);
+                    if (masterAddr != null) {
+                        BrokerLiveInfo masterLiveInfo = this.brokerLiveTable.get(masterAddr);
+                        if (masterLiveInfo != null) {
+                            result.setHaServerAddr(masterLiveInfo.getHaServerAddr());
+                            result.setMasterAddr(masterAddr);
+                        }
+                    }
+                }
+                return result;
+            }
+            finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        catch (Exception e) {
+            log.error("brokerHeartbeat Exception", e);
+        }
+
+        return null;
+    }
+
+
     private boolean isBrokerTopicConfigChanged(final String brokerAddr, final DataVersion dataVersion) {
         BrokerLiveInfo prev = this.brokerLiveTable.get(brokerAddr);
         if (null == prev || !prev.getDataVersion().equals(dataVersion)) {
@@ -213,7 +323,10 @@ public class RouteInfoManager {
         try {
             try {
                 this.lock.writeLock().lockInterruptibly();
-                return wipeWritePermOfBroker(brokerName);
+                Set<String> changedTopics = new HashSet<String>();
+                int wipeTopicCnt = wipeWritePermOfBroker(brokerName, changedTopics);
+                this.routeChanged(changedTopics);
+                return wipeTopicCnt;
             }
             finally {
                 this.lock.writeLock().unlock();
@@ -227,7 +340,7 @@ public class RouteInfoManager {
     }
 
 
-    private int wipeWritePermOfBroker(final String brokerName) {
+    private int wipeWritePermOfBroker(final String brokerName, final Set<String> changedTopics) {
         int wipeTopicCnt = 0;
         Iterator<Entry<String, List<QueueData>>> itTopic = this.topicQueueTable.entrySet().iterator();
         while (itTopic.hasNext()) {
@@ -242,6 +355,7 @@ public class RouteInfoManager {
                     perm &= ~PermName.PERM_WRITE;
                     qd.setPerm(perm);
                     wipeTopicCnt++;
+                    changedTopics.add(entry.getKey());
                 }
             }
         }
@@ -250,7 +364,10 @@ public class RouteInfoManager {
     }
 
 
-    private void createAndUpdateQueueData(final String brokerName, final TopicConfig topicConfig) {
+    /**
+     * @return true if the queue data of the topic changed
+     */
+    private boolean createAndUpdateQueueData(final String brokerName, final TopicConfig topicConfig) {
         QueueData queueData = new QueueData();
         queueData.setBrokerName(brokerName);
         queueData.setWriteQueueNums(topicConfig.getWriteQueueNums());
@@ -264,6 +381,7 @@ public class RouteInfoManager {
             queueDataList.add(queueData);
             this.topicQueueTable.put(topicConfig.getTopicName(), queueDataList);
             log.info("new topic registerd, {} {}", topicConfig.getTopicName(), queueData);
+            return true;
         }
         else {
             boolean addNewOne = true;
@@ -286,10 +404,50 @@ public class RouteInfoManager {
             if (addNewOne) {
                 queueDataList.add(queueData);
             }
+            return addNewOne;
         }
     }
 
 
+    private Set<String> topicsOfBrokerName(final String brokerName) {
+        Set<String> topics = new HashSet<String>();
+        for (Entry<String, List<QueueData>> entry : this.topicQueueTable.entrySet()) {
+            for (QueueData qd : entry.getValue()) {
+                if (qd.getBrokerName().equals(brokerName)) {
+                    topics.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return topics;
+    }
+
+
+    /**
+     * Drops the encoded routes of the changed topics and tells the
+     * subscribers, called with the write lock held
+     */
+    private void routeChanged(final Collection<String> changedTopics) {
+        if (changedTopics.isEmpty()) {
+            return;
+        }
+
+        this.routeVersion++;
+        for (String topic : changedTopics) {
+            this.encodedRouteTable.remove(topic);
+        }
+        RouteChangeNotifier routeChangeNotifier = this.routeChangeNotifier;
+        if (routeChangeNotifier != null) {
+            routeChangeNotifier.topicsChanged(changedTopics, this.routeVersion);
+        }
+    }
+
+
+    public void setRouteChangeNotifier(RouteChangeNotifier routeChangeNotifier) {
+        this.routeChangeNotifier = routeChangeNotifier;
+    }
+
+
     public void unregisterBroker(//
             final String clusterName,// 1
             final String brokerAddr,// 2
@@ -317,6 +475,9 @@ public class RouteInfoManager {
                         (addr != null ? "OK" : "Failed"),//
                         brokerAddr//
                     );
+                    if (addr != null) {
+                        this.routeChanged(this.topicsOfBrokerName(brokerName));
+                    }
 
                     if (brokerData.getBrokerAddrs().isEmpty()) {
                         this.brokerAddrTable.remove(brokerName);
@@ -398,7 +559,8 @@ public class RouteInfoManager {
                 this.lock.readLock().lockInterruptibly();
                 List<QueueData> queueDataList = this.topicQueueTable.get(topic);
                 if (queueDataList != null) {
-                    topicRouteData.setQueueDatas(queueDataList);
+                    // The list changes under the write lock after this returns
+                    topicRouteData.setQueueDatas(new ArrayList<QueueData>(queueDataList));
                     foundQueueData = true;
 
                     Iterator<QueueData> it = queueDataList.iterator();
@@ -444,6 +606,54 @@ public class RouteInfoManager {
         return null;
     }
 
+
+    /**
+     * Looks the topic up in the encoded routes only, takes no lock
+     *
+     * @param kvConfigVersion
+     *            the version of the kv configs the order config is read from
+     * @return the encoded route of the topic, null if it is not cached
+     */
+    public byte[] getCachedTopicRoute(final String topic, final long kvConfigVersion) {
+        EncodedTopicRoute encodedTopicRoute = this.encodedRouteTable.get(topic);
+        if (encodedTopicRoute != null && encodedTopicRoute.getKvConfigVersion() == kvConfigVersion) {
+            return encodedTopicRoute.getContent();
+        }
+        return null;
+    }
+
+
+    /**
+     * @param orderTopicConf
+     *            the order config of the topic, part of the encoded route
+     * @param kvConfigVersion
+     *            the version of the kv configs, read before the order config
+     * @return the encoded route of the topic, null if the topic has no route
+     */
+    public byte[] pickupEncodedTopicRoute(final String topic, final String orderTopicConf,
+            final long kvConfigVersion) {
+        byte[] content = this.getCachedTopicRoute(topic, kvConfigVersion);
+        if (content != null) {
+            return content;
+        }
+
+        // Read before the tables, a route change in between drops the route again
+        final long routeVersion = this.routeVersion;
+        TopicRouteData topicRouteData = this.pickupTopicRouteData(topic);
+        if (null == topicRouteData) {
+            return null;
+        }
+
+        topicRouteData.setOrderTopicConf(orderTopicConf);
+        content = topicRouteData.encode();
+        EncodedTopicRoute encodedTopicRoute = new EncodedTopicRoute(kvConfigVersion, content);
+        this.encodedRouteTable.put(topic, encodedTopicRoute);
+        if (routeVersion != this.routeVersion) {
+            this.encodedRouteTable.remove(topic, encodedTopicRoute);
+        }
+        return content;
+    }
+
     private final static long BrokerChannelExpiredTime = 1000 * 60 * 2;
 
     public void scanNotActiveBroker() {
@@ -532,6 +742,10 @@ public class RouteInfoManager {
                         }
                     }
 
+                    if (brokerNameFound != null) {
+                        this.routeChanged(this.topicsOfBrokerName(brokerNameFound));
+                    }
+
                     if (brokerNameFound != null && removeBrokerName) {
                         Iterator<Entry<String, Set<String>>> it = this.clusterAddrTable.entrySet().iterator();
                         while (it.hasNext()) {
@@ -799,7 +1013,8 @@ public class RouteInfoManager {
 
 
 class BrokerLiveInfo {
-    private long lastUpdateTimestamp;
+    // Heartbeats set it under the read lock
+    private volatile long lastUpdateTimestamp;
     private DataVersion dataVersion;
     private Channel channel;
     private String haServerAddr;
@@ -860,3 +1075,28 @@ class BrokerLiveInfo {
                 + ", channel=" + channel + ", haServerAddr=" + haServerAddr + "]";
     }
 }
+
+
+/**
+ * Encoded route of a topic, never changed once built
+ */
+class EncodedTopicRoute {
+    private final long kvConfigVersion;
+    private final byte[] content;
+
+
+    public EncodedTopicRoute(long kvConfigVersion, byte[] content) {
+        this.kvConfigVersion = kvConfigVersion;
+        this.content = content;
+    }
+
+
+    public long getKvConfigVersion() {
+        return kvConfigVersion;
+    }
+
+
+    public byte[] getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.namesrv.routeinfo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.rocketmq.common.DataVersion;
+import com.alibaba.rocketmq.common.TopicConfig;
+import com.alibaba.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
+import com.alibaba.rocketmq.common.protocol.route.TopicRouteData;
+
+
+/**
+ * @author shijia.wxr<vintage.wang@gmail.com>
+ */
+public class RouteInfoManagerTest {
+    private RouteInfoManager routeInfoManager;
+    private TopicConfigSerializeWrapper topicConfigWrapper;
+
+
+    @Before
+    public void setUp() {
+        this.routeInfoManager = new RouteInfoManager();
+        this.topicConfigWrapper = new TopicConfigSerializeWrapper();
+        for (String topic : new String[] { "TopicA", "TopicB" }) {
+            this.topicConfigWrapper.getTopicConfigTable().put(topic, new TopicConfig(topic, 4, 4, 6));
+        }
+        this.register();
+    }
+
+
+    private void register() {
+        this.routeInfoManager.registerBroker("DefaultCluster", "127.0.0.1:10911", "broker-a", 0,
+            "127.0.0.1:10912", this.topicConfigWrapper, null, null);
+    }
+
+
+    @Test
+    public void test_cached_route() {
+        assertNull(this.routeInfoManager.getCachedTopicRoute("TopicA", 0));
+
+        byte[] content = this.routeInfoManager.pickupEncodedTopicRoute("TopicA", null, 0);
+        assertNotNull(content);
+        assertArrayEquals(this.routeInfoManager.pickupTopicRouteData("TopicA").encode(), content);
+        assertSame(content, this.routeInfoManager.getCachedTopicRoute("TopicA", 0));
+        assertSame(content, this.routeInfoManager.pickupEncodedTopicRoute("TopicA", null, 0));
+
+        // A kv config change may have changed the order config
+        assertNull(this.routeInfoManager.getCachedTopicRoute("TopicA", 1));
+        content = this.routeInfoManager.pickupEncodedTopicRoute("TopicA", "broker-a:4", 1);
+        TopicRouteData topicRouteData = TopicRouteData.decode(content, TopicRouteData.class);
+        assertSame(content, this.routeInfoManager.getCachedTopicRoute("TopicA", 1));
+        assertNotNull(topicRouteData.getOrderTopicConf());
+    }
+
+
+    @Test
+    public void test_missing_topic_not_cached() {
+        assertNull(this.routeInfoManager.pickupEncodedTopicRoute("TopicC", null, 0));
+        assertNull(this.routeInfoManager.getCachedTopicRoute("TopicC", 0));
+    }
+
+
+    @Test
+    public void test_route_changed() {
+        byte[] contentA = this.routeInfoManager.pickupEncodedTopicRoute("TopicA", null, 0);
+        byte[] contentB = this.routeInfoManager.pickupEncodedTopicRoute("TopicB", null, 0);
+
+        // A registration that changes nothing keeps the routes
+        this.register();
+        assertSame(contentA, this.routeInfoManager.getCachedTopicRoute("TopicA", 0));
+
+        // Only the routes of the changed topics are dropped
+        this.routeInfoManager.deleteTopic("TopicA");
+        assertNull(this.routeInfoManager.getCachedTopicRoute("TopicA", 0));
+        assertNull(this.routeInfoManager.pickupEncodedTopicRoute("TopicA", null, 0));
+        assertSame(contentB, this.routeInfoManager.getCachedTopicRoute("TopicB", 0));
+
+        this.topicConfigWrapper.getTopicConfigTable().get("TopicB").setWriteQueueNums(8);
+        // Decoded from a new request in the name server
+        DataVersion dataVersion = new DataVersion();
+        dataVersion.nextVersion();
+        this.topicConfigWrapper.setDataVersion(dataVersion);
+        this.register();
+        assertNull(this.routeInfoManager.getCachedTopicRoute("TopicB", 0));
+        TopicRouteData topicRouteData =
+                TopicRouteData.decode(this.routeInfoManager.pickupEncodedTopicRoute("TopicB", null, 0),
+                    TopicRouteData.class);
+        assertEquals(8, topicRouteData.getQueueDatas().get(0).getWriteQueueNums());
+    }
+}
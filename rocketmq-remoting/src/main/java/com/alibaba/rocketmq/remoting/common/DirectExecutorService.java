@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.remoting.common;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Runs tasks in the submitting thread, for request processors that never
+ * block and are cheaper to run than to hand off
+ *
+ * @author shijia.wxr
+ */
+public class DirectExecutorService extends AbstractExecutorService {
+    private volatile boolean shutdown = false;
+
+
+    @Override
+    public void execute(Runnable command) {
+        if (this.shutdown) {
+            throw new RejectedExecutionException("executor shutdown");
+        }
+        command.run();
+    }
+
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+    }
+
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown = true;
+        return Collections.emptyList();
+    }
+
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+
+    @Override
+    public boolean isTerminated() {
+        return this.shutdown;
+    }
+
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.shutdown;
+    }
+}
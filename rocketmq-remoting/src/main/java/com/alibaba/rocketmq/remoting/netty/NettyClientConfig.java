@@ -38,7 +38,8 @@ public class NettyClientConfig {
 
     private int clientSocketSndBufSize = NettySystemConfig.SocketSndbufSize;
     private int clientSocketRcvBufSize = NettySystemConfig.SocketRcvbufSize;
-    private boolean clientPooledByteBufAllocatorEnable = false;
+    private boolean clientPooledByteBufAllocatorEnable = true;
+    private boolean useEpollNativeSelector = false;
 
 
     public int getClientWorkerThreads() {
@@ -139,4 +140,14 @@ public class NettyClientConfig {
     public void setClientPooledByteBufAllocatorEnable(boolean clientPooledByteBufAllocatorEnable) {
         this.clientPooledByteBufAllocatorEnable = clientPooledByteBufAllocatorEnable;
     }
+
+
+    public boolean isUseEpollNativeSelector() {
+        return useEpollNativeSelector;
+    }
+
+
+    public void setUseEpollNativeSelector(boolean useEpollNativeSelector) {
+        this.useEpollNativeSelector = useEpollNativeSelector;
+    }
 }
@@ -19,14 +19,14 @@ package com.alibaba.rocketmq.remoting.netty;
 import com.alibaba.rocketmq.remoting.common.RemotingHelper;
 import com.alibaba.rocketmq.remoting.common.RemotingUtil;
 import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.ByteBuffer;
-
 
 /**
  * @author shijia.wxr
@@ -35,6 +35,8 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
     private static final Logger log = LoggerFactory.getLogger(RemotingHelper.RemotingLogName);
     private static final int FRAME_MAX_LENGTH = //
             Integer.parseInt(System.getProperty("com.rocketmq.remoting.frameMaxLength", "8388608"));
+    // set once the peer announced it reads ROCKETMQ_COMPACT headers
+    static final AttributeKey<Boolean> PeerCompactSupported = AttributeKey.valueOf("PeerCompactSupported");
 
 
     public NettyDecoder() {
@@ -42,6 +44,16 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
     }
 
 
+    /**
+     * The frame is fully decoded and released right away, a slice of the
+     * cumulation does instead of a copy into a new buffer
+     */
+    @Override
+    protected ByteBuf extractFrame(ChannelHandlerContext ctx, ByteBuf buffer, int index, int length) {
+        return buffer.slice(index, length).retain();
+    }
+
+
     @Override
     public Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
         ByteBuf frame = null;
@@ -51,9 +63,12 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
                 return null;
             }
 
-            ByteBuffer byteBuffer = frame.nioBuffer();
-
-            return RemotingCommand.decode(byteBuffer);
+            RemotingCommand cmd = RemotingCommand.decode(frame);
+            if (NettySystemConfig.CompactHeaderEnable //
+                    && (cmd.isCompactSupported() || SerializeType.ROCKETMQ_COMPACT == cmd.getSerializeTypeCurrentRPC())) {
+                ctx.channel().attr(PeerCompactSupported).set(Boolean.TRUE);
+            }
+            return cmd;
         } catch (Exception e) {
             log.error("decode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
             RemotingUtil.closeChannel(ctx.channel());
@@ -19,37 +19,68 @@ package com.alibaba.rocketmq.remoting.netty;
 import com.alibaba.rocketmq.remoting.common.RemotingHelper;
 import com.alibaba.rocketmq.remoting.common.RemotingUtil;
 import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.ByteBuffer;
+import java.util.List;
 
 
 /**
+ * The header is written straight into a buffer from the channel allocator,
+ * the body is wrapped behind it in a composite buffer and never copied
+ *
  * @author shijia.wxr
  */
-public class NettyEncoder extends MessageToByteEncoder<RemotingCommand> {
+public class NettyEncoder extends MessageToMessageEncoder<RemotingCommand> {
     private static final Logger log = LoggerFactory.getLogger(RemotingHelper.RemotingLogName);
 
     @Override
-    public void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out)
+    public void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, List<Object> out)
             throws Exception {
+        this.negotiateSerializeType(ctx, remotingCommand);
+
+        ByteBuf header = ctx.alloc().ioBuffer();
         try {
-            ByteBuffer header = remotingCommand.encodeHeader();
-            out.writeBytes(header);
-            byte[] body = remotingCommand.getBody();
-            if (body != null) {
-                out.writeBytes(body);
-            }
+            remotingCommand.fastEncodeHeader(header);
         } catch (Exception e) {
+            header.release();
             log.error("encode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
             if (remotingCommand != null) {
                 log.error(remotingCommand.toString());
             }
             RemotingUtil.closeChannel(ctx.channel());
+            throw e;
+        }
+
+        byte[] body = remotingCommand.getBody();
+        if (body != null && body.length > 0) {
+            out.add(Unpooled.wrappedBuffer(header, Unpooled.wrappedBuffer(body)));
+        } else {
+            out.add(header);
+        }
+    }
+
+
+    /**
+     * Binary headers go out compact once the peer announced it reads them, old
+     * peers never announce and keep getting ROCKETMQ, JSON is left alone
+     */
+    private void negotiateSerializeType(ChannelHandlerContext ctx, RemotingCommand remotingCommand) {
+        if (!NettySystemConfig.CompactHeaderEnable) {
+            return;
+        }
+
+        remotingCommand.markCompactSupported();
+        if (SerializeType.ROCKETMQ == remotingCommand.getSerializeTypeCurrentRPC()
+                || SerializeType.ROCKETMQ_COMPACT == remotingCommand.getSerializeTypeCurrentRPC()) {
+            Boolean peerCompactSupported = ctx.channel().attr(NettyDecoder.PeerCompactSupported).get();
+            remotingCommand.setSerializeTypeCurrentRPC(Boolean.TRUE.equals(peerCompactSupported) //
+                    ? SerializeType.ROCKETMQ_COMPACT : SerializeType.ROCKETMQ);
         }
     }
 }
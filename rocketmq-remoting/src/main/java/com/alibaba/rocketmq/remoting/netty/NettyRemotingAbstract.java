@@ -164,6 +164,7 @@ public abstract class NettyRemotingAbstract {
                         if (!cmd.isOnewayRPC()) {
                             if (response != null) {
                                 response.setOpaque(cmd.getOpaque());
+                                response.setSerializeTypeCurrentRPC(cmd.getSerializeTypeCurrentRPC());
                                 response.markResponseType();
                                 try {
                                     ctx.writeAndFlush(response);
@@ -188,6 +189,7 @@ public abstract class NettyRemotingAbstract {
                                         RemotingSysResponseCode.SYSTEM_ERROR,//
                                         RemotingHelper.exceptionSimpleDesc(e));
                             response.setOpaque(cmd.getOpaque());
+                            response.setSerializeTypeCurrentRPC(cmd.getSerializeTypeCurrentRPC());
                             ctx.writeAndFlush(response);
                         }
                     }
@@ -210,6 +212,7 @@ public abstract class NettyRemotingAbstract {
                             RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_BUSY,
                                 "too many requests and system thread pool busy, please try another server");
                     response.setOpaque(cmd.getOpaque());
+                    response.setSerializeTypeCurrentRPC(cmd.getSerializeTypeCurrentRPC());
                     ctx.writeAndFlush(response);
                 }
             }
@@ -220,6 +223,7 @@ public abstract class NettyRemotingAbstract {
                     RemotingCommand.createResponseCommand(RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED,
                         error);
             response.setOpaque(cmd.getOpaque());
+            response.setSerializeTypeCurrentRPC(cmd.getSerializeTypeCurrentRPC());
             ctx.writeAndFlush(response);
             plog.error(RemotingHelper.parseChannelRemoteAddr(ctx.channel()) + error);
         }
@@ -30,7 +30,9 @@ import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -95,18 +97,31 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
             }
         });
 
-        this.eventLoopGroupBoss = new NioEventLoopGroup(1, new ThreadFactory() {
-            private AtomicInteger threadIndex = new AtomicInteger(0);
+        if (this.useEpoll()) {
+            // the epoll channel needs every group of the bootstrap on epoll
+            this.eventLoopGroupBoss = new EpollEventLoopGroup(1, new ThreadFactory() {
+                private AtomicInteger threadIndex = new AtomicInteger(0);
 
 
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, String.format("NettyBoss_%d", this.threadIndex.incrementAndGet()));
-            }
-        });
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, String.format("NettyEPOLLBoss_%d", this.threadIndex.incrementAndGet()));
+                }
+            });
+        }
+        else {
+            this.eventLoopGroupBoss = new NioEventLoopGroup(1, new ThreadFactory() {
+                private AtomicInteger threadIndex = new AtomicInteger(0);
+
 
-        if (RemotingUtil.isLinuxPlatform() //
-                && nettyServerConfig.isUseEpollNativeSelector()) {
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, String.format("NettyBoss_%d", this.threadIndex.incrementAndGet()));
+                }
+            });
+        }
+
+        if (this.useEpoll()) {
             this.eventLoopGroupSelector = new EpollEventLoopGroup(nettyServerConfig.getServerSelectorThreads(), new ThreadFactory() {
                 private AtomicInteger threadIndex = new AtomicInteger(0);
                 private int threadTotal = nettyServerConfig.getServerSelectorThreads();
@@ -133,6 +148,13 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
     }
 
 
+    private boolean useEpoll() {
+        return RemotingUtil.isLinuxPlatform() //
+                && nettyServerConfig.isUseEpollNativeSelector() //
+                && Epoll.isAvailable();
+    }
+
+
     @Override
     public void start() {
         this.defaultEventExecutorGroup = new DefaultEventExecutorGroup(//
@@ -149,7 +171,8 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
             });
 
         ServerBootstrap childHandler = //
-                this.serverBootstrap.group(this.eventLoopGroupBoss, this.eventLoopGroupSelector).channel(NioServerSocketChannel.class)
+                this.serverBootstrap.group(this.eventLoopGroupBoss, this.eventLoopGroupSelector)
+                    .channel(this.useEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
                     //
                     .option(ChannelOption.SO_BACKLOG, 1024)
                     //
@@ -43,4 +43,9 @@ public class NettySystemConfig {
             "com.rocketmq.remoting.clientOnewaySemaphoreValue";
     public static int ClientOnewaySemaphoreValue = //
             Integer.parseInt(System.getProperty(SystemPropertyClientOnewaySemaphoreValue, "2048"));
+
+    public static final String SystemPropertyCompactHeaderEnable = //
+            "com.rocketmq.remoting.compactHeaderEnable";
+    public static boolean CompactHeaderEnable = //
+            Boolean.parseBoolean(System.getProperty(SystemPropertyCompactHeaderEnable, "true"));
 }
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Writer;
+
+
+/**
+ * Encodes chars as UTF-8 straight into a ByteBuf, so the json header never
+ * becomes a String or a byte[]
+ *
+ * @author shijia.wxr
+ */
+class ByteBufUtf8Writer extends Writer {
+    private final ByteBuf out;
+    // high surrogate waiting for its pair, the serializer may split them
+    private char highSurrogate = 0;
+
+
+    ByteBufUtf8Writer(final ByteBuf out) {
+        this.out = out;
+    }
+
+
+    /**
+     * ByteBufUtil.writeUtf8 of this netty writes surrogate pairs as two
+     * chars, not the same bytes as String.getBytes
+     *
+     * @return bytes written
+     */
+    static int writeUtf8(final ByteBuf out, final String str) {
+        final int beginIndex = out.writerIndex();
+        final ByteBufUtf8Writer writer = new ByteBufUtf8Writer(out);
+        for (int i = 0; i < str.length(); i++) {
+            writer.write(str.charAt(i));
+        }
+        writer.close();
+        return out.writerIndex() - beginIndex;
+    }
+
+
+    /**
+     * Bytes writeUtf8 is going to write
+     */
+    static int utf8Length(final String str) {
+        int length = 0;
+        for (int i = 0; i < str.length(); i++) {
+            final char ch = str.charAt(i);
+            if (ch < 0x80) {
+                length += 1;
+            }
+            else if (ch < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(ch) && i + 1 < str.length()
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else if (ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE) {
+                // unpaired, written as '?'
+                length += 1;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            this.write(cbuf[i]);
+        }
+    }
+
+
+    @Override
+    public void write(int c) {
+        final char ch = (char) c;
+        if (this.highSurrogate != 0) {
+            final char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(ch)) {
+                final int codePoint = Character.toCodePoint(high, ch);
+                this.out.writeByte(0xF0 | (codePoint >> 18));
+                this.out.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                this.out.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                this.out.writeByte(0x80 | (codePoint & 0x3F));
+                return;
+            }
+            // unpaired, same as String.getBytes
+            this.out.writeByte('?');
+        }
+
+        if (ch < 0x80) {
+            this.out.writeByte(ch);
+        }
+        else if (ch < 0x800) {
+            this.out.writeByte(0xC0 | (ch >> 6));
+            this.out.writeByte(0x80 | (ch & 0x3F));
+        }
+        else if (Character.isHighSurrogate(ch)) {
+            this.highSurrogate = ch;
+        }
+        else if (Character.isLowSurrogate(ch)) {
+            this.out.writeByte('?');
+        }
+        else {
+            this.out.writeByte(0xE0 | (ch >> 12));
+            this.out.writeByte(0x80 | ((ch >> 6) & 0x3F));
+            this.out.writeByte(0x80 | (ch & 0x3F));
+        }
+    }
+
+
+    @Override
+    public void flush() {
+    }
+
+
+    @Override
+    public void close() {
+        if (this.highSurrogate != 0) {
+            this.highSurrogate = 0;
+            this.out.writeByte('?');
+        }
+    }
+}
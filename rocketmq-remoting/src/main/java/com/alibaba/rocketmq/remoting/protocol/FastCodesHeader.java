@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import io.netty.buffer.ByteBuf;
+
+import java.util.HashMap;
+
+
+/**
+ * Implemented by the hot CommandCustomHeader classes to be written and read
+ * without reflection, other headers keep going through the reflection in
+ * RemotingCommand
+ *
+ * @author shijia.wxr
+ */
+public interface FastCodesHeader {
+    /**
+     * Writes the non null fields as extFields entries of the ROCKETMQ or
+     * ROCKETMQ_COMPACT header, see RocketMQSerializable.writeKeyValue
+     */
+    void encode(final ByteBuf out, final SerializeType type);
+
+
+    /**
+     * Fills the fields from extFields, absent or unparsable values stay null
+     * the same as the reflection decoding
+     */
+    void decode(final HashMap<String, String> fields) throws RemotingCommandException;
+}
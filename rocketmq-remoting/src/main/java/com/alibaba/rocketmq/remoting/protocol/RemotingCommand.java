@@ -21,6 +21,8 @@ import com.alibaba.rocketmq.remoting.CommandCustomHeader;
 import com.alibaba.rocketmq.remoting.annotation.CFNotNull;
 import com.alibaba.rocketmq.remoting.common.RemotingHelper;
 import com.alibaba.rocketmq.remoting.exception.RemotingCommandException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +51,8 @@ public class RemotingCommand {
 
     private static final int RPC_ONEWAY = 1; // 0, RPC
     // 1, Oneway
+    private static final int RPC_COMPACT_SUPPORTED = 2; // 1, the sender reads
+    // ROCKETMQ_COMPACT headers
 
     private int code;
     private LanguageCode language = LanguageCode.JAVA;
@@ -65,7 +69,7 @@ public class RemotingCommand {
     private static final Map<Class, String> canonicalNameCache = new HashMap<Class, String>();
     private static final Map<Field, Annotation> notNullAnnotationCache = new HashMap<Field, Annotation>();
 
-    private static SerializeType SerializeTypeConfigInThisServer = SerializeType.JSON;
+    private static SerializeType SerializeTypeConfigInThisServer = SerializeType.ROCKETMQ;
     static {
         final String protocol = System.getProperty(SERIALIZE_TYPE_PROPERTY, System.getenv(SERIALIZE_TYPE_ENV));
         if (!isBlank(protocol)) {
@@ -250,7 +254,11 @@ public class RemotingCommand {
             return null;
         }
 
-        if (this.extFields != null) {
+        if (this.extFields != null && objectHeader instanceof FastCodesHeader) {
+            ((FastCodesHeader) objectHeader).decode(this.extFields);
+            objectHeader.checkFields();
+        }
+        else if (this.extFields != null) {
             Field[] fields = getClazzFields(classHeader);
             for (Field field : fields) {
                 if (!Modifier.isStatic(field.getModifiers())) {
@@ -307,6 +315,17 @@ public class RemotingCommand {
 
 
     private byte[] headerEncode() {
+        if (SerializeType.ROCKETMQ_COMPACT == serializeTypeCurrentRPC) {
+            if (!(this.customHeader instanceof FastCodesHeader)) {
+                this.makeCustomHeaderToNet();
+            }
+            ByteBuf out = Unpooled.buffer();
+            RocketMQCompactSerializable.rocketMQProtocolEncode(this, out);
+            byte[] headerData = new byte[out.readableBytes()];
+            out.readBytes(headerData);
+            return headerData;
+        }
+
         this.makeCustomHeaderToNet();
         if (SerializeType.ROCKETMQ == serializeTypeCurrentRPC) {
             return RocketMQSerializable.rocketMQProtocolEncode(this);
@@ -327,6 +346,10 @@ public class RemotingCommand {
             RemotingCommand resultRMQ = RocketMQSerializable.rocketMQProtocolDecode(headerData);
             resultRMQ.setSerializeTypeCurrentRPC(type);
             return resultRMQ;
+        case ROCKETMQ_COMPACT:
+            RemotingCommand resultCompact = RocketMQCompactSerializable.rocketMQProtocolDecode(headerData);
+            resultCompact.setSerializeTypeCurrentRPC(type);
+            return resultCompact;
         default:
             break;
         }
@@ -335,6 +358,24 @@ public class RemotingCommand {
     }
 
 
+    private static RemotingCommand headerDecode(ByteBuf header, SerializeType type) {
+        if (SerializeType.ROCKETMQ == type) {
+            RemotingCommand resultRMQ = RocketMQSerializable.rocketMQProtocolDecode(header);
+            resultRMQ.setSerializeTypeCurrentRPC(type);
+            return resultRMQ;
+        }
+        else if (SerializeType.ROCKETMQ_COMPACT == type) {
+            RemotingCommand resultCompact = RocketMQCompactSerializable.rocketMQProtocolDecode(header);
+            resultCompact.setSerializeTypeCurrentRPC(type);
+            return resultCompact;
+        }
+
+        byte[] headerData = new byte[header.readableBytes()];
+        header.readBytes(headerData);
+        return headerDecode(headerData, type);
+    }
+
+
     public ByteBuffer encode() {
         // 1> header length size
         int length = 4;
@@ -404,6 +445,41 @@ public class RemotingCommand {
     }
 
 
+    /**
+     * Writes length, header length and header into the buffer, same bytes as
+     * encodeHeader() without the intermediate ByteBuffer
+     */
+    public void fastEncodeHeader(final ByteBuf out) {
+        final int bodyLength = this.body != null ? this.body.length : 0;
+        final int beginIndex = out.writerIndex();
+        // length and header length, filled in at last
+        out.writeLong(0);
+
+        int headerLength;
+        if (SerializeType.ROCKETMQ == serializeTypeCurrentRPC
+                || SerializeType.ROCKETMQ_COMPACT == serializeTypeCurrentRPC) {
+            // fast headers write themselves behind extFields
+            if (!(this.customHeader instanceof FastCodesHeader)) {
+                this.makeCustomHeaderToNet();
+            }
+            headerLength = SerializeType.ROCKETMQ == serializeTypeCurrentRPC //
+                    ? RocketMQSerializable.rocketMQProtocolEncode(this, out) //
+                    : RocketMQCompactSerializable.rocketMQProtocolEncode(this, out);
+        }
+        else {
+            this.makeCustomHeaderToNet();
+            RemotingSerializable.encode(this, out);
+            headerLength = out.writerIndex() - beginIndex - 8;
+        }
+
+        // length
+        out.setInt(beginIndex, 4 + headerLength + bodyLength);
+        // header length
+        out.setByte(beginIndex + 4, serializeTypeCurrentRPC.getCode());
+        out.setMedium(beginIndex + 5, headerLength);
+    }
+
+
     public static RemotingCommand decode(final byte[] array) {
         ByteBuffer byteBuffer = ByteBuffer.wrap(array);
         return decode(byteBuffer);
@@ -432,6 +508,29 @@ public class RemotingCommand {
     }
 
 
+    /**
+     * Decodes from the frame without nioBuffer(), the binary headers are read
+     * in place and only the body is copied out
+     */
+    public static RemotingCommand decode(final ByteBuf frame) {
+        int length = frame.readableBytes();
+        int oriHeaderLen = frame.readInt();
+        int headerLength = getHeaderLength(oriHeaderLen);
+
+        RemotingCommand cmd = headerDecode(frame.readSlice(headerLength), getProtocolType(oriHeaderLen));
+
+        int bodyLength = length - 4 - headerLength;
+        byte[] bodyData = null;
+        if (bodyLength > 0) {
+            bodyData = new byte[bodyLength];
+            frame.readBytes(bodyData);
+        }
+        cmd.body = bodyData;
+
+        return cmd;
+    }
+
+
     public static byte[] markProtocolType(int source, SerializeType type) {
         byte[] result = new byte[4];
         result[0] = type.getCode();
@@ -478,6 +577,19 @@ public class RemotingCommand {
     }
 
 
+    public void markCompactSupported() {
+        int bits = 1 << RPC_COMPACT_SUPPORTED;
+        this.flag |= bits;
+    }
+
+
+    @JSONField(serialize = false)
+    public boolean isCompactSupported() {
+        int bits = 1 << RPC_COMPACT_SUPPORTED;
+        return (this.flag & bits) == bits;
+    }
+
+
     public int getCode() {
         return code;
     }
@@ -17,6 +17,9 @@
 package com.alibaba.rocketmq.remoting.protocol;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import io.netty.buffer.ByteBuf;
 
 import java.nio.charset.Charset;
 
@@ -66,6 +69,23 @@ public abstract class RemotingSerializable {
     }
 
 
+    /**
+     * Same bytes as encode(obj), written into the buffer without the
+     * intermediate String and byte[]
+     */
+    public static void encode(final Object obj, final ByteBuf out) {
+        final ByteBufUtf8Writer writer = new ByteBufUtf8Writer(out);
+        final SerializeWriter serializeWriter = new SerializeWriter(writer);
+        try {
+            new JSONSerializer(serializeWriter).write(obj);
+        }
+        finally {
+            serializeWriter.close();
+        }
+        writer.close();
+    }
+
+
     public static <T> T decode(final byte[] data, Class<T> classOfT) {
         final String json = new String(data, CHARSET_UTF8);
         return fromJson(json, classOfT);
@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Compact form of the ROCKETMQ header, only sent to peers that announced
+ * they can read it:
+ *
+ * <pre>
+ * code, version, opaque, flag     unsigned varint
+ * language                        1 byte
+ * remark                          varint length + utf8, 0 for null
+ * extFields, up to the end        key: varint table index + 1, or 0 and
+ *                                      varint length + utf8
+ *                                 value: varint 0 and zigzag varint for
+ *                                        a decimal number, or varint
+ *                                        length + 1 and utf8
+ * </pre>
+ *
+ * @author shijia.wxr
+ */
+public class RocketMQCompactSerializable {
+    /**
+     * Keys of the frequent headers, append only, the index is on the wire
+     */
+    private static final String[] KeyTable = new String[] {
+        // SendMessageRequestHeaderV2
+        "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k",
+        // SendMessageResponseHeader
+        "msgId", "queueId", "queueOffset", "transactionId",
+        // PullMessageRequestHeader
+        "consumerGroup", "topic", "maxMsgNums", "sysFlag", "commitOffset", "suspendTimeoutMillis",
+        "subscription", "subVersion",
+        // PullMessageResponseHeader
+        "suggestWhichBrokerId", "nextBeginOffset", "minOffset", "maxOffset",
+        // others
+        "producerGroup", "defaultTopic", "defaultTopicQueueNums", "bornTimestamp", "flag", "properties",
+        "reconsumeTimes", "unitMode", "brokerName", "brokerAddr", "brokerId", "clusterName",
+        "haServerAddr", "offset", "commitLogOffset", "tranStateTableOffset", "commitOrRollback",
+        "fromTransactionCheck", "group", "clientID", "originMsgId", "originTopic", "delayLevel",
+        "maxReconsumeTimes", "timestamp", "key", "maxNum", "beginTimestamp", "endTimestamp" };
+
+    private static final HashMap<String, Integer> KeyIndex = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < KeyTable.length; i++) {
+            KeyIndex.put(KeyTable[i], i + 1);
+        }
+    }
+
+
+    /**
+     * @return header length
+     */
+    public static int rocketMQProtocolEncode(RemotingCommand cmd, ByteBuf out) {
+        final int beginIndex = out.writerIndex();
+        writeVarInt(out, cmd.getCode());
+        out.writeByte(cmd.getLanguage().getCode());
+        writeVarInt(out, cmd.getVersion());
+        writeVarInt(out, cmd.getOpaque());
+        writeVarInt(out, cmd.getFlag());
+        // String remark
+        if (cmd.getRemark() != null && cmd.getRemark().length() > 0) {
+            writeString(out, cmd.getRemark(), 0);
+        }
+        else {
+            out.writeByte(0);
+        }
+        // HashMap<String, String> extFields
+        if (cmd.getExtFields() != null) {
+            for (Map.Entry<String, String> entry : cmd.getExtFields().entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    writeKeyValue(out, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        // custom header fields not copied into extFields
+        if (cmd.readCustomHeader() instanceof FastCodesHeader) {
+            ((FastCodesHeader) cmd.readCustomHeader()).encode(out, SerializeType.ROCKETMQ_COMPACT);
+        }
+
+        return out.writerIndex() - beginIndex;
+    }
+
+
+    public static RemotingCommand rocketMQProtocolDecode(final byte[] headerArray) {
+        return rocketMQProtocolDecode(Unpooled.wrappedBuffer(headerArray));
+    }
+
+
+    public static RemotingCommand rocketMQProtocolDecode(final ByteBuf headerBuffer) {
+        RemotingCommand cmd = new RemotingCommand();
+        cmd.setCode(readVarInt(headerBuffer));
+        cmd.setLanguage(LanguageCode.valueOf(headerBuffer.readByte()));
+        cmd.setVersion(readVarInt(headerBuffer));
+        cmd.setOpaque(readVarInt(headerBuffer));
+        cmd.setFlag(readVarInt(headerBuffer));
+        // String remark
+        int remarkLength = readVarInt(headerBuffer);
+        if (remarkLength > 0) {
+            cmd.setRemark(RocketMQSerializable.readString(headerBuffer, remarkLength));
+        }
+        // HashMap<String, String> extFields
+        if (headerBuffer.isReadable()) {
+            HashMap<String, String> extFields = new HashMap<String, String>();
+            while (headerBuffer.isReadable()) {
+                String key;
+                int keyRef = readVarInt(headerBuffer);
+                if (keyRef > 0) {
+                    key = KeyTable[keyRef - 1];
+                }
+                else {
+                    key = RocketMQSerializable.readString(headerBuffer, readVarInt(headerBuffer));
+                }
+
+                String value;
+                int valueRef = readVarInt(headerBuffer);
+                if (valueRef > 0) {
+                    value = RocketMQSerializable.readString(headerBuffer, valueRef - 1);
+                }
+                else {
+                    value = String.valueOf(readVarLong(headerBuffer));
+                }
+                extFields.put(key, value);
+            }
+            cmd.setExtFields(extFields);
+        }
+        return cmd;
+    }
+
+
+    public static void writeKeyValue(final ByteBuf out, final String key, final Object value) {
+        if (value == null) {
+            return;
+        }
+
+        Integer index = KeyIndex.get(key);
+        if (index != null) {
+            writeVarInt(out, index);
+        }
+        else {
+            out.writeByte(0);
+            writeString(out, key, 0);
+        }
+
+        if (value instanceof Long || value instanceof Integer) {
+            out.writeByte(0);
+            writeVarLong(out, ((Number) value).longValue());
+        }
+        else {
+            final String str = value.toString();
+            if (isDecimalNumber(str)) {
+                out.writeByte(0);
+                writeVarLong(out, Long.parseLong(str));
+            }
+            else {
+                writeString(out, str, 1);
+            }
+        }
+    }
+
+
+    /**
+     * Only the strings Long.toString gives back, anything else has to stay
+     * a string to be read back the same
+     */
+    private static boolean isDecimalNumber(final String str) {
+        final int length = str.length();
+        if (length == 0 || length > 18) {
+            return false;
+        }
+
+        int i = str.charAt(0) == '-' ? 1 : 0;
+        if (i == length || (str.charAt(i) == '0' && (length > i + 1 || i == 1))) {
+            return false;
+        }
+
+        for (; i < length; i++) {
+            final char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Writes varint(utf8 length + lengthBias) and the utf8 bytes
+     */
+    private static void writeString(final ByteBuf out, final String str, final int lengthBias) {
+        // short strings always fit a one byte length, filled in afterwards
+        if (str.length() * 3 + lengthBias < 0x80) {
+            final int lengthIndex = out.writerIndex();
+            out.writeByte(0);
+            out.setByte(lengthIndex, ByteBufUtf8Writer.writeUtf8(out, str) + lengthBias);
+        }
+        else {
+            writeVarInt(out, ByteBufUtf8Writer.utf8Length(str) + lengthBias);
+            ByteBufUtf8Writer.writeUtf8(out, str);
+        }
+    }
+
+
+    public static void writeVarInt(final ByteBuf out, final int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+
+    public static int readVarInt(final ByteBuf buffer) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = buffer.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+
+    public static void writeVarLong(final ByteBuf out, final long value) {
+        // zigzag, small negative numbers stay short
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+
+    public static long readVarLong(final ByteBuf buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (result >>> 1) ^ -(result & 1);
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+}
@@ -16,6 +16,9 @@
  */
 package com.alibaba.rocketmq.remoting.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
@@ -28,6 +31,13 @@ import java.util.Map;
  */
 public class RocketMQSerializable {
     public static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+    private static final int ReadStringScratchSize = 1024;
+    private static final ThreadLocal<byte[]> ReadStringScratch = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[ReadStringScratchSize];
+        }
+    };
 
 
     private static int calTotalLen(int remark, int ext) {
@@ -101,38 +111,90 @@ public class RocketMQSerializable {
     }
 
 
+    /**
+     * Same layout as rocketMQProtocolEncode(cmd), written into the buffer
+     * directly, the lengths are filled in after the content
+     *
+     * @return header length
+     */
+    public static int rocketMQProtocolEncode(RemotingCommand cmd, ByteBuf out) {
+        final int beginIndex = out.writerIndex();
+        // int code(~32767)
+        out.writeShort((short) cmd.getCode());
+        // LanguageCode language
+        out.writeByte(cmd.getLanguage().getCode());
+        // int version(~32767)
+        out.writeShort((short) cmd.getVersion());
+        // int opaque
+        out.writeInt(cmd.getOpaque());
+        // int flag
+        out.writeInt(cmd.getFlag());
+        // String remark
+        final int remarkIndex = out.writerIndex();
+        out.writeInt(0);
+        if (cmd.getRemark() != null && cmd.getRemark().length() > 0) {
+            out.setInt(remarkIndex, ByteBufUtf8Writer.writeUtf8(out, cmd.getRemark()));
+        }
+        // HashMap<String, String> extFields
+        final int extIndex = out.writerIndex();
+        out.writeInt(0);
+        if (cmd.getExtFields() != null && !cmd.getExtFields().isEmpty()) {
+            mapSerialize(cmd.getExtFields(), out);
+        }
+        // custom header fields not copied into extFields
+        if (cmd.readCustomHeader() instanceof FastCodesHeader) {
+            ((FastCodesHeader) cmd.readCustomHeader()).encode(out, SerializeType.ROCKETMQ);
+        }
+        out.setInt(extIndex, out.writerIndex() - extIndex - 4);
+
+        return out.writerIndex() - beginIndex;
+    }
+
+
     public static RemotingCommand rocketMQProtocolDecode(final byte[] headerArray) {
+        return rocketMQProtocolDecode(Unpooled.wrappedBuffer(headerArray));
+    }
+
+
+    /**
+     * Reads the header straight from the frame, no intermediate byte[]
+     */
+    public static RemotingCommand rocketMQProtocolDecode(final ByteBuf headerBuffer) {
         RemotingCommand cmd = new RemotingCommand();
-        ByteBuffer headerBuffer = ByteBuffer.wrap(headerArray);
         // int code(~32767)
-        cmd.setCode(headerBuffer.getShort());
+        cmd.setCode(headerBuffer.readShort());
         // LanguageCode language
-        cmd.setLanguage(LanguageCode.valueOf(headerBuffer.get()));
+        cmd.setLanguage(LanguageCode.valueOf(headerBuffer.readByte()));
         // int version(~32767)
-        cmd.setVersion(headerBuffer.getShort());
+        cmd.setVersion(headerBuffer.readShort());
         // int opaque
-        cmd.setOpaque(headerBuffer.getInt());
+        cmd.setOpaque(headerBuffer.readInt());
         // int flag
-        cmd.setFlag(headerBuffer.getInt());
+        cmd.setFlag(headerBuffer.readInt());
         // String remark
-        int remarkLength = headerBuffer.getInt();
+        int remarkLength = headerBuffer.readInt();
         if (remarkLength > 0) {
-            byte[] remarkContent = new byte[remarkLength];
-            headerBuffer.get(remarkContent);
-            cmd.setRemark(new String(remarkContent, RemotingSerializable.CHARSET_UTF8));
+            cmd.setRemark(readString(headerBuffer, remarkLength));
         }
 
         // HashMap<String, String> extFields
-        int extFieldsLength = headerBuffer.getInt();
+        int extFieldsLength = headerBuffer.readInt();
         if (extFieldsLength > 0) {
-            byte[] extFieldsBytes = new byte[extFieldsLength];
-            headerBuffer.get(extFieldsBytes);
-            cmd.setExtFields(mapDeserialize(extFieldsBytes));
+            cmd.setExtFields(mapDeserialize(headerBuffer, extFieldsLength));
         }
         return cmd;
     }
 
 
+    static String readString(final ByteBuf buffer, final int length) {
+        // ByteBuf.toString goes through a ByteBuffer and a CharBuffer, a
+        // scratch array leaves only the String
+        byte[] scratch = length <= ReadStringScratchSize ? ReadStringScratch.get() : new byte[length];
+        buffer.readBytes(scratch, 0, length);
+        return new String(scratch, 0, length, RemotingSerializable.CHARSET_UTF8);
+    }
+
+
     public static byte[] mapSerialize(HashMap<String, String> map) {
         // keySize+key+valSize+val
         // keySize+key+valSize+val
@@ -176,6 +238,63 @@ public class RocketMQSerializable {
     }
 
 
+    public static void mapSerialize(HashMap<String, String> map, ByteBuf out) {
+        // keySize+key+valSize+val
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                final int keyIndex = out.writerIndex();
+                out.writeShort(0);
+                out.setShort(keyIndex, ByteBufUtf8Writer.writeUtf8(out, entry.getKey()));
+
+                final int valIndex = out.writerIndex();
+                out.writeInt(0);
+                out.setInt(valIndex, ByteBufUtf8Writer.writeUtf8(out, entry.getValue()));
+            }
+        }
+    }
+
+
+    public static void writeKeyValue(final ByteBuf out, final SerializeType type, final String key,
+            final Object value) {
+        if (SerializeType.ROCKETMQ_COMPACT == type) {
+            RocketMQCompactSerializable.writeKeyValue(out, key, value);
+        }
+        else if (value != null) {
+            final int keyIndex = out.writerIndex();
+            out.writeShort(0);
+            out.setShort(keyIndex, ByteBufUtf8Writer.writeUtf8(out, key));
+
+            final int valIndex = out.writerIndex();
+            out.writeInt(0);
+            out.setInt(valIndex, ByteBufUtf8Writer.writeUtf8(out, value.toString()));
+        }
+    }
+
+
+    public static Integer parseInteger(final String value) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException e) {
+            }
+        }
+        return null;
+    }
+
+
+    public static Long parseLong(final String value) {
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            }
+            catch (NumberFormatException e) {
+            }
+        }
+        return null;
+    }
+
+
     public static HashMap<String, String> mapDeserialize(byte[] bytes) {
         if (bytes == null || bytes.length <= 0)
             return null;
@@ -203,6 +322,18 @@ public class RocketMQSerializable {
     }
 
 
+    public static HashMap<String, String> mapDeserialize(final ByteBuf buffer, final int length) {
+        HashMap<String, String> map = new HashMap<String, String>();
+        final int endIndex = buffer.readerIndex() + length;
+        while (buffer.readerIndex() < endIndex) {
+            String key = readString(buffer, buffer.readShort());
+            String val = readString(buffer, buffer.readInt());
+            map.put(key, val);
+        }
+        return map;
+    }
+
+
     public static boolean isBlank(String str) {
         int strLen;
         if (str == null || (strLen = str.length()) == 0) {
@@ -19,7 +19,9 @@ package com.alibaba.rocketmq.remoting.protocol;
 
 public enum SerializeType {
     JSON((byte) 0),
-    ROCKETMQ((byte) 1);
+    ROCKETMQ((byte) 1),
+    // only to peers that announced it, see RemotingCommand.markCompactSupported
+    ROCKETMQ_COMPACT((byte) 2);
 
     SerializeType(byte code) {
         this.code = code;
@@ -21,11 +21,20 @@ import com.alibaba.rocketmq.remoting.annotation.CFNullable;
 import com.alibaba.rocketmq.remoting.exception.*;
 import com.alibaba.rocketmq.remoting.netty.*;
 import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollSocketChannel;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -81,6 +90,114 @@ public class NettyRPCTest {
     }
 
 
+    @Test
+    public void test_RPC_compact_header() throws InterruptedException, RemotingConnectException,
+            RemotingSendRequestException, RemotingTimeoutException {
+        RemotingServer server = createRemotingServer();
+        RemotingClient client = createRemotingClient();
+
+        for (int i = 0; i < 3; i++) {
+            TestRequestHeader requestHeader = new TestRequestHeader();
+            requestHeader.setCount(i);
+            requestHeader.setMessageTitle("HelloMessageTitle");
+            RemotingCommand request = RemotingCommand.createRequestCommand(0, requestHeader);
+            RemotingCommand response = client.invokeSync("localhost:8888", request, 1000 * 3);
+            // the first request announces it, the answers are compact
+            assertEquals(SerializeType.ROCKETMQ_COMPACT, response.getSerializeTypeCurrentRPC());
+            assertEquals(String.valueOf(i), response.getExtFields().get("count"));
+        }
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+
+    @Test
+    public void test_RPC_json_request() throws InterruptedException, RemotingConnectException,
+            RemotingSendRequestException, RemotingTimeoutException {
+        NettyServerConfig config = new NettyServerConfig();
+        RemotingServer server = new NettyRemotingServer(config);
+        server.registerProcessor(1, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                // Created with the serialize type of this server, not of the request
+                return RemotingCommand.createResponseCommand(0, "hello, " + request.getExtFields().get("count"));
+            }
+        }, Executors.newCachedThreadPool());
+        server.start();
+        RemotingClient client = createRemotingClient();
+
+        for (int i = 0; i < 3; i++) {
+            TestRequestHeader requestHeader = new TestRequestHeader();
+            requestHeader.setCount(i);
+            requestHeader.setMessageTitle("HelloMessageTitle");
+            RemotingCommand request = RemotingCommand.createRequestCommand(1, requestHeader);
+            request.setSerializeTypeCurrentRPC(SerializeType.JSON);
+            RemotingCommand response = client.invokeSync("localhost:8888", request, 1000 * 3);
+            // A peer that only speaks JSON gets JSON back
+            assertEquals(SerializeType.JSON, response.getSerializeTypeCurrentRPC());
+            assertEquals("hello, " + i, response.getRemark());
+        }
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+
+    @Test
+    public void test_RPC_epoll() throws InterruptedException, RemotingConnectException,
+            RemotingSendRequestException, RemotingTimeoutException, RemotingTooMuchRequestException {
+        Assume.assumeTrue(Epoll.isAvailable());
+
+        final AtomicReference<Channel> serverChannel = new AtomicReference<Channel>();
+        NettyServerConfig serverConfig = new NettyServerConfig();
+        serverConfig.setUseEpollNativeSelector(true);
+        RemotingServer server = new NettyRemotingServer(serverConfig);
+        server.registerProcessor(0, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                serverChannel.set(ctx.channel());
+                return request;
+            }
+        }, Executors.newCachedThreadPool());
+        server.start();
+
+        // The client falls back to NIO silently, so it reports the channel
+        // a request from the server came in on
+        final AtomicReference<Channel> clientChannel = new AtomicReference<Channel>();
+        final CountDownLatch clientRequested = new CountDownLatch(1);
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        clientConfig.setUseEpollNativeSelector(true);
+        RemotingClient client = new NettyRemotingClient(clientConfig);
+        client.registerProcessor(1, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                clientChannel.set(ctx.channel());
+                clientRequested.countDown();
+                return null;
+            }
+        }, Executors.newCachedThreadPool());
+        client.start();
+
+        for (int i = 0; i < 100; i++) {
+            RemotingCommand request = RemotingCommand.createRequestCommand(0, null);
+            request.setRemark(String.valueOf(i));
+            request.setBody(new byte[1024 * i]);
+            RemotingCommand response = client.invokeSync("localhost:8888", request, 1000 * 3);
+            assertEquals(String.valueOf(i), response.getRemark());
+            assertEquals(1024 * i, response.getBody() == null ? 0 : response.getBody().length);
+        }
+
+        assertTrue(serverChannel.get() instanceof EpollSocketChannel);
+        server.invokeOneway(serverChannel.get(), RemotingCommand.createRequestCommand(1, null), 1000 * 3);
+        assertTrue(clientRequested.await(3, TimeUnit.SECONDS));
+        assertTrue(clientChannel.get() instanceof EpollSocketChannel);
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+
     @Test
     public void test_RPC_Oneway() throws InterruptedException, RemotingConnectException,
             RemotingTimeoutException, RemotingTooMuchRequestException, RemotingSendRequestException {
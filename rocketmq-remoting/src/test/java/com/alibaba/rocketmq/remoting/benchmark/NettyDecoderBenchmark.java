@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.remoting.benchmark;
+
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * NettyDecoder before and after: a copied unpooled frame decoded through
+ * nioBuffer(), against a slice of the pooled cumulation decoded in place.
+ * main() runs it with the gc profiler, gc.alloc.rate.norm is the allocation
+ * per decoded request
+ *
+ * @author shijia.wxr
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NettyDecoderBenchmark {
+    @Param({ "ROCKETMQ", "ROCKETMQ_COMPACT" })
+    private SerializeType serializeType;
+
+    // what the channel has read, the frame without its length field
+    private ByteBuf cumulation;
+
+
+    @Setup
+    public void setup() {
+        RemotingCommand request = RemotingCommand.createRequestCommand(310, null);
+        request.setSerializeTypeCurrentRPC(this.serializeType);
+        HashMap<String, String> extFields = new HashMap<String, String>();
+        extFields.put("a", "ProducerGroupTest");
+        extFields.put("b", "TopicTest");
+        extFields.put("c", "TBW102");
+        extFields.put("d", "4");
+        extFields.put("e", "1");
+        extFields.put("f", "0");
+        extFields.put("g", "1476576000000");
+        extFields.put("h", "0");
+        extFields.put("i", "KEYS\u0001key1\u0002TAGS\u0001TagA\u0002WAIT\u0001true\u0002");
+        extFields.put("j", "0");
+        extFields.put("k", "false");
+        request.setExtFields(extFields);
+        request.setBody(new byte[1024]);
+
+        this.cumulation = PooledByteBufAllocator.DEFAULT.directBuffer();
+        request.fastEncodeHeader(this.cumulation);
+        this.cumulation.writeBytes(request.getBody());
+        this.cumulation.skipBytes(4);
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.cumulation.release();
+    }
+
+
+    @Benchmark
+    public RemotingCommand oldDecode() {
+        ByteBuf frame = UnpooledByteBufAllocator.DEFAULT.heapBuffer(this.cumulation.readableBytes());
+        frame.writeBytes(this.cumulation, this.cumulation.readerIndex(), this.cumulation.readableBytes());
+        try {
+            return RemotingCommand.decode(frame.nioBuffer());
+        }
+        finally {
+            frame.release();
+        }
+    }
+
+
+    @Benchmark
+    public RemotingCommand newDecode() {
+        ByteBuf frame = this.cumulation.slice(this.cumulation.readerIndex(), this.cumulation.readableBytes()).retain();
+        try {
+            return RemotingCommand.decode(frame);
+        }
+        finally {
+            frame.release();
+        }
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NettyDecoderBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.remoting.benchmark;
+
+import com.alibaba.rocketmq.remoting.protocol.RemotingCommand;
+import com.alibaba.rocketmq.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Old and new NettyEncoder paths for a send response (header only) and a
+ * pull response (header and messages in the body), run with main()
+ *
+ * @author shijia.wxr
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NettyEncoderBenchmark {
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    @Param({ "JSON", "ROCKETMQ" })
+    private SerializeType serializeType;
+
+    private RemotingCommand sendResponse;
+    private RemotingCommand pullResponse;
+
+
+    @Setup
+    public void setup() {
+        this.sendResponse = RemotingCommand.createResponseCommand(0, null);
+        this.sendResponse.setSerializeTypeCurrentRPC(this.serializeType);
+        HashMap<String, String> sendFields = new HashMap<String, String>();
+        sendFields.put("msgId", "0A0B0C0D00002A9F00000000001E8480");
+        sendFields.put("queueId", "3");
+        sendFields.put("queueOffset", "1234567");
+        this.sendResponse.setExtFields(sendFields);
+
+        this.pullResponse = RemotingCommand.createResponseCommand(0, "FOUND");
+        this.pullResponse.setSerializeTypeCurrentRPC(this.serializeType);
+        HashMap<String, String> pullFields = new HashMap<String, String>();
+        pullFields.put("suggestWhichBrokerId", "0");
+        pullFields.put("nextBeginOffset", "1234599");
+        pullFields.put("minOffset", "0");
+        pullFields.put("maxOffset", "1300000");
+        this.pullResponse.setExtFields(pullFields);
+        // 32 messages of 1K
+        this.pullResponse.setBody(new byte[32 * 1024]);
+    }
+
+
+    private ByteBuf oldEncode(final RemotingCommand cmd) {
+        ByteBuf out = this.allocator.ioBuffer();
+        ByteBuffer header = cmd.encodeHeader();
+        out.writeBytes(header);
+        byte[] body = cmd.getBody();
+        if (body != null) {
+            out.writeBytes(body);
+        }
+        return out;
+    }
+
+
+    private ByteBuf newEncode(final RemotingCommand cmd) {
+        ByteBuf header = this.allocator.ioBuffer();
+        cmd.fastEncodeHeader(header);
+        byte[] body = cmd.getBody();
+        if (body != null && body.length > 0) {
+            return Unpooled.wrappedBuffer(header, Unpooled.wrappedBuffer(body));
+        }
+        return header;
+    }
+
+
+    @Benchmark
+    public int oldSendResponse() {
+        ByteBuf out = this.oldEncode(this.sendResponse);
+        int size = out.readableBytes();
+        out.release();
+        return size;
+    }
+
+
+    @Benchmark
+    public int newSendResponse() {
+        ByteBuf out = this.newEncode(this.sendResponse);
+        int size = out.readableBytes();
+        out.release();
+        return size;
+    }
+
+
+    @Benchmark
+    public int oldPullResponse() {
+        ByteBuf out = this.oldEncode(this.pullResponse);
+        int size = out.readableBytes();
+        out.release();
+        return size;
+    }
+
+
+    @Benchmark
+    public int newPullResponse() {
+        ByteBuf out = this.newEncode(this.pullResponse);
+        int size = out.readableBytes();
+        out.release();
+        return size;
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NettyEncoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
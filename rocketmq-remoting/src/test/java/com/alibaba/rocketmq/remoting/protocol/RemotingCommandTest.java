@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author shijia.wxr
+ */
+public class RemotingCommandTest {
+    private static RemotingCommand createCommand(SerializeType type) {
+        RemotingCommand cmd = RemotingCommand.createResponseCommand(0, "remark 中文 😀");
+        cmd.setSerializeTypeCurrentRPC(type);
+        HashMap<String, String> extFields = new HashMap<String, String>();
+        extFields.put("msgId", "0A0B0C0D00002A9F0000000000000001");
+        extFields.put("queueOffset", "123456");
+        extFields.put("topic", "TopicTest中文😀");
+        cmd.setExtFields(extFields);
+        cmd.setBody("Hello RocketMQ".getBytes());
+        return cmd;
+    }
+
+
+    private static void assertSameHeader(SerializeType type) {
+        RemotingCommand cmd = createCommand(type);
+        ByteBuffer expected = cmd.encodeHeader();
+        byte[] expectedBytes = new byte[expected.remaining()];
+        expected.get(expectedBytes);
+
+        ByteBuf out = Unpooled.buffer(16);
+        cmd.fastEncodeHeader(out);
+        byte[] actualBytes = new byte[out.readableBytes()];
+        out.readBytes(actualBytes);
+
+        assertArrayEquals(expectedBytes, actualBytes);
+    }
+
+
+    @Test
+    public void test_fastEncodeHeader_JSON() {
+        assertSameHeader(SerializeType.JSON);
+    }
+
+
+    @Test
+    public void test_fastEncodeHeader_ROCKETMQ() {
+        assertSameHeader(SerializeType.ROCKETMQ);
+    }
+
+
+    @Test
+    public void test_fastEncodeHeader_ROCKETMQ_COMPACT() {
+        assertSameHeader(SerializeType.ROCKETMQ_COMPACT);
+    }
+
+
+    @Test
+    public void test_compact_decode() {
+        RemotingCommand cmd = createCommand(SerializeType.ROCKETMQ_COMPACT);
+        cmd.setOpaque(-1);
+        StringBuilder remark = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            remark.append("中");
+        }
+        cmd.setRemark(remark.toString());
+        cmd.getExtFields().put("notInTable", "-9223372036854775808");
+        cmd.getExtFields().put("notCanonical", "007");
+        cmd.getExtFields().put("negativeZero", "-0");
+        cmd.getExtFields().put("negative", "-123");
+        cmd.getExtFields().put("empty", "");
+        cmd.getExtFields().put("minOffset", "0");
+
+        ByteBuf out = Unpooled.buffer();
+        cmd.fastEncodeHeader(out);
+        out.skipBytes(4);
+        RemotingCommand decoded = RemotingCommand.decode(out.nioBuffer());
+        assertEquals(SerializeType.ROCKETMQ_COMPACT, decoded.getSerializeTypeCurrentRPC());
+        assertEquals(cmd.getCode(), decoded.getCode());
+        assertEquals(cmd.getOpaque(), decoded.getOpaque());
+        assertEquals(cmd.getFlag(), decoded.getFlag());
+        assertEquals(cmd.getRemark(), decoded.getRemark());
+        assertEquals(cmd.getExtFields(), decoded.getExtFields());
+    }
+
+
+    @Test
+    public void test_compact_smaller() {
+        ByteBuf rocketmq = Unpooled.buffer();
+        createCommand(SerializeType.ROCKETMQ).fastEncodeHeader(rocketmq);
+        ByteBuf compact = Unpooled.buffer();
+        createCommand(SerializeType.ROCKETMQ_COMPACT).fastEncodeHeader(compact);
+        assertTrue(compact.readableBytes() < rocketmq.readableBytes());
+    }
+
+
+    @Test
+    public void test_fastEncodeHeader_decode() {
+        RemotingCommand cmd = createCommand(SerializeType.ROCKETMQ);
+        ByteBuf out = Unpooled.buffer();
+        cmd.fastEncodeHeader(out);
+        out.writeBytes(cmd.getBody());
+
+        // skip the total length, as the decoder does
+        out.skipBytes(4);
+        RemotingCommand decoded = RemotingCommand.decode(out.nioBuffer());
+        assertEquals(cmd.getRemark(), decoded.getRemark());
+        assertEquals(cmd.getExtFields(), decoded.getExtFields());
+        assertArrayEquals(cmd.getBody(), decoded.getBody());
+    }
+
+
+    @Test
+    public void test_decode_ByteBuf() {
+        for (SerializeType type : SerializeType.values()) {
+            RemotingCommand cmd = createCommand(type);
+            ByteBuf out = Unpooled.directBuffer();
+            cmd.fastEncodeHeader(out);
+            out.writeBytes(cmd.getBody());
+
+            out.skipBytes(4);
+            RemotingCommand decoded = RemotingCommand.decode(out);
+            assertEquals(type, decoded.getSerializeTypeCurrentRPC());
+            assertEquals(cmd.getOpaque(), decoded.getOpaque());
+            assertEquals(cmd.getRemark(), decoded.getRemark());
+            assertEquals(cmd.getExtFields(), decoded.getExtFields());
+            assertArrayEquals(cmd.getBody(), decoded.getBody());
+            assertEquals(0, out.readableBytes());
+            out.release();
+        }
+    }
+}
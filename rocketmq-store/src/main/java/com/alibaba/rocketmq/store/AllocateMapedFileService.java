@@ -154,7 +154,14 @@ public class AllocateMapedFileService extends ServiceThread {
 
             if (req.getMapedFile() == null) {
                 long beginTime = System.currentTimeMillis();
-                MapedFile mapedFile = new MapedFile(req.getFilePath(), req.getFileSize());
+                MapedFile mapedFile;
+                if (this.messageStore.getMessageStoreConfig().isTransientStorePoolEnable()) {
+                    mapedFile =
+                            new MapedFile(req.getFilePath(), req.getFileSize(), this.messageStore.getTransientStorePool());
+                }
+                else {
+                    mapedFile = new MapedFile(req.getFilePath(), req.getFileSize());
+                }
                 long eclipseTime = UtilAll.computeEclipseTimeMilliseconds(beginTime);
                 if (eclipseTime > 10) {
                     int queueSize = this.requestQueue.size();
@@ -162,8 +169,12 @@ public class AllocateMapedFileService extends ServiceThread {
                             + " " + req.getFilePath() + " " + req.getFileSize());
                 }
 
+                // lock it in memory, it does the warming as well
+                if (this.messageStore.getMessageStoreConfig().isMlockMapedFileEnable()) {
+                    mapedFile.mlock();
+                }
                 // pre write mappedFile
-                if (mapedFile.getFileSize() >= this.messageStore.getMessageStoreConfig()
+                else if (mapedFile.getFileSize() >= this.messageStore.getMessageStoreConfig()
                     .getMapedFileSizeCommitLog() //
                         && //
                         this.messageStore.getMessageStoreConfig().isWarmMapedFileEnable()) {
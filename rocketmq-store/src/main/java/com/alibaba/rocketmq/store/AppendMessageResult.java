@@ -34,6 +34,8 @@ public class AppendMessageResult {
     private long storeTimestamp;
     // Consume queue's offset(step by one)
     private long logicsOffset;
+    // Messages wrote, more than one for a batch
+    private int msgNum = 1;
 
 
     public AppendMessageResult(AppendMessageStatus status) {
@@ -117,11 +119,21 @@ public class AppendMessageResult {
     }
 
 
+    public int getMsgNum() {
+        return msgNum;
+    }
+
+
+    public void setMsgNum(int msgNum) {
+        this.msgNum = msgNum;
+    }
+
+
     @Override
     public String toString() {
         return "AppendMessageResult [status=" + status + ", wroteOffset=" + wroteOffset + ", wroteBytes="
                 + wroteBytes + ", msgId=" + msgId + ", storeTimestamp=" + storeTimestamp + ", logicsOffset="
-                + logicsOffset + "]";
+                + logicsOffset + ", msgNum=" + msgNum + "]";
     }
 
 }
@@ -27,7 +27,9 @@ import com.alibaba.rocketmq.common.sysflag.MessageSysFlag;
 import com.alibaba.rocketmq.store.config.BrokerRole;
 import com.alibaba.rocketmq.store.config.FlushDiskType;
 import com.alibaba.rocketmq.store.ha.HAService;
+import com.alibaba.rocketmq.store.util.LibC;
 import com.alibaba.rocketmq.store.schedule.ScheduleMessageService;
+import com.alibaba.rocketmq.store.timer.TimerMessageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +38,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 
@@ -54,14 +61,29 @@ public class CommitLog {
     private final MapedFileQueue mapedFileQueue;
     private final DefaultMessageStore defaultMessageStore;
     private final FlushCommitLogService flushCommitLogService;
+    // Only with the transient store pool enabled
+    private final FlushCommitLogService transferCommitLogService;
     private final AppendMessageCallback appendMessageCallback;
     private HashMap<String/* topic-queueid */, Long/* offset */> topicQueueTable = new HashMap<String, Long>(1024);
+    // Guards the append position of the last maped file and topicQueueTable
+    private final PutMessageLock putMessageLock;
+    // Every send thread serializes its messages into its own buffer
+    private final ThreadLocal<MessageExtEncoder> putMessageThreadLocal;
+    // Only when cold files are read through the channel
+    private final ReadBufferPool coldReadBufferPool;
 
 
     public CommitLog(final DefaultMessageStore defaultMessageStore) {
         this.mapedFileQueue =
                 new MapedFileQueue(defaultMessageStore.getMessageStoreConfig().getStorePathCommitLog(), defaultMessageStore
                     .getMessageStoreConfig().getMapedFileSizeCommitLog(), defaultMessageStore.getAllocateMapedFileService());
+        this.mapedFileQueue.setMlockEnable(defaultMessageStore.getMessageStoreConfig().isMlockMapedFileEnable());
+        this.mapedFileQueue.setMapOnDemand(defaultMessageStore.getMessageStoreConfig().isCommitLogMapOnDemand());
+        this.mapedFileQueue.setStorePathMaxUsedRatio(defaultMessageStore.getMessageStoreConfig().getDiskMaxUsedSpaceRatio() / 100.0);
+        this.coldReadBufferPool =
+                defaultMessageStore.getMessageStoreConfig().isCommitLogReadColdByChannel() ? new ReadBufferPool(
+                    defaultMessageStore.getMessageStoreConfig().getMaxTransferBytesOnMessageInDisk(),
+                    defaultMessageStore.getMessageStoreConfig().getColdReadBufferPoolSize()) : null;
         this.defaultMessageStore = defaultMessageStore;
 
         if (FlushDiskType.SYNC_FLUSH == defaultMessageStore.getMessageStoreConfig().getFlushDiskType()) {
@@ -71,7 +93,26 @@ public class CommitLog {
             this.flushCommitLogService = new FlushRealTimeService();
         }
 
+        if (defaultMessageStore.getMessageStoreConfig().isTransientStorePoolEnable()) {
+            this.transferCommitLogService = new TransferRealTimeService();
+        }
+        else {
+            this.transferCommitLogService = null;
+        }
+
         this.appendMessageCallback = new DefaultAppendMessageCallback(defaultMessageStore.getMessageStoreConfig().getMaxMessageSize());
+
+        this.putMessageLock =
+                defaultMessageStore.getMessageStoreConfig().isUseReentrantLockWhenPutMessage() ? new PutMessageReentrantLock()
+                        : new PutMessageSpinLock();
+
+        final int maxMessageSize = defaultMessageStore.getMessageStoreConfig().getMaxMessageSize();
+        this.putMessageThreadLocal = new ThreadLocal<MessageExtEncoder>() {
+            @Override
+            protected MessageExtEncoder initialValue() {
+                return new MessageExtEncoder(maxMessageSize);
+            }
+        };
     }
 
 
@@ -84,10 +125,17 @@ public class CommitLog {
 
     public void start() {
         this.flushCommitLogService.start();
+        if (this.transferCommitLogService != null) {
+            this.transferCommitLogService.start();
+        }
     }
 
 
     public void shutdown() {
+        // Transfer everything before the last flush
+        if (this.transferCommitLogService != null) {
+            this.transferCommitLogService.shutdown();
+        }
         this.flushCommitLogService.shutdown();
     }
 
@@ -199,6 +247,7 @@ public class CommitLog {
 
             processOffset += mapedFileOffset;
             this.mapedFileQueue.setCommittedWhere(processOffset);
+            this.mapedFileQueue.setTransferedWhere(processOffset);
             this.mapedFileQueue.truncateDirtyFiles(processOffset);
         }
     }
@@ -327,6 +376,12 @@ public class CommitLog {
                                         .computeDeliverTimestamp(delayLevel, storeTimestamp);
                         }
                     }
+
+                    // The timer wheel reads the delivery time from the tags code
+                    String d = propertiesMap.get(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+                    if (TimerMessageService.TIMER_TOPIC.equals(topic) && d != null) {
+                        tagsCode = Long.parseLong(d);
+                    }
                 }
             }
 
@@ -358,7 +413,7 @@ public class CommitLog {
     }
 
 
-    private int calMsgLength(int bodyLength, int topicLength, int propertiesLength) {
+    private static int calMsgLength(int bodyLength, int topicLength, int propertiesLength) {
         final int msgLen = 4 // 1 TOTALSIZE
                 + 4 // 2 MAGICCODE
                 + 4 // 3 BODYCRC
@@ -382,67 +437,103 @@ public class CommitLog {
     }
 
 
-    public void recoverAbnormally() {
+    public void recoverAbnormally(final ExecutorService recoverExecutor) {
         // recover by the minimum time stamp
         boolean checkCRCOnRecover = this.defaultMessageStore.getMessageStoreConfig().isCheckCRCOnRecover();
         final List<MapedFile> mapedFiles = this.mapedFileQueue.getMapedFiles();
         if (!mapedFiles.isEmpty()) {
+            long beginTime = System.currentTimeMillis();
             // Looking beginning to recover from which file
             int index = mapedFiles.size() - 1;
-            MapedFile mapedFile = null;
-            for (; index >= 0; index--) {
-                mapedFile = mapedFiles.get(index);
-                if (this.isMapedFileMatchedRecover(mapedFile)) {
-                    log.info("recover from this maped file " + mapedFile.getFileName());
-                    break;
+            int startPosition = 0;
+            MapedFile mapedFile = this.findCheckpointMatchedRecover();
+            if (mapedFile != null) {
+                index = mapedFiles.indexOf(mapedFile);
+                startPosition =
+                        (int) (this.defaultMessageStore.getStoreCheckpoint().getMinOffset() - mapedFile
+                            .getFileFromOffset());
+                log.info("recover from the checkpoint offset {} of maped file {}", //
+                    this.defaultMessageStore.getStoreCheckpoint().getMinOffset(),//
+                    mapedFile.getFileName());
+            }
+            else {
+                for (; index >= 0; index--) {
+                    mapedFile = mapedFiles.get(index);
+                    if (this.isMapedFileMatchedRecover(mapedFile)) {
+                        log.info("recover from this maped file " + mapedFile.getFileName());
+                        break;
+                    }
+                }
+
+                if (index < 0) {
+                    index = 0;
+                    mapedFile = mapedFiles.get(index);
                 }
             }
 
-            if (index < 0) {
-                index = 0;
-                mapedFile = mapedFiles.get(index);
+            // Messages never cross a file, so every segment can be checked
+            // on its own, only the dispatch below has to keep the order
+            List<Future<Integer>> verifyResults = new ArrayList<Future<Integer>>(mapedFiles.size() - index);
+            for (int i = index; i < mapedFiles.size(); i++) {
+                VerifySegmentTask task = new VerifySegmentTask(mapedFiles.get(i), //
+                    i == index ? startPosition : 0, checkCRCOnRecover);
+                if (recoverExecutor != null) {
+                    verifyResults.add(recoverExecutor.submit(task));
+                }
+                else {
+                    FutureTask<Integer> future = new FutureTask<Integer>(task);
+                    future.run();
+                    verifyResults.add(future);
+                }
             }
 
-            ByteBuffer byteBuffer = mapedFile.sliceByteBuffer();
-            long processOffset = mapedFile.getFileFromOffset();
-            long mapedFileOffset = 0;
-            while (true) {
-                DispatchRequest dispatchRequest = this.checkMessageAndReturnSize(byteBuffer, checkCRCOnRecover);
-                int size = dispatchRequest.getMsgSize();
-                // Normal data
-                if (size > 0) {
-                    mapedFileOffset += size;
+            long verifyTime = System.currentTimeMillis();
+            log.info("recover verify {} physics files, elapsed time(ms) {}", verifyResults.size(), verifyTime
+                    - beginTime);
+
+            long processOffset = mapedFile.getFileFromOffset() + startPosition;
+            for (int i = 0; i < verifyResults.size(); i++) {
+                mapedFile = mapedFiles.get(index + i);
+                int position = i == 0 ? startPosition : 0;
+                int verifyResult = this.getVerifyResult(verifyResults.get(i));
+                int endPosition = verifyResult < 0 ? -verifyResult - 1 : verifyResult;
+
+                ByteBuffer byteBuffer = mapedFile.sliceByteBuffer();
+                byteBuffer.position(position);
+                while (position < endPosition) {
+                    DispatchRequest dispatchRequest = this.checkMessageAndReturnSize(byteBuffer, false, false);
+                    int size = dispatchRequest.getMsgSize();
+                    if (size <= 0) {
+                        break;
+                    }
+                    position += size;
                     this.defaultMessageStore.doDispatch(dispatchRequest);
-
                 }
+
+                processOffset = mapedFile.getFileFromOffset() + position;
                 // Intermediate file read error
-                else if (size == -1) {
+                if (verifyResult < 0 || position < endPosition) {
                     log.info("recover physics file end, " + mapedFile.getFileName());
                     break;
                 }
-                // Come the end of the file, switch to the next file
-                // Since the return 0 representatives met last hole, this can
-                // not be included in truncate offset
-                else if (size == 0) {
-                    index++;
-                    if (index >= mapedFiles.size()) {
-                        // The current branch under normal circumstances should
-                        // not happen
-                        log.info("recover physics file over, last maped file " + mapedFile.getFileName());
-                        break;
-                    }
-                    else {
-                        mapedFile = mapedFiles.get(index);
-                        byteBuffer = mapedFile.sliceByteBuffer();
-                        processOffset = mapedFile.getFileFromOffset();
-                        mapedFileOffset = 0;
-                        log.info("recover next physics file, " + mapedFile.getFileName());
-                    }
+                // Come the end of the file, switch to the next file Since the
+                // return 0 representatives met last hole, this can not be
+                // included in truncate offset
+                else if (i == verifyResults.size() - 1) {
+                    // The current branch under normal circumstances should
+                    // not happen
+                    log.info("recover physics file over, last maped file " + mapedFile.getFileName());
+                }
+                else {
+                    log.info("recover next physics file, " + mapedFiles.get(index + i + 1).getFileName());
                 }
             }
 
-            processOffset += mapedFileOffset;
+            log.info("recover dispatch physics files, elapsed time(ms) {}", System.currentTimeMillis()
+                    - verifyTime);
+
             this.mapedFileQueue.setCommittedWhere(processOffset);
+            this.mapedFileQueue.setTransferedWhere(processOffset);
             this.mapedFileQueue.truncateDirtyFiles(processOffset);
 
             // Clear ConsumeQueue redundant data
@@ -451,11 +542,84 @@ public class CommitLog {
         // Commitlog case files are deleted
         else {
             this.mapedFileQueue.setCommittedWhere(0);
+            this.mapedFileQueue.setTransferedWhere(0);
             this.defaultMessageStore.destroyLogics();
         }
     }
 
 
+    private int getVerifyResult(final Future<Integer> future) {
+        try {
+            return future.get();
+        }
+        catch (Exception e) {
+            log.error("recover verify physics file exception", e);
+            return -1;
+        }
+    }
+
+
+    /**
+     * The flushed offsets of the commit log and the consume queues tell
+     * exactly where the dispatch has to start over, the index has only time
+     * stamps so it keeps the file based search
+     */
+    private MapedFile findCheckpointMatchedRecover() {
+        if (this.defaultMessageStore.getMessageStoreConfig().isMessageIndexEnable()//
+                && this.defaultMessageStore.getMessageStoreConfig().isMessageIndexSafe()) {
+            return null;
+        }
+
+        long minOffset = this.defaultMessageStore.getStoreCheckpoint().getMinOffset();
+        if (minOffset <= 0 || minOffset < this.mapedFileQueue.getMinOffset()
+                || minOffset >= this.mapedFileQueue.getMaxOffset()) {
+            return null;
+        }
+
+        return this.mapedFileQueue.findMapedFileByOffset(minOffset);
+    }
+
+
+    /**
+     * Returns the position after the last good message, or -(position + 1)
+     * when the segment ends with a broken message instead of the end of file
+     * blank
+     */
+    class VerifySegmentTask implements Callable<Integer> {
+        private final MapedFile mapedFile;
+        private final int startPosition;
+        private final boolean checkCRC;
+
+
+        public VerifySegmentTask(MapedFile mapedFile, int startPosition, boolean checkCRC) {
+            this.mapedFile = mapedFile;
+            this.startPosition = startPosition;
+            this.checkCRC = checkCRC;
+        }
+
+
+        @Override
+        public Integer call() throws Exception {
+            ByteBuffer byteBuffer = this.mapedFile.sliceByteBuffer();
+            byteBuffer.position(this.startPosition);
+            int position = this.startPosition;
+            while (true) {
+                DispatchRequest dispatchRequest = checkMessageAndReturnSize(byteBuffer, this.checkCRC);
+                int size = dispatchRequest.getMsgSize();
+                if (size > 0) {
+                    position += size;
+                }
+                else if (size == 0) {
+                    return position;
+                }
+                else {
+                    return -position - 1;
+                }
+            }
+        }
+    }
+
+
     private void notifyMessageArriving() {
 
     }
@@ -497,6 +661,112 @@ public class CommitLog {
 
 
     public PutMessageResult putMessage(final MessageExtBrokerInner msg) {
+        PutMessageResult putMessageResult = this.appendMessage(msg);
+        if (putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+            this.handleDiskFlushAndHA(putMessageResult, putMessageResult.getAppendMessageResult(), msg);
+        }
+
+        return putMessageResult;
+    }
+
+
+    /**
+     * Same as putMessage, but the callback is invoked from the flush or
+     * replication service once the message is stored, the caller never waits
+     */
+    public void putMessageAsync(final MessageExtBrokerInner msg, final PutMessageCallback callback) {
+        PutMessageResult putMessageResult = this.appendMessage(msg);
+        if (putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+            this.handleDiskFlushAndHAAsync(putMessageResult, msg, callback);
+        }
+        else {
+            callback.operationComplete(putMessageResult);
+        }
+    }
+
+
+    public PutMessageResult putMessages(final MessageExtBatch messageExtBatch) {
+        PutMessageResult putMessageResult = this.appendMessages(messageExtBatch);
+        if (putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+            // One flush request and one slave transfer for the whole batch
+            this.handleDiskFlushAndHA(putMessageResult, putMessageResult.getAppendMessageResult(), messageExtBatch);
+        }
+
+        return putMessageResult;
+    }
+
+
+    public void putMessagesAsync(final MessageExtBatch messageExtBatch, final PutMessageCallback callback) {
+        PutMessageResult putMessageResult = this.appendMessages(messageExtBatch);
+        if (putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+            this.handleDiskFlushAndHAAsync(putMessageResult, messageExtBatch, callback);
+        }
+        else {
+            callback.operationComplete(putMessageResult);
+        }
+    }
+
+
+    /**
+     * Append messages of any topics in one lock, for inner redelivery like the
+     * timer wheel. Nobody waits for the flush or the slaves, the first message
+     * that could not be appended ends the batch
+     *
+     * @return how many messages were appended
+     */
+    public int putMessagesInOneLock(final List<MessageExtBrokerInner> msgs) {
+        for (MessageExtBrokerInner msg : msgs) {
+            msg.setBodyCRC(UtilAll.crc32(msg.getBody()));
+        }
+
+        StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
+        AppendMessageResult result = null;
+        int count = 0;
+        this.putMessageLock.lock();
+        try {
+            for (MessageExtBrokerInner msg : msgs) {
+                msg.setStoreTimestamp(this.defaultMessageStore.getSystemClock().now());
+
+                // Encoded in lock by the append callback
+                MapedFile mapedFile = this.mapedFileQueue.getLastMapedFile();
+                if (null == mapedFile) {
+                    log.error("create maped file error, topic: " + msg.getTopic());
+                    break;
+                }
+                result = mapedFile.appendMessage(msg, this.appendMessageCallback);
+                if (AppendMessageStatus.END_OF_FILE == result.getStatus()) {
+                    mapedFile = this.mapedFileQueue.getLastMapedFile();
+                    if (null == mapedFile) {
+                        log.error("create maped file error, topic: " + msg.getTopic());
+                        break;
+                    }
+                    result = mapedFile.appendMessage(msg, this.appendMessageCallback);
+                }
+                if (AppendMessageStatus.PUT_OK != result.getStatus()) {
+                    break;
+                }
+
+                storeStatsService.getSinglePutMessageTopicTimesTotal(msg.getTopic()).incrementAndGet();
+                storeStatsService.getSinglePutMessageTopicSizeTotal(msg.getTopic()).addAndGet(result.getWroteBytes());
+                count++;
+            }
+        }
+        finally {
+            this.putMessageLock.unlock();
+        }
+
+        if (count > 0) {
+            this.defaultMessageStore.notifyMessageArriving();
+            MessageExtBrokerInner last = msgs.get(count - 1);
+            // Store not waited for, so only wakes up the flush service
+            this.handleDiskFlushAndHA(new PutMessageResult(PutMessageStatus.PUT_OK, result), result, last);
+        }
+
+        return count;
+    }
+
+
+    private PutMessageResult appendMessage(final MessageExtBrokerInner msg) {
         // Set the storage time
         msg.setStoreTimestamp(System.currentTimeMillis());
         // Set the message body BODY CRC (consider the most appropriate setting
@@ -530,11 +800,102 @@ public class CommitLog {
                 msg.setTopic(topic);
                 msg.setQueueId(queueId);
             }
+            // Arbitrary delivery time
+            else if (this.defaultMessageStore.getTimerMessageService() != null
+                    && this.defaultMessageStore.getTimerMessageService().isTimerMessage(msg)) {
+                // The commit log file would be deleted before the delivery
+                if (this.defaultMessageStore.getTimerMessageService().isBeyondRetention(msg)) {
+                    log.warn("timer message delivery time is beyond the file reserved time, topic: " + msg.getTopic()
+                            + " clientAddr: " + msg.getBornHostString());
+                    return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+                }
+
+                topic = TimerMessageService.TIMER_TOPIC;
+                queueId = 0;
+
+                // Backup real topic, queueId
+                MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_TOPIC, msg.getTopic());
+                MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_QUEUE_ID, String.valueOf(msg.getQueueId()));
+                msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+
+                msg.setTopic(topic);
+                msg.setQueueId(queueId);
+            }
+        }
+
+        // Serialize the message before taking the lock, only the position
+        // reservation and the memory copy are done in lock
+        MessageExtEncoder encoder = this.putMessageThreadLocal.get();
+        PutMessageResult encodeResult = encoder.encode(msg);
+        if (encodeResult != null) {
+            return encodeResult;
         }
+        msg.setEncodedBuff(encoder.getEncoderBuffer());
+
+        PutMessageResult putMessageResult = this.appendInLock(msg);
+        if (putMessageResult.getPutMessageStatus() != PutMessageStatus.PUT_OK) {
+            return putMessageResult;
+        }
+        result = putMessageResult.getAppendMessageResult();
+        this.defaultMessageStore.notifyMessageArriving();
+
+        // Statistics
+        storeStatsService.getSinglePutMessageTopicTimesTotal(msg.getTopic()).incrementAndGet();
+        storeStatsService.getSinglePutMessageTopicSizeTotal(topic).addAndGet(result.getWroteBytes());
+
+        return putMessageResult;
+    }
+
+
+    private PutMessageResult appendMessages(final MessageExtBatch messageExtBatch) {
+        messageExtBatch.setStoreTimestamp(System.currentTimeMillis());
+        AppendMessageResult result = null;
+
+        StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
+
+        final int tranType = MessageSysFlag.getTransactionValue(messageExtBatch.getSysFlag());
+        if (tranType != MessageSysFlag.TransactionNotType) {
+            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+        if (messageExtBatch.getDelayTimeLevel() > 0) {
+            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+
+        // Serialize the whole batch before taking the lock
+        MessageExtEncoder encoder = this.putMessageThreadLocal.get();
+        PutMessageResult encodeResult = encoder.encodeBatch(messageExtBatch);
+        if (encodeResult != null) {
+            return encodeResult;
+        }
+        messageExtBatch.setEncodedBuff(encoder.getEncoderBuffer());
+
+        PutMessageResult putMessageResult = this.appendInLock(messageExtBatch);
+        if (putMessageResult.getPutMessageStatus() != PutMessageStatus.PUT_OK) {
+            return putMessageResult;
+        }
+        result = putMessageResult.getAppendMessageResult();
+        this.defaultMessageStore.notifyMessageArriving();
+
+        // Statistics
+        storeStatsService.getSinglePutMessageTopicTimesTotal(messageExtBatch.getTopic()).addAndGet(result.getMsgNum());
+        storeStatsService.getSinglePutMessageTopicSizeTotal(messageExtBatch.getTopic()).addAndGet(result.getWroteBytes());
+
+        return putMessageResult;
+    }
+
+
+    /**
+     * Append the encoded message or batch to the last maped file in lock
+     */
+    private PutMessageResult appendInLock(final MessageExtBrokerInner msg) {
+        AppendMessageResult result = null;
+        StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
 
         long eclipseTimeInLock = 0;
         MapedFile mapedFile = this.mapedFileQueue.getLastMapedFileWithLock();
-        synchronized (this) {
+        this.putMessageLock.lock();
+        final long beginLockNanos = System.nanoTime();
+        try {
             long beginLockTimestamp = this.defaultMessageStore.getSystemClock().now();
 
             // Here settings are stored timestamp, in order to ensure an orderly
@@ -573,25 +934,33 @@ public class CommitLog {
             }
 
             eclipseTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
-        } // end of synchronized
+        }
+        finally {
+            long nanosInLock = System.nanoTime() - beginLockNanos;
+            this.putMessageLock.unlock();
+            msg.setEncodedBuff(null);
+            storeStatsService.setPutMessageInLockTimeMax(nanosInLock / 1000);
+        }
 
         if (eclipseTimeInLock > 500) {
             log.warn("[NOTIFYME]putMessage in lock eclipse time(ms) " + eclipseTimeInLock);
         }
 
-        PutMessageResult putMessageResult = new PutMessageResult(PutMessageStatus.PUT_OK, result);
+        return new PutMessageResult(PutMessageStatus.PUT_OK, result);
+    }
 
-        // Statistics
-        storeStatsService.getSinglePutMessageTopicTimesTotal(msg.getTopic()).incrementAndGet();
-        storeStatsService.getSinglePutMessageTopicSizeTotal(topic).addAndGet(result.getWroteBytes());
 
+    private void handleDiskFlushAndHA(final PutMessageResult putMessageResult, final AppendMessageResult result,
+            final MessageExtBrokerInner msg) {
         GroupCommitRequest request = null;
 
         // Synchronization flush
         if (FlushDiskType.SYNC_FLUSH == this.defaultMessageStore.getMessageStoreConfig().getFlushDiskType()) {
             GroupCommitService service = (GroupCommitService) this.flushCommitLogService;
-            if (msg.isWaitStoreMsgOK()) {
-                request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes());
+            final long nextOffset = result.getWroteOffset() + result.getWroteBytes();
+            // A later sender's group commit may already cover this message
+            if (msg.isWaitStoreMsgOK() && !service.isFlushed(nextOffset)) {
+                request = new GroupCommitRequest(nextOffset);
                 service.putRequest(request);
                 boolean flushOK = request.waitForFlush(this.defaultMessageStore.getMessageStoreConfig().getSyncFlushTimeout());
                 if (!flushOK) {
@@ -600,11 +969,14 @@ public class CommitLog {
                     putMessageResult.setPutMessageStatus(PutMessageStatus.FLUSH_DISK_TIMEOUT);
                 }
             }
-            else {
+            else if (!msg.isWaitStoreMsgOK()) {
                 service.wakeup();
             }
         }
         // Asynchronous flush
+        else if (this.transferCommitLogService != null) {
+            this.transferCommitLogService.wakeup();
+        }
         else {
             this.flushCommitLogService.wakeup();
         }
@@ -615,9 +987,8 @@ public class CommitLog {
             if (msg.isWaitStoreMsgOK()) {
                 // Determine whether to wait
                 if (service.isSlaveOK(result.getWroteOffset() + result.getWroteBytes())) {
-                    if (null == request) {
-                        request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes());
-                    }
+                    // The flush request is already counted down, never reuse it
+                    request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes());
                     service.putRequest(request);
 
                     service.getWaitNotifyObject().wakeupAll();
@@ -638,8 +1009,75 @@ public class CommitLog {
                 }
             }
         }
+    }
 
-        return putMessageResult;
+
+    private void handleDiskFlushAndHAAsync(final PutMessageResult putMessageResult, final MessageExtBrokerInner msg,
+            final PutMessageCallback callback) {
+        final AppendMessageResult result = putMessageResult.getAppendMessageResult();
+        final long nextOffset = result.getWroteOffset() + result.getWroteBytes();
+
+        // Synchronization flush, the slave transfer is chained after it
+        if (FlushDiskType.SYNC_FLUSH == this.defaultMessageStore.getMessageStoreConfig().getFlushDiskType()) {
+            GroupCommitService service = (GroupCommitService) this.flushCommitLogService;
+            if (msg.isWaitStoreMsgOK() && !service.isFlushed(nextOffset)) {
+                service.putRequest(new GroupCommitRequest(nextOffset) {
+                    @Override
+                    protected void onComplete(final boolean flushOK) {
+                        if (!flushOK) {
+                            log.error("do groupcommit, wait for flush failed, topic: " + msg.getTopic() + " tags: "
+                                    + msg.getTags() + " client address: " + msg.getBornHostString());
+                            putMessageResult.setPutMessageStatus(PutMessageStatus.FLUSH_DISK_TIMEOUT);
+                        }
+                        CommitLog.this.handleHAAsync(putMessageResult, msg, nextOffset, callback);
+                    }
+                });
+                return;
+            }
+            else if (!msg.isWaitStoreMsgOK()) {
+                service.wakeup();
+            }
+        }
+        // Asynchronous flush
+        else if (this.transferCommitLogService != null) {
+            this.transferCommitLogService.wakeup();
+        }
+        else {
+            this.flushCommitLogService.wakeup();
+        }
+
+        this.handleHAAsync(putMessageResult, msg, nextOffset, callback);
+    }
+
+
+    private void handleHAAsync(final PutMessageResult putMessageResult, final MessageExtBrokerInner msg,
+            final long nextOffset, final PutMessageCallback callback) {
+        // Synchronous write double
+        if (BrokerRole.SYNC_MASTER == this.defaultMessageStore.getMessageStoreConfig().getBrokerRole()
+                && msg.isWaitStoreMsgOK()) {
+            HAService service = this.defaultMessageStore.getHaService();
+            if (service.isSlaveOK(nextOffset)) {
+                service.putRequest(new GroupCommitRequest(nextOffset) {
+                    @Override
+                    protected void onComplete(final boolean transferOK) {
+                        if (!transferOK) {
+                            log.error("do sync transfer other node, wait return, but failed, topic: " + msg.getTopic()
+                                    + " tags: " + msg.getTags() + " client address: " + msg.getBornHostString());
+                            putMessageResult.setPutMessageStatus(PutMessageStatus.FLUSH_SLAVE_TIMEOUT);
+                        }
+                        callback.operationComplete(putMessageResult);
+                    }
+                });
+                service.getWaitNotifyObject().wakeupAll();
+                return;
+            }
+            // Slave problem
+            else {
+                putMessageResult.setPutMessageStatus(PutMessageStatus.SLAVE_NOT_AVAILABLE);
+            }
+        }
+
+        callback.operationComplete(putMessageResult);
     }
 
 
@@ -669,6 +1107,14 @@ public class CommitLog {
         MapedFile mapedFile = this.mapedFileQueue.findMapedFileByOffset(offset, (0 == offset ? true : false));
         if (mapedFile != null) {
             int pos = (int) (offset % mapedFileSize);
+            // A cold file is read through its channel rather than maped again
+            if (!mapedFile.isMaped() && this.coldReadBufferPool != null) {
+                SelectMapedBufferResult result = mapedFile.readByChannel(pos, size, this.coldReadBufferPool);
+                if (result != null) {
+                    return result;
+                }
+            }
+
             SelectMapedBufferResult result = mapedFile.selectMapedBuffer(pos, size);
             return result;
         }
@@ -693,18 +1139,52 @@ public class CommitLog {
 
 
     public boolean appendData(long startOffset, byte[] data) {
-        synchronized (this) {
+        boolean result;
+        this.putMessageLock.lock();
+        try {
             MapedFile mapedFile = this.mapedFileQueue.getLastMapedFile(startOffset);
             if (null == mapedFile) {
                 log.error("appendData getLastMapedFile error  " + startOffset);
                 return false;
             }
 
-            return mapedFile.appendMessage(data);
+            result = mapedFile.appendMessage(data);
+        }
+        finally {
+            this.putMessageLock.unlock();
+        }
+
+        // The slave reputs what HA appended as soon as the master's puts do
+        if (result) {
+            this.defaultMessageStore.notifyMessageArriving();
+        }
+        return result;
+    }
+
+
+    /**
+     * The range is about to be read from disk, ask the kernel to read it in
+     * ahead
+     */
+    public void adviseWillNeed(final long offset, final int size) {
+        MapedFile mapedFile = this.mapedFileQueue.findMapedFileByOffset(offset);
+        if (mapedFile != null) {
+            int pos = (int) (offset % this.defaultMessageStore.getMessageStoreConfig().getMapedFileSizeCommitLog());
+            mapedFile.madvise(pos, size, LibC.MADV_WILLNEED);
         }
     }
 
 
+    /**
+     * @return the bytes of commit log files still maped
+     */
+    public long unmapColdFiles(final long maxMapedBytes, final long minIdleTime) {
+        List<MapedFile> mapedFiles = new ArrayList<MapedFile>();
+        this.mapedFileQueue.collectMapedFiles(mapedFiles);
+        return MapedFile.unmapLeastRecentlyUsed(mapedFiles, maxMapedBytes, minIdleTime);
+    }
+
+
     public boolean retryDeleteFirstFile(final long intervalForcibly) {
         return this.mapedFileQueue.retryDeleteFirstFile(intervalForcibly);
     }
@@ -757,6 +1237,8 @@ public class CommitLog {
                     if (storeTimestamp > 0) {
                         CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(storeTimestamp);
                     }
+                    CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgOffset(
+                        CommitLog.this.mapedFileQueue.getCommittedWhere());
                 }
                 catch (Exception e) {
                     CommitLog.log.warn(this.getServiceName() + " service has exception. ", e);
@@ -795,6 +1277,75 @@ public class CommitLog {
         }
     }
 
+    /**
+     * Transfers the transient store pool buffers to the file channels, the
+     * flush service forces them to disk afterwards
+     */
+    class TransferRealTimeService extends FlushCommitLogService {
+        private static final int RetryTimesOver = 3;
+        private long lastTransferTimestamp = 0;
+
+
+        public void run() {
+            CommitLog.log.info(this.getServiceName() + " service started");
+
+            while (!this.isStoped()) {
+                int interval = CommitLog.this.defaultMessageStore.getMessageStoreConfig().getTransferIntervalCommitLog();
+                int transferLeastPages = CommitLog.this.defaultMessageStore.getMessageStoreConfig().getTransferCommitLogLeastPages();
+
+                int transferThoroughInterval =
+                        CommitLog.this.defaultMessageStore.getMessageStoreConfig().getTransferCommitLogThoroughInterval();
+
+                long beginTime = System.currentTimeMillis();
+                if (beginTime >= (this.lastTransferTimestamp + transferThoroughInterval)) {
+                    this.lastTransferTimestamp = beginTime;
+                    transferLeastPages = 0;
+                }
+
+                try {
+                    boolean result = CommitLog.this.mapedFileQueue.transfer(transferLeastPages);
+                    long endTime = System.currentTimeMillis();
+                    if (!result) {
+                        this.lastTransferTimestamp = endTime;
+                        // The transfered data can be flushed and dispatched
+                        CommitLog.this.flushCommitLogService.wakeup();
+                        CommitLog.this.defaultMessageStore.notifyMessageArriving();
+                    }
+
+                    if (endTime - beginTime > 500) {
+                        CommitLog.log.info("transfer data to file channel costs " + (endTime - beginTime) + "ms");
+                    }
+
+                    this.waitForRunning(interval);
+                }
+                catch (Exception e) {
+                    CommitLog.log.warn(this.getServiceName() + " service has exception. ", e);
+                }
+            }
+
+            // Normal shutdown, to ensure that all the transfer before exit
+            boolean result = false;
+            for (int i = 0; i < RetryTimesOver && !result; i++) {
+                result = CommitLog.this.mapedFileQueue.transfer(0);
+                CommitLog.log.info(this.getServiceName() + " service shutdown, retry " + (i + 1) + " times " + (result ? "OK" : "Not OK"));
+            }
+
+            CommitLog.log.info(this.getServiceName() + " service end");
+        }
+
+
+        @Override
+        public String getServiceName() {
+            return TransferRealTimeService.class.getSimpleName();
+        }
+
+
+        @Override
+        public long getJointime() {
+            return 1000 * 60 * 5;
+        }
+    }
+
     public class GroupCommitRequest {
         private final long nextOffset;
         private final CountDownLatch countDownLatch = new CountDownLatch(1);
@@ -814,6 +1365,19 @@ public class CommitLog {
         public void wakeupCustomer(final boolean flushOK) {
             this.flushOK = flushOK;
             this.countDownLatch.countDown();
+            try {
+                this.onComplete(flushOK);
+            }
+            catch (Throwable e) {
+                log.warn("group commit request complete callback exception", e);
+            }
+        }
+
+
+        /**
+         * Runs in the flush or replication service thread, keep it short
+         */
+        protected void onComplete(final boolean flushOK) {
         }
 
 
@@ -833,49 +1397,56 @@ public class CommitLog {
      * GroupCommit Service
      */
     class GroupCommitService extends FlushCommitLogService {
-        private volatile List<GroupCommitRequest> requestsWrite = new ArrayList<GroupCommitRequest>();
-        private volatile List<GroupCommitRequest> requestsRead = new ArrayList<GroupCommitRequest>();
+        // Lock free, senders only offer and the service thread drains
+        private final ConcurrentLinkedQueue<GroupCommitRequest> requestQueue =
+                new ConcurrentLinkedQueue<GroupCommitRequest>();
+        private final List<GroupCommitRequest> requestsRead = new ArrayList<GroupCommitRequest>();
+        // Everything before this offset is on disk
+        private volatile long flushedWhere = 0;
 
 
         public void putRequest(final GroupCommitRequest request) {
-            synchronized (this) {
-                this.requestsWrite.add(request);
-                if (!this.hasNotified) {
-                    this.hasNotified = true;
-                    this.notify();
-                }
+            this.requestQueue.offer(request);
+            // The service resets the flag before it drains, so a set flag
+            // means the request will be seen without taking the monitor
+            if (!this.hasNotified) {
+                this.wakeup();
             }
         }
 
 
-        private void swapRequests() {
-            List<GroupCommitRequest> tmp = this.requestsWrite;
-            this.requestsWrite = this.requestsRead;
-            this.requestsRead = tmp;
+        public boolean isFlushed(final long nextOffset) {
+            return this.flushedWhere >= nextOffset;
         }
 
 
         private void doCommit() {
-            if (!this.requestsRead.isEmpty()) {
-                for (GroupCommitRequest req : this.requestsRead) {
-                    // There may be a message in the next file, so a maximum of
-                    // two times the flush
-                    boolean flushOK = false;
-                    for (int i = 0; (i < 2) && !flushOK; i++) {
-                        flushOK = (CommitLog.this.mapedFileQueue.getCommittedWhere() >= req.getNextOffset());
+            long maxNextOffset = 0;
+            GroupCommitRequest request;
+            while ((request = this.requestQueue.poll()) != null) {
+                this.requestsRead.add(request);
+                maxNextOffset = Math.max(maxNextOffset, request.getNextOffset());
+            }
 
-                        if (!flushOK) {
-                            CommitLog.this.mapedFileQueue.commit(0);
-                        }
+            if (!this.requestsRead.isEmpty()) {
+                // One flush for the whole batch, the batch may end in a later
+                // file, so flush until it is covered or nothing moves
+                while (CommitLog.this.mapedFileQueue.getCommittedWhere() < maxNextOffset) {
+                    if (CommitLog.this.mapedFileQueue.commit(0)) {
+                        break;
                     }
+                }
+                this.flushedWhere = CommitLog.this.mapedFileQueue.getCommittedWhere();
 
-                    req.wakeupCustomer(flushOK);
+                for (GroupCommitRequest req : this.requestsRead) {
+                    req.wakeupCustomer(this.flushedWhere >= req.getNextOffset());
                 }
 
                 long storeTimestamp = CommitLog.this.mapedFileQueue.getStoreTimestamp();
                 if (storeTimestamp > 0) {
                     CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(storeTimestamp);
                 }
+                CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgOffset(this.flushedWhere);
 
                 this.requestsRead.clear();
             }
@@ -883,6 +1454,7 @@ public class CommitLog {
                 // Because of individual messages is set to not sync flush, it
                 // will come to this process
                 CommitLog.this.mapedFileQueue.commit(0);
+                this.flushedWhere = CommitLog.this.mapedFileQueue.getCommittedWhere();
             }
         }
 
@@ -909,22 +1481,12 @@ public class CommitLog {
                 CommitLog.log.warn("GroupCommitService Exception, ", e);
             }
 
-            synchronized (this) {
-                this.swapRequests();
-            }
-
             this.doCommit();
 
             CommitLog.log.info(this.getServiceName() + " service end");
         }
 
 
-        @Override
-        protected void onWaitEnd() {
-            this.swapRequests();
-        }
-
-
         @Override
         public String getServiceName() {
             return GroupCommitService.class.getSimpleName();
@@ -949,7 +1511,7 @@ public class CommitLog {
 
         DefaultAppendMessageCallback(final int size) {
             this.msgIdMemory = ByteBuffer.allocate(MessageDecoder.MSG_ID_LENGTH);
-            this.msgStoreItemMemory = ByteBuffer.allocate(size + END_FILE_MIN_BLANK_LENGTH);
+            this.msgStoreItemMemory = ByteBuffer.allocate(END_FILE_MIN_BLANK_LENGTH);
             this.maxMessageSize = size;
         }
 
@@ -960,6 +1522,10 @@ public class CommitLog {
 
 
         public AppendMessageResult doAppend(final long fileFromOffset, final ByteBuffer byteBuffer, final int maxBlank, final Object msg) {
+            if (msg instanceof MessageExtBatch) {
+                return this.doAppendBatch(fileFromOffset, byteBuffer, maxBlank, (MessageExtBatch) msg);
+            }
+
             // STORETIMESTAMP + STOREHOSTADDRESS + OFFSET <br>
             MessageExtBrokerInner msgInner = (MessageExtBrokerInner) msg;
             // PHY OFFSET
@@ -990,34 +1556,24 @@ public class CommitLog {
             }
 
             /**
-             * Serialize message
+             * Serialized message, normally done by the send thread outside of
+             * the lock
              */
-            final byte[] propertiesData =
-                    msgInner.getPropertiesString() == null ? null : msgInner.getPropertiesString().getBytes(MessageDecoder.CHARSET_UTF8);
-            if (propertiesData.length > Short.MAX_VALUE) {
-                log.warn("putMessage message properties length too long. length={}", propertiesData.length);
-                return new AppendMessageResult(AppendMessageStatus.PROPERTIES_SIZE_EXCEEDED);
+            ByteBuffer encodedBuff = msgInner.getEncodedBuff();
+            if (null == encodedBuff) {
+                MessageExtEncoder encoder = CommitLog.this.putMessageThreadLocal.get();
+                PutMessageResult encodeResult = encoder.encode(msgInner);
+                if (encodeResult != null) {
+                    return encodeResult.getAppendMessageResult();
+                }
+                encodedBuff = encoder.getEncoderBuffer();
             }
 
-            final short propertiesLength = propertiesData == null ? 0 : (short) propertiesData.length;
-
-            final byte[] topicData = msgInner.getTopic().getBytes(MessageDecoder.CHARSET_UTF8);
-            final int topicLength = topicData == null ? 0 : topicData.length;
-
-            final int bodyLength = msgInner.getBody() == null ? 0 : msgInner.getBody().length;
-
-            final int msgLen = calMsgLength(bodyLength, topicLength, propertiesLength);
-
-            // Exceeds the maximum message
-            if (msgLen > this.maxMessageSize) {
-                CommitLog.log.warn("message size exceeded, msg total size: " + msgLen + ", msg body size: " + bodyLength
-                        + ", maxMessageSize: " + this.maxMessageSize);
-                return new AppendMessageResult(AppendMessageStatus.MESSAGE_SIZE_EXCEEDED);
-            }
+            final int msgLen = encodedBuff.limit();
 
             // Determines whether there is sufficient free space
             if ((msgLen + END_FILE_MIN_BLANK_LENGTH) > maxBlank) {
-                this.resetMsgStoreItemMemory(maxBlank);
+                this.resetMsgStoreItemMemory(END_FILE_MIN_BLANK_LENGTH);
                 // 1 TOTALSIZE
                 this.msgStoreItemMemory.putInt(maxBlank);
                 // 2 MAGICCODE
@@ -1026,55 +1582,20 @@ public class CommitLog {
                 //
 
                 // Here the length of the specially set maxBlank
-                byteBuffer.put(this.msgStoreItemMemory.array(), 0, maxBlank);
+                byteBuffer.put(this.msgStoreItemMemory.array(), 0, END_FILE_MIN_BLANK_LENGTH);
                 return new AppendMessageResult(AppendMessageStatus.END_OF_FILE, wroteOffset, maxBlank, msgId, msgInner.getStoreTimestamp(),
                     queueOffset);
             }
 
-            // Initialization of storage space
-            this.resetMsgStoreItemMemory(msgLen);
-            // 1 TOTALSIZE
-            this.msgStoreItemMemory.putInt(msgLen);
-            // 2 MAGICCODE
-            this.msgStoreItemMemory.putInt(CommitLog.MessageMagicCode);
-            // 3 BODYCRC
-            this.msgStoreItemMemory.putInt(msgInner.getBodyCRC());
-            // 4 QUEUEID
-            this.msgStoreItemMemory.putInt(msgInner.getQueueId());
-            // 5 FLAG
-            this.msgStoreItemMemory.putInt(msgInner.getFlag());
             // 6 QUEUEOFFSET
-            this.msgStoreItemMemory.putLong(queueOffset);
+            encodedBuff.putLong(MessageExtEncoder.QueueOffsetPostion, queueOffset);
             // 7 PHYSICALOFFSET
-            this.msgStoreItemMemory.putLong(fileFromOffset + byteBuffer.position());
-            // 8 SYSFLAG
-            this.msgStoreItemMemory.putInt(msgInner.getSysFlag());
-            // 9 BORNTIMESTAMP
-            this.msgStoreItemMemory.putLong(msgInner.getBornTimestamp());
-            // 10 BORNHOST
-            this.msgStoreItemMemory.put(msgInner.getBornHostBytes());
+            encodedBuff.putLong(MessageDecoder.MessagePhysicOffsetPostion, wroteOffset);
             // 11 STORETIMESTAMP
-            this.msgStoreItemMemory.putLong(msgInner.getStoreTimestamp());
-            // 12 STOREHOSTADDRESS
-            this.msgStoreItemMemory.put(msgInner.getStoreHostBytes());
-            // 13 RECONSUMETIMES
-            this.msgStoreItemMemory.putInt(msgInner.getReconsumeTimes());
-            // 14 Prepared Transaction Offset
-            this.msgStoreItemMemory.putLong(msgInner.getPreparedTransactionOffset());
-            // 15 BODY
-            this.msgStoreItemMemory.putInt(bodyLength);
-            if (bodyLength > 0)
-                this.msgStoreItemMemory.put(msgInner.getBody());
-            // 16 TOPIC
-            this.msgStoreItemMemory.put((byte) topicLength);
-            this.msgStoreItemMemory.put(topicData);
-            // 17 PROPERTIES
-            this.msgStoreItemMemory.putShort(propertiesLength);
-            if (propertiesLength > 0)
-                this.msgStoreItemMemory.put(propertiesData);
+            encodedBuff.putLong(MessageDecoder.MessageStoreTimestampPostion, msgInner.getStoreTimestamp());
 
             // Write messages to the queue buffer
-            byteBuffer.put(this.msgStoreItemMemory.array(), 0, msgLen);
+            byteBuffer.put(encodedBuff.array(), 0, msgLen);
 
             AppendMessageResult result =
                     new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, msgLen, msgId, msgInner.getStoreTimestamp(),
@@ -1097,18 +1618,310 @@ public class CommitLog {
         }
 
 
+        /**
+         * The batch is encoded by MessageExtEncoder.encodeBatch, it is never
+         * split across two files
+         */
+        private AppendMessageResult doAppendBatch(final long fileFromOffset, final ByteBuffer byteBuffer, final int maxBlank,
+                final MessageExtBatch messageExtBatch) {
+            // PHY OFFSET of the first message
+            final long wroteOffset = fileFromOffset + byteBuffer.position();
+
+            // Record ConsumeQueue information
+            String key = messageExtBatch.getTopic() + "-" + messageExtBatch.getQueueId();
+            Long queueOffset = CommitLog.this.topicQueueTable.get(key);
+            if (null == queueOffset) {
+                queueOffset = 0L;
+                CommitLog.this.topicQueueTable.put(key, queueOffset);
+            }
+            final long beginQueueOffset = queueOffset;
+
+            final ByteBuffer messagesByteBuff = messageExtBatch.getEncodedBuff();
+            final ByteBuffer storeHostBytes = messageExtBatch.getStoreHostBytes();
+            final StringBuilder msgIdBuilder = new StringBuilder();
+            int totalMsgLen = 0;
+            int msgNum = 0;
+            while (messagesByteBuff.hasRemaining()) {
+                final int msgPos = messagesByteBuff.position();
+                final int msgLen = messagesByteBuff.getInt(msgPos);
+
+                // Determines whether there is sufficient free space
+                if ((totalMsgLen + msgLen + END_FILE_MIN_BLANK_LENGTH) > maxBlank) {
+                    this.resetMsgStoreItemMemory(END_FILE_MIN_BLANK_LENGTH);
+                    // 1 TOTALSIZE
+                    this.msgStoreItemMemory.putInt(maxBlank);
+                    // 2 MAGICCODE
+                    this.msgStoreItemMemory.putInt(CommitLog.BlankMagicCode);
+                    // 3 The remaining space may be any value
+
+                    // Rewrite the whole batch into the next file
+                    messagesByteBuff.position(0);
+                    byteBuffer.put(this.msgStoreItemMemory.array(), 0, END_FILE_MIN_BLANK_LENGTH);
+                    return new AppendMessageResult(AppendMessageStatus.END_OF_FILE, wroteOffset, maxBlank, "",
+                        messageExtBatch.getStoreTimestamp(), beginQueueOffset);
+                }
+
+                final long physicalOffset = wroteOffset + totalMsgLen;
+                // 6 QUEUEOFFSET
+                messagesByteBuff.putLong(msgPos + MessageExtEncoder.QueueOffsetPostion, queueOffset);
+                // 7 PHYSICALOFFSET
+                messagesByteBuff.putLong(msgPos + MessageDecoder.MessagePhysicOffsetPostion, physicalOffset);
+                // 11 STORETIMESTAMP
+                messagesByteBuff.putLong(msgPos + MessageDecoder.MessageStoreTimestampPostion, messageExtBatch.getStoreTimestamp());
+
+                storeHostBytes.rewind();
+                String msgId = MessageDecoder.createMessageId(this.msgIdMemory, storeHostBytes, physicalOffset);
+                if (msgIdBuilder.length() > 0) {
+                    msgIdBuilder.append(',');
+                }
+                msgIdBuilder.append(msgId);
+
+                queueOffset++;
+                msgNum++;
+                totalMsgLen += msgLen;
+                messagesByteBuff.position(msgPos + msgLen);
+            }
+
+            // Write the whole batch to the queue buffer
+            byteBuffer.put(messagesByteBuff.array(), 0, totalMsgLen);
+
+            AppendMessageResult result =
+                    new AppendMessageResult(AppendMessageStatus.PUT_OK, wroteOffset, totalMsgLen, msgIdBuilder.toString(),
+                        messageExtBatch.getStoreTimestamp(), beginQueueOffset);
+            result.setMsgNum(msgNum);
+
+            // The next update ConsumeQueue information
+            CommitLog.this.topicQueueTable.put(key, queueOffset);
+
+            return result;
+        }
+
+
         private void resetMsgStoreItemMemory(final int length) {
             this.msgStoreItemMemory.flip();
             this.msgStoreItemMemory.limit(length);
         }
     }
 
+    /**
+     * Serialize message, QUEUEOFFSET, PHYSICALOFFSET and STORETIMESTAMP are
+     * only known in lock, so they are left blank and filled by
+     * DefaultAppendMessageCallback
+     */
+    static class MessageExtEncoder {
+        public final static int QueueOffsetPostion = 20;
+        // Store the message content
+        private final ByteBuffer encoderBuffer;
+        // The maximum length of the message
+        private final int maxMessageSize;
+
+
+        MessageExtEncoder(final int size) {
+            this.encoderBuffer = ByteBuffer.allocate(size);
+            this.maxMessageSize = size;
+        }
+
+
+        public ByteBuffer getEncoderBuffer() {
+            return encoderBuffer;
+        }
+
+
+        /**
+         * @return null if the message is serialized into encoderBuffer,
+         *         otherwise the failed result
+         */
+        public PutMessageResult encode(final MessageExtBrokerInner msgInner) {
+            final byte[] propertiesData =
+                    msgInner.getPropertiesString() == null ? null : msgInner.getPropertiesString().getBytes(MessageDecoder.CHARSET_UTF8);
+            if (propertiesData != null && propertiesData.length > Short.MAX_VALUE) {
+                log.warn("putMessage message properties length too long. length={}", propertiesData.length);
+                return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(
+                    AppendMessageStatus.PROPERTIES_SIZE_EXCEEDED));
+            }
+
+            final short propertiesLength = propertiesData == null ? 0 : (short) propertiesData.length;
+
+            final byte[] topicData = msgInner.getTopic().getBytes(MessageDecoder.CHARSET_UTF8);
+            final int topicLength = topicData.length;
+
+            final int bodyLength = msgInner.getBody() == null ? 0 : msgInner.getBody().length;
+
+            final int msgLen = calMsgLength(bodyLength, topicLength, propertiesLength);
+
+            // Exceeds the maximum message
+            if (msgLen > this.maxMessageSize) {
+                CommitLog.log.warn("message size exceeded, msg total size: " + msgLen + ", msg body size: " + bodyLength
+                        + ", maxMessageSize: " + this.maxMessageSize);
+                return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(
+                    AppendMessageStatus.MESSAGE_SIZE_EXCEEDED));
+            }
+
+            // Initialization of storage space
+            this.resetEncoderBuffer(msgLen);
+            // 1 TOTALSIZE
+            this.encoderBuffer.putInt(msgLen);
+            // 2 MAGICCODE
+            this.encoderBuffer.putInt(CommitLog.MessageMagicCode);
+            // 3 BODYCRC
+            this.encoderBuffer.putInt(msgInner.getBodyCRC());
+            // 4 QUEUEID
+            this.encoderBuffer.putInt(msgInner.getQueueId());
+            // 5 FLAG
+            this.encoderBuffer.putInt(msgInner.getFlag());
+            // 6 QUEUEOFFSET, filled in lock
+            this.encoderBuffer.putLong(0);
+            // 7 PHYSICALOFFSET, filled in lock
+            this.encoderBuffer.putLong(0);
+            // 8 SYSFLAG
+            this.encoderBuffer.putInt(msgInner.getSysFlag());
+            // 9 BORNTIMESTAMP
+            this.encoderBuffer.putLong(msgInner.getBornTimestamp());
+            // 10 BORNHOST
+            this.encoderBuffer.put(msgInner.getBornHostBytes());
+            // 11 STORETIMESTAMP, filled in lock
+            this.encoderBuffer.putLong(0);
+            // 12 STOREHOSTADDRESS
+            this.encoderBuffer.put(msgInner.getStoreHostBytes());
+            // 13 RECONSUMETIMES
+            this.encoderBuffer.putInt(msgInner.getReconsumeTimes());
+            // 14 Prepared Transaction Offset
+            this.encoderBuffer.putLong(msgInner.getPreparedTransactionOffset());
+            // 15 BODY
+            this.encoderBuffer.putInt(bodyLength);
+            if (bodyLength > 0)
+                this.encoderBuffer.put(msgInner.getBody());
+            // 16 TOPIC
+            this.encoderBuffer.put((byte) topicLength);
+            this.encoderBuffer.put(topicData);
+            // 17 PROPERTIES
+            this.encoderBuffer.putShort(propertiesLength);
+            if (propertiesLength > 0)
+                this.encoderBuffer.put(propertiesData);
+
+            this.encoderBuffer.flip();
+            return null;
+        }
+
+
+        /**
+         * Serialize every message of the batch one after another, the
+         * messages share the topic, queue id, hosts and flags of the batch
+         *
+         * @return null if the batch is serialized into encoderBuffer,
+         *         otherwise the failed result
+         */
+        public PutMessageResult encodeBatch(final MessageExtBatch messageExtBatch) {
+            this.encoderBuffer.clear();
+
+            final byte[] topicData = messageExtBatch.getTopic().getBytes(MessageDecoder.CHARSET_UTF8);
+            final int topicLength = topicData.length;
+            final ByteBuffer bornHostBytes = messageExtBatch.getBornHostBytes();
+            final ByteBuffer storeHostBytes = messageExtBatch.getStoreHostBytes();
+
+            final ByteBuffer messagesByteBuff = ByteBuffer.wrap(messageExtBatch.getBody());
+            try {
+                while (messagesByteBuff.hasRemaining()) {
+                    // 1 TOTALSIZE
+                    messagesByteBuff.getInt();
+                    // 2 MAGICCODE
+                    messagesByteBuff.getInt();
+                    // 3 BODYCRC
+                    messagesByteBuff.getInt();
+                    // 4 FLAG
+                    final int flag = messagesByteBuff.getInt();
+                    // 5 BODY
+                    final int bodyLength = messagesByteBuff.getInt();
+                    final int bodyPos = messagesByteBuff.position();
+                    final int bodyCrc = UtilAll.crc32(messagesByteBuff.array(), bodyPos, bodyLength);
+                    messagesByteBuff.position(bodyPos + bodyLength);
+                    // 6 PROPERTIES
+                    final short propertiesLength = messagesByteBuff.getShort();
+                    final int propertiesPos = messagesByteBuff.position();
+                    messagesByteBuff.position(propertiesPos + propertiesLength);
+
+                    final int msgLen = calMsgLength(bodyLength, topicLength, propertiesLength);
+
+                    // Exceeds the maximum message
+                    if (msgLen > this.maxMessageSize || msgLen > this.encoderBuffer.remaining()) {
+                        CommitLog.log.warn("message batch size exceeded, msg total size: " + msgLen + ", msg body size: "
+                                + bodyLength + ", maxMessageSize: " + this.maxMessageSize);
+                        return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, new AppendMessageResult(
+                            AppendMessageStatus.MESSAGE_SIZE_EXCEEDED));
+                    }
+
+                    // 1 TOTALSIZE
+                    this.encoderBuffer.putInt(msgLen);
+                    // 2 MAGICCODE
+                    this.encoderBuffer.putInt(CommitLog.MessageMagicCode);
+                    // 3 BODYCRC
+                    this.encoderBuffer.putInt(bodyCrc);
+                    // 4 QUEUEID
+                    this.encoderBuffer.putInt(messageExtBatch.getQueueId());
+                    // 5 FLAG
+                    this.encoderBuffer.putInt(flag);
+                    // 6 QUEUEOFFSET, filled in lock
+                    this.encoderBuffer.putLong(0);
+                    // 7 PHYSICALOFFSET, filled in lock
+                    this.encoderBuffer.putLong(0);
+                    // 8 SYSFLAG
+                    this.encoderBuffer.putInt(messageExtBatch.getSysFlag());
+                    // 9 BORNTIMESTAMP
+                    this.encoderBuffer.putLong(messageExtBatch.getBornTimestamp());
+                    // 10 BORNHOST
+                    bornHostBytes.rewind();
+                    this.encoderBuffer.put(bornHostBytes);
+                    // 11 STORETIMESTAMP, filled in lock
+                    this.encoderBuffer.putLong(0);
+                    // 12 STOREHOSTADDRESS
+                    storeHostBytes.rewind();
+                    this.encoderBuffer.put(storeHostBytes);
+                    // 13 RECONSUMETIMES
+                    this.encoderBuffer.putInt(messageExtBatch.getReconsumeTimes());
+                    // 14 Prepared Transaction Offset, always 0 for batch
+                    this.encoderBuffer.putLong(0);
+                    // 15 BODY
+                    this.encoderBuffer.putInt(bodyLength);
+                    if (bodyLength > 0)
+                        this.encoderBuffer.put(messagesByteBuff.array(), bodyPos, bodyLength);
+                    // 16 TOPIC
+                    this.encoderBuffer.put((byte) topicLength);
+                    this.encoderBuffer.put(topicData);
+                    // 17 PROPERTIES
+                    this.encoderBuffer.putShort(propertiesLength);
+                    if (propertiesLength > 0)
+                        this.encoderBuffer.put(messagesByteBuff.array(), propertiesPos, propertiesLength);
+                }
+            }
+            catch (RuntimeException e) {
+                // BufferUnderflowException, IllegalArgumentException and the
+                // like, the batch body is malformed
+                CommitLog.log.warn("decode message batch failed, topic: " + messageExtBatch.getTopic() + " clientAddr: "
+                        + messageExtBatch.getBornHostString(), e);
+                return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+            }
+
+            this.encoderBuffer.flip();
+            return null;
+        }
+
+
+        private void resetEncoderBuffer(final int length) {
+            this.encoderBuffer.clear();
+            this.encoderBuffer.limit(length);
+        }
+    }
+
 
     public void removeQueurFromTopicQueueTable(final String topic, final int queueId) {
         String key = topic + "-" + queueId;
-        synchronized (this) {
+        this.putMessageLock.lock();
+        try {
             this.topicQueueTable.remove(key);
         }
+        finally {
+            this.putMessageLock.unlock();
+        }
 
         log.info("removeQueurFromTopicQueueTable OK Topic: {} QueueId: {}", topic, queueId);
     }
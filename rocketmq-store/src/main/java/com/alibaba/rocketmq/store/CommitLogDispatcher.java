@@ -0,0 +1,30 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store;
+
+/**
+ * Fed by the reput thread with every message read from the commit log, in
+ * commit log order.<br>
+ * Dispatchers run one after another on the reput thread, which is also the
+ * one building the consume queues, so an expensive dispatcher should hand
+ * the request off to its own thread, like IndexService does.
+ *
+ * @author shijia.wxr
+ */
+public interface CommitLogDispatcher {
+    void dispatch(final DispatchRequest request);
+}
@@ -17,6 +17,8 @@
 package com.alibaba.rocketmq.store;
 
 import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import com.alibaba.rocketmq.store.config.StorePathConfigHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +41,7 @@ public class ConsumeQueue {
     private final ByteBuffer byteBufferIndex;
     private final String storePath;
     private final int mapedFileSize;
+    private final ConsumeQueueTimeIndex timeIndex;
     private long maxPhysicOffset = -1;
     private volatile long minLogicOffset = 0;
 
@@ -61,13 +64,39 @@ public class ConsumeQueue {
                 + File.separator + queueId;//
 
         this.mapedFileQueue = new MapedFileQueue(queueDir, mapedFileSize, null);
+        this.mapedFileQueue.setMapOnDemand(defaultMessageStore.getMessageStoreConfig().isConsumeQueueMapOnDemand());
 
         this.byteBufferIndex = ByteBuffer.allocate(CQStoreUnitSize);
+
+        MessageStoreConfig config = defaultMessageStore.getMessageStoreConfig();
+        if (config.isConsumeQueueTimeIndexEnable()) {
+            this.timeIndex = new ConsumeQueueTimeIndex(//
+                topic,//
+                queueId,//
+                StorePathConfigHelper.getStorePathConsumeQueueTimeIndex(config.getStorePathRootDir()),//
+                config.getMapedFileSizeConsumeQueueTimeIndex(),//
+                config.getConsumeQueueTimeIndexInterval(),//
+                config.isConsumeQueueMapOnDemand());
+        }
+        else {
+            this.timeIndex = null;
+        }
+    }
+
+
+    public void collectMapedFiles(final List<MapedFile> result) {
+        this.mapedFileQueue.collectMapedFiles(result);
+        if (this.timeIndex != null) {
+            this.timeIndex.collectMapedFiles(result);
+        }
     }
 
 
     public boolean load() {
         boolean result = this.mapedFileQueue.load();
+        if (result && this.timeIndex != null) {
+            result = this.timeIndex.load();
+        }
         log.info("load consume queue " + this.topic + "-" + this.queueId + " " + (result ? "OK" : "Failed"));
         return result;
     }
@@ -127,9 +156,21 @@ public class ConsumeQueue {
             processOffset += mapedFileOffset;
             this.mapedFileQueue.truncateDirtyFiles(processOffset);
         }
+
+        if (this.timeIndex != null) {
+            this.timeIndex.recover();
+            this.timeIndex.truncate(this.getMaxOffsetInQuque());
+        }
     }
 
     public long getOffsetInQueueByTime(final long timestamp) {
+        if (this.timeIndex != null) {
+            long offset = this.timeIndex.getOffsetInQueueByTime(timestamp, this.getMinOffsetInQuque());
+            if (offset >= 0) {
+                return Math.max(this.getMinOffsetInQuque(), Math.min(offset, this.getMaxOffsetInQuque() - 1));
+            }
+        }
+
         MapedFile mapedFile = this.mapedFileQueue.getMapedFileByTime(timestamp);
         if (mapedFile != null) {
             long offset = 0;
@@ -202,6 +243,14 @@ public class ConsumeQueue {
     }
 
     public void truncateDirtyLogicFiles(long phyOffet) {
+        this.truncateDirtyUnits(phyOffet);
+        if (this.timeIndex != null) {
+            this.timeIndex.truncate(this.getMaxOffsetInQuque());
+        }
+    }
+
+
+    private void truncateDirtyUnits(long phyOffet) {
         int logicFileSize = this.mapedFileSize;
 
         this.maxPhysicOffset = phyOffet - 1;
@@ -262,25 +311,31 @@ public class ConsumeQueue {
         int logicFileSize = this.mapedFileSize;
 
         MapedFile mapedFile = this.mapedFileQueue.getLastMapedFile2();
-        if (mapedFile != null) {
-            int position = mapedFile.getWrotePostion() - CQStoreUnitSize;
-            if (position < 0)
-                position = 0;
+        // Held, the clean service may unmap a full cold file
+        if (mapedFile != null && mapedFile.hold()) {
+            try {
+                int position = mapedFile.getWrotePostion() - CQStoreUnitSize;
+                if (position < 0)
+                    position = 0;
 
-            ByteBuffer byteBuffer = mapedFile.sliceByteBuffer();
-            byteBuffer.position(position);
-            for (int i = 0; i < logicFileSize; i += CQStoreUnitSize) {
-                long offset = byteBuffer.getLong();
-                int size = byteBuffer.getInt();
-                byteBuffer.getLong();
-
-                if (offset >= 0 && size > 0) {
-                    lastOffset = offset + size;
-                }
-                else {
-                    break;
+                ByteBuffer byteBuffer = mapedFile.sliceByteBuffer();
+                byteBuffer.position(position);
+                for (int i = position; i < logicFileSize; i += CQStoreUnitSize) {
+                    long offset = byteBuffer.getLong();
+                    int size = byteBuffer.getInt();
+                    byteBuffer.getLong();
+
+                    if (offset >= 0 && size > 0) {
+                        lastOffset = offset + size;
+                    }
+                    else {
+                        break;
+                    }
                 }
             }
+            finally {
+                mapedFile.release();
+            }
         }
 
         return lastOffset;
@@ -288,13 +343,20 @@ public class ConsumeQueue {
 
 
     public boolean commit(final int flushLeastPages) {
-        return this.mapedFileQueue.commit(flushLeastPages);
+        boolean result = this.mapedFileQueue.commit(flushLeastPages);
+        if (this.timeIndex != null) {
+            result = this.timeIndex.commit(flushLeastPages) && result;
+        }
+        return result;
     }
 
 
     public int deleteExpiredFile(long offset) {
         int cnt = this.mapedFileQueue.deleteExpiredFileByOffset(offset, CQStoreUnitSize);
         this.correctMinOffset(offset);
+        if (this.timeIndex != null) {
+            this.timeIndex.deleteExpiredFile(this.getMinOffsetInQuque());
+        }
         return cnt;
     }
 
@@ -341,6 +403,10 @@ public class ConsumeQueue {
             boolean result = this.putMessagePostionInfo(offset, size, tagsCode, logicOffset);
             if (result) {
                 this.defaultMessageStore.getStoreCheckpoint().setLogicsMsgTimestamp(storeTimestamp);
+                this.defaultMessageStore.getStoreCheckpoint().setLogicsMsgOffset(offset + size);
+                if (this.timeIndex != null && !this.timeIndex.putIndex(logicOffset, storeTimestamp)) {
+                    log.warn("put time index of " + topic + ":" + queueId + " " + logicOffset + " failed");
+                }
                 return;
             }
             else {
@@ -458,6 +524,9 @@ public class ConsumeQueue {
         this.maxPhysicOffset = -1;
         this.minLogicOffset = 0;
         this.mapedFileQueue.destroy();
+        if (this.timeIndex != null) {
+            this.timeIndex.destroy();
+        }
     }
 
     public long getMinLogicOffset() {
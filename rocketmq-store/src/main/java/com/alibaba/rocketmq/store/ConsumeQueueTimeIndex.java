@@ -0,0 +1,306 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store;
+
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+
+/**
+ * Sparse timestamp to logical offset table of a consume queue, a unit is
+ * written at dispatch whenever the store time moved on by the interval since
+ * the last unit, so time lookups are answered without reading the commit log
+ *
+ * @author shijia.wxr
+ */
+public class ConsumeQueueTimeIndex {
+    // logical offset, store timestamp
+    public static final int UnitSize = 16;
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
+    private final MapedFileQueue mapedFileQueue;
+    private final String topic;
+    private final int queueId;
+    private final int mapedFileSize;
+    private final long interval;
+    private final ByteBuffer byteBufferIndex = ByteBuffer.allocate(UnitSize);
+    // Only touched by the dispatch thread
+    private long maxLogicOffset = -1;
+    private long lastTimestamp = -1;
+
+
+    public ConsumeQueueTimeIndex(//
+            final String topic,//
+            final int queueId,//
+            final String storePath,//
+            final int mapedFileSize,//
+            final long interval,//
+            final boolean mapOnDemand) {
+        this.topic = topic;
+        this.queueId = queueId;
+        this.mapedFileSize = mapedFileSize / UnitSize * UnitSize;
+        this.interval = interval;
+
+        String queueDir = storePath//
+                + File.separator + topic//
+                + File.separator + queueId;//
+
+        this.mapedFileQueue = new MapedFileQueue(queueDir, this.mapedFileSize, null);
+        this.mapedFileQueue.setMapOnDemand(mapOnDemand);
+    }
+
+
+    public boolean load() {
+        boolean result = this.mapedFileQueue.load();
+        log.info("load consume queue time index " + this.topic + "-" + this.queueId + " "
+                + (result ? "OK" : "Failed"));
+        return result;
+    }
+
+
+    public void recover() {
+        final List<MapedFile> mapedFiles = this.mapedFileQueue.getMapedFiles();
+        if (mapedFiles.isEmpty()) {
+            return;
+        }
+
+        int index = mapedFiles.size() - 3;
+        if (index < 0)
+            index = 0;
+
+        long processOffset;
+        while (true) {
+            MapedFile mapedFile = mapedFiles.get(index);
+            ByteBuffer byteBuffer = mapedFile.sliceByteBuffer();
+            int mapedFileOffset = 0;
+            while (mapedFileOffset < this.mapedFileSize) {
+                long logicOffset = byteBuffer.getLong();
+                long storeTimestamp = byteBuffer.getLong();
+                if (storeTimestamp <= 0) {
+                    break;
+                }
+
+                mapedFileOffset += UnitSize;
+                this.maxLogicOffset = logicOffset;
+                this.lastTimestamp = storeTimestamp;
+            }
+
+            processOffset = mapedFile.getFileFromOffset() + mapedFileOffset;
+            if (mapedFileOffset < this.mapedFileSize || ++index >= mapedFiles.size()) {
+                break;
+            }
+        }
+
+        this.mapedFileQueue.truncateDirtyFiles(processOffset);
+        log.info("recover consume queue time index " + this.topic + "-" + this.queueId + " over, max logic offset "
+                + this.maxLogicOffset);
+    }
+
+
+    public boolean putIndex(final long logicOffset, final long storeTimestamp) {
+        if (logicOffset <= this.maxLogicOffset) {
+            return true;
+        }
+
+        if (this.lastTimestamp > 0 && storeTimestamp - this.lastTimestamp < this.interval) {
+            return true;
+        }
+
+        this.byteBufferIndex.flip();
+        this.byteBufferIndex.limit(UnitSize);
+        this.byteBufferIndex.putLong(logicOffset);
+        this.byteBufferIndex.putLong(storeTimestamp);
+
+        MapedFile mapedFile = this.mapedFileQueue.getLastMapedFile(0);
+        if (mapedFile != null && mapedFile.appendMessage(this.byteBufferIndex.array())) {
+            this.maxLogicOffset = logicOffset;
+            this.lastTimestamp = storeTimestamp;
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Returns the logical offset to consume from for messages stored since the
+     * timestamp, it may be early by up to the interval, Long.MAX_VALUE when
+     * every message was stored before it, and -1 when the index does not cover
+     * the timestamp
+     */
+    public long getOffsetInQueueByTime(final long timestamp, final long minLogicOffset) {
+        long low = this.mapedFileQueue.getMinOffset();
+        long high = this.mapedFileQueue.getMaxOffset() - UnitSize;
+        if (low < 0 || high < low) {
+            return -1;
+        }
+
+        final long lastPosition = high;
+        long[] unit = new long[2];
+        if (!this.readUnit(low, unit)) {
+            return -1;
+        }
+
+        // Messages older than the first unit are not indexed
+        if (timestamp < unit[1]) {
+            return unit[0] <= minLogicOffset ? minLogicOffset : -1;
+        }
+
+        long foundPosition = low;
+        long foundLogicOffset = unit[0];
+        long foundTimestamp = unit[1];
+        low += UnitSize;
+        while (low <= high) {
+            long mid = low + (high - low) / (2 * UnitSize) * UnitSize;
+            if (!this.readUnit(mid, unit)) {
+                return -1;
+            }
+
+            if (unit[1] <= timestamp) {
+                foundPosition = mid;
+                foundLogicOffset = unit[0];
+                foundTimestamp = unit[1];
+                low = mid + UnitSize;
+            }
+            else {
+                high = mid - UnitSize;
+            }
+        }
+
+        if (timestamp - foundTimestamp < this.interval) {
+            return foundLogicOffset;
+        }
+
+        // Everything up to the next unit was stored before the timestamp
+        if (foundPosition < lastPosition) {
+            return this.readUnit(foundPosition + UnitSize, unit) ? unit[0] : -1;
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+
+    /**
+     * Removes the units at or above the logical offset
+     */
+    public void truncate(final long logicOffset) {
+        long low = this.mapedFileQueue.getMinOffset();
+        long high = this.mapedFileQueue.getMaxOffset() - UnitSize;
+        if (low < 0) {
+            return;
+        }
+
+        long[] unit = new long[2];
+        long truncatePosition = high + UnitSize;
+        while (low <= high) {
+            long mid = low + (high - low) / (2 * UnitSize) * UnitSize;
+            if (!this.readUnit(mid, unit)) {
+                log.warn("truncate consume queue time index " + this.topic + "-" + this.queueId
+                        + " failed, read position " + mid);
+                return;
+            }
+
+            if (unit[0] >= logicOffset) {
+                truncatePosition = mid;
+                high = mid - UnitSize;
+            }
+            else {
+                low = mid + UnitSize;
+            }
+        }
+
+        if (truncatePosition > this.mapedFileQueue.getMaxOffset() - UnitSize) {
+            return;
+        }
+
+        this.mapedFileQueue.truncateDirtyFiles(truncatePosition);
+        // Units are sparse and might not be written over again, so the rest of
+        // the file is cleared for the next recovery
+        MapedFile mapedFile = this.mapedFileQueue.getLastMapedFile2();
+        if (mapedFile != null) {
+            int position = mapedFile.getWrotePostion();
+            if (position < this.mapedFileSize && mapedFile.appendMessage(new byte[this.mapedFileSize - position])) {
+                mapedFile.setWrotePostion(position);
+                mapedFile.setCommittedPosition(position);
+            }
+        }
+
+        if (truncatePosition > this.mapedFileQueue.getMinOffset() && this.readUnit(truncatePosition - UnitSize, unit)) {
+            this.maxLogicOffset = unit[0];
+            this.lastTimestamp = unit[1];
+        }
+        else {
+            this.maxLogicOffset = -1;
+            this.lastTimestamp = -1;
+        }
+
+        log.info("truncate consume queue time index " + this.topic + "-" + this.queueId + " to logic offset "
+                + logicOffset);
+    }
+
+
+    private boolean readUnit(final long position, final long[] unit) {
+        MapedFile mapedFile = this.mapedFileQueue.findMapedFileByOffset(position);
+        if (mapedFile != null) {
+            SelectMapedBufferResult result =
+                    mapedFile.selectMapedBuffer((int) (position % this.mapedFileSize), UnitSize);
+            if (result != null) {
+                try {
+                    unit[0] = result.getByteBuffer().getLong();
+                    unit[1] = result.getByteBuffer().getLong();
+                    return true;
+                }
+                finally {
+                    result.release();
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    public boolean commit(final int flushLeastPages) {
+        return this.mapedFileQueue.commit(flushLeastPages);
+    }
+
+
+    public int deleteExpiredFile(final long minLogicOffset) {
+        return this.mapedFileQueue.deleteExpiredFileByOffset(minLogicOffset, UnitSize);
+    }
+
+
+    public void collectMapedFiles(final List<MapedFile> result) {
+        this.mapedFileQueue.collectMapedFiles(result);
+    }
+
+
+    public void destroy() {
+        this.maxLogicOffset = -1;
+        this.lastTimestamp = -1;
+        this.mapedFileQueue.destroy();
+    }
+
+
+    public long getMaxLogicOffset() {
+        return maxLogicOffset;
+    }
+}
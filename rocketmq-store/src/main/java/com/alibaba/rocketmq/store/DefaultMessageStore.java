@@ -31,6 +31,7 @@ import com.alibaba.rocketmq.store.ha.HAService;
 import com.alibaba.rocketmq.store.index.IndexService;
 import com.alibaba.rocketmq.store.index.QueryOffsetResult;
 import com.alibaba.rocketmq.store.schedule.ScheduleMessageService;
+import com.alibaba.rocketmq.store.timer.TimerMessageService;
 import com.alibaba.rocketmq.store.stats.BrokerStatsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,8 +42,11 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -56,6 +60,9 @@ import static com.alibaba.rocketmq.store.config.BrokerRole.SLAVE;
  */
 public class DefaultMessageStore implements MessageStore {
     private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
+    // A file touched that recently is likely read again soon, readers hold
+    // the files they use, so this is not needed for safety
+    private static final long ColdMapedFileMinIdleTime = 1000 * 30;
     private final MessageFilter messageFilter = new DefaultMessageFilter();
     private final MessageStoreConfig messageStoreConfig;
     private final CommitLog commitLog;
@@ -65,9 +72,13 @@ public class DefaultMessageStore implements MessageStore {
     private final CleanConsumeQueueService cleanConsumeQueueService;
     private final IndexService indexService;
     private final AllocateMapedFileService allocateMapedFileService;
+    private final TransientStorePool transientStorePool;
     private final ReputMessageService reputMessageService;
     private final HAService haService;
     private final ScheduleMessageService scheduleMessageService;
+    private final TimerMessageService timerMessageService;
+    // Consume queue first, plug more before start
+    private final LinkedList<CommitLogDispatcher> dispatcherList;
     private final StoreStatsService storeStatsService;
     private final RunningFlags runningFlags = new RunningFlags();
     private final SystemClock systemClock = new SystemClock(1);
@@ -79,6 +90,9 @@ public class DefaultMessageStore implements MessageStore {
     private final BrokerStatsManager brokerStatsManager;
     private final MessageArrivingListener messageArrivingListener;
     private final BrokerConfig brokerConfig;
+    private volatile long loadElapsedTime = 0;
+    private volatile long consumeQueueMapedBytes = 0;
+    private volatile long commitLogMapedBytes = 0;
 
 
     public DefaultMessageStore(final MessageStoreConfig messageStoreConfig, final BrokerStatsManager brokerStatsManager,
@@ -100,6 +114,17 @@ public class DefaultMessageStore implements MessageStore {
 
         this.reputMessageService = new ReputMessageService();
         this.scheduleMessageService = new ScheduleMessageService(this);
+        this.timerMessageService =
+                messageStoreConfig.isTimerWheelEnable() ? new TimerMessageService(this) : null;
+
+        this.dispatcherList = new LinkedList<CommitLogDispatcher>();
+        this.dispatcherList.addLast(new CommitLogDispatcherBuildConsumeQueue());
+        this.dispatcherList.addLast(new CommitLogDispatcherBuildIndex());
+
+        this.transientStorePool = new TransientStorePool(messageStoreConfig);
+        if (messageStoreConfig.isTransientStorePoolEnable()) {
+            this.transientStorePool.init();
+        }
 
         this.allocateMapedFileService.start();
         this.indexService.start();
@@ -119,6 +144,13 @@ public class DefaultMessageStore implements MessageStore {
 
     public boolean load() {
         boolean result = true;
+        long beginTime = System.currentTimeMillis();
+        ExecutorService loadExecutor = null;
+        int recoverThreadPoolNums = this.messageStoreConfig.getRecoverThreadPoolNums();
+        if (recoverThreadPoolNums > 1) {
+            loadExecutor =
+                    Executors.newFixedThreadPool(recoverThreadPoolNums, new ThreadFactoryImpl("StoreLoadThread_"));
+        }
 
         try {
             boolean lastExitOK = !this.isTempFileExist();
@@ -126,8 +158,11 @@ public class DefaultMessageStore implements MessageStore {
             if (null != scheduleMessageService) {
                 result = result && this.scheduleMessageService.load();
             }
+            if (null != timerMessageService) {
+                result = result && this.timerMessageService.load();
+            }
             result = result && this.commitLog.load();
-            result = result && this.loadConsumeQueue();
+            result = result && this.loadConsumeQueue(loadExecutor);
 
             if (result) {
                 this.storeCheckpoint =
@@ -135,15 +170,22 @@ public class DefaultMessageStore implements MessageStore {
 
                 this.indexService.load(lastExitOK);
 
-                this.recover(lastExitOK);
+                this.recover(lastExitOK, loadExecutor);
 
-                log.info("load over, and the max phy offset = {}", this.getMaxPhyOffset());
+                this.loadElapsedTime = System.currentTimeMillis() - beginTime;
+                log.info("load over, and the max phy offset = {}, elapsed time(ms) {}", this.getMaxPhyOffset(),
+                    this.loadElapsedTime);
             }
         }
         catch (Exception e) {
             log.error("load exception", e);
             result = false;
         }
+        finally {
+            if (loadExecutor != null) {
+                loadExecutor.shutdown();
+            }
+        }
 
         if (!result) {
             this.allocateMapedFileService.shutdown();
@@ -167,6 +209,25 @@ public class DefaultMessageStore implements MessageStore {
                 DefaultMessageStore.this.checkSelf();
             }
         }, 1, 10, TimeUnit.MINUTES);
+
+        this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DefaultMessageStore.this.consumeQueueMapedBytes = DefaultMessageStore.this.cleanColdConsumeQueueFiles();
+                    // Commit log files stay maped unless they are maped on demand
+                    if (DefaultMessageStore.this.messageStoreConfig.isCommitLogMapOnDemand()) {
+                        DefaultMessageStore.this.commitLogMapedBytes =
+                                DefaultMessageStore.this.commitLog.unmapColdFiles(
+                                    DefaultMessageStore.this.messageStoreConfig.getMaxCommitLogMapedMemory(),
+                                    ColdMapedFileMinIdleTime);
+                    }
+                }
+                catch (Throwable e) {
+                    log.warn("clean cold maped files exception", e);
+                }
+            }
+        }, 10, 10, TimeUnit.SECONDS);
     }
 
 
@@ -198,7 +259,7 @@ public class DefaultMessageStore implements MessageStore {
         while (it.hasNext()) {
             Entry<String, ConcurrentHashMap<Integer, ConsumeQueue>> next = it.next();
             String topic = next.getKey();
-            if (!topic.equals(ScheduleMessageService.SCHEDULE_TOPIC)) {
+            if (!topic.equals(ScheduleMessageService.SCHEDULE_TOPIC) && !topic.equals(TimerMessageService.TIMER_TOPIC)) {
                 ConcurrentHashMap<Integer, ConsumeQueue> queueTable = next.getValue();
                 Iterator<Entry<Integer, ConsumeQueue>> itQT = queueTable.entrySet().iterator();
                 while (itQT.hasNext()) {
@@ -254,6 +315,11 @@ public class DefaultMessageStore implements MessageStore {
         this.createTempFile();
         this.addScheduleTask();
         this.shutdown = false;
+
+        // Last, a slot due already is delivered at once and must be writable and reput
+        if (this.timerMessageService != null && SLAVE != messageStoreConfig.getBrokerRole()) {
+            this.timerMessageService.start();
+        }
     }
 
     public void shutdown() {
@@ -273,14 +339,21 @@ public class DefaultMessageStore implements MessageStore {
                 this.scheduleMessageService.shutdown();
             }
 
+            if (this.timerMessageService != null) {
+                this.timerMessageService.shutdown();
+            }
+
             this.haService.shutdown();
 
             this.storeStatsService.shutdown();
-            this.indexService.shutdown();
             this.flushConsumeQueueService.shutdown();
             this.commitLog.shutdown();
             this.reputMessageService.shutdown();
+            this.indexService.shutdown();
             this.allocateMapedFileService.shutdown();
+            if (this.messageStoreConfig.isTransientStorePoolEnable()) {
+                this.transientStorePool.destroy();
+            }
             this.storeCheckpoint.flush();
             this.storeCheckpoint.shutdown();
 
@@ -298,6 +371,9 @@ public class DefaultMessageStore implements MessageStore {
         this.destroyLogics();
         this.commitLog.destroy();
         this.indexService.destroy();
+        if (this.timerMessageService != null) {
+            this.timerMessageService.destroy();
+        }
         this.deleteFile(StorePathConfigHelper.getAbortFile(this.messageStoreConfig.getStorePathRootDir()));
         this.deleteFile(StorePathConfigHelper.getStoreCheckpoint(this.messageStoreConfig.getStorePathRootDir()));
     }
@@ -312,7 +388,7 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
-    public PutMessageResult putMessage(MessageExtBrokerInner msg) {
+    private PutMessageResult checkStoreStatus() {
         if (this.shutdown) {
             log.warn("message store has shutdown, so putMessage is forbidden");
             return new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
@@ -339,6 +415,16 @@ public class DefaultMessageStore implements MessageStore {
             this.printTimes.set(0);
         }
 
+        return null;
+    }
+
+
+    private PutMessageResult checkMessage(MessageExtBrokerInner msg) {
+        PutMessageResult checkResult = this.checkStoreStatus();
+        if (checkResult != null) {
+            return checkResult;
+        }
+
         if (msg.getTopic().length() > Byte.MAX_VALUE) {
             log.warn("putMessage message topic length too long " + msg.getTopic().length());
             return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
@@ -349,8 +435,31 @@ public class DefaultMessageStore implements MessageStore {
             return new PutMessageResult(PutMessageStatus.PROPERTIES_SIZE_EXCEEDED, null);
         }
 
-        long beginTime = this.getSystemClock().now();
-        PutMessageResult result = this.commitLog.putMessage(msg);
+        return null;
+    }
+
+
+    private PutMessageResult checkMessages(MessageExtBatch messageExtBatch) {
+        PutMessageResult checkResult = this.checkStoreStatus();
+        if (checkResult != null) {
+            return checkResult;
+        }
+
+        if (messageExtBatch.getTopic().length() > Byte.MAX_VALUE) {
+            log.warn("putMessages message topic length too long " + messageExtBatch.getTopic().length());
+            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+
+        if (null == messageExtBatch.getBody() || messageExtBatch.getBody().length == 0) {
+            log.warn("putMessages message batch is empty");
+            return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
+        }
+
+        return null;
+    }
+
+
+    private void recordPutMessageResult(final long beginTime, final PutMessageResult result) {
         long eclipseTime = this.getSystemClock().now() - beginTime;
         if (eclipseTime > 1000) {
             log.warn("putMessage not in lock eclipse time(ms) " + eclipseTime);
@@ -360,11 +469,98 @@ public class DefaultMessageStore implements MessageStore {
         if (null == result || !result.isOk()) {
             this.storeStatsService.getPutMessageFailedTimes().incrementAndGet();
         }
+    }
+
+
+    public PutMessageResult putMessage(MessageExtBrokerInner msg) {
+        PutMessageResult checkResult = this.checkMessage(msg);
+        if (checkResult != null) {
+            return checkResult;
+        }
+
+        long beginTime = this.getSystemClock().now();
+        PutMessageResult result = this.commitLog.putMessage(msg);
+        this.recordPutMessageResult(beginTime, result);
+
+        return result;
+    }
+
+
+    public PutMessageResult putMessages(MessageExtBatch messageExtBatch) {
+        PutMessageResult checkResult = this.checkMessages(messageExtBatch);
+        if (checkResult != null) {
+            return checkResult;
+        }
+
+        long beginTime = this.getSystemClock().now();
+        PutMessageResult result = this.commitLog.putMessages(messageExtBatch);
+        this.recordPutMessageResult(beginTime, result);
 
         return result;
     }
 
 
+    /**
+     * Put messages of any topics in one commit log lock, the first one that
+     * is not put ends the batch
+     *
+     * @return how many messages were put
+     */
+    public int putMessagesInOneLock(final List<MessageExtBrokerInner> msgs) {
+        int checked = 0;
+        while (checked < msgs.size() && null == this.checkMessage(msgs.get(checked))) {
+            checked++;
+        }
+        if (0 == checked) {
+            return 0;
+        }
+
+        long beginTime = this.getSystemClock().now();
+        int count = this.commitLog.putMessagesInOneLock(msgs.subList(0, checked));
+        long eclipseTime = this.getSystemClock().now() - beginTime;
+        if (eclipseTime > 1000) {
+            log.warn("putMessagesInOneLock not in lock eclipse time(ms) " + eclipseTime);
+        }
+        this.storeStatsService.setPutMessageEntireTimeMax(eclipseTime);
+
+        return count;
+    }
+
+
+    public void putMessageAsync(MessageExtBrokerInner msg, final PutMessageCallback callback) {
+        PutMessageResult checkResult = this.checkMessage(msg);
+        if (checkResult != null) {
+            callback.operationComplete(checkResult);
+            return;
+        }
+
+        this.commitLog.putMessageAsync(msg, this.wrapPutMessageCallback(callback));
+    }
+
+
+    public void putMessagesAsync(MessageExtBatch messageExtBatch, final PutMessageCallback callback) {
+        PutMessageResult checkResult = this.checkMessages(messageExtBatch);
+        if (checkResult != null) {
+            callback.operationComplete(checkResult);
+            return;
+        }
+
+        this.commitLog.putMessagesAsync(messageExtBatch, this.wrapPutMessageCallback(callback));
+    }
+
+
+    private PutMessageCallback wrapPutMessageCallback(final PutMessageCallback callback) {
+        final long beginTime = this.getSystemClock().now();
+        return new PutMessageCallback() {
+            @Override
+            public void operationComplete(PutMessageResult result) {
+                DefaultMessageStore.this.recordPutMessageResult(beginTime, result);
+                callback.operationComplete(result);
+            }
+        };
+    }
+
+
     public SystemClock getSystemClock() {
         return systemClock;
     }
@@ -436,10 +632,13 @@ public class DefaultMessageStore implements MessageStore {
 
                         long nextPhyFileStartOffset = Long.MIN_VALUE;
                         long maxPhyOffsetPulling = 0;
+                        long nextPhyOffsetPulling = 0;
+                        boolean pullingInDisk = false;
 
                         int i = 0;
                         final int MaxFilterMessageCount = 16000;
                         final boolean diskFallRecorded = this.messageStoreConfig.isDiskFallRecorded();
+                        boolean diskAdvised = !this.messageStoreConfig.isMadviseMapedFileEnable();
                         for (; i < bufferConsumeQueue.getSize() && i < MaxFilterMessageCount; i += ConsumeQueue.CQStoreUnitSize) {
                             long offsetPy = bufferConsumeQueue.getByteBuffer().getLong();
                             int sizePy = bufferConsumeQueue.getByteBuffer().getInt();
@@ -453,14 +652,30 @@ public class DefaultMessageStore implements MessageStore {
                             }
 
                             boolean isInDisk = checkInDiskByCommitOffset(offsetPy, maxOffsetPy);
+                            // read ahead what this pull is going to transfer from disk
+                            if (isInDisk && !diskAdvised) {
+                                this.commitLog.adviseWillNeed(offsetPy,
+                                    this.messageStoreConfig.getMaxTransferBytesOnMessageInDisk());
+                                diskAdvised = true;
+                            }
                             if (this.isTheBatchFull(sizePy, maxMsgNums, getResult.getBufferTotalSize(), getResult.getMessageCount(),
                                 isInDisk)) {
                                 break;
                             }
 
                             if (this.messageFilter.isMessageMatched(subscriptionData, tagsCode)) {
+                                // Adjacent in the commit log, share the buffer of the previous one
+                                if (getResult.appendAdjacentMessage(offsetPy, sizePy)) {
+                                    this.storeStatsService.getGetMessageTransferedMsgCount().incrementAndGet();
+                                    nextPhyOffsetPulling = offsetPy + sizePy;
+                                    pullingInDisk = isInDisk;
+                                    continue;
+                                }
+
                                 SelectMapedBufferResult selectResult = this.commitLog.getMessage(offsetPy, sizePy);
                                 if (selectResult != null) {
+                                    nextPhyOffsetPulling = offsetPy + sizePy;
+                                    pullingInDisk = isInDisk;
                                     this.storeStatsService.getGetMessageTransferedMsgCount().incrementAndGet();
                                     getResult.addMessage(selectResult);
                                     status = GetMessageStatus.FOUND;
@@ -485,6 +700,13 @@ public class DefaultMessageStore implements MessageStore {
                             }
                         }
 
+                        // A consumer catching up from disk will read on from here, warm it
+                        if (pullingInDisk && nextPhyOffsetPulling < maxOffsetPy
+                                && this.messageStoreConfig.isMadviseMapedFileEnable()) {
+                            this.commitLog.adviseWillNeed(nextPhyOffsetPulling,
+                                this.messageStoreConfig.getMaxTransferBytesOnMessageInDisk());
+                        }
+
                         if (diskFallRecorded) {
                             long fallBehind = maxOffsetPy - maxPhyOffsetPulling;
                             brokerStatsManager.recordDiskFallBehind(group, topic, queueId, fallBehind);
@@ -611,7 +833,7 @@ public class DefaultMessageStore implements MessageStore {
         HashMap<String, String> result = this.storeStatsService.getRuntimeInfo();
         {
             String storePathPhysic = DefaultMessageStore.this.getMessageStoreConfig().getStorePathCommitLog();
-            double physicRatio = UtilAll.getDiskPartitionSpaceUsedPercent(storePathPhysic);
+            double physicRatio = StorePathConfigHelper.getDiskPartitionSpaceUsedPercent(storePathPhysic);
             result.put(RunningStats.commitLogDiskRatio.name(), String.valueOf(physicRatio));
 
         }
@@ -627,10 +849,24 @@ public class DefaultMessageStore implements MessageStore {
             if (this.scheduleMessageService != null) {
                 this.scheduleMessageService.buildRunningStats(result);
             }
+            if (this.timerMessageService != null) {
+                this.timerMessageService.buildRunningStats(result);
+            }
         }
 
         result.put(RunningStats.commitLogMinOffset.name(), String.valueOf(DefaultMessageStore.this.getMinPhyOffset()));
         result.put(RunningStats.commitLogMaxOffset.name(), String.valueOf(DefaultMessageStore.this.getMaxPhyOffset()));
+        result.put("indexRequestQueueSize", String.valueOf(this.indexService.getRequestQueueSize()));
+        if (this.messageStoreConfig.isTransientStorePoolEnable()) {
+            result.put("transientStorePoolRemain", String.valueOf(this.transientStorePool.remainBufferNumbs()));
+        }
+        result.put("mapedFileLockedBytes", String.valueOf(MapedFile.getTotalLockedMemory()));
+        result.put("mapedFileVirtualBytes", String.valueOf(MapedFile.getTotalMapedVitualMemory()));
+        result.put("mapedFiles", String.valueOf(MapedFile.getTotalmapedfiles()));
+        result.put("consumeQueueMapedBytes", String.valueOf(this.consumeQueueMapedBytes));
+        result.put("commitLogMapedBytes", String.valueOf(this.commitLogMapedBytes));
+        result.put("storeLoadElapsedTime", String.valueOf(this.loadElapsedTime));
+        result.put("mapedFileLockedFiles", String.valueOf(MapedFile.getTotalLockedFiles()));
 
         return result;
     }
@@ -927,7 +1163,9 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
-    private boolean loadConsumeQueue() {
+    private boolean loadConsumeQueue(final ExecutorService loadExecutor) {
+        long beginTime = System.currentTimeMillis();
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
         File dirLogic = new File(StorePathConfigHelper.getStorePathConsumeQueue(this.messageStoreConfig.getStorePathRootDir()));
         File[] fileTopicList = dirLogic.listFiles();
         if (fileTopicList != null) {
@@ -937,24 +1175,63 @@ public class DefaultMessageStore implements MessageStore {
                 if (fileQueueIdList != null) {
                     for (File fileQueueId : fileQueueIdList) {
                         int queueId = Integer.parseInt(fileQueueId.getName());
-                        ConsumeQueue logic = new ConsumeQueue(//
+                        final ConsumeQueue logic = new ConsumeQueue(//
                             topic,//
                             queueId,//
                             StorePathConfigHelper.getStorePathConsumeQueue(this.messageStoreConfig.getStorePathRootDir()),//
                             this.getMessageStoreConfig().getMapedFileSizeConsumeQueue(),//
                             this);
                         this.putConsumeQueue(topic, queueId, logic);
-                        if (!logic.load()) {
-                            return false;
+                        if (null == loadExecutor) {
+                            if (!logic.load()) {
+                                return false;
+                            }
+                            continue;
                         }
+
+                        futures.add(loadExecutor.submit(new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws Exception {
+                                return logic.load();
+                            }
+                        }));
                     }
                 }
             }
         }
 
-        log.info("load logics queue all over, OK");
+        boolean result = true;
+        for (Future<Boolean> future : futures) {
+            try {
+                result = future.get() && result;
+            }
+            catch (Exception e) {
+                log.error("load consume queue exception", e);
+                result = false;
+            }
+        }
+
+        if (result) {
+            log.info("load logics queue all over, OK, elapsed time(ms) {}", System.currentTimeMillis() - beginTime);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * @return the bytes of consume queue files still maped
+     */
+    private long cleanColdConsumeQueueFiles() {
+        List<MapedFile> mapedFiles = new ArrayList<MapedFile>();
+        for (ConcurrentHashMap<Integer, ConsumeQueue> maps : this.consumeQueueTable.values()) {
+            for (ConsumeQueue logic : maps.values()) {
+                logic.collectMapedFiles(mapedFiles);
+            }
+        }
 
-        return true;
+        return MapedFile.unmapLeastRecentlyUsed(mapedFiles, this.messageStoreConfig.getMaxConsumeQueueMapedMemory(),
+            ColdMapedFileMinIdleTime);
     }
 
 
@@ -976,17 +1253,24 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
-    private void recover(final boolean lastExitOK) {
-        this.recoverConsumeQueue();
+    private void recover(final boolean lastExitOK, final ExecutorService recoverExecutor) {
+        long beginTime = System.currentTimeMillis();
+        this.recoverConsumeQueue(recoverExecutor);
+        long consumeQueueTime = System.currentTimeMillis();
+        log.info("recover consume queue over, elapsed time(ms) {}", consumeQueueTime - beginTime);
 
         if (lastExitOK) {
             this.commitLog.recoverNormally();
         }
         else {
-            this.commitLog.recoverAbnormally();
+            this.commitLog.recoverAbnormally(recoverExecutor);
         }
+        long commitLogTime = System.currentTimeMillis();
+        log.info("recover commit log over, elapsed time(ms) {}", commitLogTime - consumeQueueTime);
 
         this.recoverTopicQueueTable();
+        log.info("recover topic queue table over, elapsed time(ms) {}, total {}",
+            System.currentTimeMillis() - commitLogTime, System.currentTimeMillis() - beginTime);
     }
 
 
@@ -1005,10 +1289,30 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
-    private void recoverConsumeQueue() {
+    private void recoverConsumeQueue(final ExecutorService recoverExecutor) {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
         for (ConcurrentHashMap<Integer, ConsumeQueue> maps : this.consumeQueueTable.values()) {
-            for (ConsumeQueue logic : maps.values()) {
-                logic.recover();
+            for (final ConsumeQueue logic : maps.values()) {
+                if (null == recoverExecutor) {
+                    logic.recover();
+                    continue;
+                }
+
+                futures.add(recoverExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        logic.recover();
+                    }
+                }));
+            }
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (Exception e) {
+                log.error("recover consume queue exception", e);
             }
         }
     }
@@ -1025,6 +1329,11 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
+    public TransientStorePool getTransientStorePool() {
+        return transientStorePool;
+    }
+
+
     public StoreStatsService getStoreStatsService() {
         return storeStatsService;
     }
@@ -1055,6 +1364,11 @@ public class DefaultMessageStore implements MessageStore {
     }
 
 
+    public TimerMessageService getTimerMessageService() {
+        return timerMessageService;
+    }
+
+
     public RunningFlags getRunningFlags() {
         return runningFlags;
     }
@@ -1151,7 +1465,7 @@ public class DefaultMessageStore implements MessageStore {
 
             {
                 String storePathPhysic = DefaultMessageStore.this.getMessageStoreConfig().getStorePathCommitLog();
-                double physicRatio = UtilAll.getDiskPartitionSpaceUsedPercent(storePathPhysic);
+                double physicRatio = StorePathConfigHelper.getDiskPartitionSpaceUsedPercent(storePathPhysic);
                 if (physicRatio > DiskSpaceWarningLevelRatio) {
                     boolean diskok = DefaultMessageStore.this.runningFlags.getAndMakeDiskFull();
                     if (diskok) {
@@ -1290,6 +1604,7 @@ public class DefaultMessageStore implements MessageStore {
             }
 
             long logicsMsgTimestamp = 0;
+            long logicsMsgOffset = 0;
 
             int flushConsumeQueueThoroughInterval = DefaultMessageStore.this.getMessageStoreConfig().getFlushConsumeQueueThoroughInterval();
             long currentTimeMillis = System.currentTimeMillis();
@@ -1297,6 +1612,7 @@ public class DefaultMessageStore implements MessageStore {
                 this.lastFlushTimestamp = currentTimeMillis;
                 flushConsumeQueueLeastPages = 0;
                 logicsMsgTimestamp = DefaultMessageStore.this.getStoreCheckpoint().getLogicsMsgTimestamp();
+                logicsMsgOffset = DefaultMessageStore.this.getStoreCheckpoint().getLogicsMsgOffset();
             }
 
             ConcurrentHashMap<String, ConcurrentHashMap<Integer, ConsumeQueue>> tables = DefaultMessageStore.this.consumeQueueTable;
@@ -1314,6 +1630,9 @@ public class DefaultMessageStore implements MessageStore {
                 if (logicsMsgTimestamp > 0) {
                     DefaultMessageStore.this.getStoreCheckpoint().setLogicsMsgTimestamp(logicsMsgTimestamp);
                 }
+                if (logicsMsgOffset > 0) {
+                    DefaultMessageStore.this.getStoreCheckpoint().setLogicsMsgOffset(logicsMsgOffset);
+                }
                 DefaultMessageStore.this.getStoreCheckpoint().flush();
             }
         }
@@ -1353,20 +1672,41 @@ public class DefaultMessageStore implements MessageStore {
 
 
     public void doDispatch(DispatchRequest req) {
-        final int tranType = MessageSysFlag.getTransactionValue(req.getSysFlag());
-        switch (tranType) {
-        case MessageSysFlag.TransactionNotType:
-        case MessageSysFlag.TransactionCommitType:
-            DefaultMessageStore.this.putMessagePostionInfo(req.getTopic(), req.getQueueId(), req.getCommitLogOffset(), req.getMsgSize(),
-                req.getTagsCode(), req.getStoreTimestamp(), req.getConsumeQueueOffset());
-            break;
-        case MessageSysFlag.TransactionPreparedType:
-        case MessageSysFlag.TransactionRollbackType:
-            break;
+        for (CommitLogDispatcher dispatcher : this.dispatcherList) {
+            dispatcher.dispatch(req);
+        }
+    }
+
+
+    public LinkedList<CommitLogDispatcher> getDispatcherList() {
+        return dispatcherList;
+    }
+
+
+    class CommitLogDispatcherBuildConsumeQueue implements CommitLogDispatcher {
+        @Override
+        public void dispatch(DispatchRequest req) {
+            final int tranType = MessageSysFlag.getTransactionValue(req.getSysFlag());
+            switch (tranType) {
+            case MessageSysFlag.TransactionNotType:
+            case MessageSysFlag.TransactionCommitType:
+                DefaultMessageStore.this.putMessagePostionInfo(req.getTopic(), req.getQueueId(), req.getCommitLogOffset(),
+                    req.getMsgSize(), req.getTagsCode(), req.getStoreTimestamp(), req.getConsumeQueueOffset());
+                break;
+            case MessageSysFlag.TransactionPreparedType:
+            case MessageSysFlag.TransactionRollbackType:
+                break;
+            }
         }
+    }
+
 
-        if (DefaultMessageStore.this.getMessageStoreConfig().isMessageIndexEnable()) {
-            DefaultMessageStore.this.indexService.buildIndex(req);
+    class CommitLogDispatcherBuildIndex implements CommitLogDispatcher {
+        @Override
+        public void dispatch(DispatchRequest req) {
+            if (DefaultMessageStore.this.getMessageStoreConfig().isMessageIndexEnable()) {
+                DefaultMessageStore.this.indexService.putRequest(req);
+            }
         }
     }
 
@@ -1412,6 +1752,17 @@ public class DefaultMessageStore implements MessageStore {
         }
 
 
+        /**
+         * Called by every put, only the first put after the thread went to
+         * wait pays for the monitor
+         */
+        public void notifyMessageArriving() {
+            if (!this.hasNotified) {
+                this.wakeup();
+            }
+        }
+
+
         private void doReput() {
             for (boolean doNext = true; this.isCommitLogAvailable() && doNext;) {
                 SelectMapedBufferResult result = DefaultMessageStore.this.commitLog.getData(reputFromOffset);
@@ -1426,6 +1777,8 @@ public class DefaultMessageStore implements MessageStore {
                             if (dispatchRequest.isSuccess()) {
                                 if (size > 0) {
                                     DefaultMessageStore.this.doDispatch(dispatchRequest);
+                                    DefaultMessageStore.this.storeStatsService.setDispatchLatencyMax(
+                                        DefaultMessageStore.this.systemClock.now() - dispatchRequest.getStoreTimestamp());
                                     if (BrokerRole.SLAVE != DefaultMessageStore.this.getMessageStoreConfig().getBrokerRole()
                                             && DefaultMessageStore.this.brokerConfig.isLongPollingEnable()) {
                                         DefaultMessageStore.this.messageArrivingListener.arriving(dispatchRequest.getTopic(),
@@ -1479,8 +1832,10 @@ public class DefaultMessageStore implements MessageStore {
 
             while (!this.isStoped()) {
                 try {
-                    Thread.sleep(1);
                     this.doReput();
+                    if (!this.isCommitLogAvailable()) {
+                        this.waitForRunning(DefaultMessageStore.this.getMessageStoreConfig().getReputMessageWaitInterval());
+                    }
                 }
                 catch (Exception e) {
                     DefaultMessageStore.log.warn(this.getServiceName() + " service has exception. ", e);
@@ -1537,7 +1892,8 @@ public class DefaultMessageStore implements MessageStore {
         while (it.hasNext()) {
             Entry<String, ConcurrentHashMap<Integer, ConsumeQueue>> next = it.next();
             String topic = next.getKey();
-            if (!topics.contains(topic) && !topic.equals(ScheduleMessageService.SCHEDULE_TOPIC)) {
+            if (!topics.contains(topic) && !topic.equals(ScheduleMessageService.SCHEDULE_TOPIC)
+                    && !topic.equals(TimerMessageService.TIMER_TOPIC)) {
                 ConcurrentHashMap<Integer, ConsumeQueue> queueTable = next.getValue();
                 for (ConsumeQueue cq : queueTable.values()) {
                     cq.destroy();
@@ -1644,4 +2000,12 @@ public class DefaultMessageStore implements MessageStore {
     public long dispatchBehindBytes() {
         return this.reputMessageService.behind();
     }
+
+
+    /**
+     * The commit log write position advanced, dispatch it right now
+     */
+    public void notifyMessageArriving() {
+        this.reputMessageService.notifyMessageArriving();
+    }
 }
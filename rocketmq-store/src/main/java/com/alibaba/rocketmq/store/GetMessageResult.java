@@ -36,6 +36,8 @@ public class GetMessageResult {
     private long minOffset;
     private long maxOffset;
     private int bufferTotalSize = 0;
+    // Adjacent messages share one buffer, so count them apart
+    private int messageCount = 0;
     private boolean suggestPullingFromSlave = false;
     private int msgCount4Commercial = 0;
 
@@ -98,11 +100,38 @@ public class GetMessageResult {
         this.messageMapedList.add(mapedBuffer);
         this.messageBufferList.add(mapedBuffer.getByteBuffer());
         this.bufferTotalSize += mapedBuffer.getSize();
+        this.messageCount++;
         this.msgCount4Commercial += (int) Math.ceil(
                 mapedBuffer.getSize() / BrokerStatsManager.SIZE_PER_COUNT);
     }
 
 
+    /**
+     * Extends the last buffer over the message when it directly follows it in
+     * the same maped file, no new reference is taken on the file
+     *
+     * @return false when the message has to be selected and added
+     */
+    public boolean appendAdjacentMessage(final long offset, final int size) {
+        if (this.messageMapedList.isEmpty()) {
+            return false;
+        }
+
+        SelectMapedBufferResult last = this.messageMapedList.get(this.messageMapedList.size() - 1);
+        if (last.getStartOffset() + last.getSize() != offset
+                || last.getByteBuffer().position() != 0
+                || last.getByteBuffer().capacity() - last.getSize() < size) {
+            return false;
+        }
+
+        last.setSize(last.getSize() + size);
+        this.bufferTotalSize += size;
+        this.messageCount++;
+        this.msgCount4Commercial += (int) Math.ceil(size / BrokerStatsManager.SIZE_PER_COUNT);
+        return true;
+    }
+
+
     public void release() {
         for (SelectMapedBufferResult select : this.messageMapedList) {
             select.release();
@@ -121,7 +150,7 @@ public class GetMessageResult {
 
 
     public int getMessageCount() {
-        return this.messageMapedList.size();
+        return this.messageCount;
     }
 
 
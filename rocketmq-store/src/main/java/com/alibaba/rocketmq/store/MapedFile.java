@@ -19,6 +19,10 @@ package com.alibaba.rocketmq.store;
 import com.alibaba.rocketmq.common.UtilAll;
 import com.alibaba.rocketmq.common.constant.LoggerName;
 import com.alibaba.rocketmq.store.config.FlushDiskType;
+import com.alibaba.rocketmq.store.util.LibC;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +37,11 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -45,19 +54,38 @@ public class MapedFile extends ReferenceResource {
     private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
     private static final AtomicLong TotalMapedVitualMemory = new AtomicLong(0);
     private static final AtomicInteger TotalMapedFiles = new AtomicInteger(0);
+    private static final AtomicLong TotalLockedMemory = new AtomicLong(0);
+    private static final AtomicInteger TotalLockedFiles = new AtomicInteger(0);
     private final String fileName;
     private final long fileFromOffset;
     private final int fileSize;
     private final File file;
-    private final MappedByteBuffer mappedByteBuffer;
+    // Null while a file loaded on demand is not maped
+    private volatile MappedByteBuffer mappedByteBuffer;
+    private volatile long lastAccessTimestamp = System.currentTimeMillis();
     private final AtomicInteger wrotePostion = new AtomicInteger(0);
     private final AtomicInteger committedPosition = new AtomicInteger(0);
+    // Only with a transient store pool, messages are appended into the
+    // writeBuffer and transfered to the fileChannel up to this position
+    private final AtomicInteger transferedPosition = new AtomicInteger(0);
+    private volatile ByteBuffer writeBuffer = null;
+    private TransientStorePool transientStorePool = null;
     private FileChannel fileChannel;
     private volatile long storeTimestamp = 0;
     private boolean firstCreateInQueue = false;
+    private final AtomicBoolean locked = new AtomicBoolean(false);
 
 
     public MapedFile(final String fileName, final int fileSize) throws IOException {
+        this(fileName, fileSize, false);
+    }
+
+
+    /**
+     * @param mapOnDemand
+     *            only open the file, it is maped on the first access
+     */
+    public MapedFile(final String fileName, final int fileSize, final boolean mapOnDemand) throws IOException {
         this.fileName = fileName;
         this.fileSize = fileSize;
         this.file = new File(fileName);
@@ -68,9 +96,11 @@ public class MapedFile extends ReferenceResource {
 
         try {
             this.fileChannel = new RandomAccessFile(this.file, "rw").getChannel();
-            this.mappedByteBuffer = this.fileChannel.map(MapMode.READ_WRITE, 0, fileSize);
-            TotalMapedVitualMemory.addAndGet(fileSize);
-            TotalMapedFiles.incrementAndGet();
+            if (!mapOnDemand) {
+                this.mappedByteBuffer = this.fileChannel.map(MapMode.READ_WRITE, 0, fileSize);
+                TotalMapedVitualMemory.addAndGet(fileSize);
+                TotalMapedFiles.incrementAndGet();
+            }
             ok = true;
         }
         catch (FileNotFoundException e) {
@@ -89,6 +119,17 @@ public class MapedFile extends ReferenceResource {
     }
 
 
+    public MapedFile(final String fileName, final int fileSize, final TransientStorePool transientStorePool)
+            throws IOException {
+        this(fileName, fileSize);
+        this.writeBuffer = transientStorePool.borrowBuffer();
+        this.transientStorePool = transientStorePool;
+        if (null == this.writeBuffer) {
+            log.warn("transient store pool is exhausted, write maped file directly, " + fileName);
+        }
+    }
+
+
     public static void ensureDirOK(final String dirName) {
         if (dirName != null) {
             File f = new File(dirName);
@@ -164,6 +205,16 @@ public class MapedFile extends ReferenceResource {
     }
 
 
+    public static int getTotalLockedFiles() {
+        return TotalLockedFiles.get();
+    }
+
+
+    public static long getTotalLockedMemory() {
+        return TotalLockedMemory.get();
+    }
+
+
     public long getLastModifiedTimestamp() {
         return this.file.lastModified();
     }
@@ -189,7 +240,8 @@ public class MapedFile extends ReferenceResource {
         int currentPos = this.wrotePostion.get();
 
         if (currentPos < this.fileSize) {
-            ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
+            final ByteBuffer buffer = this.writeBuffer;
+            ByteBuffer byteBuffer = buffer != null ? buffer.slice() : this.mapedByteBuffer().slice();
             byteBuffer.position(currentPos);
             AppendMessageResult result =
                     cb.doAppend(this.getFileFromOffset(), byteBuffer, this.fileSize - currentPos, msg);
@@ -211,7 +263,7 @@ public class MapedFile extends ReferenceResource {
         int currentPos = this.wrotePostion.get();
 
         if ((currentPos + data.length) <= this.fileSize) {
-            ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
+            ByteBuffer byteBuffer = this.mapedByteBuffer().slice();
             byteBuffer.position(currentPos);
             byteBuffer.put(data);
             this.wrotePostion.addAndGet(data.length);
@@ -224,14 +276,29 @@ public class MapedFile extends ReferenceResource {
     public int commit(final int flushLeastPages) {
         if (this.isAbleToFlush(flushLeastPages)) {
             if (this.hold()) {
-                int value = this.wrotePostion.get();
-                this.mappedByteBuffer.force();
+                int value = this.getReadPosition();
+                try {
+                    // Data transfered through the channel is forced through it
+                    if (this.transientStorePool != null) {
+                        this.fileChannel.force(false);
+                    }
+                    else {
+                        // Not maped since it was loaded, nothing to force
+                        MappedByteBuffer buffer = this.mappedByteBuffer;
+                        if (buffer != null) {
+                            buffer.force();
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    log.error("force file channel " + this.fileName + " Failed. ", e);
+                }
                 this.committedPosition.set(value);
                 this.release();
             }
             else {
                 log.warn("in commit, hold failed, commit offset = " + this.committedPosition.get());
-                this.committedPosition.set(this.wrotePostion.get());
+                this.committedPosition.set(this.getReadPosition());
             }
         }
 
@@ -239,6 +306,81 @@ public class MapedFile extends ReferenceResource {
     }
 
 
+    /**
+     * Write what was appended into the writeBuffer to the file channel, the
+     * buffer goes back to the pool once the whole file is transfered
+     *
+     * @return the transfered position
+     */
+    public int transfer(final int transferLeastPages) {
+        if (null == this.writeBuffer) {
+            // Appended to the maped buffer directly, nothing to transfer
+            return this.wrotePostion.get();
+        }
+
+        if (this.isAbleToTransfer(transferLeastPages)) {
+            if (this.hold()) {
+                this.transferToChannel();
+                this.release();
+            }
+            else {
+                log.warn("in transfer, hold failed, transfer offset = " + this.transferedPosition.get());
+            }
+        }
+
+        if (this.fileSize == this.transferedPosition.get()) {
+            this.transientStorePool.returnBuffer(this.writeBuffer);
+            this.writeBuffer = null;
+        }
+
+        return this.transferedPosition.get();
+    }
+
+
+    private void transferToChannel() {
+        int lastTransfered = this.transferedPosition.get();
+        int writePos = this.wrotePostion.get();
+        if (writePos > lastTransfered) {
+            try {
+                ByteBuffer byteBuffer = this.writeBuffer.slice();
+                byteBuffer.position(lastTransfered);
+                byteBuffer.limit(writePos);
+                for (long position = lastTransfered; byteBuffer.hasRemaining();) {
+                    position += this.fileChannel.write(byteBuffer, position);
+                }
+                this.transferedPosition.set(writePos);
+            }
+            catch (IOException e) {
+                log.error("transfer to file channel " + this.fileName + " Failed. ", e);
+            }
+        }
+    }
+
+
+    private boolean isAbleToTransfer(final int transferLeastPages) {
+        int transfer = this.transferedPosition.get();
+        int write = this.wrotePostion.get();
+
+        if (this.isFull()) {
+            return write > transfer;
+        }
+
+        if (transferLeastPages > 0) {
+            return ((write / OS_PAGE_SIZE) - (transfer / OS_PAGE_SIZE)) >= transferLeastPages;
+        }
+
+        return write > transfer;
+    }
+
+
+    /**
+     * Readers only see what is in the maped buffer
+     */
+    public int getReadPosition() {
+        return null == this.writeBuffer ? this.wrotePostion.get() : this.transferedPosition.get();
+    }
+
+
     public int getCommittedPosition() {
         return committedPosition.get();
     }
@@ -251,7 +393,7 @@ public class MapedFile extends ReferenceResource {
 
     private boolean isAbleToFlush(final int flushLeastPages) {
         int flush = this.committedPosition.get();
-        int write = this.wrotePostion.get();
+        int write = this.getReadPosition();
 
         if (this.isFull()) {
             return true;
@@ -271,9 +413,9 @@ public class MapedFile extends ReferenceResource {
 
 
     public SelectMapedBufferResult selectMapedBuffer(int pos, int size) {
-        if ((pos + size) <= this.wrotePostion.get()) {
+        if ((pos + size) <= this.getReadPosition()) {
             if (this.hold()) {
-                ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
+                ByteBuffer byteBuffer = this.mapedByteBuffer().slice();
                 byteBuffer.position(pos);
                 ByteBuffer byteBufferNew = byteBuffer.slice();
                 byteBufferNew.limit(size);
@@ -292,12 +434,75 @@ public class MapedFile extends ReferenceResource {
         return null;
     }
 
+    /**
+     * Reads the range into a heap buffer without maping the file, the file
+     * is held until the result is released like a maped selection
+     */
+    public SelectMapedBufferResult readByChannel(int pos, int size) {
+        return this.readByChannel(pos, size, null);
+    }
+
+
+    /**
+     * With a pool, the buffer is borrowed from it and filled beyond the range
+     * up to its size, so the messages that follow are served by the same read
+     * when appended to the result
+     */
+    public SelectMapedBufferResult readByChannel(int pos, int size, final ReadBufferPool readBufferPool) {
+        final int readPosition = this.getReadPosition();
+        if ((pos + size) <= readPosition && size > 0) {
+            if (this.hold()) {
+                ByteBuffer pooledBuffer = null;
+                int readSize = size;
+                if (readBufferPool != null && size <= readBufferPool.getBufferSize()) {
+                    pooledBuffer = readBufferPool.borrowBuffer();
+                    readSize = Math.min(readBufferPool.getBufferSize(), readPosition - pos);
+                }
+                ByteBuffer byteBuffer = pooledBuffer != null ? pooledBuffer : ByteBuffer.allocate(size);
+                byteBuffer.limit(readSize);
+                try {
+                    while (byteBuffer.hasRemaining()) {
+                        if (this.fileChannel.read(byteBuffer, pos + byteBuffer.position()) < 0) {
+                            break;
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    log.error("read file channel " + this.fileName + " Failed. ", e);
+                }
+
+                if (byteBuffer.hasRemaining()) {
+                    if (pooledBuffer != null) {
+                        readBufferPool.returnBuffer(pooledBuffer);
+                    }
+                    this.release();
+                    return null;
+                }
+
+                byteBuffer.flip();
+                if (null == pooledBuffer) {
+                    return new SelectMapedBufferResult(this.fileFromOffset + pos, byteBuffer, size, this);
+                }
+
+                // Capacity is what was read, appending never goes beyond it
+                ByteBuffer byteBufferNew = byteBuffer.slice();
+                byteBufferNew.limit(size);
+                return new SelectMapedBufferResult(this.fileFromOffset + pos, byteBufferNew, size, this,
+                    readBufferPool, pooledBuffer);
+            }
+        }
+
+        return null;
+    }
+
+
     public SelectMapedBufferResult selectMapedBuffer(int pos) {
-        if (pos < this.wrotePostion.get() && pos >= 0) {
+        int readPosition = this.getReadPosition();
+        if (pos < readPosition && pos >= 0) {
             if (this.hold()) {
-                ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
+                ByteBuffer byteBuffer = this.mapedByteBuffer().slice();
                 byteBuffer.position(pos);
-                int size = this.wrotePostion.get() - pos;
+                int size = readPosition - pos;
                 ByteBuffer byteBufferNew = byteBuffer.slice();
                 byteBufferNew.limit(size);
                 return new SelectMapedBufferResult(this.fileFromOffset + pos, byteBufferNew, size, this);
@@ -322,9 +527,17 @@ public class MapedFile extends ReferenceResource {
             return true;
         }
 
-        clean(this.mappedByteBuffer);
-        TotalMapedVitualMemory.addAndGet(this.fileSize * (-1));
-        TotalMapedFiles.decrementAndGet();
+        this.munlock();
+        if (this.mappedByteBuffer != null) {
+            clean(this.mappedByteBuffer);
+            this.mappedByteBuffer = null;
+            TotalMapedVitualMemory.addAndGet(this.fileSize * (-1));
+            TotalMapedFiles.decrementAndGet();
+        }
+        if (this.writeBuffer != null) {
+            this.transientStorePool.returnBuffer(this.writeBuffer);
+            this.writeBuffer = null;
+        }
         log.info("unmap file[REF:" + currentRef + "] " + this.fileName + " OK");
         return true;
     }
@@ -360,7 +573,8 @@ public class MapedFile extends ReferenceResource {
 
     public void warmMappedFile(FlushDiskType type, int pages) {
         long beginTime = System.currentTimeMillis();
-        ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
+        MappedByteBuffer mappedByteBuffer = this.mapedByteBuffer();
+        ByteBuffer byteBuffer = mappedByteBuffer.slice();
         int flush = 0;
         long time = System.currentTimeMillis();
         for (int i = 0, j = 0; i < this.fileSize; i += MapedFile.OS_PAGE_SIZE, j++) {
@@ -397,6 +611,96 @@ public class MapedFile extends ReferenceResource {
     }
 
 
+    /**
+     * Fault in and lock the whole file in memory, so that appending to it
+     * never waits for a page
+     */
+    public void mlock() {
+        if (!this.locked.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long beginTime = System.currentTimeMillis();
+        try {
+            Pointer pointer = Native.getDirectBufferPointer(this.mapedByteBuffer());
+            int ret = LibC.INSTANCE.mlock(pointer, new NativeLong(this.fileSize));
+            if (ret != 0) {
+                log.warn("mlock " + this.fileName + " failed, ret: " + ret + ", check ulimit -l");
+                this.locked.set(false);
+                return;
+            }
+        }
+        catch (Throwable e) {
+            log.warn("mlock " + this.fileName + " failed", e);
+            this.locked.set(false);
+            return;
+        }
+
+        TotalLockedMemory.addAndGet(this.fileSize);
+        TotalLockedFiles.incrementAndGet();
+        log.info("mlock " + this.fileName + " OK, " + UtilAll.computeEclipseTimeMilliseconds(beginTime) + "ms");
+    }
+
+
+    public void munlock() {
+        if (!this.locked.compareAndSet(true, false)) {
+            return;
+        }
+
+        try {
+            Pointer pointer = Native.getDirectBufferPointer(this.mappedByteBuffer);
+            LibC.INSTANCE.munlock(pointer, new NativeLong(this.fileSize));
+        }
+        catch (Throwable e) {
+            log.warn("munlock " + this.fileName + " failed", e);
+        }
+
+        TotalLockedMemory.addAndGet(this.fileSize * (-1));
+        TotalLockedFiles.decrementAndGet();
+        log.info("munlock " + this.fileName + " OK");
+    }
+
+
+    public boolean isLocked() {
+        return this.locked.get();
+    }
+
+
+    /**
+     * @param advice
+     *            one of the LibC.MADV_ constants
+     */
+    public void madvise(final int pos, final int size, final int advice) {
+        if (pos < 0 || pos >= this.fileSize || size <= 0) {
+            return;
+        }
+
+        if (this.hold()) {
+            try {
+                // Advice is not worth maping a cold file for
+                if (!this.isMaped()) {
+                    return;
+                }
+
+                // The address must be page aligned, the maped buffer is
+                final int alignedPos = pos - (pos % OS_PAGE_SIZE);
+                final int length = Math.min(size + (pos - alignedPos), this.fileSize - alignedPos);
+                Pointer pointer = Native.getDirectBufferPointer(this.mapedByteBuffer()).share(alignedPos);
+                int ret = LibC.INSTANCE.madvise(pointer, new NativeLong(length), advice);
+                if (ret != 0) {
+                    log.warn("madvise " + this.fileName + " failed, advice: " + advice + ", ret: " + ret);
+                }
+            }
+            catch (Throwable e) {
+                log.warn("madvise " + this.fileName + " failed, advice: " + advice, e);
+            }
+            finally {
+                this.release();
+            }
+        }
+    }
+
+
     public int getWrotePostion() {
         return wrotePostion.get();
     }
@@ -407,12 +711,134 @@ public class MapedFile extends ReferenceResource {
     }
 
 
+    public int getTransferedPosition() {
+        return transferedPosition.get();
+    }
+
+
+    public void setTransferedPosition(int pos) {
+        this.transferedPosition.set(pos);
+    }
+
+
     public MappedByteBuffer getMappedByteBuffer() {
-        return mappedByteBuffer;
+        return this.mapedByteBuffer();
     }
 
+    /**
+     * The caller holds the file while it uses the buffer, only recovery
+     * runs before cold files are unmaped and may skip it
+     */
     public ByteBuffer sliceByteBuffer() {
-        return this.mappedByteBuffer.slice();
+        return this.mapedByteBuffer().slice();
+    }
+
+
+    /**
+     * Maps the file if it was loaded on demand or unmaped since
+     */
+    private MappedByteBuffer mapedByteBuffer() {
+        this.lastAccessTimestamp = System.currentTimeMillis();
+        MappedByteBuffer buffer = this.mappedByteBuffer;
+        if (buffer != null) {
+            return buffer;
+        }
+
+        synchronized (this) {
+            if (null == this.mappedByteBuffer) {
+                try {
+                    this.mappedByteBuffer = this.fileChannel.map(MapMode.READ_WRITE, 0, this.fileSize);
+                }
+                catch (IOException e) {
+                    log.error("map file " + this.fileName + " Failed. ", e);
+                    throw new RuntimeException("map file " + this.fileName + " Failed", e);
+                }
+                TotalMapedVitualMemory.addAndGet(this.fileSize);
+                TotalMapedFiles.incrementAndGet();
+            }
+
+            return this.mappedByteBuffer;
+        }
+    }
+
+
+    /**
+     * Gives the mapping of a full and flushed file back when nobody holds
+     * it, the next access maps it again. hold() takes the same monitor, so
+     * a reader either holds the file before the check or maps it again
+     * after the unmap, never uses a buffer that is being unmaped
+     */
+    public synchronized boolean unmap(final long minIdleTime) {
+        if (null == this.mappedByteBuffer || !this.isAvailable() || this.getRefCount() > 1 || this.isLocked()
+                || this.writeBuffer != null || !this.isFull() || this.committedPosition.get() < this.fileSize) {
+            return false;
+        }
+
+        if (System.currentTimeMillis() - this.lastAccessTimestamp < minIdleTime) {
+            return false;
+        }
+
+        clean(this.mappedByteBuffer);
+        this.mappedByteBuffer = null;
+        TotalMapedVitualMemory.addAndGet(this.fileSize * (-1));
+        TotalMapedFiles.decrementAndGet();
+        return true;
+    }
+
+
+    public boolean isMaped() {
+        return this.mappedByteBuffer != null;
+    }
+
+
+    public long getLastAccessTimestamp() {
+        return lastAccessTimestamp;
+    }
+
+
+    /**
+     * Unmaps the least recently accessed files until the maped ones fit in
+     * maxMapedBytes. Files accessed in the last minIdleTime are kept only to
+     * avoid maping them again at once, held files are never unmaped
+     *
+     * @return the maped bytes left
+     */
+    public static long unmapLeastRecentlyUsed(final List<MapedFile> mapedFiles, final long maxMapedBytes,
+            final long minIdleTime) {
+        List<MapedFile> maped = new ArrayList<MapedFile>(mapedFiles.size());
+        long mapedBytes = 0;
+        for (MapedFile mapedFile : mapedFiles) {
+            if (mapedFile.isMaped()) {
+                maped.add(mapedFile);
+                mapedBytes += mapedFile.getFileSize();
+            }
+        }
+
+        if (mapedBytes <= maxMapedBytes) {
+            return mapedBytes;
+        }
+
+        Collections.sort(maped, new Comparator<MapedFile>() {
+            @Override
+            public int compare(MapedFile o1, MapedFile o2) {
+                long diff = o1.getLastAccessTimestamp() - o2.getLastAccessTimestamp();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        final long now = System.currentTimeMillis();
+        for (MapedFile mapedFile : maped) {
+            if (mapedBytes <= maxMapedBytes || now - mapedFile.getLastAccessTimestamp() < minIdleTime) {
+                break;
+            }
+
+            if (mapedFile.unmap(minIdleTime)) {
+                mapedBytes -= mapedFile.getFileSize();
+                log.info("unmap cold file " + mapedFile.getFileName() + " OK");
+            }
+        }
+
+        return mapedBytes;
     }
 
 
@@ -18,6 +18,7 @@ package com.alibaba.rocketmq.store;
 
 import com.alibaba.rocketmq.common.UtilAll;
 import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.store.config.StorePathConfigHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,7 +26,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -39,16 +44,37 @@ public class MapedFileQueue {
     private static final Logger logError = LoggerFactory.getLogger(LoggerName.StoreErrorLoggerName);
     private static final int DeleteFilesBatchMax = 10;
     private final String storePath;
+    // Consecutive files are spread over these directories
+    private final String[] storePaths;
+    // Unlocks the full files of every queue out of the put path
+    private static final ExecutorService MunlockExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "MunlockMapedFileThread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     private final int mapedFileSize;
     private final List<MapedFile> mapedFiles = new ArrayList<MapedFile>();
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final AllocateMapedFileService allocateMapedFileService;
     private long committedWhere = 0;
+    private long transferedWhere = 0;
     private volatile long storeTimestamp = 0;
+    // Keep the file being written locked in memory
+    private boolean mlockEnable = false;
+    // Loaded files are maped on their first access
+    private boolean mapOnDemand = false;
+    // Where the file after the last one was allocated ahead
+    private String nextNextFilePath;
+    // New files avoid directories whose disk is used above this ratio
+    private double storePathMaxUsedRatio = 1.0;
 
     public MapedFileQueue(final String storePath, int mapedFileSize,
             AllocateMapedFileService allocateMapedFileService) {
         this.storePath = storePath;
+        this.storePaths = StorePathConfigHelper.splitStorePaths(storePath);
         this.mapedFileSize = mapedFileSize;
         this.allocateMapedFileService = allocateMapedFileService;
     }
@@ -129,6 +155,7 @@ public class MapedFileQueue {
                 if (offset >= file.getFileFromOffset()) {
                     file.setWrotePostion((int) (offset % this.mapedFileSize));
                     file.setCommittedPosition((int) (offset % this.mapedFileSize));
+                    file.setTransferedPosition((int) (offset % this.mapedFileSize));
                 }
                 else {
                     file.destroy(1000);
@@ -162,11 +189,30 @@ public class MapedFileQueue {
 
 
     public boolean load() {
-        File dir = new File(this.storePath);
-        File[] files = dir.listFiles();
-        if (files != null) {
-            // ascending order
-            Arrays.sort(files);
+        List<File> fileList = new ArrayList<File>();
+        for (String path : this.storePaths) {
+            File[] files = new File(path).listFiles();
+            if (files != null) {
+                fileList.addAll(Arrays.asList(files));
+            }
+        }
+
+        if (!fileList.isEmpty()) {
+            File[] files = fileList.toArray(new File[fileList.size()]);
+            // ascending order, by name as they may come from several directories
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File o1, File o2) {
+                    return o1.getName().compareTo(o2.getName());
+                }
+            });
+            for (int i = 1; i < files.length; i++) {
+                if (files[i].getName().equals(files[i - 1].getName())) {
+                    log.error("file " + files[i] + " also exists as " + files[i - 1] + ", load failed");
+                    return false;
+                }
+            }
+
             for (File file : files) {
                 if (file.length() != this.mapedFileSize) {
                     log.warn(file + "\t" + file.length()
@@ -175,10 +221,11 @@ public class MapedFileQueue {
                 }
 
                 try {
-                    MapedFile mapedFile = new MapedFile(file.getPath(), mapedFileSize);
+                    MapedFile mapedFile = new MapedFile(file.getPath(), mapedFileSize, this.mapOnDemand);
 
                     mapedFile.setWrotePostion(this.mapedFileSize);
                     mapedFile.setCommittedPosition(this.mapedFileSize);
+                    mapedFile.setTransferedPosition(this.mapedFileSize);
                     this.mapedFiles.add(mapedFile);
                     log.info("load " + file.getPath() + " OK");
                 }
@@ -189,6 +236,10 @@ public class MapedFileQueue {
             }
         }
 
+        if (this.mlockEnable && !this.mapedFiles.isEmpty()) {
+            this.mapedFiles.get(this.mapedFiles.size() - 1).mlock();
+        }
+
         return true;
     }
 
@@ -248,9 +299,15 @@ public class MapedFileQueue {
         }
 
         if (createOffset != -1 && needCreate) {
-            String nextFilePath = this.storePath + File.separator + UtilAll.offset2FileName(createOffset);
+            String nextFilePath = this.nextNextFilePath;
+            if (null == nextFilePath
+                    || !new File(nextFilePath).getName().equals(UtilAll.offset2FileName(createOffset))) {
+                nextFilePath =
+                        this.pickStorePath(mapedFileLast != null ? mapedFileLast.getFileName() : null)
+                                + File.separator + UtilAll.offset2FileName(createOffset);
+            }
             String nextNextFilePath =
-                    this.storePath + File.separator
+                    this.pickStorePath(nextFilePath) + File.separator
                             + UtilAll.offset2FileName(createOffset + this.mapedFileSize);
             MapedFile mapedFile = null;
 
@@ -269,12 +326,17 @@ public class MapedFileQueue {
             }
 
             if (mapedFile != null) {
+                this.nextNextFilePath = nextNextFilePath;
                 this.readWriteLock.writeLock().lock();
                 if (this.mapedFiles.isEmpty()) {
                     mapedFile.setFirstCreateInQueue(true);
                 }
                 this.mapedFiles.add(mapedFile);
                 this.readWriteLock.writeLock().unlock();
+
+                if (this.mlockEnable) {
+                    this.rollLockedFile(mapedFileLast, mapedFile);
+                }
             }
 
             return mapedFile;
@@ -283,6 +345,78 @@ public class MapedFileQueue {
         return mapedFileLast;
     }
 
+    /**
+     * Picks the directory with the most usable space for a new file, other
+     * than the one of the previous file so consecutive files are on different
+     * disks, ties go to the directory following the previous one. Directories
+     * used above storePathMaxUsedRatio are skipped while another one is not
+     */
+    private String pickStorePath(final String previousFilePath) {
+        if (this.storePaths.length == 1) {
+            return this.storePaths[0];
+        }
+
+        int previous = -1;
+        if (previousFilePath != null) {
+            String previousDir = new File(previousFilePath).getParentFile().getAbsolutePath();
+            for (int i = 0; i < this.storePaths.length; i++) {
+                if (new File(this.storePaths[i]).getAbsolutePath().equals(previousDir)) {
+                    previous = i;
+                    break;
+                }
+            }
+        }
+
+        String result = null;
+        String fullest = null;
+        long maxUsableSpace = -1;
+        long maxUsableSpaceFull = -1;
+        for (int i = 1; i <= this.storePaths.length; i++) {
+            int index = (previous + i) % this.storePaths.length;
+
+            File dir = new File(this.storePaths[index]);
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+
+            long usableSpace = dir.getUsableSpace();
+            if (index == previous
+                    || UtilAll.getDiskPartitionSpaceUsedPercent(this.storePaths[index]) > this.storePathMaxUsedRatio) {
+                // Only when every other directory is too full
+                if (usableSpace > maxUsableSpaceFull) {
+                    maxUsableSpaceFull = usableSpace;
+                    fullest = this.storePaths[index];
+                }
+                continue;
+            }
+
+            if (usableSpace > maxUsableSpace) {
+                maxUsableSpace = usableSpace;
+                result = this.storePaths[index];
+            }
+        }
+
+        return result != null ? result : fullest;
+    }
+
+    /**
+     * The new file is usually locked by the allocate service already, the
+     * full one is unlocked out of the put path
+     */
+    private void rollLockedFile(final MapedFile fullFile, final MapedFile newFile) {
+        newFile.mlock();
+
+        if (fullFile != null && fullFile.isLocked()) {
+            MunlockExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fullFile.munlock();
+                }
+            });
+        }
+    }
+
+
     public long getMinOffset() {
         try {
             this.readWriteLock.readLock().lock();
@@ -307,7 +441,7 @@ public class MapedFileQueue {
             if (!this.mapedFiles.isEmpty()) {
                 int lastIndex = this.mapedFiles.size() - 1;
                 MapedFile mapedFile = this.mapedFiles.get(lastIndex);
-                return mapedFile.getFileFromOffset() + mapedFile.getWrotePostion();
+                return mapedFile.getFileFromOffset() + mapedFile.getReadPosition();
             }
         }
         catch (Exception e) {
@@ -439,6 +573,25 @@ public class MapedFileQueue {
     }
 
 
+    /**
+     * Transfer what the transient store pool buffered to the file channel
+     *
+     * @return false if anything was transfered
+     */
+    public boolean transfer(final int transferLeastPages) {
+        boolean result = true;
+        MapedFile mapedFile = this.findMapedFileByOffset(this.transferedWhere, 0 == this.transferedWhere);
+        if (mapedFile != null) {
+            int offset = mapedFile.transfer(transferLeastPages);
+            long where = mapedFile.getFileFromOffset() + offset;
+            result = (where == this.transferedWhere);
+            this.transferedWhere = where;
+        }
+
+        return result;
+    }
+
+
     public MapedFile findMapedFileByOffset(final long offset, final boolean returnFirstOnNotFound) {
         try {
             this.readWriteLock.readLock().lock();
@@ -568,11 +721,14 @@ public class MapedFileQueue {
         }
         this.mapedFiles.clear();
         this.committedWhere = 0;
+        this.transferedWhere = 0;
 
-        // delete parent directory
-        File file = new File(storePath);
-        if (file.isDirectory()) {
-            file.delete();
+        // delete parent directories
+        for (String path : this.storePaths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                file.delete();
+            }
         }
         this.readWriteLock.writeLock().unlock();
     }
@@ -588,6 +744,16 @@ public class MapedFileQueue {
     }
 
 
+    public long getTransferedWhere() {
+        return transferedWhere;
+    }
+
+
+    public void setTransferedWhere(long transferedWhere) {
+        this.transferedWhere = transferedWhere;
+    }
+
+
     public long getStoreTimestamp() {
         return storeTimestamp;
     }
@@ -598,7 +764,33 @@ public class MapedFileQueue {
     }
 
 
+    public void collectMapedFiles(final List<MapedFile> result) {
+        this.readWriteLock.readLock().lock();
+        try {
+            result.addAll(this.mapedFiles);
+        }
+        finally {
+            this.readWriteLock.readLock().unlock();
+        }
+    }
+
+
     public int getMapedFileSize() {
         return mapedFileSize;
     }
+
+
+    public void setMlockEnable(boolean mlockEnable) {
+        this.mlockEnable = mlockEnable;
+    }
+
+
+    public void setMapOnDemand(boolean mapOnDemand) {
+        this.mapOnDemand = mapOnDemand;
+    }
+
+
+    public void setStorePathMaxUsedRatio(double storePathMaxUsedRatio) {
+        this.storePathMaxUsedRatio = storePathMaxUsedRatio;
+    }
 }
@@ -40,6 +40,19 @@ public interface MessageStore {
 
     PutMessageResult putMessage(final MessageExtBrokerInner msg);
 
+    /**
+     * Store the messages of a batch contiguously, in one lock acquisition
+     */
+    PutMessageResult putMessages(final MessageExtBatch messageExtBatch);
+
+    /**
+     * Does not wait for the flush or slave transfer, the callback gets the
+     * same result putMessage would have returned
+     */
+    void putMessageAsync(final MessageExtBrokerInner msg, final PutMessageCallback callback);
+
+    void putMessagesAsync(final MessageExtBatch messageExtBatch, final PutMessageCallback callback);
+
 
     GetMessageResult getMessage(final String group, final String topic, final int queueId,
                                 final long offset, final int maxMsgNums, final SubscriptionData subscriptionData);
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Spin lock implementation of {@link PutMessageLock}, suitable when the send
+ * threads are about as many as the cores. The lock is also held while the
+ * commit log rolls to a new file, which may wait for it to be allocated
+ *
+ * @author shijia.wxr
+ */
+public class PutMessageSpinLock implements PutMessageLock {
+    private static final int SpinTimesBeforeYield = 1000;
+    // true: can lock, false: in lock
+    private final AtomicBoolean putMessageSpinLock = new AtomicBoolean(true);
+
+
+    @Override
+    public void lock() {
+        int spinTimes = 0;
+        while (!this.putMessageSpinLock.compareAndSet(true, false)) {
+            if (++spinTimes >= SpinTimesBeforeYield) {
+                spinTimes = 0;
+                Thread.yield();
+            }
+        }
+    }
+
+
+    @Override
+    public void unlock() {
+        this.putMessageSpinLock.compareAndSet(false, true);
+    }
+}
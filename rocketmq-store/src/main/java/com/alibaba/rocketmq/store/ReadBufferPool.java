@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Heap buffers of one size for reads through the file channel. A buffer is
+ * borrowed for a selection and back in the pool once the selection is
+ * released, at most maxPooled of them are kept.
+ *
+ * @author shijia.wxr
+ */
+public class ReadBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> availableBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+
+
+    public ReadBufferPool(final int bufferSize, final int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+
+    public ByteBuffer borrowBuffer() {
+        ByteBuffer byteBuffer = this.availableBuffers.poll();
+        if (null == byteBuffer) {
+            return ByteBuffer.allocate(this.bufferSize);
+        }
+
+        this.pooled.decrementAndGet();
+        byteBuffer.clear();
+        return byteBuffer;
+    }
+
+
+    public void returnBuffer(final ByteBuffer byteBuffer) {
+        if (byteBuffer.capacity() != this.bufferSize) {
+            return;
+        }
+
+        if (this.pooled.incrementAndGet() > this.maxPooled) {
+            this.pooled.decrementAndGet();
+            return;
+        }
+
+        this.availableBuffers.offer(byteBuffer);
+    }
+
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+
+    public int getPooled() {
+        return this.pooled.get();
+    }
+}
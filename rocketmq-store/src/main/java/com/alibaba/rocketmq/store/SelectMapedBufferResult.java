@@ -27,6 +27,9 @@ public class SelectMapedBufferResult {
     private final ByteBuffer byteBuffer;
     private int size;
     private MapedFile mapedFile;
+    // Only for a read through the file channel, the buffer goes back on release
+    private ReadBufferPool readBufferPool;
+    private ByteBuffer pooledBuffer;
 
     public SelectMapedBufferResult(long startOffset, ByteBuffer byteBuffer, int size, MapedFile mapedFile) {
         this.startOffset = startOffset;
@@ -36,6 +39,14 @@ public class SelectMapedBufferResult {
     }
 
 
+    public SelectMapedBufferResult(long startOffset, ByteBuffer byteBuffer, int size, MapedFile mapedFile,
+            ReadBufferPool readBufferPool, ByteBuffer pooledBuffer) {
+        this(startOffset, byteBuffer, size, mapedFile);
+        this.readBufferPool = readBufferPool;
+        this.pooledBuffer = pooledBuffer;
+    }
+
+
     public ByteBuffer getByteBuffer() {
         return byteBuffer;
     }
@@ -68,6 +79,10 @@ public class SelectMapedBufferResult {
         if (this.mapedFile != null) {
             this.mapedFile.release();
             this.mapedFile = null;
+            if (this.readBufferPool != null) {
+                this.readBufferPool.returnBuffer(this.pooledBuffer);
+                this.pooledBuffer = null;
+            }
         }
     }
 
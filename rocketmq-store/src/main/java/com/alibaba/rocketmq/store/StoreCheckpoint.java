@@ -41,6 +41,9 @@ public class StoreCheckpoint {
     private volatile long physicMsgTimestamp = 0;
     private volatile long logicsMsgTimestamp = 0;
     private volatile long indexMsgTimestamp = 0;
+    // Flushed offsets in the commit log, 0 when written by an older version
+    private volatile long physicMsgOffset = 0;
+    private volatile long logicsMsgOffset = 0;
 
 
     public StoreCheckpoint(final String scpPath) throws IOException {
@@ -57,6 +60,8 @@ public class StoreCheckpoint {
             this.physicMsgTimestamp = this.mappedByteBuffer.getLong(0);
             this.logicsMsgTimestamp = this.mappedByteBuffer.getLong(8);
             this.indexMsgTimestamp = this.mappedByteBuffer.getLong(16);
+            this.physicMsgOffset = this.mappedByteBuffer.getLong(24);
+            this.logicsMsgOffset = this.mappedByteBuffer.getLong(32);
 
             log.info("store checkpoint file physicMsgTimestamp " + this.physicMsgTimestamp + ", "
                     + UtilAll.timeMillisToHumanString(this.physicMsgTimestamp));
@@ -64,6 +69,8 @@ public class StoreCheckpoint {
                     + UtilAll.timeMillisToHumanString(this.logicsMsgTimestamp));
             log.info("store checkpoint file indexMsgTimestamp " + this.indexMsgTimestamp + ", "
                     + UtilAll.timeMillisToHumanString(this.indexMsgTimestamp));
+            log.info("store checkpoint file physicMsgOffset " + this.physicMsgOffset + ", logicsMsgOffset "
+                    + this.logicsMsgOffset);
         }
         else {
             log.info("store checkpoint file not exists, " + scpPath);
@@ -90,6 +97,8 @@ public class StoreCheckpoint {
         this.mappedByteBuffer.putLong(0, this.physicMsgTimestamp);
         this.mappedByteBuffer.putLong(8, this.logicsMsgTimestamp);
         this.mappedByteBuffer.putLong(16, this.indexMsgTimestamp);
+        this.mappedByteBuffer.putLong(24, this.physicMsgOffset);
+        this.mappedByteBuffer.putLong(32, this.logicsMsgOffset);
         this.mappedByteBuffer.force();
     }
 
@@ -140,4 +149,33 @@ public class StoreCheckpoint {
         this.indexMsgTimestamp = indexMsgTimestamp;
     }
 
+
+    public long getPhysicMsgOffset() {
+        return physicMsgOffset;
+    }
+
+
+    public void setPhysicMsgOffset(long physicMsgOffset) {
+        this.physicMsgOffset = physicMsgOffset;
+    }
+
+
+    public long getLogicsMsgOffset() {
+        return logicsMsgOffset;
+    }
+
+
+    public void setLogicsMsgOffset(long logicsMsgOffset) {
+        this.logicsMsgOffset = logicsMsgOffset;
+    }
+
+
+    /**
+     * Everything before this offset is flushed to the commit log and
+     * dispatched to the flushed consume queues
+     */
+    public long getMinOffset() {
+        return Math.min(this.physicMsgOffset, this.logicsMsgOffset);
+    }
+
 }
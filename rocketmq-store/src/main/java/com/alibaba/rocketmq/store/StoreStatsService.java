@@ -47,6 +47,10 @@ public class StoreStatsService extends ServiceThread {
     private final AtomicLong getMessageTransferedMsgCount = new AtomicLong(0);
     private final AtomicLong getMessageTimesTotalMiss = new AtomicLong(0);
     private final AtomicLong[] putMessageDistributeTime = new AtomicLong[7];
+    // 10us 50us 100us 500us 1ms 10ms 100ms and above
+    private final AtomicLong[] putMessageInLockDistributeTime = new AtomicLong[8];
+    // 1ms 5ms 10ms 50ms 100ms 500ms 1s and above
+    private final AtomicLong[] dispatchLatencyDistributeTime = new AtomicLong[8];
     private final LinkedList<CallSnapshot> putTimesList = new LinkedList<CallSnapshot>();
     private final LinkedList<CallSnapshot> getTimesFoundList = new LinkedList<CallSnapshot>();
     private final LinkedList<CallSnapshot> getTimesMissList = new LinkedList<CallSnapshot>();
@@ -54,11 +58,19 @@ public class StoreStatsService extends ServiceThread {
     private long messageStoreBootTimestamp = System.currentTimeMillis();
     private volatile long putMessageEntireTimeMax = 0;
     private volatile long getMessageEntireTimeMax = 0;
+    // microseconds
+    private volatile long putMessageInLockTimeMax = 0;
     // for putMessageEntireTimeMax
     private ReentrantLock lockPut = new ReentrantLock();
     // for getMessageEntireTimeMax
     private ReentrantLock lockGet = new ReentrantLock();
+    // for putMessageInLockTimeMax
+    private ReentrantLock lockPutInLock = new ReentrantLock();
     private volatile long dispatchMaxBuffer = 0;
+    // milliseconds from store to dispatch
+    private volatile long dispatchLatencyMax = 0;
+    // for dispatchLatencyMax
+    private ReentrantLock lockDispatch = new ReentrantLock();
     private ReentrantLock lockSampling = new ReentrantLock();
     private long lastPrintTimestamp = System.currentTimeMillis();
 
@@ -67,6 +79,14 @@ public class StoreStatsService extends ServiceThread {
         for (int i = 0; i < this.putMessageDistributeTime.length; i++) {
             putMessageDistributeTime[i] = new AtomicLong(0);
         }
+
+        for (int i = 0; i < this.putMessageInLockDistributeTime.length; i++) {
+            putMessageInLockDistributeTime[i] = new AtomicLong(0);
+        }
+
+        for (int i = 0; i < this.dispatchLatencyDistributeTime.length; i++) {
+            dispatchLatencyDistributeTime[i] = new AtomicLong(0);
+        }
     }
 
 
@@ -107,6 +127,50 @@ public class StoreStatsService extends ServiceThread {
     }
 
 
+    public long getPutMessageInLockTimeMax() {
+        return putMessageInLockTimeMax;
+    }
+
+
+    /**
+     * @param value
+     *            time the put message lock was held, in microseconds
+     */
+    public void setPutMessageInLockTimeMax(long value) {
+        if (value < 10) {
+            this.putMessageInLockDistributeTime[0].incrementAndGet();
+        }
+        else if (value < 50) {
+            this.putMessageInLockDistributeTime[1].incrementAndGet();
+        }
+        else if (value < 100) {
+            this.putMessageInLockDistributeTime[2].incrementAndGet();
+        }
+        else if (value < 500) {
+            this.putMessageInLockDistributeTime[3].incrementAndGet();
+        }
+        else if (value < 1000) {
+            this.putMessageInLockDistributeTime[4].incrementAndGet();
+        }
+        else if (value < 10000) {
+            this.putMessageInLockDistributeTime[5].incrementAndGet();
+        }
+        else if (value < 100000) {
+            this.putMessageInLockDistributeTime[6].incrementAndGet();
+        }
+        else {
+            this.putMessageInLockDistributeTime[7].incrementAndGet();
+        }
+
+        if (value > this.putMessageInLockTimeMax) {
+            this.lockPutInLock.lock();
+            this.putMessageInLockTimeMax =
+                    value > this.putMessageInLockTimeMax ? value : this.putMessageInLockTimeMax;
+            this.lockPutInLock.unlock();
+        }
+    }
+
+
     public long getGetMessageEntireTimeMax() {
         return getMessageEntireTimeMax;
     }
@@ -132,6 +196,59 @@ public class StoreStatsService extends ServiceThread {
     }
 
 
+    public long getDispatchLatencyMax() {
+        return dispatchLatencyMax;
+    }
+
+
+    /**
+     * @param value
+     *            time from the message stored to its consume queue entry
+     *            dispatched, in milliseconds
+     */
+    public void setDispatchLatencyMax(long value) {
+        if (value < 1) {
+            this.dispatchLatencyDistributeTime[0].incrementAndGet();
+        }
+        else if (value < 5) {
+            this.dispatchLatencyDistributeTime[1].incrementAndGet();
+        }
+        else if (value < 10) {
+            this.dispatchLatencyDistributeTime[2].incrementAndGet();
+        }
+        else if (value < 50) {
+            this.dispatchLatencyDistributeTime[3].incrementAndGet();
+        }
+        else if (value < 100) {
+            this.dispatchLatencyDistributeTime[4].incrementAndGet();
+        }
+        else if (value < 500) {
+            this.dispatchLatencyDistributeTime[5].incrementAndGet();
+        }
+        else if (value < 1000) {
+            this.dispatchLatencyDistributeTime[6].incrementAndGet();
+        }
+        else {
+            this.dispatchLatencyDistributeTime[7].incrementAndGet();
+        }
+
+        if (value > this.dispatchLatencyMax) {
+            this.lockDispatch.lock();
+            this.dispatchLatencyMax = value > this.dispatchLatencyMax ? value : this.dispatchLatencyMax;
+            this.lockDispatch.unlock();
+        }
+    }
+
+
+    private long getDispatchTimesTotal() {
+        long rs = 0;
+        for (AtomicLong data : this.dispatchLatencyDistributeTime) {
+            rs += data.get();
+        }
+        return rs == 0 ? 1 : rs;
+    }
+
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder(1024);
@@ -146,9 +263,16 @@ public class StoreStatsService extends ServiceThread {
         sb.append("\tputMessageSizeTotal: " + this.getPutMessageSizeTotal() + "\r\n");
         sb.append("\tputMessageDistributeTime: " + this.getPutMessageDistributeTimeStringInfo(totalTimes)
                 + "\r\n");
+        sb.append("\tputMessageInLockTimeMax: " + this.putMessageInLockTimeMax + "\r\n");
+        sb.append("\tputMessageInLockDistributeTime: "
+                + this.getDistributeTimeStringInfo(this.putMessageInLockDistributeTime, totalTimes) + "\r\n");
         sb.append("\tputMessageAverageSize: " + (this.getPutMessageSizeTotal() / totalTimes.doubleValue())
                 + "\r\n");
         sb.append("\tdispatchMaxBuffer: " + this.dispatchMaxBuffer + "\r\n");
+        sb.append("\tdispatchLatencyMax: " + this.dispatchLatencyMax + "\r\n");
+        sb.append("\tdispatchLatencyDistributeTime: "
+                + this.getDistributeTimeStringInfo(this.dispatchLatencyDistributeTime, this.getDispatchTimesTotal())
+                + "\r\n");
         sb.append("\tgetMessageEntireTimeMax: " + this.getMessageEntireTimeMax + "\r\n");
         sb.append("\tputTps: " + this.getPutTps() + "\r\n");
         sb.append("\tgetFoundTps: " + this.getGetFoundTps() + "\r\n");
@@ -160,9 +284,14 @@ public class StoreStatsService extends ServiceThread {
 
 
     private String getPutMessageDistributeTimeStringInfo(Long total) {
+        return this.getDistributeTimeStringInfo(this.putMessageDistributeTime, total);
+    }
+
+
+    private String getDistributeTimeStringInfo(final AtomicLong[] distributeTime, Long total) {
         final StringBuilder sb = new StringBuilder(512);
 
-        for (AtomicLong i : this.putMessageDistributeTime) {
+        for (AtomicLong i : distributeTime) {
             long value = i.get();
             double ratio = value / total.doubleValue();
             sb.append("\r\n\t\t");
@@ -407,9 +536,15 @@ public class StoreStatsService extends ServiceThread {
         result.put("putMessageSizeTotal", String.valueOf(this.getPutMessageSizeTotal()));
         result.put("putMessageDistributeTime",
             String.valueOf(this.getPutMessageDistributeTimeStringInfo(totalTimes)));
+        result.put("putMessageInLockTimeMax", String.valueOf(this.putMessageInLockTimeMax));
+        result.put("putMessageInLockDistributeTime",
+            this.getDistributeTimeStringInfo(this.putMessageInLockDistributeTime, totalTimes));
         result.put("putMessageAverageSize",
             String.valueOf((this.getPutMessageSizeTotal() / totalTimes.doubleValue())));
         result.put("dispatchMaxBuffer", String.valueOf(this.dispatchMaxBuffer));
+        result.put("dispatchLatencyMax", String.valueOf(this.dispatchLatencyMax));
+        result.put("dispatchLatencyDistributeTime",
+            this.getDistributeTimeStringInfo(this.dispatchLatencyDistributeTime, this.getDispatchTimesTotal()));
         result.put("getMessageEntireTimeMax", String.valueOf(this.getMessageEntireTimeMax));
         result.put("putTps", String.valueOf(this.getPutTps()));
         result.put("getFoundTps", String.valueOf(this.getGetFoundTps()));
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store;
+
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import com.alibaba.rocketmq.store.util.LibC;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingDeque;
+
+
+/**
+ * Direct buffers of the commit log file size, locked in memory. Messages are
+ * appended into one of them and transfered to the file channel by the
+ * commit log later, so page faults and dirty page writeback never stall the
+ * put path.
+ *
+ * @author shijia.wxr
+ */
+public class TransientStorePool {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
+    private final int poolSize;
+    private final int fileSize;
+    private final LinkedBlockingDeque<ByteBuffer> availableBuffers;
+
+
+    public TransientStorePool(final MessageStoreConfig storeConfig) {
+        this.poolSize = storeConfig.getTransientStorePoolSize();
+        this.fileSize = storeConfig.getMapedFileSizeCommitLog();
+        this.availableBuffers = new LinkedBlockingDeque<ByteBuffer>();
+    }
+
+
+    /**
+     * Allocates and locks poolSize * fileSize bytes, it takes a while
+     */
+    public void init() {
+        for (int i = 0; i < this.poolSize; i++) {
+            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(this.fileSize);
+            try {
+                Pointer pointer = Native.getDirectBufferPointer(byteBuffer);
+                int ret = LibC.INSTANCE.mlock(pointer, new NativeLong(this.fileSize));
+                if (ret != 0) {
+                    log.warn("mlock transient store buffer failed, ret: " + ret + ", check ulimit -l");
+                }
+            }
+            catch (Throwable e) {
+                log.warn("mlock transient store buffer failed, the buffer is used unlocked", e);
+            }
+
+            this.availableBuffers.offer(byteBuffer);
+        }
+
+        log.info("transient store pool init OK, " + this.poolSize + " buffers of " + this.fileSize + " bytes");
+    }
+
+
+    public void destroy() {
+        for (ByteBuffer byteBuffer : this.availableBuffers) {
+            try {
+                Pointer pointer = Native.getDirectBufferPointer(byteBuffer);
+                LibC.INSTANCE.munlock(pointer, new NativeLong(this.fileSize));
+            }
+            catch (Throwable e) {
+                log.warn("munlock transient store buffer failed", e);
+            }
+        }
+    }
+
+
+    public void returnBuffer(final ByteBuffer byteBuffer) {
+        byteBuffer.position(0);
+        byteBuffer.limit(this.fileSize);
+        this.availableBuffers.offerFirst(byteBuffer);
+    }
+
+
+    /**
+     * @return null if all the buffers are in use, the maped file is then
+     *         written directly
+     */
+    public ByteBuffer borrowBuffer() {
+        ByteBuffer buffer = this.availableBuffers.pollFirst();
+        if (this.availableBuffers.size() < this.poolSize * 0.4) {
+            log.warn("transient store pool only remain {} buffers", this.availableBuffers.size());
+        }
+        return buffer;
+    }
+
+
+    public int remainBufferNumbs() {
+        return this.availableBuffers.size();
+    }
+}
@@ -18,6 +18,7 @@ package com.alibaba.rocketmq.store.config;
 
 import com.alibaba.rocketmq.common.annotation.ImportantField;
 import com.alibaba.rocketmq.store.ConsumeQueue;
+import com.alibaba.rocketmq.store.ConsumeQueueTimeIndex;
 
 import java.io.File;
 
@@ -31,7 +32,8 @@ public class MessageStoreConfig {
     //The root directory in which the log data is kept
     @ImportantField
     private String storePathRootDir = System.getProperty("user.home") + File.separator + "store";
-    //The directory in which the commitlog is kept
+    //The directory in which the commitlog is kept, several directories separated
+    //by commas spread consecutive commitlog files over them
     @ImportantField
     private String storePathCommitLog = System.getProperty("user.home") + File.separator + "store"
             + File.separator + "commitlog";
@@ -70,6 +72,28 @@ public class MessageStoreConfig {
     // This ensures no on-the-wire or on-disk corruption to the messages occurred.
     // This check adds some overhead, so it may be disabled in cases seeking extreme performance.
     private boolean checkCRCOnRecover = true;
+    // Threads loading and recovering consume queues and verifying commit log
+    // files on startup, 1 does it all on the calling thread
+    private int recoverThreadPoolNums = 4;
+    // Consume queue files are maped on their first access after startup
+    private boolean consumeQueueMapOnDemand = true;
+    // Above this the least recently read consume queue files are unmaped
+    private long maxConsumeQueueMapedMemory = 1024L * 1024 * 1024 * 2;
+    // Sparse time index per consume queue, answers offset lookups by time
+    // without reading the commit log
+    private boolean consumeQueueTimeIndexEnable = true;
+    // A time index unit is written when the store time moved on by this much
+    private long consumeQueueTimeIndexInterval = 1000;
+    // Time index file size, default is 64K units
+    private int mapedFileSizeConsumeQueueTimeIndex = 65536 * ConsumeQueueTimeIndex.UnitSize;
+    // Commit log files are maped on their first access after startup
+    private boolean commitLogMapOnDemand = false;
+    // Above this the least recently read commit log files are unmaped
+    private long maxCommitLogMapedMemory = 1024L * 1024 * 1024 * 16;
+    // Pulls from unmaped commit log files read through the file channel,
+    // into pooled heap buffers of maxTransferBytesOnMessageInDisk
+    private boolean commitLogReadColdByChannel = false;
+    private int coldReadBufferPoolSize = 256;
     // How many pages are to be flushed when flush CommitLog
     private int flushCommitLogLeastPages = 4;
     // Flush page size when the disk in warming state
@@ -92,6 +116,9 @@ public class MessageStoreConfig {
     private boolean messageIndexEnable = true;
     private int maxHashSlotNum = 5000000;
     private int maxIndexNum = 5000000 * 4;
+    // Messages waiting for the index thread, the reput thread blocks when
+    // it is full
+    private int maxIndexRequestQueueSize = 100000;
     private int maxMsgsNumBatch = 64;
     @ImportantField
     private boolean messageIndexSafe = false;
@@ -114,6 +141,34 @@ public class MessageStoreConfig {
     private boolean warmMapedFileEnable = false;
     private boolean offsetCheckInSlave = false;
     private boolean diskFallRecorded = true;
+    // The default send thread pool is much larger than the number of cores,
+    // spin lock only pays off with a send pool about as large as the cores
+    private boolean useReentrantLockWhenPutMessage = true;
+    // The reput thread is woken up by every put, this is the max time it
+    // waits when no wakeup comes, e.g. slave or recovering
+    private int reputMessageWaitInterval = 100;
+    // Append into a pool of locked direct buffers and transfer them to the
+    // commit log file channel later, only for ASYNC_FLUSH master
+    private boolean transientStorePoolEnable = false;
+    private int transientStorePoolSize = 5;
+    // How often the transient buffers are transfered to the file channel
+    private int transferIntervalCommitLog = 200;
+    private int transferCommitLogLeastPages = 4;
+    private int transferCommitLogThoroughInterval = 200;
+    // Lock the commit log file being written in memory, instead of warming
+    // it, and unlock it when it rolls; consume queues are not locked, as
+    // every queue would keep a file locked
+    private boolean mlockMapedFileEnable = false;
+    // Advise the kernel about the access pattern of the maped files
+    private boolean madviseMapedFileEnable = false;
+    // Messages with a delivery timestamp wait in the timer wheel, the wheel
+    // spans timerWheelSlotNums * timerPrecisionMs, later ones are rolled.
+    // Neither can change once the wheel file exists. Delivery times beyond
+    // fileReservedTime are rejected
+    private boolean timerWheelEnable = false;
+    private int timerPrecisionMs = 1000;
+    private int timerWheelSlotNums = 7 * 24 * 3600;
+    private int timerLogFileSize = 1024 * 1024 * 100;
 
     public boolean isDiskFallRecorded() {
         return diskFallRecorded;
@@ -613,4 +668,250 @@ public class MessageStoreConfig {
     public void setOffsetCheckInSlave(boolean offsetCheckInSlave) {
         this.offsetCheckInSlave = offsetCheckInSlave;
     }
+
+
+    public boolean isUseReentrantLockWhenPutMessage() {
+        return useReentrantLockWhenPutMessage;
+    }
+
+
+    public void setUseReentrantLockWhenPutMessage(boolean useReentrantLockWhenPutMessage) {
+        this.useReentrantLockWhenPutMessage = useReentrantLockWhenPutMessage;
+    }
+
+
+    public int getReputMessageWaitInterval() {
+        return reputMessageWaitInterval;
+    }
+
+
+    public void setReputMessageWaitInterval(int reputMessageWaitInterval) {
+        this.reputMessageWaitInterval = reputMessageWaitInterval;
+    }
+
+
+    public int getMaxIndexRequestQueueSize() {
+        return maxIndexRequestQueueSize;
+    }
+
+
+    public void setMaxIndexRequestQueueSize(int maxIndexRequestQueueSize) {
+        this.maxIndexRequestQueueSize = maxIndexRequestQueueSize;
+    }
+
+
+    /**
+     * The transient buffers are transfered asynchronously, so they are not
+     * used with SYNC_FLUSH, nor by the slave which appends what the master
+     * transfered
+     */
+    public boolean isTransientStorePoolEnable() {
+        return transientStorePoolEnable && FlushDiskType.ASYNC_FLUSH == getFlushDiskType()
+                && BrokerRole.SLAVE != getBrokerRole();
+    }
+
+
+    public void setTransientStorePoolEnable(boolean transientStorePoolEnable) {
+        this.transientStorePoolEnable = transientStorePoolEnable;
+    }
+
+
+    public int getTransientStorePoolSize() {
+        return transientStorePoolSize;
+    }
+
+
+    public void setTransientStorePoolSize(int transientStorePoolSize) {
+        this.transientStorePoolSize = transientStorePoolSize;
+    }
+
+
+    public int getTransferIntervalCommitLog() {
+        return transferIntervalCommitLog;
+    }
+
+
+    public void setTransferIntervalCommitLog(int transferIntervalCommitLog) {
+        this.transferIntervalCommitLog = transferIntervalCommitLog;
+    }
+
+
+    public int getTransferCommitLogLeastPages() {
+        return transferCommitLogLeastPages;
+    }
+
+
+    public void setTransferCommitLogLeastPages(int transferCommitLogLeastPages) {
+        this.transferCommitLogLeastPages = transferCommitLogLeastPages;
+    }
+
+
+    public int getTransferCommitLogThoroughInterval() {
+        return transferCommitLogThoroughInterval;
+    }
+
+
+    public void setTransferCommitLogThoroughInterval(int transferCommitLogThoroughInterval) {
+        this.transferCommitLogThoroughInterval = transferCommitLogThoroughInterval;
+    }
+
+
+    public boolean isMlockMapedFileEnable() {
+        return mlockMapedFileEnable;
+    }
+
+
+    public void setMlockMapedFileEnable(boolean mlockMapedFileEnable) {
+        this.mlockMapedFileEnable = mlockMapedFileEnable;
+    }
+
+
+    public boolean isMadviseMapedFileEnable() {
+        return madviseMapedFileEnable;
+    }
+
+
+    public void setMadviseMapedFileEnable(boolean madviseMapedFileEnable) {
+        this.madviseMapedFileEnable = madviseMapedFileEnable;
+    }
+
+
+    public boolean isTimerWheelEnable() {
+        return timerWheelEnable;
+    }
+
+
+    public void setTimerWheelEnable(boolean timerWheelEnable) {
+        this.timerWheelEnable = timerWheelEnable;
+    }
+
+
+    public int getTimerPrecisionMs() {
+        return timerPrecisionMs;
+    }
+
+
+    public void setTimerPrecisionMs(int timerPrecisionMs) {
+        this.timerPrecisionMs = timerPrecisionMs;
+    }
+
+
+    public int getTimerWheelSlotNums() {
+        return timerWheelSlotNums;
+    }
+
+
+    public void setTimerWheelSlotNums(int timerWheelSlotNums) {
+        this.timerWheelSlotNums = timerWheelSlotNums;
+    }
+
+
+    public int getTimerLogFileSize() {
+        return timerLogFileSize;
+    }
+
+
+    public void setTimerLogFileSize(int timerLogFileSize) {
+        this.timerLogFileSize = timerLogFileSize;
+    }
+
+
+    public int getRecoverThreadPoolNums() {
+        return recoverThreadPoolNums;
+    }
+
+
+    public void setRecoverThreadPoolNums(int recoverThreadPoolNums) {
+        this.recoverThreadPoolNums = recoverThreadPoolNums;
+    }
+
+
+    public boolean isConsumeQueueMapOnDemand() {
+        return consumeQueueMapOnDemand;
+    }
+
+
+    public void setConsumeQueueMapOnDemand(boolean consumeQueueMapOnDemand) {
+        this.consumeQueueMapOnDemand = consumeQueueMapOnDemand;
+    }
+
+
+    public long getMaxConsumeQueueMapedMemory() {
+        return maxConsumeQueueMapedMemory;
+    }
+
+
+    public void setMaxConsumeQueueMapedMemory(long maxConsumeQueueMapedMemory) {
+        this.maxConsumeQueueMapedMemory = maxConsumeQueueMapedMemory;
+    }
+
+
+    public boolean isCommitLogMapOnDemand() {
+        return commitLogMapOnDemand;
+    }
+
+
+    public void setCommitLogMapOnDemand(boolean commitLogMapOnDemand) {
+        this.commitLogMapOnDemand = commitLogMapOnDemand;
+    }
+
+
+    public long getMaxCommitLogMapedMemory() {
+        return maxCommitLogMapedMemory;
+    }
+
+
+    public void setMaxCommitLogMapedMemory(long maxCommitLogMapedMemory) {
+        this.maxCommitLogMapedMemory = maxCommitLogMapedMemory;
+    }
+
+
+    public boolean isCommitLogReadColdByChannel() {
+        return commitLogReadColdByChannel;
+    }
+
+
+    public void setCommitLogReadColdByChannel(boolean commitLogReadColdByChannel) {
+        this.commitLogReadColdByChannel = commitLogReadColdByChannel;
+    }
+
+
+    public boolean isConsumeQueueTimeIndexEnable() {
+        return consumeQueueTimeIndexEnable;
+    }
+
+
+    public void setConsumeQueueTimeIndexEnable(boolean consumeQueueTimeIndexEnable) {
+        this.consumeQueueTimeIndexEnable = consumeQueueTimeIndexEnable;
+    }
+
+
+    public long getConsumeQueueTimeIndexInterval() {
+        return consumeQueueTimeIndexInterval;
+    }
+
+
+    public void setConsumeQueueTimeIndexInterval(long consumeQueueTimeIndexInterval) {
+        this.consumeQueueTimeIndexInterval = consumeQueueTimeIndexInterval;
+    }
+
+
+    public int getMapedFileSizeConsumeQueueTimeIndex() {
+        return mapedFileSizeConsumeQueueTimeIndex;
+    }
+
+
+    public void setMapedFileSizeConsumeQueueTimeIndex(int mapedFileSizeConsumeQueueTimeIndex) {
+        this.mapedFileSizeConsumeQueueTimeIndex = mapedFileSizeConsumeQueueTimeIndex;
+    }
+
+
+    public int getColdReadBufferPoolSize() {
+        return coldReadBufferPoolSize;
+    }
+
+
+    public void setColdReadBufferPoolSize(int coldReadBufferPoolSize) {
+        this.coldReadBufferPoolSize = coldReadBufferPoolSize;
+    }
 }
@@ -16,16 +16,61 @@
  */
 package com.alibaba.rocketmq.store.config;
 
+import com.alibaba.rocketmq.common.UtilAll;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class StorePathConfigHelper {
+    // Separates the directories of a store path spread over several disks
+    public static final String MultiPathSeparator = ",";
+
+
+    public static String[] splitStorePaths(final String storePath) {
+        List<String> paths = new ArrayList<String>();
+        for (String path : storePath.split(MultiPathSeparator)) {
+            if (!path.trim().isEmpty()) {
+                paths.add(path.trim());
+            }
+        }
+
+        if (paths.isEmpty()) {
+            paths.add(storePath);
+        }
+
+        return paths.toArray(new String[paths.size()]);
+    }
+
+
+    /**
+     * Used ratio of the fullest disk among the directories, so the store
+     * cleans and stops writing before any one of them fills up
+     */
+    public static double getDiskPartitionSpaceUsedPercent(final String storePath) {
+        double result = -1;
+        for (String path : splitStorePaths(storePath)) {
+            double ratio = UtilAll.getDiskPartitionSpaceUsedPercent(path);
+            if (ratio > result) {
+                result = ratio;
+            }
+        }
+
+        return result;
+    }
+
 
     public static String getStorePathConsumeQueue(final String rootDir) {
         return rootDir + File.separator + "consumequeue";
     }
 
 
+    public static String getStorePathConsumeQueueTimeIndex(final String rootDir) {
+        return rootDir + File.separator + "consumequeue_time";
+    }
+
+
     public static String getStorePathIndex(final String rootDir) {
         return rootDir + File.separator + "index";
     }
@@ -46,6 +91,21 @@ public class StorePathConfigHelper {
     }
 
 
+    public static String getTimerOffsetStorePath(final String rootDir) {
+        return rootDir + File.separator + "config" + File.separator + "timerOffset.json";
+    }
+
+
+    public static String getTimerWheelPath(final String rootDir) {
+        return rootDir + File.separator + "timer" + File.separator + "timerwheel";
+    }
+
+
+    public static String getTimerLogStorePath(final String rootDir) {
+        return rootDir + File.separator + "timer" + File.separator + "timerlog";
+    }
+
+
     public static String getTranStateTableStorePath(final String rootDir) {
         return rootDir + File.separator + "transaction" + File.separator + "statetable";
     }
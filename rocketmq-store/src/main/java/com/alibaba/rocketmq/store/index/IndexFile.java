@@ -18,6 +18,7 @@ package com.alibaba.rocketmq.store.index;
 
 import com.alibaba.rocketmq.common.constant.LoggerName;
 import com.alibaba.rocketmq.store.MapedFile;
+import com.alibaba.rocketmq.store.util.LibC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,6 +81,15 @@ public class IndexFile {
     }
 
 
+    /**
+     * Index lookups jump around the whole file, read ahead only wastes page
+     * cache
+     */
+    public void adviseRandom() {
+        this.mapedFile.madvise(0, this.mapedFile.getFileSize(), LibC.MADV_RANDOM);
+    }
+
+
     public void flush() {
         long beginTime = System.currentTimeMillis();
         if (this.mapedFile.hold()) {
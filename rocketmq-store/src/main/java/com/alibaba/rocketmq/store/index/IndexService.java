@@ -16,6 +16,7 @@
  */
 package com.alibaba.rocketmq.store.index;
 
+import com.alibaba.rocketmq.common.ServiceThread;
 import com.alibaba.rocketmq.common.UtilAll;
 import com.alibaba.rocketmq.common.constant.LoggerName;
 import com.alibaba.rocketmq.common.message.MessageConst;
@@ -31,14 +32,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
 /**
+ * The index is built by its own thread so that the consume queues are not
+ * held up by it, the progress of the index is recorded by the
+ * indexMsgTimestamp of the StoreCheckpoint
+ *
  * @author shijia.wxr
  */
-public class IndexService {
+public class IndexService extends ServiceThread {
     private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
     private final DefaultMessageStore defaultMessageStore;
     private final int hashSlotNum;
@@ -46,10 +53,13 @@ public class IndexService {
     private final String storePath;
     private final ArrayList<IndexFile> indexFileList = new ArrayList<IndexFile>();
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final LinkedBlockingQueue<DispatchRequest> requestQueue;
 
 
     public IndexService(final DefaultMessageStore store) {
         this.defaultMessageStore = store;
+        this.requestQueue =
+                new LinkedBlockingQueue<DispatchRequest>(store.getMessageStoreConfig().getMaxIndexRequestQueueSize());
         this.hashSlotNum = store.getMessageStoreConfig().getMaxHashSlotNum();
         this.indexNum = store.getMessageStoreConfig().getMaxIndexNum();
         this.storePath =
@@ -67,6 +77,9 @@ public class IndexService {
                 try {
                     IndexFile f = new IndexFile(file.getPath(), this.hashSlotNum, this.indexNum, 0, 0);
                     f.load();
+                    if (this.defaultMessageStore.getMessageStoreConfig().isMadviseMapedFileEnable()) {
+                        f.adviseRandom();
+                    }
 
                     if (!lastExitOK) {
                         if (f.getEndTimestamp() > this.defaultMessageStore.getStoreCheckpoint()
@@ -316,6 +329,9 @@ public class IndexService {
                 indexFile =
                         new IndexFile(fileName, this.hashSlotNum, this.indexNum, lastUpdateEndPhyOffset,
                             lastUpdateIndexTimestamp);
+                if (this.defaultMessageStore.getMessageStoreConfig().isMadviseMapedFileEnable()) {
+                    indexFile.adviseRandom();
+                }
                 this.readWriteLock.writeLock().lock();
                 this.indexFileList.add(indexFile);
             }
@@ -363,12 +379,52 @@ public class IndexService {
     }
 
 
-    public void start() {
+    /**
+     * Called by the reput thread, blocks only when the index is too far
+     * behind
+     */
+    public void putRequest(final DispatchRequest req) {
+        try {
+            this.requestQueue.put(req);
+        }
+        catch (InterruptedException e) {
+            log.warn("put index request interrupted, " + req.getCommitLogOffset(), e);
+        }
+    }
+
 
+    public int getRequestQueueSize() {
+        return this.requestQueue.size();
     }
 
 
-    public void shutdown() {
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStoped()) {
+            try {
+                DispatchRequest req = this.requestQueue.poll(1000, TimeUnit.MILLISECONDS);
+                if (req != null) {
+                    this.buildIndex(req);
+                }
+            }
+            catch (Exception e) {
+                log.warn(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+
+        // The reput thread is stopped already, build what it left
+        for (DispatchRequest req = this.requestQueue.poll(); req != null; req = this.requestQueue.poll()) {
+            this.buildIndex(req);
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
 
+    @Override
+    public String getServiceName() {
+        return IndexService.class.getSimpleName();
     }
 }
@@ -62,6 +62,9 @@ public class BrokerStatsManager {
     public static final String GROUP_GET_FROM_DISK_SIZE = "GROUP_GET_FROM_DISK_SIZE";
     public static final String BROKER_GET_FROM_DISK_NUMS = "BROKER_GET_FROM_DISK_NUMS";
     public static final String BROKER_GET_FROM_DISK_SIZE = "BROKER_GET_FROM_DISK_SIZE";
+    public static final String BROKER_PULL_RT = "BROKER_PULL_RT";
+    public static final String PULL_HOT = "HOT";
+    public static final String PULL_COLD = "COLD";
 
     // For commercial
     public static final String COMMERCIAL_TOPIC_SEND_TIMES = "COMMERCIAL_TOPIC_SEND_TIMES";
@@ -103,6 +106,7 @@ public class BrokerStatsManager {
         this.statsTable.put(GROUP_GET_FROM_DISK_SIZE, new StatsItemSet(GROUP_GET_FROM_DISK_SIZE, this.scheduledExecutorService, log));
         this.statsTable.put(BROKER_GET_FROM_DISK_NUMS, new StatsItemSet(BROKER_GET_FROM_DISK_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(BROKER_GET_FROM_DISK_SIZE, new StatsItemSet(BROKER_GET_FROM_DISK_SIZE, this.scheduledExecutorService, log));
+        this.statsTable.put(BROKER_PULL_RT, new StatsItemSet(BROKER_PULL_RT, this.scheduledExecutorService, log));
 
         // For commercial
         this.statsTable.put(COMMERCIAL_TOPIC_SEND_TIMES, new StatsItemSet(COMMERCIAL_TOPIC_SEND_TIMES, this.commercialStatsExecutor,
@@ -153,6 +157,11 @@ public class BrokerStatsManager {
     }
 
 
+    public void incTopicPutNums(final String topic, final int num, final int times) {
+        this.statsTable.get(TOPIC_PUT_NUMS).addValue(topic, num, times);
+    }
+
+
     public void incTopicPutSize(final String topic, final int size) {
         this.statsTable.get(TOPIC_PUT_SIZE).addValue(topic, size, 1);
     }
@@ -175,6 +184,11 @@ public class BrokerStatsManager {
     }
 
 
+    public void incBrokerPutNums(final int incValue) {
+        this.statsTable.get(BROKER_PUT_NUMS).getAndCreateStatsItem(this.clusterName).getValue().addAndGet(incValue);
+    }
+
+
     public void incBrokerGetNums(final int incValue) {
         this.statsTable.get(BROKER_GET_NUMS).getAndCreateStatsItem(this.clusterName).getValue().addAndGet(incValue);
     }
@@ -221,6 +235,16 @@ public class BrokerStatsManager {
     }
 
 
+    public void incBrokerPullRT(final boolean cold, final long rt) {
+        this.statsTable.get(BROKER_PULL_RT).addValue(cold ? PULL_COLD : PULL_HOT, (int) rt, 1);
+    }
+
+
+    public double avgBrokerPullRTInMinute(final boolean cold) {
+        return this.statsTable.get(BROKER_PULL_RT).getStatsDataInMinute(cold ? PULL_COLD : PULL_HOT).getAvgpt();
+    }
+
+
     public String buildStatsKey(String topic, String group) {
         StringBuffer strBuilder = new StringBuffer();
         strBuilder.append(topic);
@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.timer;
+
+/**
+ * One slot of the timer wheel, the units of a slot are linked backwards
+ * from lastPos in the timer log
+ *
+ * @author shijia.wxr
+ */
+public class Slot {
+    private final long timeMs;
+    private final long firstPos;
+    private final long lastPos;
+    private final int num;
+
+
+    public Slot(long timeMs, long firstPos, long lastPos, int num) {
+        this.timeMs = timeMs;
+        this.firstPos = firstPos;
+        this.lastPos = lastPos;
+        this.num = num;
+    }
+
+
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+
+    public long getFirstPos() {
+        return firstPos;
+    }
+
+
+    public long getLastPos() {
+        return lastPos;
+    }
+
+
+    public int getNum() {
+        return num;
+    }
+}
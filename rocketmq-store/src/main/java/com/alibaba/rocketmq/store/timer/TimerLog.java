@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.timer;
+
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.store.MapedFile;
+import com.alibaba.rocketmq.store.MapedFileQueue;
+import com.alibaba.rocketmq.store.SelectMapedBufferResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+
+/**
+ * Append only log of timer units over commit log offsets, the units of a
+ * slot are chained by prevPos. Written by a single thread
+ *
+ * @author shijia.wxr
+ */
+public class TimerLog {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
+    // prevPos(8) deliverMs(8) offsetPy(8) sizePy(4) magic(4)
+    public static final int UnitSize = 32;
+    public static final int UnitMagicCode = 0xAABBCCDD ^ 1880681586 + 16;
+    private final MapedFileQueue mapedFileQueue;
+    private final int mapedFileSize;
+    private final byte[] unitBytes = new byte[UnitSize];
+    private final ByteBuffer unitBuffer = ByteBuffer.wrap(this.unitBytes);
+
+
+    public TimerLog(final String storePath, final int mapedFileSize) {
+        // Units never straddle two files
+        this.mapedFileSize = mapedFileSize - (mapedFileSize % UnitSize);
+        this.mapedFileQueue = new MapedFileQueue(storePath, this.mapedFileSize, null);
+    }
+
+
+    public boolean load() {
+        boolean result = this.mapedFileQueue.load();
+        if (result) {
+            this.recover();
+        }
+        return result;
+    }
+
+
+    /**
+     * Files are loaded as full, find the end of the units and drop the
+     * partly written tail of a crash
+     */
+    private void recover() {
+        final List<MapedFile> mapedFiles = this.mapedFileQueue.getMapedFiles();
+        if (mapedFiles.isEmpty()) {
+            this.mapedFileQueue.setCommittedWhere(0);
+            return;
+        }
+
+        int index = mapedFiles.size() - 2;
+        if (index < 0)
+            index = 0;
+
+        MapedFile mapedFile = mapedFiles.get(index);
+        ByteBuffer byteBuffer = mapedFile.sliceByteBuffer();
+        long processOffset = mapedFile.getFileFromOffset();
+        int mapedFileOffset = 0;
+        while (true) {
+            while (mapedFileOffset < this.mapedFileSize
+                    && byteBuffer.getInt(mapedFileOffset + UnitSize - 4) == UnitMagicCode) {
+                mapedFileOffset += UnitSize;
+            }
+
+            if (mapedFileOffset == this.mapedFileSize && index + 1 < mapedFiles.size()) {
+                index++;
+                mapedFile = mapedFiles.get(index);
+                byteBuffer = mapedFile.sliceByteBuffer();
+                processOffset = mapedFile.getFileFromOffset();
+                mapedFileOffset = 0;
+                log.info("recover next timer log file, " + mapedFile.getFileName());
+            }
+            else {
+                log.info("recover timer log over " + mapedFile.getFileName() + " " + (processOffset + mapedFileOffset));
+                break;
+            }
+        }
+
+        processOffset += mapedFileOffset;
+        this.mapedFileQueue.setCommittedWhere(processOffset);
+        this.mapedFileQueue.truncateDirtyFiles(processOffset);
+    }
+
+
+    /**
+     * @return the position of the unit, -1 if no file could be created
+     */
+    public long append(final long prevPos, final long deliverMs, final long offsetPy, final int sizePy) {
+        MapedFile mapedFile = this.mapedFileQueue.getLastMapedFile();
+        if (null == mapedFile) {
+            log.error("create timer log file error");
+            return -1;
+        }
+
+        this.unitBuffer.clear();
+        this.unitBuffer.putLong(prevPos);
+        this.unitBuffer.putLong(deliverMs);
+        this.unitBuffer.putLong(offsetPy);
+        this.unitBuffer.putInt(sizePy);
+        this.unitBuffer.putInt(UnitMagicCode);
+
+        long pos = mapedFile.getFileFromOffset() + mapedFile.getWrotePostion();
+        if (!mapedFile.appendMessage(this.unitBytes)) {
+            return -1;
+        }
+
+        return pos;
+    }
+
+
+    /**
+     * @return null if the unit is not readable, e.g. lost in a crash
+     */
+    public TimerUnit getUnit(final long pos) {
+        MapedFile mapedFile = this.mapedFileQueue.findMapedFileByOffset(pos);
+        if (null == mapedFile) {
+            return null;
+        }
+
+        SelectMapedBufferResult result = mapedFile.selectMapedBuffer((int) (pos % this.mapedFileSize), UnitSize);
+        if (null == result) {
+            return null;
+        }
+
+        try {
+            ByteBuffer byteBuffer = result.getByteBuffer();
+            long prevPos = byteBuffer.getLong();
+            long deliverMs = byteBuffer.getLong();
+            long offsetPy = byteBuffer.getLong();
+            int sizePy = byteBuffer.getInt();
+            if (byteBuffer.getInt() != UnitMagicCode) {
+                log.warn("timer log unit magic code not matched, pos {}", pos);
+                return null;
+            }
+
+            return new TimerUnit(pos, prevPos, deliverMs, offsetPy, sizePy);
+        }
+        finally {
+            result.release();
+        }
+    }
+
+
+    public void commit() {
+        this.mapedFileQueue.commit(0);
+    }
+
+
+    /**
+     * Nothing in files older than a whole wheel round is referenced any more
+     */
+    public int deleteExpiredFile(final long expiredTime) {
+        return this.mapedFileQueue.deleteExpiredFileByTime(expiredTime, 0, 1000 * 120, false);
+    }
+
+
+    public void shutdown() {
+        this.mapedFileQueue.commit(0);
+        this.mapedFileQueue.shutdown(1000 * 3);
+    }
+
+
+    public void destroy() {
+        this.mapedFileQueue.destroy();
+    }
+
+
+    public long getMinOffset() {
+        return this.mapedFileQueue.getMinOffset();
+    }
+
+
+    public long getMaxOffset() {
+        return this.mapedFileQueue.getMaxOffset();
+    }
+}
@@ -0,0 +1,515 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.timer;
+
+import com.alibaba.rocketmq.common.ConfigManager;
+import com.alibaba.rocketmq.common.ServiceThread;
+import com.alibaba.rocketmq.common.TopicFilterType;
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.common.message.MessageAccessor;
+import com.alibaba.rocketmq.common.message.MessageConst;
+import com.alibaba.rocketmq.common.message.MessageDecoder;
+import com.alibaba.rocketmq.common.message.MessageExt;
+import com.alibaba.rocketmq.common.running.RunningStats;
+import com.alibaba.rocketmq.store.ConsumeQueue;
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.PutMessageStatus;
+import com.alibaba.rocketmq.store.SelectMapedBufferResult;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import com.alibaba.rocketmq.store.config.StorePathConfigHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * Delivers messages at an arbitrary timestamp. They are first stored in
+ * TIMER_TOPIC_XXXX with the delivery time as tags code, then put into a
+ * persistent timing wheel: the wheel file holds one slot per precision
+ * interval, the timer log chains the commit log offsets of each slot.
+ * Timers beyond the wheel span are rolled into the last slot and put back
+ * when it comes round. Enqueue and dequeue run in one thread, so a slot is
+ * never written while it is delivered
+ *
+ * @author shijia.wxr
+ */
+public class TimerMessageService extends ConfigManager {
+    public static final String TIMER_TOPIC = "TIMER_TOPIC_XXXX";
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
+    private static final long DELAY_FOR_A_WHILE = 100L;
+    private static final long DELAY_FOR_A_PERIOD = 10000L;
+    private static final int DELIVER_BATCH_SIZE = 32;
+    private final DefaultMessageStore defaultMessageStore;
+    private final int precisionMs;
+    private final TimerWheel timerWheel;
+    private final TimerLog timerLog;
+    private final TimerDeliverService timerDeliverService = new TimerDeliverService();
+    // Only touched by the deliver service, persisted after the wheel and log
+    private volatile long enqueueOffset = 0;
+    private volatile long dequeueTimeMs = 0;
+    // A slot that failed partway resumes after this timer log position
+    private volatile long dequeuePos = -1;
+
+
+    public TimerMessageService(final DefaultMessageStore defaultMessageStore) throws IOException {
+        this.defaultMessageStore = defaultMessageStore;
+        MessageStoreConfig messageStoreConfig = defaultMessageStore.getMessageStoreConfig();
+        this.precisionMs = messageStoreConfig.getTimerPrecisionMs();
+        this.timerWheel =
+                new TimerWheel(StorePathConfigHelper.getTimerWheelPath(messageStoreConfig.getStorePathRootDir()),
+                    messageStoreConfig.getTimerWheelSlotNums(), this.precisionMs);
+        this.timerLog =
+                new TimerLog(StorePathConfigHelper.getTimerLogStorePath(messageStoreConfig.getStorePathRootDir()),
+                    messageStoreConfig.getTimerLogFileSize());
+    }
+
+
+    /**
+     * @return true if the message has to wait in the wheel
+     */
+    public boolean isTimerMessage(final MessageExtBrokerInner msg) {
+        String t = msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        if (null == t) {
+            return false;
+        }
+
+        try {
+            return Long.parseLong(t) >= System.currentTimeMillis() + this.precisionMs;
+        }
+        catch (NumberFormatException e) {
+            log.warn("illegal timer deliver time {}, deliver it now", t);
+            return false;
+        }
+    }
+
+
+    /**
+     * A timer is only delivered while the commit log still holds the
+     * message, it must not outlive the file reserved time
+     */
+    public boolean isBeyondRetention(final MessageExtBrokerInner msg) {
+        long deliverMs = Long.parseLong(msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS));
+        long reservedMs =
+                this.defaultMessageStore.getMessageStoreConfig().getFileReservedTime() * 60L * 60L * 1000L;
+        return deliverMs - System.currentTimeMillis() > reservedMs;
+    }
+
+
+    public void buildRunningStats(HashMap<String, String> stats) {
+        long maxOffset = this.defaultMessageStore.getMaxOffsetInQuque(TIMER_TOPIC, 0);
+        stats.put(RunningStats.timerMessageOffset.name(),
+            String.format("%d,%d,%d", this.enqueueOffset, maxOffset, this.dequeueTimeMs));
+    }
+
+
+    public boolean load() {
+        boolean result = super.load();
+        result = result && this.timerLog.load();
+        return result;
+    }
+
+
+    public void start() {
+        if (0 == this.dequeueTimeMs) {
+            this.dequeueTimeMs = this.slotTimeMs(System.currentTimeMillis());
+        }
+        this.timerDeliverService.start();
+    }
+
+
+    public void shutdown() {
+        this.timerDeliverService.shutdown();
+        this.timerLog.shutdown();
+        this.timerWheel.shutdown();
+    }
+
+
+    public void destroy() {
+        this.timerLog.destroy();
+        String rootDir = this.defaultMessageStore.getMessageStoreConfig().getStorePathRootDir();
+        new File(StorePathConfigHelper.getTimerWheelPath(rootDir)).delete();
+        new File(this.configFilePath()).delete();
+        new File(this.configFilePath() + ".bak").delete();
+    }
+
+
+    private long slotTimeMs(final long timeMs) {
+        return timeMs / this.precisionMs * this.precisionMs;
+    }
+
+
+    /**
+     * Chain the message into its slot, a due one into the slot delivered
+     * next, one beyond the wheel span into the last slot of this round
+     */
+    private boolean addTimer(final long deliverMs, final long offsetPy, final int sizePy) {
+        long slotTimeMs = Math.max(this.slotTimeMs(deliverMs), this.dequeueTimeMs);
+        long maxSlotTimeMs = this.dequeueTimeMs + (long) (this.timerWheel.getSlotNums() - 1) * this.precisionMs;
+        if (slotTimeMs > maxSlotTimeMs) {
+            slotTimeMs = maxSlotTimeMs;
+        }
+
+        Slot slot = this.timerWheel.getSlot(slotTimeMs);
+        long pos = this.timerLog.append(slot.getLastPos(), deliverMs, offsetPy, sizePy);
+        if (pos < 0) {
+            return false;
+        }
+
+        long firstPos = slot.getFirstPos() < 0 ? pos : slot.getFirstPos();
+        this.timerWheel.putSlot(slotTimeMs, firstPos, pos, slot.getNum() + 1);
+        return true;
+    }
+
+
+    /**
+     * Move what arrived in the timer topic into the wheel
+     *
+     * @return how many timers were added
+     */
+    private int enqueue() {
+        ConsumeQueue cq = this.defaultMessageStore.findConsumeQueue(TIMER_TOPIC, 0);
+        SelectMapedBufferResult bufferCQ = cq.getIndexBuffer(this.enqueueOffset);
+        if (null == bufferCQ) {
+            long cqMinOffset = cq.getMinOffsetInQuque();
+            if (this.enqueueOffset < cqMinOffset) {
+                log.error("timer CQ offset invalid. offset=" + this.enqueueOffset + ", cqMinOffset=" + cqMinOffset);
+                this.enqueueOffset = cqMinOffset;
+            }
+            return 0;
+        }
+
+        int count = 0;
+        try {
+            for (int i = 0; i < bufferCQ.getSize(); i += ConsumeQueue.CQStoreUnitSize) {
+                long offsetPy = bufferCQ.getByteBuffer().getLong();
+                int sizePy = bufferCQ.getByteBuffer().getInt();
+                long deliverMs = bufferCQ.getByteBuffer().getLong();
+                if (!this.addTimer(deliverMs, offsetPy, sizePy)) {
+                    break;
+                }
+                count++;
+            }
+        }
+        finally {
+            bufferCQ.release();
+            this.enqueueOffset += count;
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Deliver the next slot once its whole interval has passed, so no
+     * message is delivered early
+     *
+     * @return false if no slot is due yet
+     */
+    private boolean dequeue() {
+        final long slotTimeMs = this.dequeueTimeMs;
+        if (slotTimeMs + this.precisionMs > System.currentTimeMillis()) {
+            return false;
+        }
+
+        Slot slot = this.timerWheel.getSlot(slotTimeMs);
+        if (slot.getNum() > 0) {
+            // Linked backwards, deliver in the order they were added
+            List<TimerUnit> units = new ArrayList<TimerUnit>(slot.getNum());
+            for (long pos = slot.getLastPos(); pos >= 0;) {
+                TimerUnit unit = this.timerLog.getUnit(pos);
+                if (null == unit) {
+                    break;
+                }
+                units.add(unit);
+                pos = pos == slot.getFirstPos() ? -1 : unit.getPrevPos();
+            }
+
+            // Units are appended to the log in order, so positions grow along the slot
+            List<MessageExtBrokerInner> msgs = new ArrayList<MessageExtBrokerInner>(DELIVER_BATCH_SIZE);
+            List<Long> msgPos = new ArrayList<Long>(DELIVER_BATCH_SIZE);
+            long batchPos = this.dequeuePos;
+            for (int i = units.size() - 1; i >= 0; i--) {
+                TimerUnit unit = units.get(i);
+                if (unit.getPos() <= this.dequeuePos) {
+                    // Handled before the slot failed last time
+                    continue;
+                }
+
+                if (unit.getDeliverMs() >= slotTimeMs + this.precisionMs) {
+                    // Rolled, wait for the next round. The progress is a
+                    // position, so the units before it go first
+                    if (!this.deliver(msgs, msgPos, batchPos)
+                            || !this.addTimer(unit.getDeliverMs(), unit.getOffsetPy(), unit.getSizePy())) {
+                        return false;
+                    }
+                    this.dequeuePos = batchPos = unit.getPos();
+                    continue;
+                }
+
+                MessageExtBrokerInner msgInner = this.messageTimeup(unit);
+                if (msgInner != null) {
+                    msgs.add(msgInner);
+                    msgPos.add(unit.getPos());
+                }
+                batchPos = unit.getPos();
+                if (msgs.size() >= DELIVER_BATCH_SIZE && !this.deliver(msgs, msgPos, batchPos)) {
+                    return false;
+                }
+            }
+
+            if (!this.deliver(msgs, msgPos, batchPos)) {
+                return false;
+            }
+        }
+
+        this.dequeuePos = -1;
+        this.dequeueTimeMs = slotTimeMs + this.precisionMs;
+        return true;
+    }
+
+
+    /**
+     * Deliver a batch and move the slot progress to batchPos, or to the last
+     * delivered message if the batch failed partway. Clears the batch
+     */
+    private boolean deliver(final List<MessageExtBrokerInner> msgs, final List<Long> msgPos, final long batchPos) {
+        int delivered = this.deliver(msgs);
+        if (delivered < msgs.size()) {
+            if (delivered > 0) {
+                this.dequeuePos = msgPos.get(delivered - 1);
+            }
+            return false;
+        }
+
+        this.dequeuePos = batchPos;
+        msgs.clear();
+        msgPos.clear();
+        return true;
+    }
+
+
+    /**
+     * Put the due messages in one commit log lock, one that fails is put
+     * alone to find out whether to drop it or to retry
+     *
+     * @return how many messages were delivered or dropped
+     */
+    private int deliver(final List<MessageExtBrokerInner> msgs) {
+        int i = 0;
+        while (i < msgs.size()) {
+            i += this.defaultMessageStore.putMessagesInOneLock(msgs.subList(i, msgs.size()));
+            if (i < msgs.size()) {
+                if (!this.deliver(msgs.get(i))) {
+                    return i;
+                }
+                i++;
+            }
+        }
+
+        return i;
+    }
+
+
+    private boolean deliver(final MessageExtBrokerInner msgInner) {
+        while (!this.timerDeliverService.isStoped()) {
+            PutMessageResult putMessageResult = this.defaultMessageStore.putMessage(msgInner);
+            if (putMessageResult != null) {
+                switch (putMessageResult.getPutMessageStatus()) {
+                case PUT_OK:
+                    return true;
+                case MESSAGE_ILLEGAL:
+                case PROPERTIES_SIZE_EXCEEDED:
+                    log.error("timer message time up, but it is illegal, drop it. topic: {} queueId {}",
+                        msgInner.getTopic(), msgInner.getQueueId());
+                    return true;
+                default:
+                    break;
+                }
+            }
+
+            log.error("timer message time up, but reput it failed, topic: {} queueId {}", msgInner.getTopic(),
+                msgInner.getQueueId());
+            this.timerDeliverService.waitForRunning(DELAY_FOR_A_PERIOD);
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @return the message to put back to its real topic, null to drop it
+     */
+    private MessageExtBrokerInner messageTimeup(final TimerUnit unit) {
+        MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(unit.getOffsetPy(), unit.getSizePy());
+        if (null == msgExt) {
+            log.error("timer message not found in commit log, drop it. offsetPy={}, sizePy={}", unit.getOffsetPy(),
+                unit.getSizePy());
+            return null;
+        }
+
+        try {
+            return this.messageTimeup(msgExt);
+        }
+        catch (Exception e) {
+            log.error("timer messageTimeup execute error, drop it. msgExt=" + msgExt, e);
+            return null;
+        }
+    }
+
+
+    private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setBody(msgExt.getBody());
+        msgInner.setFlag(msgExt.getFlag());
+        MessageAccessor.setProperties(msgInner, msgExt.getProperties());
+
+        TopicFilterType topicFilterType = MessageExt.parseTopicFilterType(msgInner.getSysFlag());
+        long tagsCodeValue = MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
+        msgInner.setTagsCode(tagsCodeValue);
+
+        msgInner.setSysFlag(msgExt.getSysFlag());
+        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
+        msgInner.setBornHost(msgExt.getBornHost());
+        msgInner.setStoreHost(msgExt.getStoreHost());
+        msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+
+        msgInner.setWaitStoreMsgOK(false);
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
+
+        msgInner.setTopic(msgInner.getProperty(MessageConst.PROPERTY_REAL_TOPIC));
+        msgInner.setQueueId(Integer.parseInt(msgInner.getProperty(MessageConst.PROPERTY_REAL_QUEUE_ID)));
+
+        return msgInner;
+    }
+
+
+    /**
+     * Flush the wheel and the log before the offsets that point into them
+     */
+    private void flushAndPersist() {
+        this.timerLog.commit();
+        this.timerWheel.flush();
+        this.persist();
+
+        // A file written a whole round before the slot being delivered is no
+        // longer referenced, unless delivery is behind
+        long roundMs = (long) this.timerWheel.getSlotNums() * this.precisionMs;
+        if (System.currentTimeMillis() - this.dequeueTimeMs < DELAY_FOR_A_PERIOD) {
+            this.timerLog.deleteExpiredFile(roundMs + DELAY_FOR_A_PERIOD);
+        }
+    }
+
+
+    public String encode() {
+        return this.encode(false);
+    }
+
+
+    public String encode(final boolean prettyFormat) {
+        TimerOffsetSerializeWrapper wrapper = new TimerOffsetSerializeWrapper();
+        wrapper.setEnqueueOffset(this.enqueueOffset);
+        wrapper.setDequeueTimeMs(this.dequeueTimeMs);
+        wrapper.setDequeuePos(this.dequeuePos);
+        return wrapper.toJson(prettyFormat);
+    }
+
+
+    @Override
+    public void decode(String jsonString) {
+        if (jsonString != null) {
+            TimerOffsetSerializeWrapper wrapper =
+                    TimerOffsetSerializeWrapper.fromJson(jsonString, TimerOffsetSerializeWrapper.class);
+            if (wrapper != null) {
+                this.enqueueOffset = wrapper.getEnqueueOffset();
+                this.dequeueTimeMs = wrapper.getDequeueTimeMs();
+                this.dequeuePos = wrapper.getDequeuePos();
+            }
+        }
+    }
+
+
+    @Override
+    public String configFilePath() {
+        return StorePathConfigHelper.getTimerOffsetStorePath(this.defaultMessageStore.getMessageStoreConfig()
+            .getStorePathRootDir());
+    }
+
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+
+    public long getDequeueTimeMs() {
+        return dequeueTimeMs;
+    }
+
+    class TimerDeliverService extends ServiceThread {
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            long lastFlushTimestamp = System.currentTimeMillis();
+            while (!this.isStoped()) {
+                try {
+                    int enqueued = TimerMessageService.this.enqueue();
+                    boolean dequeued = TimerMessageService.this.dequeue();
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastFlushTimestamp >= TimerMessageService.this.defaultMessageStore
+                        .getMessageStoreConfig().getFlushDelayOffsetInterval()) {
+                        TimerMessageService.this.flushAndPersist();
+                        lastFlushTimestamp = now;
+                    }
+
+                    if (0 == enqueued && !dequeued) {
+                        this.waitForRunning(DELAY_FOR_A_WHILE);
+                    }
+                }
+                catch (Exception e) {
+                    log.warn(this.getServiceName() + " service has exception. ", e);
+                    this.waitForRunning(DELAY_FOR_A_PERIOD);
+                }
+            }
+
+            TimerMessageService.this.flushAndPersist();
+            log.info(this.getServiceName() + " service end");
+        }
+
+
+        // Also the retry wait of a failed delivery, woken up by shutdown
+        @Override
+        protected void waitForRunning(long interval) {
+            super.waitForRunning(interval);
+        }
+
+
+        @Override
+        public String getServiceName() {
+            return TimerDeliverService.class.getSimpleName();
+        }
+    }
+}
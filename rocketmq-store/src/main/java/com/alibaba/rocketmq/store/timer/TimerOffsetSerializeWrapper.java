@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.timer;
+
+import com.alibaba.rocketmq.remoting.protocol.RemotingSerializable;
+
+
+/**
+ * @author shijia.wxr
+ */
+public class TimerOffsetSerializeWrapper extends RemotingSerializable {
+    // Next offset of the timer topic consume queue to put into the wheel
+    private long enqueueOffset = 0;
+    // Next slot time to deliver
+    private long dequeueTimeMs = 0;
+    // Timer log position of the last handled unit of that slot, -1 if none
+    private long dequeuePos = -1;
+
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+
+    public void setEnqueueOffset(long enqueueOffset) {
+        this.enqueueOffset = enqueueOffset;
+    }
+
+
+    public long getDequeueTimeMs() {
+        return dequeueTimeMs;
+    }
+
+
+    public void setDequeueTimeMs(long dequeueTimeMs) {
+        this.dequeueTimeMs = dequeueTimeMs;
+    }
+
+
+    public long getDequeuePos() {
+        return dequeuePos;
+    }
+
+
+    public void setDequeuePos(long dequeuePos) {
+        this.dequeuePos = dequeuePos;
+    }
+}
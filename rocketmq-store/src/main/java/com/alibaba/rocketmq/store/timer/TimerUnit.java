@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.timer;
+
+/**
+ * A timer log unit, the commit log message to deliver at deliverMs
+ *
+ * @author shijia.wxr
+ */
+public class TimerUnit {
+    private final long pos;
+    private final long prevPos;
+    private final long deliverMs;
+    private final long offsetPy;
+    private final int sizePy;
+
+
+    public TimerUnit(long pos, long prevPos, long deliverMs, long offsetPy, int sizePy) {
+        this.pos = pos;
+        this.prevPos = prevPos;
+        this.deliverMs = deliverMs;
+        this.offsetPy = offsetPy;
+        this.sizePy = sizePy;
+    }
+
+
+    public long getPos() {
+        return pos;
+    }
+
+
+    public long getPrevPos() {
+        return prevPos;
+    }
+
+
+    public long getDeliverMs() {
+        return deliverMs;
+    }
+
+
+    public long getOffsetPy() {
+        return offsetPy;
+    }
+
+
+    public int getSizePy() {
+        return sizePy;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.timer;
+
+import com.alibaba.rocketmq.common.constant.LoggerName;
+import com.alibaba.rocketmq.store.MapedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * Fixed size time slot index, slot i holds the time it was last used for,
+ * so a slot left over from an earlier round reads as empty
+ *
+ * @author shijia.wxr
+ */
+public class TimerWheel {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.StoreLoggerName);
+    // timeMs(8) firstPos(8) lastPos(8) num(4) reserved(4)
+    public static final int SlotUnitSize = 32;
+    private final int slotNums;
+    private final int precisionMs;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mappedByteBuffer;
+
+
+    public TimerWheel(final String fileName, final int slotNums, final int precisionMs) throws IOException {
+        this.slotNums = slotNums;
+        this.precisionMs = precisionMs;
+
+        File file = new File(fileName);
+        MapedFile.ensureDirOK(file.getParent());
+        boolean fileExists = file.exists();
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.fileChannel = this.randomAccessFile.getChannel();
+        this.mappedByteBuffer = this.fileChannel.map(MapMode.READ_WRITE, 0, (long) slotNums * SlotUnitSize);
+
+        log.info("timer wheel {} {}, slots {}, precision(ms) {}", fileName, fileExists ? "loaded" : "created",
+            slotNums, precisionMs);
+    }
+
+
+    private int slotIndex(final long timeMs) {
+        return (int) ((timeMs / this.precisionMs) % this.slotNums);
+    }
+
+
+    public Slot getSlot(final long timeMs) {
+        int index = this.slotIndex(timeMs) * SlotUnitSize;
+        if (this.mappedByteBuffer.getLong(index) != timeMs) {
+            return new Slot(timeMs, -1, -1, 0);
+        }
+
+        return new Slot(timeMs, //
+            this.mappedByteBuffer.getLong(index + 8), //
+            this.mappedByteBuffer.getLong(index + 16), //
+            this.mappedByteBuffer.getInt(index + 24));
+    }
+
+
+    public void putSlot(final long timeMs, final long firstPos, final long lastPos, final int num) {
+        int index = this.slotIndex(timeMs) * SlotUnitSize;
+        this.mappedByteBuffer.putLong(index, timeMs);
+        this.mappedByteBuffer.putLong(index + 8, firstPos);
+        this.mappedByteBuffer.putLong(index + 16, lastPos);
+        this.mappedByteBuffer.putInt(index + 24, num);
+    }
+
+
+    public void flush() {
+        this.mappedByteBuffer.force();
+    }
+
+
+    public void shutdown() {
+        this.flush();
+
+        // unmap mappedByteBuffer
+        MapedFile.clean(this.mappedByteBuffer);
+
+        try {
+            this.fileChannel.close();
+        }
+        catch (IOException e) {
+            log.error("close timer wheel exception", e);
+        }
+    }
+
+
+    public int getSlotNums() {
+        return slotNums;
+    }
+
+
+    public int getPrecisionMs() {
+        return precisionMs;
+    }
+}
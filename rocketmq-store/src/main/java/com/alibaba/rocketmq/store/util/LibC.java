@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.util;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+
+
+/**
+ * Bridge to the C library for the memory calls the JDK does not expose
+ *
+ * @author shijia.wxr
+ */
+public interface LibC extends Library {
+    LibC INSTANCE = (LibC) Native.loadLibrary(Platform.isWindows() ? "msvcrt" : "c", LibC.class);
+
+    int MADV_NORMAL = 0;
+    int MADV_RANDOM = 1;
+    int MADV_WILLNEED = 3;
+    int MADV_DONTNEED = 4;
+
+
+    int mlock(Pointer address, NativeLong size);
+
+
+    int munlock(Pointer address, NativeLong size);
+
+
+    int madvise(Pointer address, NativeLong size, int advice);
+}
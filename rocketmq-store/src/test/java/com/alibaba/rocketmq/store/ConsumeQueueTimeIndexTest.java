@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class ConsumeQueueTimeIndexTest {
+    private static final String StorePath = "./unit_test_store/ConsumeQueueTimeIndexTest";
+    // 4 units a file so lookups cross files
+    private static final int FileSize = 4 * ConsumeQueueTimeIndex.UnitSize;
+    private static final long Interval = 1000;
+    private static final long BaseTime = 1400000000000L;
+
+
+    private ConsumeQueueTimeIndex newTimeIndex() {
+        ConsumeQueueTimeIndex timeIndex =
+                new ConsumeQueueTimeIndex("TopicTest", 0, StorePath, FileSize, Interval, true);
+        assertTrue(timeIndex.load());
+        timeIndex.recover();
+        return timeIndex;
+    }
+
+
+    @Test
+    public void test_lookup() {
+        ConsumeQueueTimeIndex timeIndex = this.newTimeIndex();
+        try {
+            // A message every 300ms, every 4th one starts a unit
+            for (long i = 0; i < 100; i++) {
+                assertTrue(timeIndex.putIndex(i, BaseTime + i * 300));
+            }
+            assertEquals(96, timeIndex.getMaxLogicOffset());
+
+            assertEquals(0, timeIndex.getOffsetInQueueByTime(BaseTime - 1000, 0));
+            assertEquals(0, timeIndex.getOffsetInQueueByTime(BaseTime + 100, 0));
+            assertEquals(4, timeIndex.getOffsetInQueueByTime(BaseTime + 1300, 0));
+            assertEquals(Long.MAX_VALUE, timeIndex.getOffsetInQueueByTime(BaseTime + 100 * 300 + 5000, 0));
+
+            // Idle queue, everything before the next unit is older
+            assertTrue(timeIndex.putIndex(100, BaseTime + 100000));
+            assertEquals(100, timeIndex.getOffsetInQueueByTime(BaseTime + 50000, 0));
+
+            // Not covered when older messages were never indexed
+            assertEquals(-1, timeIndex.getOffsetInQueueByTime(BaseTime - 1000, -1));
+        }
+        finally {
+            timeIndex.destroy();
+        }
+    }
+
+
+    @Test
+    public void test_truncate_recover() {
+        ConsumeQueueTimeIndex timeIndex = this.newTimeIndex();
+        try {
+            for (long i = 0; i < 100; i++) {
+                timeIndex.putIndex(i, BaseTime + i * 300);
+            }
+
+            timeIndex.truncate(50);
+            assertEquals(48, timeIndex.getMaxLogicOffset());
+
+            // Dispatched again after the truncation
+            for (long i = 50; i < 60; i++) {
+                timeIndex.putIndex(i, BaseTime + i * 300);
+            }
+            assertEquals(56, timeIndex.getMaxLogicOffset());
+            timeIndex.commit(0);
+
+            ConsumeQueueTimeIndex reloaded = this.newTimeIndex();
+            assertEquals(56, reloaded.getMaxLogicOffset());
+            assertEquals(52, reloaded.getOffsetInQueueByTime(BaseTime + 52 * 300 + 500, 0));
+        }
+        finally {
+            timeIndex.destroy();
+        }
+    }
+}
@@ -17,17 +17,28 @@
 
 package com.alibaba.rocketmq.store;
 
+import com.alibaba.rocketmq.common.BrokerConfig;
+import com.alibaba.rocketmq.common.message.Message;
+import com.alibaba.rocketmq.common.message.MessageDecoder;
+import com.alibaba.rocketmq.common.message.MessageExt;
 import com.alibaba.rocketmq.store.config.FlushDiskType;
 import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import com.alibaba.rocketmq.store.config.StorePathConfigHelper;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -167,4 +178,275 @@ public class DefaultMessageStoreTest {
         master.destroy();
         System.out.println("================================================================");
     }
+
+
+    public MessageExtBatch buildMessageBatch(final int size) {
+        List<Message> messages = new ArrayList<Message>(size);
+        for (int i = 0; i < size; i++) {
+            Message message = new Message("BATCH", "TAG" + i, ("batch body " + i).getBytes());
+            message.setFlag(i);
+            messages.add(message);
+        }
+
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic("BATCH");
+        messageExtBatch.setQueueId(0);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setStoreHost(StoreHost);
+        messageExtBatch.setBornHost(BornHost);
+        return messageExtBatch;
+    }
+
+
+    @Test
+    public void test_put_messages() throws Exception {
+        final int batchSize = 32;
+        final int totalBatches = 100;
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 8);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.SYNC_FLUSH);
+
+        MessageStore master = new DefaultMessageStore(messageStoreConfig, null, null, null);
+        boolean load = master.load();
+        assertTrue(load);
+
+        master.start();
+        try {
+            for (int i = 0; i < totalBatches; i++) {
+                PutMessageResult result = master.putMessages(buildMessageBatch(batchSize));
+                assertEquals(PutMessageStatus.PUT_OK, result.getPutMessageStatus());
+                assertEquals(batchSize, result.getAppendMessageResult().getMsgNum());
+                assertEquals((long) i * batchSize, result.getAppendMessageResult().getLogicsOffset());
+
+                String[] msgIds = result.getAppendMessageResult().getMsgId().split(",");
+                assertEquals(batchSize, msgIds.length);
+                for (int j = 0; j < batchSize; j++) {
+                    long commitLogOffset = MessageDecoder.decodeMessageId(msgIds[j]).getOffset();
+                    MessageExt msgExt = master.lookMessageByOffset(commitLogOffset);
+                    assertEquals("BATCH", msgExt.getTopic());
+                    assertEquals("TAG" + j, msgExt.getTags());
+                    assertEquals(j, msgExt.getFlag());
+                    assertEquals((long) i * batchSize + j, msgExt.getQueueOffset());
+                    assertEquals("batch body " + j, new String(msgExt.getBody()));
+                }
+            }
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+
+
+    @Test
+    public void test_put_message_async() throws Exception {
+        final int totalMsgs = 1000;
+        QUEUE_TOTAL = 1;
+        MessageBody = StoreMessage.getBytes();
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 8);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.SYNC_FLUSH);
+
+        MessageStore master = new DefaultMessageStore(messageStoreConfig, null, null, null);
+        boolean load = master.load();
+        assertTrue(load);
+
+        master.start();
+        try {
+            final CountDownLatch latch = new CountDownLatch(totalMsgs + 1);
+            final AtomicInteger okTimes = new AtomicInteger(0);
+            PutMessageCallback callback = new PutMessageCallback() {
+                @Override
+                public void operationComplete(PutMessageResult result) {
+                    if (PutMessageStatus.PUT_OK == result.getPutMessageStatus()) {
+                        okTimes.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            };
+
+            for (int i = 0; i < totalMsgs; i++) {
+                master.putMessageAsync(buildMessage(), callback);
+            }
+            master.putMessagesAsync(buildMessageBatch(8), callback);
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(totalMsgs + 1, okTimes.get());
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+
+
+    @Test
+    public void test_write_read_transient_store_pool() throws Exception {
+        final int totalMsgs = 1000;
+        QUEUE_TOTAL = 1;
+        MessageBody = StoreMessage.getBytes();
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 8);
+        messageStoreConfig.setTransientStorePoolEnable(true);
+        messageStoreConfig.setTransientStorePoolSize(3);
+
+        MessageStore master = new DefaultMessageStore(messageStoreConfig, null, null, null);
+        boolean load = master.load();
+        assertTrue(load);
+
+        master.start();
+        try {
+            long lastOffset = 0;
+            for (int i = 0; i < totalMsgs; i++) {
+                PutMessageResult result = master.putMessage(buildMessage());
+                assertEquals(PutMessageStatus.PUT_OK, result.getPutMessageStatus());
+                lastOffset = result.getAppendMessageResult().getWroteOffset();
+            }
+
+            // Readable once transfered to the file channel
+            for (int i = 0; i < 100 && master.getMaxPhyOffset() <= lastOffset; i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(master.getMaxPhyOffset() > lastOffset);
+
+            MessageExt msgExt = master.lookMessageByOffset(lastOffset);
+            assertEquals("AAA", msgExt.getTopic());
+            assertEquals(StoreMessage, new String(msgExt.getBody()));
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+
+
+    @Test
+    public void test_recover_abnormally() throws Exception {
+        final int totalMsgs = 1000;
+        final int queueTotal = 4;
+        MessageBody = StoreMessage.getBytes();
+
+        String storePath = System.getProperty("user.home") + File.separator + "unit_test_recover";
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 8);
+        messageStoreConfig.setMapedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setRecoverThreadPoolNums(4);
+        messageStoreConfig.setDiskFallRecorded(false);
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setLongPollingEnable(false);
+
+        DefaultMessageStore master = new DefaultMessageStore(messageStoreConfig, null, null, brokerConfig);
+        assertTrue(master.load());
+        master.start();
+        try {
+            for (int i = 0; i < totalMsgs; i++) {
+                MessageExtBrokerInner msg = buildMessage();
+                msg.setSysFlag(0);
+                msg.setQueueId(i % queueTotal);
+                assertEquals(PutMessageStatus.PUT_OK, master.putMessage(msg).getPutMessageStatus());
+            }
+
+            for (int i = 0; i < 100 && master.getMaxOffsetInQuque("AAA", queueTotal - 1) < totalMsgs / queueTotal; i++) {
+                Thread.sleep(100);
+            }
+        }
+        finally {
+            master.shutdown();
+        }
+
+        final long maxPhyOffset = master.getMaxPhyOffset();
+        // Recover from the checkpoint offsets, then again from the time stamps
+        // only as written by older versions
+        for (int round = 0; round < 2; round++) {
+            new File(StorePathConfigHelper.getAbortFile(storePath)).createNewFile();
+            if (round == 1) {
+                StoreCheckpoint storeCheckpoint =
+                        new StoreCheckpoint(StorePathConfigHelper.getStoreCheckpoint(storePath));
+                storeCheckpoint.setPhysicMsgOffset(0);
+                storeCheckpoint.setLogicsMsgOffset(0);
+                storeCheckpoint.shutdown();
+            }
+
+            master = new DefaultMessageStore(messageStoreConfig, null, null, brokerConfig);
+            assertTrue(master.load());
+            try {
+                assertEquals(maxPhyOffset, master.getMaxPhyOffset());
+                for (int queueId = 0; queueId < queueTotal; queueId++) {
+                    assertEquals(totalMsgs / queueTotal, master.getMaxOffsetInQuque("AAA", queueId));
+                }
+
+                master.start();
+                GetMessageResult result =
+                        master.getMessage("GROUP_A", "AAA", 0, totalMsgs / queueTotal - 1, 1024 * 1024, null);
+                assertEquals(GetMessageStatus.FOUND, result.getStatus());
+                result.release();
+            }
+            finally {
+                master.shutdown();
+            }
+        }
+
+        master.destroy();
+    }
+
+
+    @Test
+    public void test_get_message_coalesced() throws Exception {
+        final int totalMsgs = 32;
+        MessageBody = StoreMessage.getBytes();
+
+        String storePath = System.getProperty("user.home") + File.separator + "unit_test_coalesce";
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setDiskFallRecorded(false);
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setLongPollingEnable(false);
+
+        DefaultMessageStore master = new DefaultMessageStore(messageStoreConfig, null, null, brokerConfig);
+        assertTrue(master.load());
+        master.start();
+        try {
+            for (int i = 0; i < totalMsgs; i++) {
+                MessageExtBrokerInner msg = buildMessage();
+                msg.setSysFlag(0);
+                msg.setQueueId(0);
+                assertEquals(PutMessageStatus.PUT_OK, master.putMessage(msg).getPutMessageStatus());
+            }
+
+            for (int i = 0; i < 100 && master.getMaxOffsetInQuque("AAA", 0) < totalMsgs; i++) {
+                Thread.sleep(100);
+            }
+
+            GetMessageResult result = master.getMessage("GROUP_A", "AAA", 0, 0, totalMsgs * 2, null);
+            try {
+                assertEquals(GetMessageStatus.FOUND, result.getStatus());
+                assertEquals(totalMsgs, result.getMessageCount());
+                // One buffer over the adjacent messages
+                assertEquals(1, result.getMessageBufferList().size());
+                assertEquals(result.getBufferTotalSize(), result.getMessageBufferList().get(0).remaining());
+
+                List<MessageExt> msgs = MessageDecoder.decodes(result.getMessageBufferList().get(0).slice());
+                assertEquals(totalMsgs, msgs.size());
+                for (int i = 0; i < totalMsgs; i++) {
+                    assertEquals(i, msgs.get(i).getQueueOffset());
+                    assertEquals(StoreMessage, new String(msgs.get(i).getBody()));
+                }
+            }
+            finally {
+                result.release();
+            }
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
 }
@@ -22,6 +22,9 @@ package com.alibaba.rocketmq.store;
 
 import org.junit.*;
 
+import java.io.File;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 
@@ -213,4 +216,57 @@ public class MapedFileQueueTest {
         System.out.println("MapedFileQueue.getMapedMemorySize() OK");
     }
 
+
+    @Test
+    public void test_multiple_paths() {
+        final String fixedMsg = "0123456789abcdef";
+        final String storePath = "./unit_test_store/e0,./unit_test_store/e1,./unit_test_store/e2";
+        MapedFileQueue mapedFileQueue = new MapedFileQueue(storePath, 1024, null);
+
+        for (int i = 0; i < 1024 / fixedMsg.length() * 6; i++) {
+            MapedFile mapedFile = mapedFileQueue.getLastMapedFile();
+            assertTrue(mapedFile != null);
+            assertTrue(mapedFile.appendMessage(fixedMsg.getBytes()));
+        }
+
+        List<MapedFile> mapedFiles = mapedFileQueue.getMapedFiles();
+        assertEquals(6, mapedFiles.size());
+        for (int i = 1; i < mapedFiles.size(); i++) {
+            // Consecutive files are never in the same directory
+            assertFalse(new File(mapedFiles.get(i).getFileName()).getParent().equals(
+                new File(mapedFiles.get(i - 1).getFileName()).getParent()));
+        }
+        mapedFileQueue.shutdown(1000);
+
+        MapedFileQueue reloaded = new MapedFileQueue(storePath, 1024, null);
+        assertTrue(reloaded.load());
+        assertEquals(6, reloaded.getMapedFiles().size());
+        for (int i = 0; i < reloaded.getMapedFiles().size(); i++) {
+            assertEquals(i * 1024, reloaded.getMapedFiles().get(i).getFileFromOffset());
+        }
+
+        reloaded.shutdown(1000);
+        reloaded.destroy();
+        mapedFileQueue.destroy();
+    }
+
+
+    @Test
+    public void test_multiple_paths_all_full() {
+        final String fixedMsg = "0123456789abcdef";
+        final String storePath = "./unit_test_store/f0,./unit_test_store/f1";
+        MapedFileQueue mapedFileQueue = new MapedFileQueue(storePath, 1024, null);
+        // Every directory is above the ratio, files are still created
+        mapedFileQueue.setStorePathMaxUsedRatio(0);
+
+        for (int i = 0; i < 1024 / fixedMsg.length() * 3; i++) {
+            MapedFile mapedFile = mapedFileQueue.getLastMapedFile();
+            assertTrue(mapedFile != null);
+            assertTrue(mapedFile.appendMessage(fixedMsg.getBytes()));
+        }
+        assertEquals(3, mapedFileQueue.getMapedFiles().size());
+
+        mapedFileQueue.shutdown(1000);
+        mapedFileQueue.destroy();
+    }
 }
@@ -26,7 +26,12 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -77,6 +82,120 @@ public class MapedFileTest {
         }
     }
 
+    @Test
+    public void test_map_on_demand() throws Exception {
+        final int fileSize = 1024 * 64;
+        MapedFile mapedFile = new MapedFile("./unit_test_store/MapedFileTest/001", fileSize);
+        while (mapedFile.appendMessage(StoreMessage.getBytes())) {
+        }
+        mapedFile.setWrotePostion(fileSize);
+        mapedFile.commit(0);
+        assertTrue(mapedFile.isFull());
+        mapedFile.shutdown(1000);
+        mapedFile.getFileChannel().close();
+
+        mapedFile = new MapedFile("./unit_test_store/MapedFileTest/001", fileSize, true);
+        assertTrue(!mapedFile.isMaped());
+        // Only full and flushed files are unmaped
+        assertTrue(!mapedFile.unmap(0));
+        mapedFile.setWrotePostion(fileSize);
+        mapedFile.setCommittedPosition(fileSize);
+
+        SelectMapedBufferResult result = mapedFile.selectMapedBuffer(0);
+        assertTrue(mapedFile.isMaped());
+        byte[] data = new byte[StoreMessage.length()];
+        result.getByteBuffer().get(data);
+        assertEquals(StoreMessage, new String(data));
+
+        // Held by a reader, then touched too recently
+        assertTrue(!mapedFile.unmap(0));
+        result.release();
+        assertTrue(!mapedFile.unmap(1000 * 60));
+
+        List<MapedFile> mapedFiles = new ArrayList<MapedFile>();
+        mapedFiles.add(mapedFile);
+        assertEquals(fileSize, MapedFile.unmapLeastRecentlyUsed(mapedFiles, fileSize, 0));
+        assertEquals(0, MapedFile.unmapLeastRecentlyUsed(mapedFiles, 0, 0));
+        assertTrue(!mapedFile.isMaped());
+
+        // Read through the channel it stays unmaped
+        result = mapedFile.readByChannel(StoreMessage.length(), StoreMessage.length());
+        result.getByteBuffer().get(data);
+        assertEquals(StoreMessage, new String(data));
+        result.release();
+        assertTrue(!mapedFile.isMaped());
+
+        // A pooled read covers the following messages too
+        ReadBufferPool readBufferPool = new ReadBufferPool(StoreMessage.length() * 4, 1);
+        GetMessageResult getResult = new GetMessageResult();
+        getResult.addMessage(mapedFile.readByChannel(0, StoreMessage.length(), readBufferPool));
+        assertTrue(getResult.appendAdjacentMessage(mapedFile.getFileFromOffset() + StoreMessage.length(),
+            StoreMessage.length()));
+        assertEquals(StoreMessage + StoreMessage, new String(getResult.getMessageBufferList().get(0).array(), 0,
+            StoreMessage.length() * 2));
+        getResult.release();
+        assertEquals(1, readBufferPool.getPooled());
+        assertTrue(!mapedFile.isMaped());
+
+        // Maped again on the next access
+        result = mapedFile.selectMapedBuffer(0);
+        result.getByteBuffer().get(data);
+        assertEquals(StoreMessage, new String(data));
+        result.release();
+
+        mapedFile.shutdown(1000);
+        assertTrue(mapedFile.destroy(1000));
+    }
+
+
+    @Test
+    public void test_unmap_while_reading() throws Exception {
+        final int fileSize = 1024 * 64;
+        final MapedFile mapedFile = new MapedFile("./unit_test_store/MapedFileTest/002", fileSize);
+        while (mapedFile.appendMessage(StoreMessage.getBytes())) {
+        }
+        mapedFile.setWrotePostion(fileSize);
+        mapedFile.commit(0);
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicInteger mismatched = new AtomicInteger(0);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] data = new byte[StoreMessage.length()];
+                while (!stop.get()) {
+                    SelectMapedBufferResult result = mapedFile.selectMapedBuffer(0, StoreMessage.length());
+                    if (result != null) {
+                        result.getByteBuffer().get(data);
+                        if (!StoreMessage.equals(new String(data))) {
+                            mismatched.incrementAndGet();
+                        }
+                        result.release();
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        // Never unmaped under a reader that holds the file
+        int unmaped = 0;
+        long deadline = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < deadline) {
+            if (mapedFile.unmap(0)) {
+                unmaped++;
+            }
+        }
+        stop.set(true);
+        reader.join();
+
+        assertTrue(unmaped > 0);
+        assertEquals(0, mismatched.get());
+
+        mapedFile.shutdown(1000);
+        assertTrue(mapedFile.destroy(1000));
+    }
+
+
     @Ignore
     public void test_jvm_crashed() {
         try {
@@ -47,6 +47,8 @@ public class StoreCheckpointTest {
             long logicsMsgTimestamp = 0xCCDD;
             storeCheckpoint.setPhysicMsgTimestamp(physicMsgTimestamp);
             storeCheckpoint.setLogicsMsgTimestamp(logicsMsgTimestamp);
+            storeCheckpoint.setPhysicMsgOffset(0x1000);
+            storeCheckpoint.setLogicsMsgOffset(0x0800);
             storeCheckpoint.flush();
 
             long diff = physicMsgTimestamp - storeCheckpoint.getMinTimestamp();
@@ -57,6 +59,7 @@ public class StoreCheckpointTest {
             storeCheckpoint = new StoreCheckpoint("a/b/0000");
             assertTrue(physicMsgTimestamp == storeCheckpoint.getPhysicMsgTimestamp());
             assertTrue(logicsMsgTimestamp == storeCheckpoint.getLogicsMsgTimestamp());
+            assertTrue(0x0800 == storeCheckpoint.getMinOffset());
         }
         catch (Throwable e) {
             e.printStackTrace();
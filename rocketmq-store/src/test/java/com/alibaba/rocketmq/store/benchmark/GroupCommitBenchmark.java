@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.benchmark;
+
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.config.FlushDiskType;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * SYNC_FLUSH putMessage throughput with many senders waiting on the group
+ * commit service, the store lives in a temporary directory
+ *
+ * @author shijia.wxr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(32)
+@Fork(1)
+public class GroupCommitBenchmark {
+    private final InetSocketAddress host = new InetSocketAddress("127.0.0.1", 10911);
+    private final byte[] body = new byte[512];
+    private String storePath;
+    private DefaultMessageStore messageStore;
+
+
+    @Setup
+    public void setup() throws Exception {
+        this.storePath = System.getProperty("java.io.tmpdir") + File.separator + "GroupCommitBenchmark_"
+                + System.currentTimeMillis();
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(this.storePath);
+        messageStoreConfig.setStorePathCommitLog(this.storePath + File.separator + "commitlog");
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 1024 * 64);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.SYNC_FLUSH);
+
+        this.messageStore = new DefaultMessageStore(messageStoreConfig, null, null, null);
+        this.messageStore.load();
+        this.messageStore.start();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.messageStore.shutdown();
+        this.messageStore.destroy();
+    }
+
+
+    @Benchmark
+    public PutMessageResult syncFlushPut() {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic("GroupCommitBenchmark");
+        msg.setBody(this.body);
+        msg.setQueueId(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setBornHost(this.host);
+        msg.setStoreHost(this.host);
+        return this.messageStore.putMessage(msg);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GroupCommitBenchmark.class.getSimpleName()).build()).run();
+    }
+}
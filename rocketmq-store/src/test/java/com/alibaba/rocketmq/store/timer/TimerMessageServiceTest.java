@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.alibaba.rocketmq.store.timer;
+
+import com.alibaba.rocketmq.common.BrokerConfig;
+import com.alibaba.rocketmq.common.MixAll;
+import com.alibaba.rocketmq.common.message.MessageDecoder;
+import com.alibaba.rocketmq.common.message.MessageExt;
+import com.alibaba.rocketmq.store.DefaultMessageStore;
+import com.alibaba.rocketmq.store.GetMessageResult;
+import com.alibaba.rocketmq.store.GetMessageStatus;
+import com.alibaba.rocketmq.store.MessageExtBrokerInner;
+import com.alibaba.rocketmq.store.PutMessageResult;
+import com.alibaba.rocketmq.store.PutMessageStatus;
+import com.alibaba.rocketmq.store.config.MessageStoreConfig;
+import com.alibaba.rocketmq.store.config.StorePathConfigHelper;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author shijia.wxr
+ */
+public class TimerMessageServiceTest {
+    private static final String StorePath = System.getProperty("user.home") + File.separator + "unit_test_timer";
+
+
+    private MessageExtBrokerInner buildMessage(final long deliverMs) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic("TIMER_TEST");
+        msg.setTags("TAG1");
+        msg.setKeys(String.valueOf(deliverMs));
+        msg.setBody(("deliver at " + deliverMs).getBytes());
+        msg.setQueueId(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 10911));
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 0));
+        msg.setDeliverTimeMs(deliverMs);
+        return msg;
+    }
+
+
+    @Test
+    public void test_wheel_slot_rounds() throws Exception {
+        String fileName = StorePath + File.separator + "timerwheel";
+        TimerWheel timerWheel = new TimerWheel(fileName, 10, 100);
+        try {
+            timerWheel.putSlot(1000, 0, 64, 3);
+            Slot slot = timerWheel.getSlot(1000);
+            assertEquals(0, slot.getFirstPos());
+            assertEquals(64, slot.getLastPos());
+            assertEquals(3, slot.getNum());
+
+            // Same index one round later, left over from the earlier round
+            slot = timerWheel.getSlot(2000);
+            assertEquals(-1, slot.getLastPos());
+            assertEquals(0, slot.getNum());
+        }
+        finally {
+            timerWheel.shutdown();
+            new File(fileName).delete();
+        }
+    }
+
+
+    @Test
+    public void test_log_recover() throws Exception {
+        String storePath = StorePath + File.separator + "timerlog";
+        TimerLog timerLog = new TimerLog(storePath, TimerLog.UnitSize * 4);
+        try {
+            assertTrue(timerLog.load());
+            long prevPos = -1;
+            for (int i = 0; i < 6; i++) {
+                prevPos = timerLog.append(prevPos, 1000 + i, i * 100, 100);
+            }
+            timerLog.shutdown();
+
+            timerLog = new TimerLog(storePath, TimerLog.UnitSize * 4);
+            assertTrue(timerLog.load());
+            assertEquals(TimerLog.UnitSize * 6, timerLog.getMaxOffset());
+            assertEquals(1005, timerLog.getUnit(prevPos).getDeliverMs());
+
+            // Appended after the recovered units, not at the end of the file
+            assertEquals(TimerLog.UnitSize * 6, timerLog.append(prevPos, 2000, 600, 100));
+        }
+        finally {
+            timerLog.shutdown();
+            timerLog.destroy();
+        }
+    }
+
+
+    private MessageStoreConfig createConfig() {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(StorePath);
+        messageStoreConfig.setStorePathCommitLog(StorePath + File.separator + "commitlog");
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setTimerWheelEnable(true);
+        messageStoreConfig.setTimerPrecisionMs(100);
+        messageStoreConfig.setDiskFallRecorded(false);
+        return messageStoreConfig;
+    }
+
+
+    @Test
+    public void test_resume_slot() throws Exception {
+        MessageStoreConfig messageStoreConfig = this.createConfig();
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setLongPollingEnable(false);
+
+        DefaultMessageStore master = new DefaultMessageStore(messageStoreConfig, null, null, brokerConfig);
+        assertTrue(master.load());
+        master.start();
+        long deliverMs = System.currentTimeMillis() + 2000;
+        try {
+            for (int i = 0; i < 4; i++) {
+                MessageExtBrokerInner msg = this.buildMessage(deliverMs);
+                msg.setKeys(String.valueOf(i));
+                assertEquals(PutMessageStatus.PUT_OK, master.putMessage(msg).getPutMessageStatus());
+            }
+            // Into the wheel, not due yet
+            Thread.sleep(500);
+        }
+        finally {
+            master.shutdown();
+        }
+
+        // As if the slot failed after the first two units
+        String offsetPath = StorePathConfigHelper.getTimerOffsetStorePath(StorePath);
+        TimerOffsetSerializeWrapper wrapper =
+                TimerOffsetSerializeWrapper.fromJson(MixAll.file2String(offsetPath),
+                    TimerOffsetSerializeWrapper.class);
+        assertEquals(4, wrapper.getEnqueueOffset());
+        assertEquals(-1, wrapper.getDequeuePos());
+        wrapper.setDequeueTimeMs(deliverMs / 100 * 100);
+        wrapper.setDequeuePos(TimerLog.UnitSize);
+        MixAll.string2File(wrapper.toJson(), offsetPath);
+
+        master = new DefaultMessageStore(messageStoreConfig, null, null, brokerConfig);
+        assertTrue(master.load());
+        master.start();
+        try {
+            long deadline = System.currentTimeMillis() + 1000 * 10;
+            while (master.getMaxOffsetInQuque("TIMER_TEST", 0) < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(500);
+
+            // Resumed after the handled units instead of replaying the slot
+            GetMessageResult result = master.getMessage("GROUP_A", "TIMER_TEST", 0, 0, 32, null);
+            assertEquals(GetMessageStatus.FOUND, result.getStatus());
+            List<String> keys = new ArrayList<String>();
+            // Adjacent messages may share a buffer
+            for (ByteBuffer byteBuffer : result.getMessageBufferList()) {
+                for (MessageExt msgExt : MessageDecoder.decodes(byteBuffer)) {
+                    keys.add(msgExt.getKeys());
+                }
+            }
+            result.release();
+            assertEquals(Arrays.asList("2", "3"), keys);
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+
+
+    @Test
+    public void test_deliver_at_time() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setStorePathRootDir(StorePath);
+        messageStoreConfig.setStorePathCommitLog(StorePath + File.separator + "commitlog");
+        messageStoreConfig.setMapedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setTimerWheelEnable(true);
+        messageStoreConfig.setTimerPrecisionMs(100);
+        // Wheel span of 2s, the last timer is rolled once
+        messageStoreConfig.setTimerWheelSlotNums(20);
+        messageStoreConfig.setTimerLogFileSize(TimerLog.UnitSize * 16);
+
+        messageStoreConfig.setDiskFallRecorded(false);
+
+        // Dispatch to the consume queues without a long polling listener
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setLongPollingEnable(false);
+
+        DefaultMessageStore master = new DefaultMessageStore(messageStoreConfig, null, null, brokerConfig);
+        assertTrue(master.load());
+        master.start();
+        try {
+            long now = System.currentTimeMillis();
+            List<Long> deliverTimes = new ArrayList<Long>();
+            for (int i = 0; i < 50; i++) {
+                deliverTimes.add(now + 500 + i * 20);
+            }
+            deliverTimes.add(now + 3000);
+
+            for (long deliverMs : deliverTimes) {
+                PutMessageResult result = master.putMessage(this.buildMessage(deliverMs));
+                assertEquals(PutMessageStatus.PUT_OK, result.getPutMessageStatus());
+            }
+            assertEquals(0, master.getMaxOffsetInQuque("TIMER_TEST", 0));
+
+            // The commit log would be deleted before the delivery
+            long beyondRetention = now + (messageStoreConfig.getFileReservedTime() + 1) * 60L * 60L * 1000L;
+            assertEquals(PutMessageStatus.MESSAGE_ILLEGAL, master.putMessage(this.buildMessage(beyondRetention))
+                .getPutMessageStatus());
+
+            long offset = 0;
+            long deadline = System.currentTimeMillis() + 1000 * 10;
+            while (offset < deliverTimes.size() && System.currentTimeMillis() < deadline) {
+                GetMessageResult result = master.getMessage("GROUP_A", "TIMER_TEST", 0, offset, 32, null);
+                if (result.getStatus() == GetMessageStatus.FOUND) {
+                    for (ByteBuffer byteBuffer : result.getMessageBufferList()) {
+                        for (MessageExt msgExt : MessageDecoder.decodes(byteBuffer)) {
+                            // Never early, and no longer a timer message
+                            assertTrue(msgExt.getStoreTimestamp() >= Long.parseLong(msgExt.getKeys()));
+                            assertEquals(0, msgExt.getDeliverTimeMs());
+                            offset++;
+                        }
+                    }
+                }
+                result.release();
+                Thread.sleep(50);
+            }
+
+            assertEquals(deliverTimes.size(), offset);
+        }
+        finally {
+            master.shutdown();
+            master.destroy();
+        }
+    }
+}